@@ -0,0 +1,27 @@
+package ch.ivyteam.ivy.ldap.beans.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options and adds the gc
+ * profiler, so that the report contains the allocation rate next to the
+ * throughput and the latency percentiles.
+ * <p>
+ * Example: <code>java -cp ... ch.ivyteam.ivy.ldap.beans.benchmark.Benchmarks
+ * QueryBenchmark -p entries=10000,100000,1000000</code>
+ * </p>
+ */
+public class Benchmarks
+{
+  public static void main(String[] args) throws Exception
+  {
+    new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build())
+                    .run();
+  }
+}
@@ -0,0 +1,46 @@
+package ch.ivyteam.ivy.ldap.beans.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ivyteam.ivy.ldap.beans.util.JndiUtil;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+
+/**
+ * Connection setup: borrowing a pooled connection compared with connecting
+ * and binding a new one for every operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionBenchmark
+{
+  @Benchmark
+  public String borrowPooled(DirectoryState state) throws NamingException
+  {
+    try (LdapConnection connection = LdapConnectionManager.getInstance().borrow(state.jndiConfig))
+    {
+      return connection.getServerUrl();
+    }
+  }
+
+  @Benchmark
+  public void openAndBind(DirectoryState state) throws NamingException
+  {
+    LdapContext context = JndiUtil.openLdapContext(state.jndiConfig);
+    context.close();
+  }
+}
@@ -0,0 +1,236 @@
+package ch.ivyteam.ivy.ldap.beans.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
+
+/**
+ * Embedded in-memory directory server seeded with a generated organisation:
+ * <ul>
+ * <li><code>ou=people</code>: users in {@value #DEPARTMENTS} department
+ * organisational units</li>
+ * <li><code>ou=groups</code>: a group per {@value #GROUP_SIZE} users, nested in
+ * division groups, and an all staff group with up to
+ * {@value #MAX_ALL_STAFF_MEMBERS} members</li>
+ * </ul>
+ * The write benchmarks add their own subtrees with
+ * {@link #addSubtree(String, int)}.
+ */
+final class Directory implements AutoCloseable
+{
+  static final String BASE = "dc=example,dc=com";
+  static final String PEOPLE = "ou=people," + BASE;
+  static final String GROUPS = "ou=groups," + BASE;
+
+  static final int DEPARTMENTS = 50;
+  static final int GROUP_SIZE = 100;
+  static final int GROUPS_PER_DIVISION = 10;
+  static final int MAX_ALL_STAFF_MEMBERS = 10_000;
+
+  private static final String BIND_DN = "cn=Directory Manager";
+  private static final String PASSWORD = "benchmark";
+
+  private final InMemoryDirectoryServer server;
+  private final int users;
+
+  private Directory(InMemoryDirectoryServer server, int users)
+  {
+    this.server = server;
+    this.users = users;
+  }
+
+  /**
+   * Starts a server listening on a free local port and seeds it
+   * @param users number of users
+   * @return started server
+   * @throws LDAPException if the server can not be started
+   */
+  static Directory start(int users) throws LDAPException
+  {
+    return start(users, 0);
+  }
+
+  /**
+   * Starts a server listening on a local port and seeds it
+   * @param users number of users
+   * @param port port to listen on, 0 for a free port
+   * @return started server
+   * @throws LDAPException if the server can not be started
+   */
+  static Directory start(int users, int port) throws LDAPException
+  {
+    InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+    config.addAdditionalBindCredentials(BIND_DN, PASSWORD);
+    config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("ldap", port));
+    InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+    Directory directory = new Directory(server, users);
+    directory.seed();
+    server.startListening();
+    return directory;
+  }
+
+  String getUrl()
+  {
+    return "ldap://localhost:" + server.getListenPort();
+  }
+
+  /**
+   * @return configuration of a simple bind to the server
+   */
+  JndiConfig createConfig()
+  {
+    JndiConfig config = new JndiConfig(JndiProvider.LDAP, getUrl(),
+            JndiConfig.AUTH_KIND_SIMPLE, BIND_DN, PASSWORD, false, false, "");
+    config.setPoolMaxSize(16);
+    return config;
+  }
+
+  static String getUserDn(int user)
+  {
+    return "uid=user" + user + ",ou=dept" + (user % DEPARTMENTS) + "," + PEOPLE;
+  }
+
+  int getUsers()
+  {
+    return users;
+  }
+
+  /**
+   * Adds an organisational unit with teams of users below, directly through
+   * the server and not through the beans
+   * @param dn name of the organisational unit
+   * @param size number of entries below the unit
+   * @throws LDAPException if an entry can not be added
+   */
+  void addSubtree(String dn, int size) throws LDAPException
+  {
+    server.add(organizationalUnit(dn));
+    int teams = Math.max(1, size / GROUP_SIZE);
+    for (int team = 0; team < teams; team++)
+    {
+      server.add(organizationalUnit("ou=team" + team + "," + dn));
+    }
+    for (int member = 0; member < size - teams; member++)
+    {
+      server.add(person("uid=member" + member + ",ou=team" + (member % teams) + "," + dn, member));
+    }
+  }
+
+  /**
+   * Adds an organisational unit directly through the server
+   * @param dn name of the organisational unit
+   * @throws LDAPException if the unit can not be added
+   */
+  void addUnit(String dn) throws LDAPException
+  {
+    server.add(organizationalUnit(dn));
+  }
+
+  /**
+   * Adds a user directly through the server
+   * @param dn name of the user
+   * @throws LDAPException if the user can not be added
+   */
+  void addPerson(String dn) throws LDAPException
+  {
+    server.add(person(dn, users));
+  }
+
+  /**
+   * Deletes an entry and its subtree directly through the server, ignoring
+   * entries that do not exist
+   * @param dn name of the entry
+   * @throws LDAPException if an entry can not be deleted
+   */
+  void deleteSubtree(String dn) throws LDAPException
+  {
+    if (server.getEntry(dn) != null)
+    {
+      server.deleteSubtree(dn);
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    server.shutDown(true);
+  }
+
+  private void seed() throws LDAPException
+  {
+    server.add(new Entry(BASE, new Attribute("objectClass", "top", "domain"), new Attribute("dc", "example")));
+    server.add(organizationalUnit(PEOPLE));
+    server.add(organizationalUnit(GROUPS));
+    for (int department = 0; department < DEPARTMENTS; department++)
+    {
+      server.add(organizationalUnit("ou=dept" + department + "," + PEOPLE));
+    }
+    for (int user = 0; user < users; user++)
+    {
+      server.add(person(getUserDn(user), user));
+    }
+
+    int groups = Math.max(1, users / GROUP_SIZE);
+    for (int group = 0; group < groups; group++)
+    {
+      List<String> members = new ArrayList<>();
+      for (int user = group; user < users; user += groups)
+      {
+        members.add(getUserDn(user));
+      }
+      server.add(group("cn=group" + group + "," + GROUPS, members));
+    }
+    for (int division = 0; division * GROUPS_PER_DIVISION < groups; division++)
+    {
+      List<String> members = new ArrayList<>();
+      for (int group = division * GROUPS_PER_DIVISION; group < Math.min(groups, (division + 1) * GROUPS_PER_DIVISION); group++)
+      {
+        members.add("cn=group" + group + "," + GROUPS);
+      }
+      server.add(group("cn=division" + division + "," + GROUPS, members));
+    }
+    List<String> allStaff = new ArrayList<>();
+    for (int user = 0; user < Math.min(users, MAX_ALL_STAFF_MEMBERS); user++)
+    {
+      allStaff.add(getUserDn(user));
+    }
+    server.add(group("cn=all-staff," + GROUPS, allStaff));
+  }
+
+  private static Entry organizationalUnit(String dn) throws LDAPException
+  {
+    return new Entry(dn, new Attribute("objectClass", "top", "organizationalUnit"),
+            new Attribute("ou", new DN(dn).getRDN().getAttributeValues()[0]));
+  }
+
+  private static Entry person(String dn, int number) throws LDAPException
+  {
+    String uid = new DN(dn).getRDN().getAttributeValues()[0];
+    return new Entry(dn,
+            new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+            new Attribute("uid", uid),
+            new Attribute("cn", "User " + number),
+            new Attribute("sn", "Name" + (number * 7919L % 100_003)),
+            new Attribute("givenName", "Given" + (number % 997)),
+            new Attribute("departmentNumber", Integer.toString(number % DEPARTMENTS)),
+            new Attribute("mail", uid + "@example.com", uid + "@mail.example.com"),
+            new Attribute("telephoneNumber", "+41 41 000 " + (number % 10_000)));
+  }
+
+  private static Entry group(String dn, List<String> members) throws LDAPException
+  {
+    return new Entry(dn, new Attribute("objectClass", "top", "groupOfNames"),
+            new Attribute("cn", new DN(dn).getRDN().getAttributeValues()[0]),
+            new Attribute("member", members));
+  }
+}
@@ -0,0 +1,42 @@
+package ch.ivyteam.ivy.ldap.beans.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.unboundid.ldap.sdk.LDAPException;
+
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+
+/**
+ * The directory shared by all threads of a benchmark. Started once per
+ * trial, so seeding a large directory is not measured.
+ */
+@State(Scope.Benchmark)
+public class DirectoryState
+{
+  /** Number of users in the directory */
+  @Param({"10000"})
+  public int entries;
+
+  Directory directory;
+  JndiConfig jndiConfig;
+
+  @Setup(Level.Trial)
+  public void start() throws LDAPException
+  {
+    directory = Directory.start(entries);
+    jndiConfig = directory.createConfig();
+  }
+
+  @TearDown(Level.Trial)
+  public void stop()
+  {
+    LdapConnectionManager.getInstance().closeAll();
+    directory.close();
+  }
+}
@@ -0,0 +1,390 @@
+package ch.ivyteam.ivy.ldap.beans.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.unboundid.ldap.sdk.LDAPException;
+
+/**
+ * Load scenario for the process starts in <code>processes/load.mod</code> of
+ * the LdapBeansDemos project. Starts the in-memory directory on a fixed port,
+ * calls the process starts of a running engine with several threads and a
+ * configurable mix of reads, writes, renames and deletes, and reports the
+ * throughput and the p50/p99 latency per bean.
+ * <p>
+ * Options (all optional):
+ * </p>
+ * <ul>
+ * <li><code>--process</code>: url of the load process, default
+ * {@value #DEFAULT_PROCESS}</li>
+ * <li><code>--ldapUrl</code>: url the engine connects to, default the url of
+ * the started directory</li>
+ * <li><code>--port</code>: port of the directory, default
+ * {@value #DEFAULT_PORT}</li>
+ * <li><code>--entries</code>: number of users, default 10000</li>
+ * <li><code>--threads</code>: number of concurrent callers, default 8</li>
+ * <li><code>--warmup</code>, <code>--duration</code>: seconds of warm up and
+ * of measurement, default 10 and 60</li>
+ * <li><code>--mix</code>: weights of the operations, default
+ * {@value #DEFAULT_MIX}</li>
+ * </ul>
+ */
+public class LoadScenario
+{
+  static final String DEFAULT_PROCESS = "http://localhost:8081/ivy/pro/designer/LdapBeansDemos/18B4C2A17E3D5F60/";
+  static final int DEFAULT_PORT = 10389;
+  static final String DEFAULT_MIX = "read=70,write=20,rename=5,delete=5";
+
+  private static final String LOAD = "ou=load," + Directory.BASE;
+
+  /**
+   * Operations of the scenario and the process start and bean they call
+   */
+  enum Operation
+  {
+    READ("loadQuery.ivp", "LdapQueryBeanRS"),
+    WRITE("loadModify.ivp", "LdapAttributeModifierBean"),
+    RENAME("loadRename.ivp", "LdapRenameObjectBean"),
+    DELETE("loadDelete.ivp", "LdapObjectEditBean");
+
+    private final String start;
+    private final String bean;
+
+    private Operation(String start, String bean)
+    {
+      this.start = start;
+      this.bean = bean;
+    }
+  }
+
+  private final Directory directory;
+  private final String process;
+  private final String ldapUrl;
+  private final Map<Operation, Integer> mix;
+  private final int totalWeight;
+  private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+  private final AtomicLong sequence = new AtomicLong();
+  private volatile long measureStart;
+
+  LoadScenario(Directory directory, String process, String ldapUrl, Map<Operation, Integer> mix)
+  {
+    this.directory = directory;
+    this.process = process.endsWith("/") ? process : process + "/";
+    this.ldapUrl = ldapUrl;
+    this.mix = mix;
+    int weights = 0;
+    for (Operation operation : mix.keySet())
+    {
+      weights += mix.get(operation);
+      stats.put(operation, new Stats());
+    }
+    this.totalWeight = weights;
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    Map<String, String> options = parseOptions(args);
+    int entries = Integer.parseInt(options.getOrDefault("entries", "10000"));
+    int port = Integer.parseInt(options.getOrDefault("port", Integer.toString(DEFAULT_PORT)));
+    int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+    int duration = Integer.parseInt(options.getOrDefault("duration", "60"));
+    Map<Operation, Integer> mix = parseMix(options.getOrDefault("mix", DEFAULT_MIX));
+
+    try (Directory directory = Directory.start(entries, port))
+    {
+      directory.addUnit(LOAD);
+      LoadScenario scenario = new LoadScenario(directory, options.getOrDefault("process", DEFAULT_PROCESS),
+              options.getOrDefault("ldapUrl", directory.getUrl()), mix);
+      System.out.println("Directory with " + entries + " users on " + directory.getUrl()
+              + ", " + threads + " threads, mix " + mix);
+      scenario.run(threads, warmup, duration);
+      scenario.report(System.out, duration);
+    }
+  }
+
+  void run(int threads, int warmupSeconds, int durationSeconds) throws InterruptedException
+  {
+    long start = System.nanoTime();
+    measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+    long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+    List<Thread> workers = new ArrayList<>();
+    for (int worker = 0; worker < threads; worker++)
+    {
+      Thread thread = new Thread(() -> work(end), "ldap-beans-load-" + worker);
+      thread.setDaemon(true);
+      thread.start();
+      workers.add(thread);
+    }
+    for (Thread worker : workers)
+    {
+      worker.join();
+    }
+  }
+
+  void report(PrintStream out, int durationSeconds)
+  {
+    out.println(String.format("%-28s %8s %7s %9s %9s %9s %9s",
+            "bean", "ops", "errors", "ops/s", "p50 ms", "p99 ms", "max ms"));
+    for (Operation operation : stats.keySet())
+    {
+      Stats operationStats = stats.get(operation);
+      long[] latencies = operationStats.getLatencies();
+      out.println(String.format("%-28s %8d %7d %9.1f %9.1f %9.1f %9.1f",
+              operation.bean, latencies.length, operationStats.errors.get(),
+              latencies.length / (double) durationSeconds,
+              percentileMillis(latencies, 0.5), percentileMillis(latencies, 0.99),
+              percentileMillis(latencies, 1)));
+      if (operationStats.lastError != null)
+      {
+        out.println("  last error: " + operationStats.lastError);
+      }
+    }
+  }
+
+  private void work(long end)
+  {
+    String[] cookie = new String[1];
+    while (System.nanoTime() < end)
+    {
+      Operation operation = pick();
+      long id = sequence.incrementAndGet();
+      Map<String, String> params = prepare(operation, id);
+      String error;
+      long start = System.nanoTime();
+      try
+      {
+        error = call(operation, params, cookie);
+      }
+      catch (IOException ex)
+      {
+        error = ex.toString();
+      }
+      long nanos = System.nanoTime() - start;
+      cleanUp(operation, id);
+      if (start >= measureStart)
+      {
+        stats.get(operation).record(nanos, error);
+      }
+    }
+  }
+
+  private Operation pick()
+  {
+    int value = ThreadLocalRandom.current().nextInt(totalWeight);
+    for (Operation operation : mix.keySet())
+    {
+      value -= mix.get(operation);
+      if (value < 0)
+      {
+        return operation;
+      }
+    }
+    throw new IllegalStateException("Empty mix");
+  }
+
+  /**
+   * Builds the parameters of a call. Renamed and deleted entries are added
+   * directly to the directory before, so they are not measured.
+   */
+  private Map<String, String> prepare(Operation operation, long id)
+  {
+    Map<String, String> params = new LinkedHashMap<>();
+    params.put("ldapUrl", ldapUrl);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    try
+    {
+      switch (operation)
+      {
+        case READ:
+          params.put("value", Integer.toString(random.nextInt(Directory.DEPARTMENTS)));
+          break;
+        case WRITE:
+          params.put("dn", Directory.getUserDn(random.nextInt(directory.getUsers())));
+          params.put("value", "load " + id);
+          break;
+        case RENAME:
+          directory.addPerson(getLoadDn(id));
+          params.put("dn", getLoadDn(id));
+          params.put("newDn", getRenamedDn(id));
+          break;
+        default:
+          directory.addPerson(getLoadDn(id));
+          params.put("dn", getLoadDn(id));
+          break;
+      }
+    }
+    catch (LDAPException ex)
+    {
+      throw new IllegalStateException("Could not prepare " + operation, ex);
+    }
+    return params;
+  }
+
+  private void cleanUp(Operation operation, long id)
+  {
+    if (operation != Operation.RENAME && operation != Operation.DELETE)
+    {
+      return;
+    }
+    try
+    {
+      directory.deleteSubtree(getLoadDn(id));
+      directory.deleteSubtree(getRenamedDn(id));
+    }
+    catch (LDAPException ex)
+    {
+      throw new IllegalStateException("Could not clean up " + operation, ex);
+    }
+  }
+
+  private static String getLoadDn(long id)
+  {
+    return "uid=load" + id + "," + LOAD;
+  }
+
+  private static String getRenamedDn(long id)
+  {
+    return "uid=renamed" + id + "," + LOAD;
+  }
+
+  /**
+   * Calls a process start. Keeps the session of the calling thread, so that
+   * the engine does not create a session for every call.
+   * @return error or null if the call succeeded
+   */
+  private String call(Operation operation, Map<String, String> params, String[] cookie) throws IOException
+  {
+    StringBuilder url = new StringBuilder(process).append(operation.start);
+    char separator = '?';
+    for (Map.Entry<String, String> param : params.entrySet())
+    {
+      url.append(separator).append(param.getKey()).append('=').append(encode(param.getValue()));
+      separator = '&';
+    }
+    HttpURLConnection connection = (HttpURLConnection) new URL(url.toString()).openConnection();
+    connection.setInstanceFollowRedirects(false);
+    if (cookie[0] != null)
+    {
+      connection.setRequestProperty("Cookie", cookie[0]);
+    }
+    int status = connection.getResponseCode();
+    String setCookie = connection.getHeaderField("Set-Cookie");
+    if (setCookie != null)
+    {
+      cookie[0] = setCookie.split(";", 2)[0];
+    }
+    try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream())
+    {
+      if (in != null)
+      {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) >= 0)
+        {
+          // drain the response so the connection is reused
+        }
+      }
+    }
+    return status >= 400 ? "HTTP " + status + " " + connection.getResponseMessage() : null;
+  }
+
+  private static String encode(String value) throws UnsupportedEncodingException
+  {
+    return URLEncoder.encode(value, "UTF-8");
+  }
+
+  static double percentileMillis(long[] sortedNanos, double quantile)
+  {
+    if (sortedNanos.length == 0)
+    {
+      return 0;
+    }
+    int index = (int) Math.ceil(quantile * sortedNanos.length) - 1;
+    return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+  }
+
+  static Map<String, String> parseOptions(String[] args)
+  {
+    Map<String, String> options = new LinkedHashMap<>();
+    for (int pos = 0; pos < args.length; pos++)
+    {
+      if (!args[pos].startsWith("--") || pos + 1 >= args.length)
+      {
+        throw new IllegalArgumentException("Expected --option value but got " + Arrays.toString(args));
+      }
+      options.put(args[pos].substring(2), args[++pos]);
+    }
+    return options;
+  }
+
+  static Map<Operation, Integer> parseMix(String mix)
+  {
+    Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    for (String part : mix.split(","))
+    {
+      String[] nameAndWeight = part.trim().split("=");
+      int weight = Integer.parseInt(nameAndWeight[1].trim());
+      if (weight > 0)
+      {
+        weights.put(Operation.valueOf(nameAndWeight[0].trim().toUpperCase()), weight);
+      }
+    }
+    if (weights.isEmpty())
+    {
+      throw new IllegalArgumentException("Mix without operations: " + mix);
+    }
+    return weights;
+  }
+
+  /**
+   * Latencies and errors of one operation
+   */
+  private static final class Stats
+  {
+    private final AtomicLong errors = new AtomicLong();
+    /** Guarded by this */
+    private long[] latencies = new long[1024];
+    /** Guarded by this */
+    private int count;
+    private volatile String lastError;
+
+    void record(long nanos, String error)
+    {
+      if (error != null)
+      {
+        errors.incrementAndGet();
+        lastError = error;
+        return;
+      }
+      synchronized (this)
+      {
+        if (count == latencies.length)
+        {
+          latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+      }
+    }
+
+    synchronized long[] getLatencies()
+    {
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      return sorted;
+    }
+  }
+}
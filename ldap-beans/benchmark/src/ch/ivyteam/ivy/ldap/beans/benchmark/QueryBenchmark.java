@@ -0,0 +1,158 @@
+package ch.ivyteam.ivy.ldap.beans.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.SortControl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.ivyteam.ivy.ldap.beans.util.FilterTemplate;
+import ch.ivyteam.ivy.ldap.beans.util.GroupMembership;
+import ch.ivyteam.ivy.ldap.beans.util.GroupMembershipGraph;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.PagedSearchEnumeration;
+import ch.ivyteam.ivy.ldap.beans.util.ResultSorter;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
+
+/**
+ * The steps of a recordset query: building the filter from process data, the
+ * paged search, mapping the entries to rows and sorting them, with and
+ * without server side sort.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark
+{
+  private static final String[] COLUMNS = {"uid", "cn", "sn", "givenName", "mail", "departmentNumber"};
+
+  private final FilterTemplate filterTemplate = FilterTemplate.compile(
+          "(&(objectClass=inetOrgPerson)(departmentNumber=in.department))");
+  private final ResultSorter sorter = new ResultSorter(ResultSorter.parse("sn, givenName desc", false),
+          Arrays.asList(COLUMNS), Locale.ENGLISH);
+  private int department;
+  private List<List<Object>> rows;
+
+  @Setup(Level.Trial)
+  public void loadRows(DirectoryState state) throws NamingException
+  {
+    rows = search(state, filter(), new Control[0]);
+  }
+
+  @Benchmark
+  public String filter()
+  {
+    int value = department++ % Directory.DEPARTMENTS;
+    return filterTemplate.format(new ValueResolver(script -> Integer.toString(value)));
+  }
+
+  @Benchmark
+  public List<List<Object>> query(DirectoryState state) throws NamingException
+  {
+    return search(state, filter(), new Control[0]);
+  }
+
+  @Benchmark
+  public List<List<Object>> queryServerSorted(DirectoryState state) throws Exception
+  {
+    return search(state, filter(), new Control[] {new SortControl(new String[] {"sn"}, Control.CRITICAL)});
+  }
+
+  @Benchmark
+  public List<List<Object>> sort()
+  {
+    List<List<Object>> sorted = new ArrayList<>(rows);
+    sorter.sort(sorted);
+    return sorted;
+  }
+
+  @Benchmark
+  public int groupGraph(DirectoryState state) throws NamingException
+  {
+    GroupMembershipGraph graph = new GroupMembershipGraph(state.jndiConfig, Directory.GROUPS,
+            GroupMembership.DEFAULT_GROUP_FILTER, GroupMembership.DEFAULT_MEMBER_ATTRIBUTE);
+    graph.refresh(true);
+    return graph.getGroupCount();
+  }
+
+  private static List<List<Object>> search(DirectoryState state, String filter, Control[] requestControls)
+          throws NamingException
+  {
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    searchControls.setReturningAttributes(COLUMNS);
+    List<List<Object>> result = new ArrayList<>();
+    try (LdapConnection connection = LdapConnectionManager.getInstance().borrow(state.jndiConfig))
+    {
+      PagedSearchEnumeration results = PagedSearchEnumeration.search(connection.getContext(),
+              Directory.PEOPLE, filter, searchControls, PagedSearchEnumeration.DEFAULT_PAGE_SIZE,
+              requestControls);
+      try
+      {
+        while (results.hasMore())
+        {
+          result.add(toRow(results.next()));
+        }
+      }
+      finally
+      {
+        results.close();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Maps an entry like the recordset query: single values as they are,
+   * multiple values as list
+   */
+  private static List<Object> toRow(SearchResult entry) throws NamingException
+  {
+    List<Object> row = new ArrayList<>(COLUMNS.length);
+    for (String column : COLUMNS)
+    {
+      Attribute attribute = entry.getAttributes().get(column);
+      if (attribute == null)
+      {
+        row.add(null);
+      }
+      else if (attribute.size() == 1)
+      {
+        row.add(attribute.get());
+      }
+      else
+      {
+        List<Object> values = new ArrayList<>(attribute.size());
+        for (int pos = 0; pos < attribute.size(); pos++)
+        {
+          values.add(attribute.get(pos));
+        }
+        row.add(values);
+      }
+    }
+    return row;
+  }
+}
@@ -0,0 +1,125 @@
+package ch.ivyteam.ivy.ldap.beans.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unboundid.ldap.sdk.LDAPException;
+
+import ch.ivyteam.ivy.ldap.beans.util.AttributeModification;
+import ch.ivyteam.ivy.ldap.beans.util.BatchModifier;
+import ch.ivyteam.ivy.ldap.beans.util.PagedSearchEnumeration;
+import ch.ivyteam.ivy.ldap.beans.util.SubtreeCopier;
+import ch.ivyteam.ivy.ldap.beans.util.SubtreeDeleter;
+
+/**
+ * Modifying a batch of entries, copying a subtree and deleting a subtree with
+ * the default parallelism of the beans. Runs single threaded since the copy
+ * and delete benchmarks work on fixed subtrees.
+ */
+@State(Scope.Thread)
+@Threads(1)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark
+{
+  private static final String TEMPLATE = "ou=template," + Directory.BASE;
+  private static final String COPY = "ou=copy," + Directory.BASE;
+  private static final String DOOMED = "ou=doomed," + Directory.BASE;
+  private static final int MODIFY_BATCH = 100;
+
+  /** Number of entries of the copied and deleted subtree */
+  @Param({"1000"})
+  public int subtreeSize;
+
+  private int modification;
+
+  @Setup(Level.Trial)
+  public void addTemplate(DirectoryState state) throws LDAPException
+  {
+    state.directory.deleteSubtree(TEMPLATE);
+    state.directory.addSubtree(TEMPLATE, subtreeSize);
+  }
+
+  @Benchmark
+  public String[] modify(DirectoryState state) throws InterruptedException
+  {
+    List<AttributeModification> rows = new ArrayList<>(MODIFY_BATCH);
+    for (int row = 0; row < MODIFY_BATCH; row++)
+    {
+      int user = modification++ % state.directory.getUsers();
+      rows.add(new AttributeModification(Directory.getUserDn(user), "description",
+              "modification " + modification, DirContext.REPLACE_ATTRIBUTE));
+    }
+    return new BatchModifier(state.jndiConfig, BatchModifier.DEFAULT_PARALLELISM).modify(rows);
+  }
+
+  @Benchmark
+  public int copy(DirectoryState state, CopyTarget target) throws NamingException, InterruptedException
+  {
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    SubtreeCopier.Result result = new SubtreeCopier(state.jndiConfig, state.jndiConfig,
+            BatchModifier.DEFAULT_PARALLELISM, PagedSearchEnumeration.DEFAULT_PAGE_SIZE)
+                    .copy(TEMPLATE, "(objectClass=*)", searchControls, COPY);
+    if (!result.getFailures().isEmpty())
+    {
+      throw new IllegalStateException("Copy failed: " + result.getFailures().get(0).getError());
+    }
+    return result.getCopied();
+  }
+
+  @Benchmark
+  public void delete(DirectoryState state, DeleteTarget target) throws NamingException, InterruptedException
+  {
+    new SubtreeDeleter(state.jndiConfig, BatchModifier.DEFAULT_PARALLELISM, false).delete(DOOMED);
+  }
+
+  /**
+   * Removes the previous copy before every copy
+   */
+  @State(Scope.Thread)
+  public static class CopyTarget
+  {
+    @Setup(Level.Invocation)
+    public void clear(DirectoryState state) throws LDAPException
+    {
+      state.directory.deleteSubtree(COPY);
+    }
+  }
+
+  /**
+   * Adds the subtree to delete before every delete
+   */
+  @State(Scope.Thread)
+  public static class DeleteTarget
+  {
+    @Setup(Level.Invocation)
+    public void fill(DirectoryState state, WriteBenchmark benchmark) throws LDAPException
+    {
+      state.directory.deleteSubtree(DOOMED);
+      state.directory.addSubtree(DOOMED, benchmark.subtreeSize);
+    }
+  }
+}
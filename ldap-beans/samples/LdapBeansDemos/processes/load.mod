@@ -0,0 +1,324 @@
+[Ivy]
+[>Created: Sun Oct 18 10:12:40 CEST 2026]
+18B4C2A17E3D5F60 3.20 #module
+>Proto >Proto Collection #zClass
+ld0 load Big #zClass
+ld0 B #cInfo
+ld0 #process
+ld0 @TextInP .resExport .resExport #zField
+ld0 @TextInP .type .type #zField
+ld0 @TextInP .processKind .processKind #zField
+ld0 @AnnotationInP-0n ai ai #zField
+ld0 @MessageFlowInP-0n messageIn messageIn #zField
+ld0 @MessageFlowOutP-0n messageOut messageOut #zField
+ld0 @TextInP .xml .xml #zField
+ld0 @TextInP .responsibility .responsibility #zField
+ld0 @StartRequest f0 '' #zField
+ld0 @ProgramInterface f1 '' #zField
+ld0 @EndTask f2 '' #zField
+ld0 @PushWFArc f3 '' #zField
+ld0 @PushWFArc f4 '' #zField
+ld0 @StartRequest f5 '' #zField
+ld0 @ProgramInterface f6 '' #zField
+ld0 @EndTask f7 '' #zField
+ld0 @PushWFArc f8 '' #zField
+ld0 @PushWFArc f9 '' #zField
+ld0 @StartRequest f10 '' #zField
+ld0 @ProgramInterface f11 '' #zField
+ld0 @EndTask f12 '' #zField
+ld0 @PushWFArc f13 '' #zField
+ld0 @PushWFArc f14 '' #zField
+ld0 @StartRequest f15 '' #zField
+ld0 @ProgramInterface f16 '' #zField
+ld0 @EndTask f17 '' #zField
+ld0 @PushWFArc f18 '' #zField
+ld0 @PushWFArc f19 '' #zField
+>Proto ld0 ld0 load #zField
+ld0 f0 outLink loadQuery.ivp #txt
+ld0 f0 type com.axonivy.ivy.supplements.Data #txt
+ld0 f0 inParamDecl '<java.lang.String ldapUrl,java.lang.String value> param;' #txt
+ld0 f0 inParamTable 'out.ldapUrl=param.ldapUrl;
+out.value=param.value;
+' #txt
+ld0 f0 actionDecl 'com.axonivy.ivy.supplements.Data out;
+' #txt
+ld0 f0 guid 18B4C2A17F0A4B11 #txt
+ld0 f0 requestEnabled true #txt
+ld0 f0 triggerEnabled false #txt
+ld0 f0 callSignature loadQuery(String,String) #txt
+ld0 f0 persist false #txt
+ld0 f0 startName 'queries the users of a department of the load directory' #txt
+ld0 f0 taskData 'TaskTriggered.ROL=Everybody
+TaskTriggered.EXTYPE=0
+TaskTriggered.EXPRI=2
+TaskTriggered.TYPE=0
+TaskTriggered.PRI=2
+TaskTriggered.EXROL=Everybody' #txt
+ld0 f0 caseData businessCase.attach=true #txt
+ld0 f0 showInStartList 0 #txt
+ld0 f0 @C|.xml '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+<elementInfo>
+    <language>
+        <name>loadQuery.ivp</name>
+    </language>
+</elementInfo>
+' #txt
+ld0 f0 @C|.responsibility Everybody #txt
+ld0 f0 81 49 30 30 -40 17 #rect
+ld0 f0 @|StartRequestIcon #fIcon
+ld0 f1 type com.axonivy.ivy.supplements.Data #txt
+ld0 f1 outerBean "ch.ivyteam.ivy.ldap.beans.LdapQueryBeanRS" #txt
+ld0 f1 timeout 0 #txt
+ld0 f1 beanConfig '"#
+#Sun Oct 18 10:12:40 CEST 2026
+server_provider=LDAP
+server_url=in.ldapUrl
+server_authkind=simple
+server_username=cn\\=Directory Manager
+server_password=benchmark
+server_useSsl=false
+server_context=
+search_root_object=ou\\=people,dc\\=example,dc\\=com
+search_scope=subTree
+search_filter_format=filterText
+search_filter_text=(&(objectClass\\=inetOrgPerson)(departmentNumber\\=in.value))
+result_return=all
+result_ivyGrid_attribute=result
+result_ivyGrid_name_attribute=
+result_include_name2=true
+result_attribute_attribute_0=cn
+result_attribute_attribute_1=mail
+"' #txt
+ld0 f1 @C|.xml '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+<elementInfo>
+    <language>
+        <name>query users</name>
+        <desc>queries the users of a department of the load directory</desc>
+    </language>
+</elementInfo>
+' #txt
+ld0 f1 168 42 112 44 -33 -7 #rect
+ld0 f1 @|ProgramInterfaceIcon #fIcon
+ld0 f2 type com.axonivy.ivy.supplements.Data #txt
+ld0 f2 337 49 30 30 0 15 #rect
+ld0 f2 @|EndIcon #fIcon
+ld0 f3 expr out #txt
+ld0 f3 111 64 168 64 #arcP
+ld0 f4 expr out #txt
+ld0 f4 280 64 337 64 #arcP
+ld0 f5 outLink loadModify.ivp #txt
+ld0 f5 type com.axonivy.ivy.supplements.Data #txt
+ld0 f5 inParamDecl '<java.lang.String ldapUrl,java.lang.String dn,java.lang.String value> param;' #txt
+ld0 f5 inParamTable 'out.ldapUrl=param.ldapUrl;
+out.dn=param.dn;
+out.value=param.value;
+' #txt
+ld0 f5 actionDecl 'com.axonivy.ivy.supplements.Data out;
+' #txt
+ld0 f5 guid 18B4C2A17F0B6C22 #txt
+ld0 f5 requestEnabled true #txt
+ld0 f5 triggerEnabled false #txt
+ld0 f5 callSignature loadModify(String,String,String) #txt
+ld0 f5 persist false #txt
+ld0 f5 startName 'replaces the description of an entry of the load directory' #txt
+ld0 f5 taskData 'TaskTriggered.ROL=Everybody
+TaskTriggered.EXTYPE=0
+TaskTriggered.EXPRI=2
+TaskTriggered.TYPE=0
+TaskTriggered.PRI=2
+TaskTriggered.EXROL=Everybody' #txt
+ld0 f5 caseData businessCase.attach=true #txt
+ld0 f5 showInStartList 0 #txt
+ld0 f5 @C|.xml '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+<elementInfo>
+    <language>
+        <name>loadModify.ivp</name>
+    </language>
+</elementInfo>
+' #txt
+ld0 f5 @C|.responsibility Everybody #txt
+ld0 f5 81 145 30 30 -40 17 #rect
+ld0 f5 @|StartRequestIcon #fIcon
+ld0 f6 type com.axonivy.ivy.supplements.Data #txt
+ld0 f6 outerBean "ch.ivyteam.ivy.ldap.beans.LdapAttributeModifierBean" #txt
+ld0 f6 timeout 0 #txt
+ld0 f6 beanConfig '"#
+#Sun Oct 18 10:12:40 CEST 2026
+server_provider=LDAP
+server_url=in.ldapUrl
+server_authkind=simple
+server_username=cn\\=Directory Manager
+server_password=benchmark
+server_useSsl=false
+server_context=
+mod_attr_object_name=in.dn
+mod_attr_operation=replace
+mod_attr_replace_attribute_0=description
+mod_attr_replace_value_0=in.value
+"' #txt
+ld0 f6 @C|.xml '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+<elementInfo>
+    <language>
+        <name>modify description</name>
+        <desc>replaces the description of an entry of the load directory</desc>
+    </language>
+</elementInfo>
+' #txt
+ld0 f6 168 138 112 44 -33 -7 #rect
+ld0 f6 @|ProgramInterfaceIcon #fIcon
+ld0 f7 type com.axonivy.ivy.supplements.Data #txt
+ld0 f7 337 145 30 30 0 15 #rect
+ld0 f7 @|EndIcon #fIcon
+ld0 f8 expr out #txt
+ld0 f8 111 160 168 160 #arcP
+ld0 f9 expr out #txt
+ld0 f9 280 160 337 160 #arcP
+ld0 f10 outLink loadRename.ivp #txt
+ld0 f10 type com.axonivy.ivy.supplements.Data #txt
+ld0 f10 inParamDecl '<java.lang.String ldapUrl,java.lang.String dn,java.lang.String newDn> param;' #txt
+ld0 f10 inParamTable 'out.ldapUrl=param.ldapUrl;
+out.dn=param.dn;
+out.newDn=param.newDn;
+' #txt
+ld0 f10 actionDecl 'com.axonivy.ivy.supplements.Data out;
+' #txt
+ld0 f10 guid 18B4C2A17F0C8D33 #txt
+ld0 f10 requestEnabled true #txt
+ld0 f10 triggerEnabled false #txt
+ld0 f10 callSignature loadRename(String,String,String) #txt
+ld0 f10 persist false #txt
+ld0 f10 startName 'renames an entry of the load directory' #txt
+ld0 f10 taskData 'TaskTriggered.ROL=Everybody
+TaskTriggered.EXTYPE=0
+TaskTriggered.EXPRI=2
+TaskTriggered.TYPE=0
+TaskTriggered.PRI=2
+TaskTriggered.EXROL=Everybody' #txt
+ld0 f10 caseData businessCase.attach=true #txt
+ld0 f10 showInStartList 0 #txt
+ld0 f10 @C|.xml '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+<elementInfo>
+    <language>
+        <name>loadRename.ivp</name>
+    </language>
+</elementInfo>
+' #txt
+ld0 f10 @C|.responsibility Everybody #txt
+ld0 f10 81 241 30 30 -40 17 #rect
+ld0 f10 @|StartRequestIcon #fIcon
+ld0 f11 type com.axonivy.ivy.supplements.Data #txt
+ld0 f11 outerBean "ch.ivyteam.ivy.ldap.beans.LdapRenameObjectBean" #txt
+ld0 f11 timeout 0 #txt
+ld0 f11 beanConfig '"#
+#Sun Oct 18 10:12:40 CEST 2026
+server_provider=LDAP
+server_url=in.ldapUrl
+server_authkind=simple
+server_username=cn\\=Directory Manager
+server_password=benchmark
+server_useSsl=false
+server_context=
+rename_name_oldObject=in.dn
+rename_name_newObject=in.newDn
+"' #txt
+ld0 f11 @C|.xml '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+<elementInfo>
+    <language>
+        <name>rename entry</name>
+        <desc>renames an entry of the load directory</desc>
+    </language>
+</elementInfo>
+' #txt
+ld0 f11 168 234 112 44 -33 -7 #rect
+ld0 f11 @|ProgramInterfaceIcon #fIcon
+ld0 f12 type com.axonivy.ivy.supplements.Data #txt
+ld0 f12 337 241 30 30 0 15 #rect
+ld0 f12 @|EndIcon #fIcon
+ld0 f13 expr out #txt
+ld0 f13 111 256 168 256 #arcP
+ld0 f14 expr out #txt
+ld0 f14 280 256 337 256 #arcP
+ld0 f15 outLink loadDelete.ivp #txt
+ld0 f15 type com.axonivy.ivy.supplements.Data #txt
+ld0 f15 inParamDecl '<java.lang.String ldapUrl,java.lang.String dn> param;' #txt
+ld0 f15 inParamTable 'out.ldapUrl=param.ldapUrl;
+out.dn=param.dn;
+' #txt
+ld0 f15 actionDecl 'com.axonivy.ivy.supplements.Data out;
+' #txt
+ld0 f15 guid 18B4C2A17F0DAE44 #txt
+ld0 f15 requestEnabled true #txt
+ld0 f15 triggerEnabled false #txt
+ld0 f15 callSignature loadDelete(String,String) #txt
+ld0 f15 persist false #txt
+ld0 f15 startName 'deletes an entry of the load directory' #txt
+ld0 f15 taskData 'TaskTriggered.ROL=Everybody
+TaskTriggered.EXTYPE=0
+TaskTriggered.EXPRI=2
+TaskTriggered.TYPE=0
+TaskTriggered.PRI=2
+TaskTriggered.EXROL=Everybody' #txt
+ld0 f15 caseData businessCase.attach=true #txt
+ld0 f15 showInStartList 0 #txt
+ld0 f15 @C|.xml '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+<elementInfo>
+    <language>
+        <name>loadDelete.ivp</name>
+    </language>
+</elementInfo>
+' #txt
+ld0 f15 @C|.responsibility Everybody #txt
+ld0 f15 81 337 30 30 -40 17 #rect
+ld0 f15 @|StartRequestIcon #fIcon
+ld0 f16 type com.axonivy.ivy.supplements.Data #txt
+ld0 f16 outerBean "ch.ivyteam.ivy.ldap.beans.LdapObjectEditBean" #txt
+ld0 f16 timeout 0 #txt
+ld0 f16 beanConfig '"#
+#Sun Oct 18 10:12:40 CEST 2026
+server_provider=LDAP
+server_url=in.ldapUrl
+server_authkind=simple
+server_username=cn\\=Directory Manager
+server_password=benchmark
+server_useSsl=false
+server_context=
+mod_attr_object_name=in.dn
+mod_attr_operation=remove
+"' #txt
+ld0 f16 @C|.xml '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+<elementInfo>
+    <language>
+        <name>delete entry</name>
+        <desc>deletes an entry of the load directory</desc>
+    </language>
+</elementInfo>
+' #txt
+ld0 f16 168 330 112 44 -33 -7 #rect
+ld0 f16 @|ProgramInterfaceIcon #fIcon
+ld0 f17 type com.axonivy.ivy.supplements.Data #txt
+ld0 f17 337 337 30 30 0 15 #rect
+ld0 f17 @|EndIcon #fIcon
+ld0 f18 expr out #txt
+ld0 f18 111 352 168 352 #arcP
+ld0 f19 expr out #txt
+ld0 f19 280 352 337 352 #arcP
+>Proto ld0 .type com.axonivy.ivy.supplements.Data #txt
+>Proto ld0 .processKind NORMAL #txt
+>Proto ld0 0 0 32 24 18 0 #rect
+>Proto ld0 @|BIcon #fIcon
+ld0 f0 mainOut f3 tail #connect
+ld0 f3 head f1 mainIn #connect
+ld0 f1 mainOut f4 tail #connect
+ld0 f4 head f2 mainIn #connect
+ld0 f5 mainOut f8 tail #connect
+ld0 f8 head f6 mainIn #connect
+ld0 f6 mainOut f9 tail #connect
+ld0 f9 head f7 mainIn #connect
+ld0 f10 mainOut f13 tail #connect
+ld0 f13 head f11 mainIn #connect
+ld0 f11 mainOut f14 tail #connect
+ld0 f14 head f12 mainIn #connect
+ld0 f15 mainOut f18 tail #connect
+ld0 f18 head f16 mainIn #connect
+ld0 f16 mainOut f19 tail #connect
+ld0 f19 head f17 mainIn #connect
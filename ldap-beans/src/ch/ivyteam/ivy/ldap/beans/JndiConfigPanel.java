@@ -33,6 +33,7 @@ import javax.swing.UIManager;
 
 import ch.ivyteam.awtExt.AWTUtil;
 import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
 import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
  
 /**
@@ -58,6 +59,9 @@ public class JndiConfigPanel extends JPanel
   /** Url text field*/
   private JTextField tfUrl;
 
+  /** server selection combo box */
+  private JComboBox<String> cbServerSelection;
+
   /** authentication type combo box */
   private JComboBox<String> cbAuthType;
 
@@ -73,6 +77,27 @@ public class JndiConfigPanel extends JPanel
   /** default context */
   private JTextField tfContext;
 
+  /** max number of pooled connections */
+  private JTextField tfPoolMaxSize;
+
+  /** idle timeout of pooled connections in seconds */
+  private JTextField tfPoolIdleTimeout;
+
+  /** max lifetime of pooled connections in seconds */
+  private JTextField tfPoolMaxLifetime;
+
+  /** connections opened when a bean starts */
+  private JTextField tfPoolMinIdle;
+
+  /** connect timeout in milliseconds */
+  private JTextField tfConnectTimeout;
+
+  /** read timeout in milliseconds */
+  private JTextField tfReadTimeout;
+
+  /** time limit of searches in milliseconds */
+  private JTextField tfSearchTimeLimit;
+
   public JndiConfigPanel(JndiConfig config)
   {
     this.config=config;
@@ -126,12 +151,34 @@ public class JndiConfigPanel extends JPanel
     );
 
     tfUrl = new JTextField();
+    tfUrl.setToolTipText(resBun.getString("jndi_url_tooltip"));
     AWTUtil.constrain(this, tfUrl,
       1,ypos++,1,1,
       GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
       10,10,0,10
     );
 
+    label = new JLabel(resBun.getString("jndi_server_selection"));
+    AWTUtil.constrain(this, label,
+      0,ypos,1,1,
+      GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+      10,10,0,0
+    );
+
+    // same order as JndiConfig.ServerSelection
+    cbServerSelection = new JComboBox<>(
+        new String[]{
+            resBun.getString("jndi_server_selection_ordered"),
+            resBun.getString("jndi_server_selection_round_robin"),
+            resBun.getString("jndi_server_selection_least_latency")
+        }
+    );
+    AWTUtil.constrain(this, cbServerSelection,
+      1,ypos++,1,1,
+      GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+      10,10,0,10
+    );
+
     label = new JLabel(resBun.getString("jndi_auth_type"));
     AWTUtil.constrain(this, label,
       0,ypos,1,1,
@@ -214,6 +261,103 @@ public class JndiConfigPanel extends JPanel
       );
     }
 
+    label = new JLabel(resBun.getString("jndi_pool_max_size"));
+    AWTUtil.constrain(this, label,
+      0,ypos,1,1,
+      GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+      10,10,0,0
+    );
+
+    tfPoolMaxSize = new JTextField();
+    AWTUtil.constrain(this, tfPoolMaxSize,
+      1,ypos++,1,1,
+      GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+      10,10,0,10
+    );
+
+    label = new JLabel(resBun.getString("jndi_pool_idle_timeout"));
+    AWTUtil.constrain(this, label,
+      0,ypos,1,1,
+      GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+      10,10,0,0
+    );
+
+    tfPoolIdleTimeout = new JTextField();
+    AWTUtil.constrain(this, tfPoolIdleTimeout,
+      1,ypos++,1,1,
+      GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+      10,10,0,10
+    );
+
+    label = new JLabel(resBun.getString("jndi_pool_max_lifetime"));
+    AWTUtil.constrain(this, label,
+      0,ypos,1,1,
+      GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+      10,10,0,0
+    );
+
+    tfPoolMaxLifetime = new JTextField();
+    AWTUtil.constrain(this, tfPoolMaxLifetime,
+      1,ypos++,1,1,
+      GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+      10,10,0,10
+    );
+
+    label = new JLabel(resBun.getString("jndi_pool_min_idle"));
+    AWTUtil.constrain(this, label,
+      0,ypos,1,1,
+      GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+      10,10,0,0
+    );
+
+    tfPoolMinIdle = new JTextField();
+    AWTUtil.constrain(this, tfPoolMinIdle,
+      1,ypos++,1,1,
+      GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+      10,10,0,10
+    );
+
+    label = new JLabel(resBun.getString("jndi_connect_timeout"));
+    AWTUtil.constrain(this, label,
+      0,ypos,1,1,
+      GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+      10,10,0,0
+    );
+
+    tfConnectTimeout = new JTextField();
+    AWTUtil.constrain(this, tfConnectTimeout,
+      1,ypos++,1,1,
+      GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+      10,10,0,10
+    );
+
+    label = new JLabel(resBun.getString("jndi_read_timeout"));
+    AWTUtil.constrain(this, label,
+      0,ypos,1,1,
+      GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+      10,10,0,0
+    );
+
+    tfReadTimeout = new JTextField();
+    AWTUtil.constrain(this, tfReadTimeout,
+      1,ypos++,1,1,
+      GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+      10,10,0,10
+    );
+
+    label = new JLabel(resBun.getString("jndi_search_time_limit"));
+    AWTUtil.constrain(this, label,
+      0,ypos,1,1,
+      GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+      10,10,0,0
+    );
+
+    tfSearchTimeLimit = new JTextField();
+    AWTUtil.constrain(this, tfSearchTimeLimit,
+      1,ypos++,1,1,
+      GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+      10,10,0,10
+    );
   }
 
   /**
@@ -223,6 +367,8 @@ public class JndiConfigPanel extends JPanel
   {
     config.setProvider((JndiProvider)cbProvider.getSelectedItem());
     config.setUrl(tfUrl.getText().trim());
+    config.setServerSelection(
+        JndiConfig.ServerSelection.values()[Math.max(0, cbServerSelection.getSelectedIndex())]);
     switch(cbAuthType.getSelectedIndex())
     {
     case 0:
@@ -245,6 +391,21 @@ public class JndiConfigPanel extends JPanel
     config.setUseSsl(cbSsl.isSelected());
 
     config.setDefaultContext(tfContext.getText());
+
+    config.setPoolMaxSize(JndiConfigProperties.parsePositiveInt(
+        tfPoolMaxSize.getText(), JndiConfig.DEFAULT_POOL_MAX_SIZE));
+    config.setPoolIdleTimeout(JndiConfigProperties.parsePositiveInt(
+        tfPoolIdleTimeout.getText(), JndiConfig.DEFAULT_POOL_IDLE_TIMEOUT));
+    config.setPoolMaxLifetime(JndiConfigProperties.parsePositiveInt(
+        tfPoolMaxLifetime.getText(), JndiConfig.DEFAULT_POOL_MAX_LIFETIME));
+    config.setPoolMinIdle(JndiConfigProperties.parseTimeout(
+        tfPoolMinIdle.getText(), JndiConfig.DEFAULT_POOL_MIN_IDLE));
+    config.setConnectTimeout(JndiConfigProperties.parseTimeout(
+        tfConnectTimeout.getText(), JndiConfig.DEFAULT_CONNECT_TIMEOUT));
+    config.setReadTimeout(JndiConfigProperties.parseTimeout(
+        tfReadTimeout.getText(), JndiConfig.DEFAULT_READ_TIMEOUT));
+    config.setSearchTimeLimit(JndiConfigProperties.parseTimeout(
+        tfSearchTimeLimit.getText(), 0));
   }
 
   /**
@@ -253,6 +414,7 @@ public class JndiConfigPanel extends JPanel
   public void loadModel()
   {
     tfUrl.setText(config.getUrl());
+    cbServerSelection.setSelectedIndex(config.getServerSelection().ordinal());
     if (config.getAuthenticationKind().equals(JndiConfig.AUTH_KIND_NONE))
     {
       tfUser.setText("");
@@ -276,6 +438,14 @@ public class JndiConfigPanel extends JPanel
     String context = config.getDefaultContext();
     tfContext.setText(context);
 
+    tfPoolMaxSize.setText(Integer.toString(config.getPoolMaxSize()));
+    tfPoolIdleTimeout.setText(Integer.toString(config.getPoolIdleTimeout()));
+    tfPoolMaxLifetime.setText(Integer.toString(config.getPoolMaxLifetime()));
+    tfPoolMinIdle.setText(Integer.toString(config.getPoolMinIdle()));
+    tfConnectTimeout.setText(Integer.toString(config.getConnectTimeout()));
+    tfReadTimeout.setText(Integer.toString(config.getReadTimeout()));
+    tfSearchTimeLimit.setText(Integer.toString(config.getSearchTimeLimit()));
+
     for (int pos=0; pos < JndiProvider.PROVIDERS.length; pos++)
     {
       if (JndiProvider.PROVIDERS[pos].equals(config.getProvider()))
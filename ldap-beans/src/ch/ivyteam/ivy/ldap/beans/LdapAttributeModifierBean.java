@@ -25,9 +25,9 @@ import java.awt.event.ActionListener;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.Vector;
@@ -49,9 +49,16 @@ import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableModel;
 
 import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
 import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
 import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
-import ch.ivyteam.ivy.ldap.beans.util.JndiUtil;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultCache;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
 import ch.ivyteam.ivy.persistence.PersistencyException;
 import ch.ivyteam.ivy.process.engine.IRequestId;
 import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
@@ -77,11 +84,14 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
   /** Jndi Configuration */
   private JndiConfig jndiConfig;
 
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
   /** object name */
-  private String objectName;
+  private ConfigValue objectName = ConfigValue.literal("");
 
   /** attributes and values */
-  private Hashtable<String, String> attributes = new Hashtable<>();
+  private Map<ConfigValue, ConfigValue> attributes = new LinkedHashMap<>();
 
   /** operation code */
   private int operationCode;
@@ -309,6 +319,7 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
               .isUseSsl()).toString());
       String defaultContext = jndiConfig.getDefaultContext();
       props.setProperty("server_context", defaultContext);
+      JndiConfigProperties.store(jndiConfig, props);
 
       props.setProperty("mod_attr_object_name", tfObjectName.getText()
               .trim());
@@ -478,6 +489,7 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
                 .booleanValue());
         jndiConfig.setDefaultContext(props.getProperty(
                 "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
         jndiConfigPanel.loadModel();
 
         tfObjectName.setText(props.getProperty("mod_attr_object_name",
@@ -629,6 +641,7 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
   {
     jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
             JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
   }
 
   /**
@@ -642,28 +655,30 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
   public CompositeObject perform(IRequestId reqID, CompositeObject argument,
           IIvyScriptContext cont) throws Exception
   {
-    Enumeration<?> enumeration;
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    final ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
     DirContext dirContext;
-    String attribute;
-    String valueStr;
     Object value;
     String modifyObjectName;
     BasicAttributes jndiAttributes = new BasicAttributes();
     BasicAttribute jndiAttribute;
 
     // Resolve the values
-    enumeration = attributes.keys();
-    while (enumeration.hasMoreElements())
+    for (Map.Entry<ConfigValue, ConfigValue> entry : attributes.entrySet())
     {
-      attribute = (String) enumeration.nextElement();
-      String newAttribute = (String) getVariable(attribute, cont);
-      value = null;
+      String newAttribute = entry.getKey().resolveString(values);
       if (operationCode != DirContext.REMOVE_ATTRIBUTE)
       {
-        valueStr = attributes.get(attribute);
-        valueStr = (String) getVariable(valueStr, cont);
-        valueStr = valueStr.trim();
-        value = valueStr;
+        value = entry.getValue().resolve(values);
+        if (value instanceof String)
+        {
+          value = ((String) value).trim();
+        }
         if (value != null)
         {
           jndiAttribute = new BasicAttribute(newAttribute);
@@ -689,71 +704,31 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
       }
     }
 
-    if (objectName.trim().startsWith("\"")
-            && (objectName.trim().endsWith("\"")))
-    {
-      modifyObjectName = objectName.substring(1, objectName.length() - 1);
-    }
-    else
-    {
-      modifyObjectName = (String) getVariable(objectName, cont);
-      if (modifyObjectName == null)
-      {
-        modifyObjectName = objectName;
-      }
-    }
+    modifyObjectName = objectName.resolveString(values);
 
-    JndiConfig expandedJndiConfig = (JndiConfig) jndiConfig.clone();
-    // try to expand url, name and password fields
-    String propStr = expandedJndiConfig.getUrl();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUrl(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getUserName();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUserName(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getPassword();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setPassword(propStr);
-      }
-    }
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
 
     // query the naming and directory service
     // dirContext = new InitialDirContext(expandedJndiConfig.getEnvironement());
     // // this only works in Xivy version < 4.3.15
-    dirContext = JndiUtil.openDirContext(expandedJndiConfig);
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(expandedJndiConfig);
+    dirContext = connection.getContext();
     try
     {
+      long writeStart = System.nanoTime();
       dirContext.modifyAttributes(modifyObjectName, operationCode,
               jndiAttributes);
+      OperationMetrics.write("modifyAttributes", connection.getServerUrl(), modifyObjectName, writeStart);
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
     }
     finally
     {
-      if (dirContext != null)
-      {
-        try
-        {
-          dirContext.close();
-        }
-        catch (NamingException ex)
-        {
-        }
-      }
+      SearchResultCache.getInstance().invalidate(modifyObjectName);
+      connection.close();
     }
 
     return argument;
@@ -819,12 +794,10 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
       jndiConfig.setPassword(props.getProperty("server_password", ""));
       jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
               Boolean.FALSE.toString())).booleanValue());
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
 
-      objectName = props.getProperty("mod_attr_object_name", "");
-      if (objectName.startsWith("in."))
-      {
-        objectName = objectName.substring(3);
-      }
+      objectName = ConfigValue.parse(props.getProperty("mod_attr_object_name", ""));
 
       if ("add".equals(props.getProperty("mod_attr_operation", "")))
       {
@@ -843,7 +816,7 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
             {
               value = value.substring(3);
             }
-            attributes.put(attribute, value);
+            attributes.put(ConfigValue.parseUnquoted(attribute), ConfigValue.parseUnquoted(value));
           }
           pos++;
         } while ((attribute != null) && (value != null));
@@ -859,7 +832,7 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
                   + pos, null);
           if ((attribute != null) && (!attribute.equals("")))
           {
-            attributes.put(attribute, "");
+            attributes.put(ConfigValue.parseUnquoted(attribute), ConfigValue.literal(""));
           }
           pos++;
         } while (attribute != null);
@@ -881,7 +854,7 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
             {
               value = value.substring(3);
             }
-            attributes.put(attribute, value);
+            attributes.put(ConfigValue.parseUnquoted(attribute), ConfigValue.parseUnquoted(value));
           }
           pos++;
         } while ((attribute != null) && (value != null));
@@ -909,14 +882,13 @@ public class LdapAttributeModifierBean extends AbstractUserProcessExtension
   @Override
   public void start() throws Exception
   {
-    // TODO Auto-generated method stub
-
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
   }
 
   @Override
   public void stop() throws Exception
   {
-
+    LdapConnectionManager.getInstance().coolDown(this);
   }
 
   public Object getVariable(String name, IIvyScriptContext cont)
@@ -0,0 +1,588 @@
+/*
+ * Copyright (C) 2016 Axon Ivy AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.ivyteam.ivy.ldap.beans;
+
+import java.awt.Component;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.ResourceBundle;
+
+import javax.naming.directory.DirContext;
+import javax.swing.ButtonGroup;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JRadioButton;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
+
+import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.AttributeModification;
+import ch.ivyteam.ivy.ldap.beans.util.BatchModifier;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
+import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
+import ch.ivyteam.ivy.process.engine.IRequestId;
+import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
+import ch.ivyteam.ivy.process.extension.impl.AbstractUserProcessExtension;
+import ch.ivyteam.ivy.scripting.language.IIvyScriptContext;
+import ch.ivyteam.ivy.scripting.objects.Binary;
+import ch.ivyteam.ivy.scripting.objects.CompositeObject;
+import ch.ivyteam.ivy.scripting.objects.Recordset;
+
+/**
+ * Bean to modify attributes of many jndi objects in one process step.
+ * <p>
+ * The modifications are read from a Recordset with the columns
+ * <code>dn</code>, <code>attribute</code>, <code>value</code> and optionally
+ * <code>operation</code> (add, replace or remove) or from a List whose
+ * elements are Lists with these values in this order. Rows without operation
+ * use the configured default operation. All rows of one object are applied
+ * with one request, several objects are modified in parallel over pooled
+ * connections.
+ * </p>
+ * <p>
+ * A failing object does not abort the step. The outcome of every row is
+ * written to the result Recordset with the columns <code>dn</code>,
+ * <code>attribute</code>, <code>operation</code>, <code>success</code> and
+ * <code>error</code>.
+ * </p>
+ */
+public class LdapBatchAttributeModifierBean extends AbstractUserProcessExtension
+{
+  private static final java.util.List<String> ROW_KEYS = Arrays.asList(
+          "dn", "attribute", "value", "operation");
+
+  private static final java.util.List<String> RESULT_KEYS = Arrays.asList(
+          "dn", "attribute", "operation", "success", "error");
+
+  /** Jndi Configuration */
+  private JndiConfig jndiConfig;
+
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
+  /** process attribute with the modifications */
+  private ConfigValue rowsAttribute = ConfigValue.literal("");
+
+  /** operation of rows without operation */
+  private int defaultOperation = DirContext.REPLACE_ATTRIBUTE;
+
+  /** max number of parallel connections */
+  private int parallelism = BatchModifier.DEFAULT_PARALLELISM;
+
+  /** process attribute to store the result Recordset in */
+  private String resultAttribute = "";
+
+  /**
+   * Configuration editor for the batch attribute modifier bean
+   */
+  public static class Editor extends AbstractProcessExtensionConfigurationEditor
+  {
+    /**
+     * The configuration panel
+     */
+    private JTabbedPane tabbedPanel;
+
+    /** Jndi server configuration */
+    private JndiConfig jndiConfig;
+
+    /** Jndi config panel */
+    JndiConfigPanel jndiConfigPanel;
+
+    /** the process attribute with the modifications */
+    private JTextField tfRows;
+
+    /** add as default operation */
+    private JRadioButton rbOperationAdd;
+
+    /** remove as default operation */
+    private JRadioButton rbOperationRemove;
+
+    /** replace as default operation */
+    private JRadioButton rbOperationReplace;
+
+    /** max number of parallel connections */
+    private JTextField tfParallelism;
+
+    /** the process attribute for the result */
+    private JTextField tfResult;
+
+    /**
+     * Constructor for the Editor object
+     */
+    public Editor()
+    {
+      ResourceBundle resBun = ResourceBundle.getBundle(
+              "TextResource", new Locale("de"));
+
+      jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY,
+              "ldap://", JndiConfig.AUTH_KIND_SIMPLE, "", "", false,
+              false, "");
+
+      tabbedPanel = new JTabbedPane();
+
+      // Jndi Server panel
+      jndiConfigPanel = new JndiConfigPanel(jndiConfig, false);
+      tabbedPanel.add(resBun.getString("search_server_pane"),
+              jndiConfigPanel);
+
+      // Batch modification panel
+      JPanel batchPanel = new JPanel(new GridBagLayout());
+
+      JLabel label = new JLabel(resBun.getString("batch_mod_rows"));
+      AWTUtil.constrain(batchPanel, label, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfRows = new JTextField(40);
+      AWTUtil.constrain(batchPanel, tfRows, 1, 0, 3, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("batch_mod_operation"));
+      AWTUtil.constrain(batchPanel, label, 0, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      ButtonGroup operationButtons = new ButtonGroup();
+      rbOperationAdd = new JRadioButton(resBun
+              .getString("mod_attr_operation_add"));
+      AWTUtil.constrain(batchPanel, rbOperationAdd, 1, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      rbOperationRemove = new JRadioButton(resBun
+              .getString("mod_attr_operation_remove"));
+      AWTUtil.constrain(batchPanel, rbOperationRemove, 2, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      rbOperationReplace = new JRadioButton(resBun
+              .getString("mod_attr_operation_replace"));
+      rbOperationReplace.setSelected(true);
+      AWTUtil.constrain(batchPanel, rbOperationReplace, 3, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      operationButtons.add(rbOperationAdd);
+      operationButtons.add(rbOperationRemove);
+      operationButtons.add(rbOperationReplace);
+
+      label = new JLabel(resBun.getString("batch_mod_parallelism"));
+      AWTUtil.constrain(batchPanel, label, 0, 2, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfParallelism = new JTextField(6);
+      tfParallelism.setText(Integer.toString(BatchModifier.DEFAULT_PARALLELISM));
+      AWTUtil.constrain(batchPanel, tfParallelism, 1, 2, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("batch_mod_result"));
+      AWTUtil.constrain(batchPanel, label, 0, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 10, 10);
+
+      tfResult = new JTextField(40);
+      AWTUtil.constrain(batchPanel, tfResult, 1, 3, 3, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 1.0, 10, 10, 10, 10);
+
+      tabbedPanel.add(resBun.getString("batch_mod_pane"), batchPanel);
+    }
+
+    /**
+     * This method is called if the user pressed the OK button of the dialog
+     * containing this editor. The dialog is closed and the new configuration is
+     * used only if this method return true
+     *
+     * @return true
+     */
+    @Override
+    public boolean acceptInput()
+    {
+      return true;
+    }
+
+    @Override
+    public Component getComponent()
+    {
+      return tabbedPanel;
+    }
+
+    /**
+     * @return a description of a configuration. This description will be sent
+     *         to the corresponding OuterProcessBean
+     */
+    @Override
+    public String getConfiguration()
+    {
+      Properties props = new Properties();
+
+      jndiConfigPanel.saveModel();
+      props.setProperty("server_provider", jndiConfig.getProvider()
+              .getProviderName());
+      props.setProperty("server_url", jndiConfig.getUrl());
+      props.setProperty("server_authkind", jndiConfig
+              .getAuthenticationKind());
+      props.setProperty("server_username", jndiConfig.getUserName());
+      props.setProperty("server_password", jndiConfig.getPassword());
+      props.setProperty("server_useSsl", new Boolean(jndiConfig
+              .isUseSsl()).toString());
+      props.setProperty("server_context", jndiConfig.getDefaultContext());
+      JndiConfigProperties.store(jndiConfig, props);
+
+      props.setProperty("batch_mod_rows", tfRows.getText().trim());
+      if (rbOperationAdd.isSelected())
+      {
+        props.setProperty("batch_mod_operation", "add");
+      }
+      else if (rbOperationRemove.isSelected())
+      {
+        props.setProperty("batch_mod_operation", "remove");
+      }
+      else
+      {
+        props.setProperty("batch_mod_operation", "replace");
+      }
+      props.setProperty("batch_mod_parallelism", Integer.toString(
+              BatchModifier.parseParallelism(tfParallelism.getText())));
+      props.setProperty("batch_mod_result", tfResult.getText().trim());
+
+      return PropertyUtil.toRawString(props);
+    }
+
+    /**
+     * Initialize the editor with an older configuration
+     *
+     * @param configString The new configuration value
+     */
+    @Override
+    public void setConfiguration(String configString)
+    {
+      ByteArrayInputStream bais = null;
+      Properties props = new Properties();
+      int pos;
+
+      if (configString == null)
+      {
+        return;
+      }
+
+      try
+      {
+        bais = new ByteArrayInputStream(configString.getBytes());
+        props.load(bais);
+
+        if (props.get("server_provider") != null)
+        {
+          for (pos = 0; pos < JndiProvider.PROVIDERS.length; pos++)
+          {
+            if (JndiProvider.PROVIDERS[pos].getProviderName()
+                    .equals(props.get("server_provider")))
+            {
+              jndiConfig.setProvider(JndiProvider.PROVIDERS[pos]);
+              break;
+            }
+          }
+        }
+        jndiConfig.setUrl(props.getProperty("server_url", jndiConfig
+                .getUrl()));
+        jndiConfig.setAuthenticationKind(props.getProperty(
+                "server_authkind", jndiConfig.getAuthenticationKind()));
+        jndiConfig
+                .setUserName(props.getProperty("server_username", ""));
+        jndiConfig
+                .setPassword(props.getProperty("server_password", ""));
+        jndiConfig.setUseSsl(new Boolean(props.getProperty(
+                "server_useSsl", Boolean.FALSE.toString()))
+                .booleanValue());
+        jndiConfig.setDefaultContext(props.getProperty(
+                "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
+        jndiConfigPanel.loadModel();
+
+        tfRows.setText(props.getProperty("batch_mod_rows", ""));
+        String operation = props.getProperty("batch_mod_operation", "replace");
+        rbOperationAdd.setSelected("add".equals(operation));
+        rbOperationRemove.setSelected("remove".equals(operation));
+        rbOperationReplace.setSelected("replace".equals(operation));
+        tfParallelism.setText(Integer.toString(BatchModifier
+                .parseParallelism(props.getProperty("batch_mod_parallelism"))));
+        tfResult.setText(props.getProperty("batch_mod_result", ""));
+      }
+      catch (IOException ex)
+      {
+      }
+      finally
+      {
+        if (bais != null)
+        {
+          try
+          {
+            bais.close();
+          }
+          catch (IOException ex)
+          {
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor
+   */
+  public LdapBatchAttributeModifierBean()
+  {
+    jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
+            JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
+  }
+
+  /**
+   * This method is the program performed in a program interface element every
+   * time a token comes to the element.
+   *
+   * @param argument a wrapper for the token value.
+   * @throws Exception Exception
+   */
+  @Override
+  public CompositeObject perform(IRequestId reqID, CompositeObject argument,
+          IIvyScriptContext cont) throws Exception
+  {
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    final ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
+    java.util.List<AttributeModification> rows = readRows(rowsAttribute.resolve(values));
+
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
+    String[] errors = new BatchModifier(expandedJndiConfig, parallelism).modify(rows);
+
+    if (!resultAttribute.isEmpty())
+    {
+      setVariable(resultAttribute, toRecordset(rows, errors), argument);
+    }
+    return argument;
+  }
+
+  private java.util.List<AttributeModification> readRows(Object rows)
+  {
+    java.util.List<AttributeModification> modifications = new ArrayList<>();
+    if (rows == null)
+    {
+      return modifications;
+    }
+    if (rows instanceof Recordset)
+    {
+      Recordset recordset = (Recordset) rows;
+      boolean hasOperation = recordset.getKeys().contains("operation");
+      for (int row = 0; row < recordset.size(); row++)
+      {
+        modifications.add(toModification(
+                recordset.getField(row, "dn"),
+                recordset.getField(row, "attribute"),
+                recordset.getField(row, "value"),
+                hasOperation ? recordset.getField(row, "operation") : null));
+      }
+      return modifications;
+    }
+    if (rows instanceof java.util.List)
+    {
+      for (Object row : (java.util.List<?>) rows)
+      {
+        if (!(row instanceof java.util.List))
+        {
+          throw new IllegalArgumentException("Modification " + row
+                  + " is not a List of " + ROW_KEYS);
+        }
+        java.util.List<?> fields = (java.util.List<?>) row;
+        modifications.add(toModification(
+                fields.size() > 0 ? fields.get(0) : null,
+                fields.size() > 1 ? fields.get(1) : null,
+                fields.size() > 2 ? fields.get(2) : null,
+                fields.size() > 3 ? fields.get(3) : null));
+      }
+      return modifications;
+    }
+    throw new IllegalArgumentException("Process attribute " + rowsAttribute.getText()
+            + " is not a Recordset or List but " + rows);
+  }
+
+  private AttributeModification toModification(Object dn, Object attribute, Object value,
+          Object operation)
+  {
+    if (value instanceof Binary)
+    {
+      value = ((Binary) value).toByteArray();
+    }
+    return new AttributeModification(
+            dn != null ? dn.toString() : null,
+            attribute != null ? attribute.toString() : null,
+            value,
+            AttributeModification.parseOperation(operation != null ? operation.toString() : null,
+                    defaultOperation));
+  }
+
+  private static Recordset toRecordset(java.util.List<AttributeModification> rows, String[] errors)
+  {
+    Recordset recordset = new Recordset(RESULT_KEYS);
+    for (int row = 0; row < rows.size(); row++)
+    {
+      AttributeModification modification = rows.get(row);
+      recordset.add(Arrays.asList(
+              modification.getObjectName(),
+              modification.getAttribute(),
+              AttributeModification.toOperationName(modification.getOperation()),
+              Boolean.valueOf(errors[row] == null),
+              errors[row]));
+    }
+    return recordset;
+  }
+
+  @Override
+  public void abort(IRequestId arg0)
+  {
+  }
+
+  @Override
+  public String getAdditionalLogInfo(IRequestId arg0)
+  {
+    return null;
+  }
+
+  @Override
+  public void release() throws Exception
+  {
+  }
+
+  /**
+   * Sets a configuration string. This configuration string is usually produced
+   * by the configuration editor of the element.
+   *
+   * @param configuration the configuration
+   */
+  @Override
+  public void setConfiguration(String configuration)
+  {
+    ByteArrayInputStream bais = null;
+    Properties props = new Properties();
+    int pos;
+
+    if (configuration == null)
+    {
+      return;
+    }
+
+    try
+    {
+      bais = new ByteArrayInputStream(configuration.getBytes());
+      props.load(bais);
+
+      if (props.get("server_provider") != null)
+      {
+        for (pos = 0; pos < JndiProvider.PROVIDERS.length; pos++)
+        {
+          if (JndiProvider.PROVIDERS[pos].getProviderName().equals(
+                  props.get("server_provider")))
+          {
+            jndiConfig.setProvider(JndiProvider.PROVIDERS[pos]);
+            break;
+          }
+        }
+      }
+      jndiConfig.setUrl(props.getProperty("server_url", jndiConfig
+              .getUrl()));
+      jndiConfig.setAuthenticationKind(props.getProperty(
+              "server_authkind", jndiConfig.getAuthenticationKind()));
+      jndiConfig.setUserName(props.getProperty("server_username", ""));
+      jndiConfig.setPassword(props.getProperty("server_password", ""));
+      jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
+              Boolean.FALSE.toString())).booleanValue());
+      jndiConfig.setDefaultContext(props.getProperty("server_context", ""));
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
+
+      rowsAttribute = ConfigValue.parseUnquoted(props.getProperty("batch_mod_rows", ""));
+      defaultOperation = AttributeModification.parseOperation(
+              props.getProperty("batch_mod_operation"), DirContext.REPLACE_ATTRIBUTE);
+      parallelism = BatchModifier.parseParallelism(props.getProperty("batch_mod_parallelism"));
+      resultAttribute = props.getProperty("batch_mod_result", "").trim();
+      if (resultAttribute.startsWith("in."))
+      {
+        resultAttribute = resultAttribute.substring(3);
+      }
+    }
+    catch (IOException ex)
+    {
+    }
+    finally
+    {
+      if (bais != null)
+      {
+        try
+        {
+          bais.close();
+        }
+        catch (IOException ex)
+        {
+        }
+      }
+    }
+  }
+
+  @Override
+  public void start() throws Exception
+  {
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
+  }
+
+  @Override
+  public void stop() throws Exception
+  {
+    LdapConnectionManager.getInstance().coolDown(this);
+  }
+
+  public void setVariable(String name, Object value, CompositeObject argument) throws NoSuchFieldException
+  {
+    if (name.indexOf(".") < 0)
+    {
+      argument.set(name, value);
+    }
+    else
+    {
+      String newArgumentName = name.substring(0, name.indexOf("."));
+      String remainingName = name.substring(name.indexOf(".") + 1, name.length());
+      setVariable(remainingName, value, (CompositeObject) argument.get(newArgumentName));
+    }
+  }
+}
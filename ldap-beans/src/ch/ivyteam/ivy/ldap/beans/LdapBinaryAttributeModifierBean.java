@@ -24,9 +24,9 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.Vector;
@@ -48,9 +48,16 @@ import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableModel;
 
 import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
 import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
 import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
-import ch.ivyteam.ivy.ldap.beans.util.JndiUtil;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultCache;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
 import ch.ivyteam.ivy.persistence.PersistencyException;
 import ch.ivyteam.ivy.process.engine.IRequestId;
 import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
@@ -76,11 +83,14 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
   /** Jndi Configuration */
   private JndiConfig jndiConfig;
 
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
   /** object name */
-  private String objectName;
+  private ConfigValue objectName = ConfigValue.literal("");
 
   /** attributes and values */
-  private Hashtable<String, String> attributes = new Hashtable<>();
+  private Map<ConfigValue, ConfigValue> attributes = new LinkedHashMap<>();
 
   /** operation code */
   private int operationCode;
@@ -306,6 +316,7 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
       props.setProperty("server_useSsl", new Boolean(jndiConfig
               .isUseSsl()).toString());
       props.setProperty("server_context", jndiConfig.getDefaultContext());
+      JndiConfigProperties.store(jndiConfig, props);
 
       props.setProperty("mod_attr_object_name", tfObjectName.getText()
               .trim());
@@ -443,6 +454,7 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
                 .booleanValue());
         jndiConfig.setDefaultContext(props.getProperty(
                 "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
         jndiConfigPanel.loadModel();
 
         tfObjectName.setText(props.getProperty("mod_attr_object_name",
@@ -594,6 +606,7 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
   {
     jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
             JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
   }
 
   /**
@@ -607,36 +620,34 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
   public CompositeObject perform(IRequestId reqID, CompositeObject argument,
           IIvyScriptContext cont) throws Exception
   {
-    Enumeration<?> enumeration;
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    final ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
     DirContext dirContext;
-    String attribute;
-    String valueStr;
     Object value;
     String modifyObjectName;
     BasicAttributes jndiAttributes = new BasicAttributes();
     BasicAttribute jndiAttribute;
 
     // Resolve the values
-    enumeration = attributes.keys();
-    while (enumeration.hasMoreElements())
+    for (Map.Entry<ConfigValue, ConfigValue> entry : attributes.entrySet())
     {
-      attribute = (String) enumeration.nextElement();
-      String newAttribute = (String) getVariable(attribute, cont);
-      // Ivy.log().debug("new Attribute:"+newAttribute);
-      value = null;
-
-      if (operationCode == DirContext.REMOVE_ATTRIBUTE)
+      String newAttribute = entry.getKey().resolveString(values);
+      if (operationCode != DirContext.REMOVE_ATTRIBUTE)
       {
-        jndiAttribute = new BasicAttribute(newAttribute);
-        jndiAttributes.put(jndiAttribute);
-      }
-      else
-      // ADD
-      {
-        valueStr = attributes.get(attribute).toString();
-        ch.ivyteam.ivy.scripting.objects.Binary bin = (ch.ivyteam.ivy.scripting.objects.Binary) getVariable(
-                valueStr, cont);
-        value = bin.toByteArray();
+        Object binary = entry.getValue().resolve(values);
+        if (binary instanceof ch.ivyteam.ivy.scripting.objects.Binary)
+        {
+          value = ((ch.ivyteam.ivy.scripting.objects.Binary) binary).toByteArray();
+        }
+        else
+        {
+          value = binary;
+        }
         if (value != null)
         {
           jndiAttribute = new BasicAttribute(newAttribute);
@@ -654,73 +665,39 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
           jndiAttributes.put(jndiAttribute);
         }
       }
-    }
-
-    if (objectName.trim().startsWith("\"")
-            && (objectName.trim().endsWith("\"")))
-    {
-      modifyObjectName = objectName.substring(1, objectName.length() - 1);
-    }
-    else
-    {
-      modifyObjectName = (String) getVariable(objectName, cont);
-      if (modifyObjectName == null)
+      else
+      // DirContext.REMOVE_ATTRIBUTE
       {
-        modifyObjectName = objectName;
+        jndiAttribute = new BasicAttribute(newAttribute);
+        jndiAttributes.put(jndiAttribute);
       }
     }
 
-    JndiConfig expandedJndiConfig = (JndiConfig) jndiConfig.clone();
-    // try to expand url, name and password fields
-    String propStr = expandedJndiConfig.getUrl();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUrl(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getUserName();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUserName(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getPassword();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setPassword(propStr);
-      }
-    }
+    modifyObjectName = objectName.resolveString(values);
+
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
 
     // query the naming and directory service
     // dirContext = new InitialDirContext(expandedJndiConfig.getEnvironement());
     // // this only works in Xivy version < 4.3.15
-    dirContext = JndiUtil.openDirContext(expandedJndiConfig);
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(expandedJndiConfig);
+    dirContext = connection.getContext();
     try
     {
+      long writeStart = System.nanoTime();
       dirContext.modifyAttributes(modifyObjectName, operationCode,
               jndiAttributes);
+      OperationMetrics.write("modifyAttributes", connection.getServerUrl(), modifyObjectName, writeStart);
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
     }
     finally
     {
-      if (dirContext != null)
-      {
-        try
-        {
-          dirContext.close();
-        }
-        catch (NamingException ex)
-        {
-        }
-      }
+      SearchResultCache.getInstance().invalidate(modifyObjectName);
+      connection.close();
     }
 
     return argument;
@@ -787,12 +764,10 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
       jndiConfig.setPassword(props.getProperty("server_password", ""));
       jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
               Boolean.FALSE.toString())).booleanValue());
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
 
-      objectName = props.getProperty("mod_attr_object_name", "");
-      if (objectName.startsWith("in."))
-      {
-        objectName = objectName.substring(3);
-      }
+      objectName = ConfigValue.parse(props.getProperty("mod_attr_object_name", ""));
 
       if ("add".equals(props.getProperty("mod_attr_operation", "")))
       {
@@ -811,7 +786,7 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
             {
               value = value.substring(3);
             }
-            attributes.put(attribute, value);
+            attributes.put(ConfigValue.parseUnquoted(attribute), ConfigValue.parseUnquoted(value));
           }
           pos++;
         } while ((attribute != null) && (value != null));
@@ -826,7 +801,7 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
                   + pos, null);
           if ((attribute != null) && (!attribute.equals("")))
           {
-            attributes.put(attribute, "");
+            attributes.put(ConfigValue.parseUnquoted(attribute), ConfigValue.literal(""));
           }
           pos++;
         } while (attribute != null);
@@ -848,7 +823,7 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
             {
               value = value.substring(3);
             }
-            attributes.put(attribute, value);
+            attributes.put(ConfigValue.parseUnquoted(attribute), ConfigValue.parseUnquoted(value));
           }
           pos++;
         } while ((attribute != null) && (value != null));
@@ -876,13 +851,13 @@ public class LdapBinaryAttributeModifierBean extends AbstractUserProcessExtensio
   @Override
   public void start() throws Exception
   {
-
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
   }
 
   @Override
   public void stop() throws Exception
   {
-
+    LdapConnectionManager.getInstance().coolDown(this);
   }
 
   public Object getVariable(String name, IIvyScriptContext cont)
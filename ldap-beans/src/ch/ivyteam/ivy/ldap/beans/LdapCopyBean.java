@@ -24,8 +24,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.ResourceBundle;
@@ -38,6 +38,7 @@ import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 import javax.swing.ButtonGroup;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
@@ -51,9 +52,21 @@ import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableModel;
 
 import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.BatchModifier;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.FilterTemplate;
 import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
 import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
 import ch.ivyteam.ivy.ldap.beans.util.JndiUtil;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.PagedSearchEnumeration;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultCache;
+import ch.ivyteam.ivy.ldap.beans.util.SubtreeCopier;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
 import ch.ivyteam.ivy.persistence.PersistencyException;
 import ch.ivyteam.ivy.process.engine.IRequestId;
 import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
@@ -61,33 +74,57 @@ import ch.ivyteam.ivy.process.extension.impl.AbstractUserProcessExtension;
 import ch.ivyteam.ivy.scripting.exceptions.IvyScriptException;
 import ch.ivyteam.ivy.scripting.language.IIvyScriptContext;
 import ch.ivyteam.ivy.scripting.objects.CompositeObject;
+import ch.ivyteam.ivy.scripting.objects.Recordset;
 
 /**
  * PI-Element to query LDAP-Servers Copies an LDAP object.
+ * <p>
+ * By default the first found object is copied. If all objects are copied,
+ * every found entry (e.g. a whole subtree) is copied below the new object
+ * name with parallel writers, optionally to another server. The entries that
+ * could not be copied are stored in the optional result Recordset with the
+ * columns <code>source</code>, <code>target</code> and <code>error</code>.
+ * </p>
  * @author Bruno Buetler
  * @version MarcWillaredt August2009 Updated to Ivy 4.1
  * @version bb 24.05.2006 created.
  */
 public class LdapCopyBean extends AbstractUserProcessExtension
 {
+  private static final List<String> RESULT_KEYS = Arrays.asList("source", "target", "error");
 
   /** Jndi server configuration */
   private JndiConfig jndiConfig;
 
-  /** Filter attribute names */
-  private Hashtable<String, String> filterAttributesHashtable = new Hashtable<>();
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
+  /** Search filter compiled from the filter table or text */
+  private FilterTemplate filterTemplate = FilterTemplate.compile("");
 
   /** Jndi search control */
   private SearchControls searchControl = new SearchControls();
 
   /** ivy Attribute with the cn of the copied element */
-  private String newObjectName = null;
+  private ConfigValue newObjectName = ConfigValue.literal("");
 
   /** The root object to begin search for */
-  private String rootObjectName;
+  private ConfigValue rootObjectName = ConfigValue.literal("");
+
+  /** copy all found entries instead of the first one only */
+  private boolean copyAll;
+
+  /** number of parallel writers if all entries are copied */
+  private int parallelism = BatchModifier.DEFAULT_PARALLELISM;
 
-  /** any filter as text */
-  String anyFilterText = null;
+  /** target server or null to copy within the source server */
+  private DynamicJndiConfig dynamicTargetJndiConfig;
+
+  /** identifies the warm-up of the target server */
+  private final Object targetWarmUp = new Object();
+
+  /** process attribute to store the failed entries in */
+  private String resultAttribute = "";
 
   /**
    * Configuration editor for jndi query bean
@@ -146,6 +183,24 @@ public class LdapCopyBean extends AbstractUserProcessExtension
     /** the name of the root object to start the search at */
     private JTextField tfRootObjectName;
 
+    /** copy all found entries */
+    private JCheckBox cbCopyAll;
+
+    /** number of parallel writers */
+    private JTextField tfParallelism;
+
+    /** ivy attribute for the failed entries */
+    private JTextField tfResult;
+
+    /** target server configuration */
+    private JndiConfig targetJndiConfig;
+
+    /** write to the target server */
+    private JCheckBox cbTargetServer;
+
+    /** target server config panel */
+    JndiConfigPanel targetJndiConfigPanel;
+
     /** Jndi config panel */
     JndiConfigPanel jndiConfigPanel;
 
@@ -286,15 +341,55 @@ public class LdapCopyBean extends AbstractUserProcessExtension
               GridBagConstraints.HORIZONTAL,
               GridBagConstraints.NORTHWEST, 1.0, 0.0, 0, 0, 0, 0);
 
+      cbCopyAll = new JCheckBox(resBun.getString("copy_all"));
+      AWTUtil.constrain(resultPanel, cbCopyAll, 0, 2, 2, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("copy_parallelism"));
+      AWTUtil.constrain(resultPanel, label, 0, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 10, 10, 0, 10);
+
+      tfParallelism = new JTextField(5);
+      AWTUtil.constrain(resultPanel, tfParallelism, 1, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 10, 0, 0, 0);
+
+      label = new JLabel(resBun.getString("copy_result"));
+      AWTUtil.constrain(resultPanel, label, 0, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 10, 10, 0, 10);
+
+      tfResult = new JTextField(50);
+      AWTUtil.constrain(resultPanel, tfResult, 1, 4, 1, 1,
+              GridBagConstraints.HORIZONTAL,
+              GridBagConstraints.NORTHWEST, 1.0, 0.0, 10, 0, 0, 0);
+
       JPanel dummyPanel = new JPanel(new GridBagLayout());
-      dummyPanel.setPreferredSize(new Dimension(400, 300));
-      AWTUtil.constrain(resultPanel, dummyPanel, 0, 3, 2, 2,
+      dummyPanel.setPreferredSize(new Dimension(400, 200));
+      AWTUtil.constrain(resultPanel, dummyPanel, 0, 5, 2, 2,
               GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
               0.0, 0, 0, 0, 0);
 
       tabbedPanel
               .add(resBun.getString("search_result_pane"), resultPanel);
 
+      // Target server panel
+      targetJndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY,
+              "ldap://", JndiConfig.AUTH_KIND_SIMPLE, "", "", false,
+              false, "");
+      JPanel targetPanel = new JPanel(new GridBagLayout());
+      cbTargetServer = new JCheckBox(resBun.getString("copy_target_server"));
+      AWTUtil.constrain(targetPanel, cbTargetServer, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 10, 10, 0, 10);
+      targetJndiConfigPanel = new JndiConfigPanel(targetJndiConfig, false);
+      AWTUtil.constrain(targetPanel, targetJndiConfigPanel, 0, 1, 1, 1,
+              GridBagConstraints.BOTH, GridBagConstraints.NORTHWEST, 1.0,
+              1.0, 0, 0, 0, 0);
+      tabbedPanel.add(resBun.getString("copy_target_pane"), targetPanel);
+
     }
 
     /**
@@ -335,6 +430,7 @@ public class LdapCopyBean extends AbstractUserProcessExtension
               .isUseSsl()).toString());
       String defaultContext = jndiConfig.getDefaultContext();
       props.setProperty("server_context", defaultContext);
+      JndiConfigProperties.store(jndiConfig, props);
 
       props.setProperty("search_root_object", tfRootObjectName.getText());
 
@@ -384,6 +480,12 @@ public class LdapCopyBean extends AbstractUserProcessExtension
       }
 
       props.setProperty("new_object", tfNewObjectName.getText().trim());
+      props.setProperty("copy_mode", cbCopyAll.isSelected() ? "all" : "first");
+      props.setProperty("copy_parallelism", tfParallelism.getText().trim());
+      props.setProperty("copy_result", tfResult.getText().trim());
+      props.setProperty("copy_target_server", Boolean.toString(cbTargetServer.isSelected()));
+      targetJndiConfigPanel.saveModel();
+      JndiConfigProperties.storeServer(targetJndiConfig, props, "copy_target_");
 
       return PropertyUtil.toRawString(props);
     }
@@ -437,6 +539,7 @@ public class LdapCopyBean extends AbstractUserProcessExtension
                 .booleanValue());
         jndiConfig.setDefaultContext(props.getProperty(
                 "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
         jndiConfigPanel.loadModel();
 
         tfRootObjectName.setText(props.getProperty(
@@ -493,6 +596,12 @@ public class LdapCopyBean extends AbstractUserProcessExtension
         filterTable.setModel(model);
 
         tfNewObjectName.setText(props.getProperty("new_object", ""));
+        cbCopyAll.setSelected("all".equals(props.getProperty("copy_mode")));
+        tfParallelism.setText(props.getProperty("copy_parallelism", ""));
+        tfResult.setText(props.getProperty("copy_result", ""));
+        cbTargetServer.setSelected(Boolean.parseBoolean(props.getProperty("copy_target_server")));
+        JndiConfigProperties.loadServer(targetJndiConfig, props, "copy_target_");
+        targetJndiConfigPanel.loadModel();
 
         returnLayout.show(returnPanel, "all");
 
@@ -565,6 +674,7 @@ public class LdapCopyBean extends AbstractUserProcessExtension
   {
     jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
             JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
   }
 
   /**
@@ -577,64 +687,27 @@ public class LdapCopyBean extends AbstractUserProcessExtension
   @Override
   public CompositeObject perform(IRequestId reqID, CompositeObject argument,
           IIvyScriptContext cont) throws Exception
+  {
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
   {
     NamingEnumeration<SearchResult> resultEnum;
-    Enumeration<?> attrEnum;
     DirContext dirContext;
-    String attribute, value;
-    String filter = "";
+    String filter;
     String objectName;
     SearchResult searchResult;
     Attributes jndiAttributes;
-    String copiedObjectName = new String();
+    String copiedObjectName;
+
+    ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
 
     // Build search filter
-    if (anyFilterText != null)
-    {
-      // expand ivy attributtes "in.x.." in the filter string
-      StringBuffer sb = new StringBuffer();
-      int at = anyFilterText.indexOf("in.");
-      int to = 0;
-      while (at >= 0)
-      {
-        sb.append(anyFilterText.substring(to, at));
-        to = anyFilterText.indexOf(")", at);
-        String attr = anyFilterText.substring(at + 3, to);
-        if (getVariable(attr, cont) != null)
-        {
-          // ivyGrid argument found. Get it an make string out of it
-          sb.append(getVariable(attr, cont).toString());
-        }
-        at = anyFilterText.indexOf("in.", to);
-      }
-      sb.append(anyFilterText.substring(to));
-      filter = sb.toString();
-    }
-    else
-    {
-      attrEnum = filterAttributesHashtable.keys();
-      while (attrEnum.hasMoreElements())
-      {
-        String oldAttribute = (String) attrEnum.nextElement();
-        attribute = (String) getVariable(oldAttribute, cont);
-        value = filterAttributesHashtable.get(oldAttribute);
-        value = value.trim();
-        value = (String) getVariable(value, cont);
-        if (filter.length() == 0)
-        {
-          filter += "(&";
-        }
-        filter += "(";
-        filter += attribute + "=" + value;
-        filter += ")";
-      }
+    filter = filterTemplate.format(values);
 
-      if (filter.length() > 0)
-      {
-        filter += ")";
-      }
-    }
-    objectName = (String) getVariable(rootObjectName, cont);
+    objectName = rootObjectName.resolveString(values);
     if (!objectName.startsWith("\""))
     {
       objectName = "\"" + objectName;
@@ -644,73 +717,53 @@ public class LdapCopyBean extends AbstractUserProcessExtension
       objectName += "\"";
     }
 
-    JndiConfig expandedJndiConfig = (JndiConfig) jndiConfig.clone();
-
-    // try to expand url, name and password fields
-    String propStr = expandedJndiConfig.getUrl();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUrl(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getUserName();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUserName(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getPassword();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setPassword(propStr);
-      }
-    }
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
 
     // name of new object
-    if (newObjectName.trim().length() == 0)
+    if (newObjectName.getText().trim().length() == 0)
     {
       return null;
     }
-    else if (newObjectName.trim().startsWith("\"")
-            && (newObjectName.trim().endsWith("\"")))
-    {
-      copiedObjectName = newObjectName.substring(1, newObjectName
-              .length() - 1);
-    }
-    else
+    copiedObjectName = newObjectName.resolveString(values);
+
+    if (copyAll)
     {
-      copiedObjectName = (String) getVariable(newObjectName, cont);
-      if (copiedObjectName == null)
+      JndiConfig targetJndiConfig = dynamicTargetJndiConfig != null
+              ? dynamicTargetJndiConfig.resolve(values)
+              : expandedJndiConfig;
+      SubtreeCopier.Result result = new SubtreeCopier(expandedJndiConfig, targetJndiConfig,
+              parallelism, PagedSearchEnumeration.DEFAULT_PAGE_SIZE)
+                      .copy(objectName, filter, searchControl, copiedObjectName);
+      if (!resultAttribute.isEmpty())
       {
-        copiedObjectName = newObjectName;
+        Recordset recordset = new Recordset(RESULT_KEYS);
+        for (SubtreeCopier.Failure failure : result.getFailures())
+        {
+          recordset.add(Arrays.asList(failure.getSourceDn(), failure.getTargetDn(), failure.getError()));
+        }
+        setVariable(resultAttribute, recordset, argument);
       }
+      return argument;
     }
 
     // query the naming and directory service
     // dirContext = new InitialDirContext(expandedJndiConfig.getEnvironement());
     // // this only works in Xivy version < 4.3.15
-    dirContext = JndiUtil.openDirContext(expandedJndiConfig);
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(expandedJndiConfig);
+    dirContext = connection.getContext();
     try
     {
       // read the first result
-      resultEnum = dirContext.search(objectName, filter, searchControl);
-      if (resultEnum == null || !resultEnum.hasMoreElements())
+      resultEnum = dirContext.search(objectName, filter,
+              JndiUtil.limitSearchTime(dirContext, searchControl));
+      if (resultEnum == null || !resultEnum.hasMore())
       {
         // no result found! --> set ivy attribute new objectName to null
         setVariable(copiedObjectName, null, argument);
       }
       else
       {
-        searchResult = resultEnum.nextElement();
+        searchResult = resultEnum.next();
         if (searchResult == null)
         {
           // no Result found! --> set ivy attribute new objectName to
@@ -725,22 +778,21 @@ public class LdapCopyBean extends AbstractUserProcessExtension
           // set via copiedObjectName
 
           // write newobject with this attributes
+          long writeStart = System.nanoTime();
           dirContext.bind(copiedObjectName, null, jndiAttributes);
+          OperationMetrics.write("bind", connection.getServerUrl(), copiedObjectName, writeStart);
         }
       }
     }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
     finally
     {
-      if (dirContext != null)
-      {
-        try
-        {
-          dirContext.close();
-        }
-        catch (NamingException ex)
-        {
-        }
-      }
+      SearchResultCache.getInstance().invalidate(copiedObjectName);
+      connection.close();
     }
     return argument;
   }
@@ -777,7 +829,6 @@ public class LdapCopyBean extends AbstractUserProcessExtension
   {
     ByteArrayInputStream bais = null;
     Properties props = new Properties();
-    String attribute, value;
     int pos;
 
     if (configuration == null)
@@ -810,14 +861,12 @@ public class LdapCopyBean extends AbstractUserProcessExtension
       jndiConfig.setPassword(props.getProperty("server_password", ""));
       jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
               Boolean.FALSE.toString())).booleanValue());
+      JndiConfigProperties.load(jndiConfig, props);
       jndiConfig.setDefaultContext(props
               .getProperty("server_context", ""));
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
 
-      rootObjectName = props.getProperty("search_root_object", "");
-      if (rootObjectName.startsWith("in."))
-      {
-        rootObjectName = rootObjectName.substring(3);
-      }
+      rootObjectName = ConfigValue.parse(props.getProperty("search_root_object", ""));
 
       if ("subTree".equals(props.getProperty("search_scope", "")))
       {
@@ -832,33 +881,33 @@ public class LdapCopyBean extends AbstractUserProcessExtension
         searchControl.setSearchScope(SearchControls.OBJECT_SCOPE);
       }
 
-      pos = 0;
-      do
+      newObjectName = ConfigValue.parse(props.getProperty("new_object", ""));
+      copyAll = "all".equals(props.getProperty("copy_mode"));
+      parallelism = BatchModifier.parseParallelism(props.getProperty("copy_parallelism"));
+      resultAttribute = props.getProperty("copy_result", "").trim();
+      if (resultAttribute.startsWith("in."))
       {
-        attribute = props.getProperty("search_filter_attribute_" + pos,
-                null);
-        value = props.getProperty("search_filter_value_" + pos, null);
-        if ((attribute != null) && (value != null)
-                && (!attribute.equals("")))
-        {
-          if (value.startsWith("in."))
-          {
-            value = value.substring(3);
-          }
-          filterAttributesHashtable.put(attribute, value);
-        }
-        pos++;
-      } while ((attribute != null) && (value != null));
-
-      newObjectName = props.getProperty("new_object", "");
-      if (newObjectName.startsWith("in."))
+        resultAttribute = resultAttribute.substring(3);
+      }
+      if (Boolean.parseBoolean(props.getProperty("copy_target_server")))
+      {
+        JndiConfig targetJndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
+                JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+        JndiConfigProperties.loadServer(targetJndiConfig, props, "copy_target_");
+        dynamicTargetJndiConfig = new DynamicJndiConfig(targetJndiConfig);
+      }
+      else
       {
-        newObjectName = newObjectName.substring(3);
+        dynamicTargetJndiConfig = null;
       }
 
       if ("filterText".equals(props.getProperty("search_filter_format")))
       {
-        anyFilterText = props.getProperty("search_filter_text");
+        filterTemplate = FilterTemplate.compile(props.getProperty("search_filter_text"));
+      }
+      else
+      {
+        filterTemplate = FilterTemplate.compileAttributeTable(props);
       }
 
       searchControl.setReturningAttributes(null); // return all attributes
@@ -894,11 +943,18 @@ public class LdapCopyBean extends AbstractUserProcessExtension
   @Override
   public void start() throws Exception
   {
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
+    if (dynamicTargetJndiConfig != null)
+    {
+      LdapConnectionManager.getInstance().warmUp(targetWarmUp, dynamicTargetJndiConfig);
+    }
   }
 
   @Override
   public void stop() throws Exception
   {
+    LdapConnectionManager.getInstance().coolDown(this);
+    LdapConnectionManager.getInstance().coolDown(targetWarmUp);
   }
 
   public Object getVariable(String name, IIvyScriptContext cont)
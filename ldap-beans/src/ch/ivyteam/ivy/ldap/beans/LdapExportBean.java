@@ -0,0 +1,615 @@
+/*
+ * Copyright (C) 2016 Axon Ivy AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.ivyteam.ivy.ldap.beans;
+
+import java.awt.Component;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.ResourceBundle;
+
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JRadioButton;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
+
+import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.BatchModifier;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DirectoryExporter;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.EntryWriter;
+import ch.ivyteam.ivy.ldap.beans.util.FilterTemplate;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
+import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.PagedSearchEnumeration;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
+import ch.ivyteam.ivy.process.engine.IRequestId;
+import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
+import ch.ivyteam.ivy.process.extension.impl.AbstractUserProcessExtension;
+import ch.ivyteam.ivy.scripting.language.IIvyScriptContext;
+import ch.ivyteam.ivy.scripting.objects.CompositeObject;
+
+/**
+ * Bean to export a subtree of the directory to an LDIF (RFC 2849) or NDJSON
+ * file.
+ * <p>
+ * The subtree is read with a paged search and every entry is written to the
+ * file as soon as it arrives, so the memory needed stays the same for any
+ * number of entries. Binary values are written base64 encoded.
+ * </p>
+ * <p>
+ * With sharding the file name is a directory. The base object is written to
+ * <code>base.ldif</code>, each direct child of the base (usually the top
+ * level organizational units) is written with its subtree to its own file,
+ * e.g. <code>ou=users.ldif</code>, by parallel writers.
+ * </p>
+ * <p>
+ * The number of exported entries can be stored in an Integer or Number
+ * process attribute.
+ * </p>
+ */
+public class LdapExportBean extends AbstractUserProcessExtension
+{
+  private static final String DEFAULT_FILTER = "(objectClass=*)";
+
+  /** Jndi Configuration */
+  private JndiConfig jndiConfig;
+
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
+  /** root of the exported subtree */
+  private ConfigValue rootObjectName = ConfigValue.literal("");
+
+  /** search filter */
+  private FilterTemplate filterTemplate = FilterTemplate.compile(DEFAULT_FILTER);
+
+  /** exported attributes, null for all */
+  private String[] attributes;
+
+  /** output format */
+  private EntryWriter.Format format = EntryWriter.Format.LDIF;
+
+  /** output file, or directory if sharded */
+  private ConfigValue file = ConfigValue.literal("");
+
+  /** number of entries per page */
+  private int pageSize = PagedSearchEnumeration.DEFAULT_PAGE_SIZE;
+
+  /** write one file per direct child of the root */
+  private boolean shard;
+
+  /** number of files written at the same time if sharded */
+  private int parallelism = BatchModifier.DEFAULT_PARALLELISM;
+
+  /** process attribute to store the number of exported entries in */
+  private String resultAttribute = "";
+
+  /**
+   * Configuration editor for the export bean
+   */
+  public static class Editor extends AbstractProcessExtensionConfigurationEditor
+  {
+    /**
+     * The configuration panel
+     */
+    private JTabbedPane tabbedPanel;
+
+    /** Jndi server configuration */
+    private JndiConfig jndiConfig;
+
+    /** Jndi config panel */
+    JndiConfigPanel jndiConfigPanel;
+
+    /** root of the exported subtree */
+    private JTextField tfRootObject;
+
+    /** search filter */
+    private JTextField tfFilter;
+
+    /** exported attributes */
+    private JTextField tfAttributes;
+
+    /** LDIF format */
+    private JRadioButton rbFormatLdif;
+
+    /** NDJSON format */
+    private JRadioButton rbFormatNdjson;
+
+    /** the output file */
+    private JTextField tfFile;
+
+    /** entries per page */
+    private JTextField tfPageSize;
+
+    /** one file per direct child */
+    private JCheckBox cbShard;
+
+    /** files written at the same time */
+    private JTextField tfParallelism;
+
+    /** the process attribute for the number of entries */
+    private JTextField tfResult;
+
+    /**
+     * Constructor for the Editor object
+     */
+    public Editor()
+    {
+      ResourceBundle resBun = ResourceBundle.getBundle(
+              "TextResource", new Locale("de"));
+
+      jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY,
+              "ldap://", JndiConfig.AUTH_KIND_SIMPLE, "", "", false,
+              false, "");
+
+      tabbedPanel = new JTabbedPane();
+
+      // Jndi Server panel
+      jndiConfigPanel = new JndiConfigPanel(jndiConfig, false);
+      tabbedPanel.add(resBun.getString("search_server_pane"),
+              jndiConfigPanel);
+
+      // Export panel
+      JPanel exportPanel = new JPanel(new GridBagLayout());
+
+      JLabel label = new JLabel(resBun.getString("search_root_object"));
+      AWTUtil.constrain(exportPanel, label, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfRootObject = new JTextField(40);
+      AWTUtil.constrain(exportPanel, tfRootObject, 1, 0, 2, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("search_filter"));
+      AWTUtil.constrain(exportPanel, label, 0, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfFilter = new JTextField(40);
+      tfFilter.setText(DEFAULT_FILTER);
+      AWTUtil.constrain(exportPanel, tfFilter, 1, 1, 2, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("export_attributes"));
+      AWTUtil.constrain(exportPanel, label, 0, 2, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfAttributes = new JTextField(40);
+      AWTUtil.constrain(exportPanel, tfAttributes, 1, 2, 2, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("export_format"));
+      AWTUtil.constrain(exportPanel, label, 0, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      ButtonGroup formatButtons = new ButtonGroup();
+      rbFormatLdif = new JRadioButton("LDIF");
+      rbFormatLdif.setSelected(true);
+      AWTUtil.constrain(exportPanel, rbFormatLdif, 1, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      rbFormatNdjson = new JRadioButton("NDJSON");
+      AWTUtil.constrain(exportPanel, rbFormatNdjson, 2, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      formatButtons.add(rbFormatLdif);
+      formatButtons.add(rbFormatNdjson);
+
+      label = new JLabel(resBun.getString("export_file"));
+      AWTUtil.constrain(exportPanel, label, 0, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfFile = new JTextField(40);
+      AWTUtil.constrain(exportPanel, tfFile, 1, 4, 2, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("search_page_size"));
+      AWTUtil.constrain(exportPanel, label, 0, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfPageSize = new JTextField(6);
+      tfPageSize.setText(Integer.toString(PagedSearchEnumeration.DEFAULT_PAGE_SIZE));
+      AWTUtil.constrain(exportPanel, tfPageSize, 1, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      cbShard = new JCheckBox(resBun.getString("export_shard"));
+      AWTUtil.constrain(exportPanel, cbShard, 1, 6, 2, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("export_parallelism"));
+      AWTUtil.constrain(exportPanel, label, 0, 7, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfParallelism = new JTextField(6);
+      tfParallelism.setText(Integer.toString(BatchModifier.DEFAULT_PARALLELISM));
+      AWTUtil.constrain(exportPanel, tfParallelism, 1, 7, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("export_result"));
+      AWTUtil.constrain(exportPanel, label, 0, 8, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0, 0.0,
+              10, 10, 10, 10);
+
+      tfResult = new JTextField(40);
+      AWTUtil.constrain(exportPanel, tfResult, 1, 8, 2, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.NORTHWEST,
+              1.0, 1.0, 10, 10, 10, 10);
+
+      tabbedPanel.add(resBun.getString("export_pane"), exportPanel);
+    }
+
+    /**
+     * This method is called if the user pressed the OK button of the dialog
+     * containing this editor. The dialog is closed and the new configuration is
+     * used only if this method return true
+     *
+     * @return true
+     */
+    @Override
+    public boolean acceptInput()
+    {
+      return true;
+    }
+
+    @Override
+    public Component getComponent()
+    {
+      return tabbedPanel;
+    }
+
+    /**
+     * @return a description of a configuration. This description will be sent
+     *         to the corresponding OuterProcessBean
+     */
+    @Override
+    public String getConfiguration()
+    {
+      Properties props = new Properties();
+
+      jndiConfigPanel.saveModel();
+      props.setProperty("server_provider", jndiConfig.getProvider()
+              .getProviderName());
+      props.setProperty("server_url", jndiConfig.getUrl());
+      props.setProperty("server_authkind", jndiConfig
+              .getAuthenticationKind());
+      props.setProperty("server_username", jndiConfig.getUserName());
+      props.setProperty("server_password", jndiConfig.getPassword());
+      props.setProperty("server_useSsl", new Boolean(jndiConfig
+              .isUseSsl()).toString());
+      props.setProperty("server_context", jndiConfig.getDefaultContext());
+      JndiConfigProperties.store(jndiConfig, props);
+
+      props.setProperty("export_root_object", tfRootObject.getText().trim());
+      props.setProperty("export_filter", tfFilter.getText().trim());
+      props.setProperty("export_attributes", tfAttributes.getText().trim());
+      props.setProperty("export_format", rbFormatNdjson.isSelected() ? "ndjson" : "ldif");
+      props.setProperty("export_file", tfFile.getText().trim());
+      props.setProperty("export_page_size", Integer.toString(
+              PagedSearchEnumeration.parsePageSize(tfPageSize.getText())));
+      props.setProperty("export_shard", Boolean.toString(cbShard.isSelected()));
+      props.setProperty("export_parallelism", Integer.toString(
+              BatchModifier.parseParallelism(tfParallelism.getText())));
+      props.setProperty("export_result", tfResult.getText().trim());
+
+      return PropertyUtil.toRawString(props);
+    }
+
+    /**
+     * Initialize the editor with an older configuration
+     *
+     * @param configString The new configuration value
+     */
+    @Override
+    public void setConfiguration(String configString)
+    {
+      ByteArrayInputStream bais = null;
+      Properties props = new Properties();
+      int pos;
+
+      if (configString == null)
+      {
+        return;
+      }
+
+      try
+      {
+        bais = new ByteArrayInputStream(configString.getBytes());
+        props.load(bais);
+
+        if (props.get("server_provider") != null)
+        {
+          for (pos = 0; pos < JndiProvider.PROVIDERS.length; pos++)
+          {
+            if (JndiProvider.PROVIDERS[pos].getProviderName()
+                    .equals(props.get("server_provider")))
+            {
+              jndiConfig.setProvider(JndiProvider.PROVIDERS[pos]);
+              break;
+            }
+          }
+        }
+        jndiConfig.setUrl(props.getProperty("server_url", jndiConfig
+                .getUrl()));
+        jndiConfig.setAuthenticationKind(props.getProperty(
+                "server_authkind", jndiConfig.getAuthenticationKind()));
+        jndiConfig
+                .setUserName(props.getProperty("server_username", ""));
+        jndiConfig
+                .setPassword(props.getProperty("server_password", ""));
+        jndiConfig.setUseSsl(new Boolean(props.getProperty(
+                "server_useSsl", Boolean.FALSE.toString()))
+                .booleanValue());
+        jndiConfig.setDefaultContext(props.getProperty(
+                "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
+        jndiConfigPanel.loadModel();
+
+        tfRootObject.setText(props.getProperty("export_root_object", ""));
+        tfFilter.setText(props.getProperty("export_filter", DEFAULT_FILTER));
+        tfAttributes.setText(props.getProperty("export_attributes", ""));
+        boolean ndjson = EntryWriter.Format.parse(props.getProperty("export_format")) == EntryWriter.Format.NDJSON;
+        rbFormatLdif.setSelected(!ndjson);
+        rbFormatNdjson.setSelected(ndjson);
+        tfFile.setText(props.getProperty("export_file", ""));
+        tfPageSize.setText(Integer.toString(PagedSearchEnumeration
+                .parsePageSize(props.getProperty("export_page_size"))));
+        cbShard.setSelected(Boolean.parseBoolean(props.getProperty("export_shard")));
+        tfParallelism.setText(Integer.toString(BatchModifier
+                .parseParallelism(props.getProperty("export_parallelism"))));
+        tfResult.setText(props.getProperty("export_result", ""));
+      }
+      catch (IOException ex)
+      {
+      }
+      finally
+      {
+        if (bais != null)
+        {
+          try
+          {
+            bais.close();
+          }
+          catch (IOException ex)
+          {
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor
+   */
+  public LdapExportBean()
+  {
+    jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
+            JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
+  }
+
+  /**
+   * This method is the program performed in a program interface element every
+   * time a token comes to the element.
+   *
+   * @param argument a wrapper for the token value.
+   * @throws Exception Exception
+   */
+  @Override
+  public CompositeObject perform(IRequestId reqID, CompositeObject argument,
+          IIvyScriptContext cont) throws Exception
+  {
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    final ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
+    String base = rootObjectName.resolveString(values);
+    String filter = filterTemplate.format(values);
+    String fileName = file.resolveString(values);
+    if (fileName == null || fileName.trim().isEmpty())
+    {
+      throw new IllegalArgumentException("No export file configured");
+    }
+    Path path = Paths.get(fileName.trim());
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
+
+    DirectoryExporter exporter = new DirectoryExporter(expandedJndiConfig, pageSize, attributes);
+    long count;
+    if (shard)
+    {
+      count = exporter.exportSharded(base, filter, path, format, parallelism);
+    }
+    else
+    {
+      try (EntryWriter writer = EntryWriter.open(path, format))
+      {
+        count = exporter.export(base, filter, writer);
+      }
+    }
+
+    if (!resultAttribute.isEmpty())
+    {
+      setVariable(resultAttribute, Integer.valueOf((int) Math.min(count, Integer.MAX_VALUE)), argument);
+    }
+    return argument;
+  }
+
+  private static String[] parseAttributes(String value)
+  {
+    List<String> names = new ArrayList<>();
+    for (String name : value.split("[,\\s]+"))
+    {
+      if (!name.isEmpty())
+      {
+        names.add(name);
+      }
+    }
+    return names.isEmpty() ? null : names.toArray(new String[names.size()]);
+  }
+
+  @Override
+  public void abort(IRequestId arg0)
+  {
+  }
+
+  @Override
+  public String getAdditionalLogInfo(IRequestId arg0)
+  {
+    return null;
+  }
+
+  @Override
+  public void release() throws Exception
+  {
+  }
+
+  /**
+   * Sets a configuration string. This configuration string is usually produced
+   * by the configuration editor of the element.
+   *
+   * @param configuration the configuration
+   */
+  @Override
+  public void setConfiguration(String configuration)
+  {
+    ByteArrayInputStream bais = null;
+    Properties props = new Properties();
+    int pos;
+
+    if (configuration == null)
+    {
+      return;
+    }
+
+    try
+    {
+      bais = new ByteArrayInputStream(configuration.getBytes());
+      props.load(bais);
+
+      if (props.get("server_provider") != null)
+      {
+        for (pos = 0; pos < JndiProvider.PROVIDERS.length; pos++)
+        {
+          if (JndiProvider.PROVIDERS[pos].getProviderName().equals(
+                  props.get("server_provider")))
+          {
+            jndiConfig.setProvider(JndiProvider.PROVIDERS[pos]);
+            break;
+          }
+        }
+      }
+      jndiConfig.setUrl(props.getProperty("server_url", jndiConfig
+              .getUrl()));
+      jndiConfig.setAuthenticationKind(props.getProperty(
+              "server_authkind", jndiConfig.getAuthenticationKind()));
+      jndiConfig.setUserName(props.getProperty("server_username", ""));
+      jndiConfig.setPassword(props.getProperty("server_password", ""));
+      jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
+              Boolean.FALSE.toString())).booleanValue());
+      jndiConfig.setDefaultContext(props.getProperty("server_context", ""));
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
+
+      rootObjectName = ConfigValue.parse(props.getProperty("export_root_object", ""));
+      filterTemplate = FilterTemplate.compile(props.getProperty("export_filter", DEFAULT_FILTER));
+      attributes = parseAttributes(props.getProperty("export_attributes", ""));
+      format = EntryWriter.Format.parse(props.getProperty("export_format"));
+      file = ConfigValue.parse(props.getProperty("export_file", ""));
+      pageSize = PagedSearchEnumeration.parsePageSize(props.getProperty("export_page_size"));
+      shard = Boolean.parseBoolean(props.getProperty("export_shard"));
+      parallelism = BatchModifier.parseParallelism(props.getProperty("export_parallelism"));
+      resultAttribute = props.getProperty("export_result", "").trim();
+      if (resultAttribute.startsWith("in."))
+      {
+        resultAttribute = resultAttribute.substring(3);
+      }
+    }
+    catch (IOException ex)
+    {
+    }
+    finally
+    {
+      if (bais != null)
+      {
+        try
+        {
+          bais.close();
+        }
+        catch (IOException ex)
+        {
+        }
+      }
+    }
+  }
+
+  @Override
+  public void start() throws Exception
+  {
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
+  }
+
+  @Override
+  public void stop() throws Exception
+  {
+    LdapConnectionManager.getInstance().coolDown(this);
+  }
+
+  public void setVariable(String name, Object value, CompositeObject argument) throws NoSuchFieldException
+  {
+    if (name.indexOf(".") < 0)
+    {
+      argument.set(name, value);
+    }
+    else
+    {
+      String newArgumentName = name.substring(0, name.indexOf("."));
+      String remainingName = name.substring(name.indexOf(".") + 1, name.length());
+      setVariable(remainingName, value, (CompositeObject) argument.get(newArgumentName));
+    }
+  }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (C) 2016 Axon Ivy AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.ivyteam.ivy.ldap.beans;
+
+import java.awt.Component;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.ResourceBundle;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
+
+import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.BatchModifier;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
+import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.LdifImporter;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
+import ch.ivyteam.ivy.process.engine.IRequestId;
+import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
+import ch.ivyteam.ivy.process.extension.impl.AbstractUserProcessExtension;
+import ch.ivyteam.ivy.scripting.language.IIvyScriptContext;
+import ch.ivyteam.ivy.scripting.objects.Binary;
+import ch.ivyteam.ivy.scripting.objects.CompositeObject;
+import ch.ivyteam.ivy.scripting.objects.Recordset;
+
+/**
+ * Bean to import an LDIF file (RFC 2849) in one process step.
+ * <p>
+ * The LDIF is read from a file path or from a process attribute holding a
+ * path, a <code>java.io.File</code> or a <code>Binary</code>. The file is
+ * streamed and its change records (add, delete, modify, moddn) are applied
+ * in parallel over pooled connections. Records on the same entry or on
+ * parent and child entries keep the order of the file.
+ * </p>
+ * <p>
+ * Failing records do not abort the import. They are written with progress
+ * lines and a summary to the optional log file and to the optional result
+ * Recordset with the columns <code>line</code>, <code>dn</code>,
+ * <code>changetype</code> and <code>error</code>.
+ * </p>
+ */
+public class LdapLdifImportBean extends AbstractUserProcessExtension
+{
+  private static final java.util.List<String> RESULT_KEYS = Arrays.asList(
+          "line", "dn", "changetype", "error");
+
+  /** Jndi Configuration */
+  private JndiConfig jndiConfig;
+
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
+  /** LDIF file or process attribute with the LDIF */
+  private ConfigValue source = ConfigValue.literal("");
+
+  /** max number of parallel connections */
+  private int parallelism = BatchModifier.DEFAULT_PARALLELISM;
+
+  /** log file, may be empty */
+  private ConfigValue logFile = ConfigValue.literal("");
+
+  /** process attribute to store the failed records in */
+  private String resultAttribute = "";
+
+  /**
+   * Configuration editor for the LDIF import bean
+   */
+  public static class Editor extends AbstractProcessExtensionConfigurationEditor
+  {
+    /**
+     * The configuration panel
+     */
+    private JTabbedPane tabbedPanel;
+
+    /** Jndi server configuration */
+    private JndiConfig jndiConfig;
+
+    /** Jndi config panel */
+    JndiConfigPanel jndiConfigPanel;
+
+    /** the LDIF file or process attribute */
+    private JTextField tfSource;
+
+    /** max number of parallel connections */
+    private JTextField tfParallelism;
+
+    /** the log file */
+    private JTextField tfLog;
+
+    /** the process attribute for the failed records */
+    private JTextField tfResult;
+
+    /**
+     * Constructor for the Editor object
+     */
+    public Editor()
+    {
+      ResourceBundle resBun = ResourceBundle.getBundle(
+              "TextResource", new Locale("de"));
+
+      jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY,
+              "ldap://", JndiConfig.AUTH_KIND_SIMPLE, "", "", false,
+              false, "");
+
+      tabbedPanel = new JTabbedPane();
+
+      // Jndi Server panel
+      jndiConfigPanel = new JndiConfigPanel(jndiConfig, false);
+      tabbedPanel.add(resBun.getString("search_server_pane"),
+              jndiConfigPanel);
+
+      // LDIF import panel
+      JPanel importPanel = new JPanel(new GridBagLayout());
+
+      JLabel label = new JLabel(resBun.getString("ldif_import_source"));
+      AWTUtil.constrain(importPanel, label, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfSource = new JTextField(40);
+      AWTUtil.constrain(importPanel, tfSource, 1, 0, 1, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("ldif_import_parallelism"));
+      AWTUtil.constrain(importPanel, label, 0, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfParallelism = new JTextField(6);
+      tfParallelism.setText(Integer.toString(BatchModifier.DEFAULT_PARALLELISM));
+      AWTUtil.constrain(importPanel, tfParallelism, 1, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("ldif_import_log"));
+      AWTUtil.constrain(importPanel, label, 0, 2, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfLog = new JTextField(40);
+      AWTUtil.constrain(importPanel, tfLog, 1, 2, 1, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("ldif_import_result"));
+      AWTUtil.constrain(importPanel, label, 0, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0, 0.0,
+              10, 10, 10, 10);
+
+      tfResult = new JTextField(40);
+      AWTUtil.constrain(importPanel, tfResult, 1, 3, 1, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.NORTHWEST,
+              1.0, 1.0, 10, 10, 10, 10);
+
+      tabbedPanel.add(resBun.getString("ldif_import_pane"), importPanel);
+    }
+
+    /**
+     * This method is called if the user pressed the OK button of the dialog
+     * containing this editor. The dialog is closed and the new configuration is
+     * used only if this method return true
+     *
+     * @return true
+     */
+    @Override
+    public boolean acceptInput()
+    {
+      return true;
+    }
+
+    @Override
+    public Component getComponent()
+    {
+      return tabbedPanel;
+    }
+
+    /**
+     * @return a description of a configuration. This description will be sent
+     *         to the corresponding OuterProcessBean
+     */
+    @Override
+    public String getConfiguration()
+    {
+      Properties props = new Properties();
+
+      jndiConfigPanel.saveModel();
+      props.setProperty("server_provider", jndiConfig.getProvider()
+              .getProviderName());
+      props.setProperty("server_url", jndiConfig.getUrl());
+      props.setProperty("server_authkind", jndiConfig
+              .getAuthenticationKind());
+      props.setProperty("server_username", jndiConfig.getUserName());
+      props.setProperty("server_password", jndiConfig.getPassword());
+      props.setProperty("server_useSsl", new Boolean(jndiConfig
+              .isUseSsl()).toString());
+      props.setProperty("server_context", jndiConfig.getDefaultContext());
+      JndiConfigProperties.store(jndiConfig, props);
+
+      props.setProperty("ldif_import_source", tfSource.getText().trim());
+      props.setProperty("ldif_import_parallelism", Integer.toString(
+              BatchModifier.parseParallelism(tfParallelism.getText())));
+      props.setProperty("ldif_import_log", tfLog.getText().trim());
+      props.setProperty("ldif_import_result", tfResult.getText().trim());
+
+      return PropertyUtil.toRawString(props);
+    }
+
+    /**
+     * Initialize the editor with an older configuration
+     *
+     * @param configString The new configuration value
+     */
+    @Override
+    public void setConfiguration(String configString)
+    {
+      ByteArrayInputStream bais = null;
+      Properties props = new Properties();
+      int pos;
+
+      if (configString == null)
+      {
+        return;
+      }
+
+      try
+      {
+        bais = new ByteArrayInputStream(configString.getBytes());
+        props.load(bais);
+
+        if (props.get("server_provider") != null)
+        {
+          for (pos = 0; pos < JndiProvider.PROVIDERS.length; pos++)
+          {
+            if (JndiProvider.PROVIDERS[pos].getProviderName()
+                    .equals(props.get("server_provider")))
+            {
+              jndiConfig.setProvider(JndiProvider.PROVIDERS[pos]);
+              break;
+            }
+          }
+        }
+        jndiConfig.setUrl(props.getProperty("server_url", jndiConfig
+                .getUrl()));
+        jndiConfig.setAuthenticationKind(props.getProperty(
+                "server_authkind", jndiConfig.getAuthenticationKind()));
+        jndiConfig
+                .setUserName(props.getProperty("server_username", ""));
+        jndiConfig
+                .setPassword(props.getProperty("server_password", ""));
+        jndiConfig.setUseSsl(new Boolean(props.getProperty(
+                "server_useSsl", Boolean.FALSE.toString()))
+                .booleanValue());
+        jndiConfig.setDefaultContext(props.getProperty(
+                "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
+        jndiConfigPanel.loadModel();
+
+        tfSource.setText(props.getProperty("ldif_import_source", ""));
+        tfParallelism.setText(Integer.toString(BatchModifier
+                .parseParallelism(props.getProperty("ldif_import_parallelism"))));
+        tfLog.setText(props.getProperty("ldif_import_log", ""));
+        tfResult.setText(props.getProperty("ldif_import_result", ""));
+      }
+      catch (IOException ex)
+      {
+      }
+      finally
+      {
+        if (bais != null)
+        {
+          try
+          {
+            bais.close();
+          }
+          catch (IOException ex)
+          {
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor
+   */
+  public LdapLdifImportBean()
+  {
+    jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
+            JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
+  }
+
+  /**
+   * This method is the program performed in a program interface element every
+   * time a token comes to the element.
+   *
+   * @param argument a wrapper for the token value.
+   * @throws Exception Exception
+   */
+  @Override
+  public CompositeObject perform(IRequestId reqID, CompositeObject argument,
+          IIvyScriptContext cont) throws Exception
+  {
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    final ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
+    String logPath = logFile.resolveString(values);
+
+    LdifImporter.Result result;
+    try (Reader ldif = openLdif(source.resolve(values));
+            Writer log = logPath == null || logPath.trim().isEmpty() ? null
+                    : Files.newBufferedWriter(Paths.get(logPath.trim()), StandardCharsets.UTF_8))
+    {
+      result = new LdifImporter(expandedJndiConfig, parallelism).importLdif(ldif, log);
+    }
+
+    if (!resultAttribute.isEmpty())
+    {
+      Recordset recordset = new Recordset(RESULT_KEYS);
+      for (LdifImporter.Failure failure : result.getFailures())
+      {
+        recordset.add(Arrays.asList(
+                Integer.valueOf(failure.getLineNumber()),
+                failure.getDn(),
+                failure.getChangeType() != null ? failure.getChangeType().toString() : null,
+                failure.getError()));
+      }
+      setVariable(resultAttribute, recordset, argument);
+    }
+    return argument;
+  }
+
+  private Reader openLdif(Object ldif) throws IOException
+  {
+    if (ldif instanceof Binary)
+    {
+      return new InputStreamReader(new ByteArrayInputStream(((Binary) ldif).toByteArray()),
+              StandardCharsets.UTF_8);
+    }
+    if (ldif instanceof File)
+    {
+      return Files.newBufferedReader(((File) ldif).toPath(), StandardCharsets.UTF_8);
+    }
+    if (ldif instanceof String && !((String) ldif).trim().isEmpty())
+    {
+      return Files.newBufferedReader(Paths.get(((String) ldif).trim()), StandardCharsets.UTF_8);
+    }
+    throw new IllegalArgumentException("No LDIF file, path or Binary in " + source.getText());
+  }
+
+  @Override
+  public void abort(IRequestId arg0)
+  {
+  }
+
+  @Override
+  public String getAdditionalLogInfo(IRequestId arg0)
+  {
+    return null;
+  }
+
+  @Override
+  public void release() throws Exception
+  {
+  }
+
+  /**
+   * Sets a configuration string. This configuration string is usually produced
+   * by the configuration editor of the element.
+   *
+   * @param configuration the configuration
+   */
+  @Override
+  public void setConfiguration(String configuration)
+  {
+    ByteArrayInputStream bais = null;
+    Properties props = new Properties();
+    int pos;
+
+    if (configuration == null)
+    {
+      return;
+    }
+
+    try
+    {
+      bais = new ByteArrayInputStream(configuration.getBytes());
+      props.load(bais);
+
+      if (props.get("server_provider") != null)
+      {
+        for (pos = 0; pos < JndiProvider.PROVIDERS.length; pos++)
+        {
+          if (JndiProvider.PROVIDERS[pos].getProviderName().equals(
+                  props.get("server_provider")))
+          {
+            jndiConfig.setProvider(JndiProvider.PROVIDERS[pos]);
+            break;
+          }
+        }
+      }
+      jndiConfig.setUrl(props.getProperty("server_url", jndiConfig
+              .getUrl()));
+      jndiConfig.setAuthenticationKind(props.getProperty(
+              "server_authkind", jndiConfig.getAuthenticationKind()));
+      jndiConfig.setUserName(props.getProperty("server_username", ""));
+      jndiConfig.setPassword(props.getProperty("server_password", ""));
+      jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
+              Boolean.FALSE.toString())).booleanValue());
+      jndiConfig.setDefaultContext(props.getProperty("server_context", ""));
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
+
+      source = ConfigValue.parse(props.getProperty("ldif_import_source", ""));
+      parallelism = BatchModifier.parseParallelism(props.getProperty("ldif_import_parallelism"));
+      logFile = ConfigValue.parse(props.getProperty("ldif_import_log", ""));
+      resultAttribute = props.getProperty("ldif_import_result", "").trim();
+      if (resultAttribute.startsWith("in."))
+      {
+        resultAttribute = resultAttribute.substring(3);
+      }
+    }
+    catch (IOException ex)
+    {
+    }
+    finally
+    {
+      if (bais != null)
+      {
+        try
+        {
+          bais.close();
+        }
+        catch (IOException ex)
+        {
+        }
+      }
+    }
+  }
+
+  @Override
+  public void start() throws Exception
+  {
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
+  }
+
+  @Override
+  public void stop() throws Exception
+  {
+    LdapConnectionManager.getInstance().coolDown(this);
+  }
+
+  public void setVariable(String name, Object value, CompositeObject argument) throws NoSuchFieldException
+  {
+    if (name.indexOf(".") < 0)
+    {
+      argument.set(name, value);
+    }
+    else
+    {
+      String newArgumentName = name.substring(0, name.indexOf("."));
+      String remainingName = name.substring(name.indexOf(".") + 1, name.length());
+      setVariable(remainingName, value, (CompositeObject) argument.get(newArgumentName));
+    }
+  }
+}
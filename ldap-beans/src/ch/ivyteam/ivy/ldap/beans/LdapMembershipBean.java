@@ -0,0 +1,604 @@
+/*
+ * Copyright (C) 2016 Axon Ivy AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.ivyteam.ivy.ldap.beans;
+
+import java.awt.Component;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.ResourceBundle;
+
+import javax.swing.ButtonGroup;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JRadioButton;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
+
+import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.GroupMembership;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
+import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
+import ch.ivyteam.ivy.process.engine.IRequestId;
+import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
+import ch.ivyteam.ivy.process.extension.impl.AbstractUserProcessExtension;
+import ch.ivyteam.ivy.scripting.language.IIvyScriptContext;
+import ch.ivyteam.ivy.scripting.objects.CompositeObject;
+import ch.ivyteam.ivy.scripting.objects.List;
+
+/**
+ * Bean to check direct and nested group memberships.
+ * <p>
+ * If a group is configured the bean stores whether the member is direct or
+ * nested member of it in a Boolean process attribute. Otherwise it stores the
+ * distinguished names of all groups of the member in a List attribute.
+ * </p>
+ * <p>
+ * Active Directory resolves the nesting itself (matching rule
+ * <code>LDAP_MATCHING_RULE_IN_CHAIN</code>). For other servers all groups are
+ * loaded into a membership graph that is shared by all elements with the same
+ * configuration and refreshed after the configured number of seconds. Checks
+ * are then answered from memory. See {@link GroupMembership}.
+ * </p>
+ */
+public class LdapMembershipBean extends AbstractUserProcessExtension
+{
+  /** Jndi Configuration */
+  private JndiConfig jndiConfig;
+
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
+  /** distinguished name of the member */
+  private ConfigValue member = ConfigValue.literal("");
+
+  /** distinguished name of the group, empty to get all groups */
+  private ConfigValue group = ConfigValue.literal("");
+
+  /** root of the groups */
+  private String groupBase = "";
+
+  /** filter matching all groups */
+  private String groupFilter = GroupMembership.DEFAULT_GROUP_FILTER;
+
+  /** member attribute of the groups */
+  private String memberAttribute = GroupMembership.DEFAULT_MEMBER_ATTRIBUTE;
+
+  /** how memberships are resolved */
+  private GroupMembership.Mode mode = GroupMembership.Mode.AUTO;
+
+  /** max age of the membership graph in seconds */
+  private int refreshSeconds = GroupMembership.DEFAULT_REFRESH_SECONDS;
+
+  /** process attribute to store the result in */
+  private String resultAttribute = "";
+
+  /**
+   * Configuration editor for the membership bean
+   */
+  public static class Editor extends AbstractProcessExtensionConfigurationEditor
+  {
+    /**
+     * The configuration panel
+     */
+    private JTabbedPane tabbedPanel;
+
+    /** Jndi server configuration */
+    private JndiConfig jndiConfig;
+
+    /** Jndi config panel */
+    JndiConfigPanel jndiConfigPanel;
+
+    /** the member */
+    private JTextField tfMember;
+
+    /** the group */
+    private JTextField tfGroup;
+
+    /** root of the groups */
+    private JTextField tfGroupBase;
+
+    /** filter matching all groups */
+    private JTextField tfGroupFilter;
+
+    /** member attribute of the groups */
+    private JTextField tfMemberAttribute;
+
+    /** mode auto */
+    private JRadioButton rbModeAuto;
+
+    /** mode in chain matching rule */
+    private JRadioButton rbModeChain;
+
+    /** mode membership graph */
+    private JRadioButton rbModeGraph;
+
+    /** max age of the graph */
+    private JTextField tfRefresh;
+
+    /** the process attribute for the result */
+    private JTextField tfResult;
+
+    /**
+     * Constructor for the Editor object
+     */
+    public Editor()
+    {
+      ResourceBundle resBun = ResourceBundle.getBundle(
+              "TextResource", new Locale("de"));
+
+      jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY,
+              "ldap://", JndiConfig.AUTH_KIND_SIMPLE, "", "", false,
+              false, "");
+
+      tabbedPanel = new JTabbedPane();
+
+      // Jndi Server panel
+      jndiConfigPanel = new JndiConfigPanel(jndiConfig, false);
+      tabbedPanel.add(resBun.getString("search_server_pane"),
+              jndiConfigPanel);
+
+      // Membership panel
+      JPanel membershipPanel = new JPanel(new GridBagLayout());
+
+      JLabel label = new JLabel(resBun.getString("membership_member"));
+      AWTUtil.constrain(membershipPanel, label, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfMember = new JTextField(40);
+      AWTUtil.constrain(membershipPanel, tfMember, 1, 0, 3, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("membership_group"));
+      AWTUtil.constrain(membershipPanel, label, 0, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfGroup = new JTextField(40);
+      AWTUtil.constrain(membershipPanel, tfGroup, 1, 1, 3, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("membership_group_base"));
+      AWTUtil.constrain(membershipPanel, label, 0, 2, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfGroupBase = new JTextField(40);
+      AWTUtil.constrain(membershipPanel, tfGroupBase, 1, 2, 3, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("membership_group_filter"));
+      AWTUtil.constrain(membershipPanel, label, 0, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfGroupFilter = new JTextField(40);
+      tfGroupFilter.setText(GroupMembership.DEFAULT_GROUP_FILTER);
+      AWTUtil.constrain(membershipPanel, tfGroupFilter, 1, 3, 3, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              1.0, 0.0, 10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("membership_member_attribute"));
+      AWTUtil.constrain(membershipPanel, label, 0, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfMemberAttribute = new JTextField(20);
+      tfMemberAttribute.setText(GroupMembership.DEFAULT_MEMBER_ATTRIBUTE);
+      AWTUtil.constrain(membershipPanel, tfMemberAttribute, 1, 4, 3, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("membership_mode"));
+      AWTUtil.constrain(membershipPanel, label, 0, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      ButtonGroup modeButtons = new ButtonGroup();
+      rbModeAuto = new JRadioButton(resBun.getString("membership_mode_auto"));
+      rbModeAuto.setSelected(true);
+      AWTUtil.constrain(membershipPanel, rbModeAuto, 1, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      rbModeChain = new JRadioButton(resBun.getString("membership_mode_chain"));
+      AWTUtil.constrain(membershipPanel, rbModeChain, 2, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      rbModeGraph = new JRadioButton(resBun.getString("membership_mode_graph"));
+      AWTUtil.constrain(membershipPanel, rbModeGraph, 3, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      modeButtons.add(rbModeAuto);
+      modeButtons.add(rbModeChain);
+      modeButtons.add(rbModeGraph);
+
+      label = new JLabel(resBun.getString("membership_refresh"));
+      AWTUtil.constrain(membershipPanel, label, 0, 6, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      tfRefresh = new JTextField(6);
+      tfRefresh.setText(Integer.toString(GroupMembership.DEFAULT_REFRESH_SECONDS));
+      AWTUtil.constrain(membershipPanel, tfRefresh, 1, 6, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 10, 0, 10);
+
+      label = new JLabel(resBun.getString("membership_result"));
+      AWTUtil.constrain(membershipPanel, label, 0, 7, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0, 0.0,
+              10, 10, 10, 10);
+
+      tfResult = new JTextField(40);
+      AWTUtil.constrain(membershipPanel, tfResult, 1, 7, 3, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.NORTHWEST,
+              1.0, 1.0, 10, 10, 10, 10);
+
+      tabbedPanel.add(resBun.getString("membership_pane"), membershipPanel);
+    }
+
+    /**
+     * This method is called if the user pressed the OK button of the dialog
+     * containing this editor. The dialog is closed and the new configuration is
+     * used only if this method return true
+     *
+     * @return true
+     */
+    @Override
+    public boolean acceptInput()
+    {
+      return true;
+    }
+
+    @Override
+    public Component getComponent()
+    {
+      return tabbedPanel;
+    }
+
+    /**
+     * @return a description of a configuration. This description will be sent
+     *         to the corresponding OuterProcessBean
+     */
+    @Override
+    public String getConfiguration()
+    {
+      Properties props = new Properties();
+
+      jndiConfigPanel.saveModel();
+      props.setProperty("server_provider", jndiConfig.getProvider()
+              .getProviderName());
+      props.setProperty("server_url", jndiConfig.getUrl());
+      props.setProperty("server_authkind", jndiConfig
+              .getAuthenticationKind());
+      props.setProperty("server_username", jndiConfig.getUserName());
+      props.setProperty("server_password", jndiConfig.getPassword());
+      props.setProperty("server_useSsl", new Boolean(jndiConfig
+              .isUseSsl()).toString());
+      props.setProperty("server_context", jndiConfig.getDefaultContext());
+      JndiConfigProperties.store(jndiConfig, props);
+
+      props.setProperty("membership_member", tfMember.getText().trim());
+      props.setProperty("membership_group", tfGroup.getText().trim());
+      props.setProperty("membership_group_base", tfGroupBase.getText().trim());
+      props.setProperty("membership_group_filter", tfGroupFilter.getText().trim());
+      props.setProperty("membership_member_attribute", tfMemberAttribute.getText().trim());
+      GroupMembership.Mode selectedMode = rbModeChain.isSelected() ? GroupMembership.Mode.CHAIN
+              : rbModeGraph.isSelected() ? GroupMembership.Mode.GRAPH : GroupMembership.Mode.AUTO;
+      props.setProperty("membership_mode", selectedMode.name().toLowerCase(Locale.ROOT));
+      props.setProperty("membership_refresh", Integer.toString(parseRefresh(tfRefresh.getText())));
+      props.setProperty("membership_result", tfResult.getText().trim());
+
+      return PropertyUtil.toRawString(props);
+    }
+
+    /**
+     * Initialize the editor with an older configuration
+     *
+     * @param configString The new configuration value
+     */
+    @Override
+    public void setConfiguration(String configString)
+    {
+      ByteArrayInputStream bais = null;
+      Properties props = new Properties();
+      int pos;
+
+      if (configString == null)
+      {
+        return;
+      }
+
+      try
+      {
+        bais = new ByteArrayInputStream(configString.getBytes());
+        props.load(bais);
+
+        if (props.get("server_provider") != null)
+        {
+          for (pos = 0; pos < JndiProvider.PROVIDERS.length; pos++)
+          {
+            if (JndiProvider.PROVIDERS[pos].getProviderName()
+                    .equals(props.get("server_provider")))
+            {
+              jndiConfig.setProvider(JndiProvider.PROVIDERS[pos]);
+              break;
+            }
+          }
+        }
+        jndiConfig.setUrl(props.getProperty("server_url", jndiConfig
+                .getUrl()));
+        jndiConfig.setAuthenticationKind(props.getProperty(
+                "server_authkind", jndiConfig.getAuthenticationKind()));
+        jndiConfig
+                .setUserName(props.getProperty("server_username", ""));
+        jndiConfig
+                .setPassword(props.getProperty("server_password", ""));
+        jndiConfig.setUseSsl(new Boolean(props.getProperty(
+                "server_useSsl", Boolean.FALSE.toString()))
+                .booleanValue());
+        jndiConfig.setDefaultContext(props.getProperty(
+                "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
+        jndiConfigPanel.loadModel();
+
+        tfMember.setText(props.getProperty("membership_member", ""));
+        tfGroup.setText(props.getProperty("membership_group", ""));
+        tfGroupBase.setText(props.getProperty("membership_group_base", ""));
+        tfGroupFilter.setText(props.getProperty("membership_group_filter",
+                GroupMembership.DEFAULT_GROUP_FILTER));
+        tfMemberAttribute.setText(props.getProperty("membership_member_attribute",
+                GroupMembership.DEFAULT_MEMBER_ATTRIBUTE));
+        GroupMembership.Mode configuredMode = GroupMembership.Mode.parse(props.getProperty("membership_mode"));
+        rbModeAuto.setSelected(configuredMode == GroupMembership.Mode.AUTO);
+        rbModeChain.setSelected(configuredMode == GroupMembership.Mode.CHAIN);
+        rbModeGraph.setSelected(configuredMode == GroupMembership.Mode.GRAPH);
+        tfRefresh.setText(Integer.toString(parseRefresh(props.getProperty("membership_refresh"))));
+        tfResult.setText(props.getProperty("membership_result", ""));
+      }
+      catch (IOException ex)
+      {
+      }
+      finally
+      {
+        if (bais != null)
+        {
+          try
+          {
+            bais.close();
+          }
+          catch (IOException ex)
+          {
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor
+   */
+  public LdapMembershipBean()
+  {
+    jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
+            JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
+  }
+
+  /**
+   * This method is the program performed in a program interface element every
+   * time a token comes to the element.
+   *
+   * @param argument a wrapper for the token value.
+   * @throws Exception Exception
+   */
+  @Override
+  public CompositeObject perform(IRequestId reqID, CompositeObject argument,
+          IIvyScriptContext cont) throws Exception
+  {
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    final ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
+    String memberDn = member.resolveString(values).trim();
+    String groupDn = group.resolveString(values).trim();
+    if (memberDn.isEmpty())
+    {
+      throw new IllegalArgumentException("No member configured");
+    }
+    GroupMembership membership = new GroupMembership(dynamicJndiConfig.resolve(values),
+            groupBase, groupFilter, memberAttribute, mode, refreshSeconds);
+
+    Object result;
+    if (groupDn.isEmpty())
+    {
+      List<String> groups = List.create(String.class);
+      for (String groupName : membership.getGroups(memberDn))
+      {
+        groups.add(groupName);
+      }
+      result = groups;
+    }
+    else
+    {
+      result = Boolean.valueOf(membership.isMember(memberDn, groupDn));
+    }
+
+    if (!resultAttribute.isEmpty())
+    {
+      setVariable(resultAttribute, result, argument);
+    }
+    return argument;
+  }
+
+  private static int parseRefresh(String value)
+  {
+    try
+    {
+      return Math.max(0, Integer.parseInt(value.trim()));
+    }
+    catch (NumberFormatException | NullPointerException ex)
+    {
+      return GroupMembership.DEFAULT_REFRESH_SECONDS;
+    }
+  }
+
+  @Override
+  public void abort(IRequestId arg0)
+  {
+  }
+
+  @Override
+  public String getAdditionalLogInfo(IRequestId arg0)
+  {
+    return null;
+  }
+
+  @Override
+  public void release() throws Exception
+  {
+  }
+
+  /**
+   * Sets a configuration string. This configuration string is usually produced
+   * by the configuration editor of the element.
+   *
+   * @param configuration the configuration
+   */
+  @Override
+  public void setConfiguration(String configuration)
+  {
+    ByteArrayInputStream bais = null;
+    Properties props = new Properties();
+    int pos;
+
+    if (configuration == null)
+    {
+      return;
+    }
+
+    try
+    {
+      bais = new ByteArrayInputStream(configuration.getBytes());
+      props.load(bais);
+
+      if (props.get("server_provider") != null)
+      {
+        for (pos = 0; pos < JndiProvider.PROVIDERS.length; pos++)
+        {
+          if (JndiProvider.PROVIDERS[pos].getProviderName().equals(
+                  props.get("server_provider")))
+          {
+            jndiConfig.setProvider(JndiProvider.PROVIDERS[pos]);
+            break;
+          }
+        }
+      }
+      jndiConfig.setUrl(props.getProperty("server_url", jndiConfig
+              .getUrl()));
+      jndiConfig.setAuthenticationKind(props.getProperty(
+              "server_authkind", jndiConfig.getAuthenticationKind()));
+      jndiConfig.setUserName(props.getProperty("server_username", ""));
+      jndiConfig.setPassword(props.getProperty("server_password", ""));
+      jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
+              Boolean.FALSE.toString())).booleanValue());
+      jndiConfig.setDefaultContext(props.getProperty("server_context", ""));
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
+
+      member = ConfigValue.parse(props.getProperty("membership_member", ""));
+      group = ConfigValue.parse(props.getProperty("membership_group", ""));
+      groupBase = props.getProperty("membership_group_base", "");
+      groupFilter = props.getProperty("membership_group_filter", "").trim();
+      if (groupFilter.isEmpty())
+      {
+        groupFilter = GroupMembership.DEFAULT_GROUP_FILTER;
+      }
+      memberAttribute = props.getProperty("membership_member_attribute", "").trim();
+      if (memberAttribute.isEmpty())
+      {
+        memberAttribute = GroupMembership.DEFAULT_MEMBER_ATTRIBUTE;
+      }
+      mode = GroupMembership.Mode.parse(props.getProperty("membership_mode"));
+      refreshSeconds = parseRefresh(props.getProperty("membership_refresh"));
+      resultAttribute = props.getProperty("membership_result", "").trim();
+      if (resultAttribute.startsWith("in."))
+      {
+        resultAttribute = resultAttribute.substring(3);
+      }
+    }
+    catch (IOException ex)
+    {
+    }
+    finally
+    {
+      if (bais != null)
+      {
+        try
+        {
+          bais.close();
+        }
+        catch (IOException ex)
+        {
+        }
+      }
+    }
+  }
+
+  @Override
+  public void start() throws Exception
+  {
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
+  }
+
+  @Override
+  public void stop() throws Exception
+  {
+    LdapConnectionManager.getInstance().coolDown(this);
+  }
+
+  public void setVariable(String name, Object value, CompositeObject argument) throws NoSuchFieldException
+  {
+    if (name.indexOf(".") < 0)
+    {
+      argument.set(name, value);
+    }
+    else
+    {
+      String newArgumentName = name.substring(0, name.indexOf("."));
+      String remainingName = name.substring(name.indexOf(".") + 1, name.length());
+      setVariable(remainingName, value, (CompositeObject) argument.get(newArgumentName));
+    }
+  }
+}
@@ -24,21 +24,21 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.Vector;
 
-import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.DirContext;
-import javax.naming.directory.SearchControls;
-import javax.naming.directory.SearchResult;
 import javax.swing.ButtonGroup;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
@@ -51,9 +51,18 @@ import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableModel;
 
 import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.BatchModifier;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
 import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
 import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
-import ch.ivyteam.ivy.ldap.beans.util.JndiUtil;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultCache;
+import ch.ivyteam.ivy.ldap.beans.util.SubtreeDeleter;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
 import ch.ivyteam.ivy.persistence.PersistencyException;
 import ch.ivyteam.ivy.process.engine.IRequestId;
 import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
@@ -73,18 +82,27 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
   /** Jndi Configuration */
   private JndiConfig jndiConfig;
 
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
   /** object name */
-  private String objectName;
+  private ConfigValue objectName = ConfigValue.literal("");
 
-  /** attributes and values */
-  private Hashtable<String, String> attributes = new Hashtable<>();
+  /** attributes and values, the value is null if not configured */
+  private Map<ConfigValue, ConfigValue> attributes = new LinkedHashMap<>();
 
   /** second hastable for attributes/values */
-  private Hashtable<String, String> moreAttributes = new Hashtable<>();
+  private Map<String, ConfigValue> moreAttributes = new LinkedHashMap<>();
 
   /** operation code */
   private int operationCode;
 
+  /** number of parallel connections used to remove a subtree */
+  private int parallelism = BatchModifier.DEFAULT_PARALLELISM;
+
+  /** remove a subtree with the tree delete control if the server supports it */
+  private boolean useTreeDelete;
+
   /**
    * Configuration editor for the jndi attribute modifier bean
    * 
@@ -124,6 +142,12 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
     /** card layout of the attribute panel */
     private CardLayout attributeLayout;
 
+    /** number of parallel connections used to remove a subtree */
+    private JTextField tfParallelism;
+
+    /** use the tree delete control */
+    private JCheckBox cbTreeDelete;
+
     /**
      * Constructor for the Editor object
      */
@@ -202,8 +226,22 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
       attributePanel.add("add", scrollPane);
 
       // remove panel
-      scrollPane = new JScrollPane();
-      attributePanel.add("remove", scrollPane);
+      JPanel removePanel = new JPanel(new GridBagLayout());
+      label = new JLabel(resBun.getString("mod_object_parallelism"));
+      AWTUtil.constrain(removePanel, label, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 10);
+
+      tfParallelism = new JTextField(5);
+      AWTUtil.constrain(removePanel, tfParallelism, 1, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 0);
+
+      cbTreeDelete = new JCheckBox(resBun.getString("mod_object_tree_delete"));
+      AWTUtil.constrain(removePanel, cbTreeDelete, 0, 1, 2, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 1.0,
+              1.0, 10, 0, 0, 0);
+      attributePanel.add("remove", removePanel);
 
       AWTUtil.constrain(modifyAttributePanel, attributePanel, 1, 2, 3, 1,
               GridBagConstraints.BOTH, GridBagConstraints.NORTHWEST, 1.0,
@@ -267,6 +305,7 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
               .isUseSsl()).toString());
       String defaultContext = jndiConfig.getDefaultContext();
       props.setProperty("server_context", defaultContext);
+      JndiConfigProperties.store(jndiConfig, props);
 
       props.setProperty("mod_attr_object_name", tfObjectName.getText()
               .trim());
@@ -279,6 +318,8 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
       {
         props.setProperty("mod_attr_operation", "remove");
       }
+      props.setProperty("mod_object_parallelism", tfParallelism.getText().trim());
+      props.setProperty("mod_object_tree_delete", Boolean.toString(cbTreeDelete.isSelected()));
 
       TableModel model = addAttributeTable.getModel();
       for (int pos = 0; pos < model.getRowCount(); pos++)
@@ -361,6 +402,7 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
                 .booleanValue());
         jndiConfig.setDefaultContext(props.getProperty(
                 "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
         jndiConfigPanel.loadModel();
 
         tfObjectName.setText(props.getProperty("mod_attr_object_name",
@@ -377,6 +419,8 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
           rbOperationRemove.setSelected(true);
           attributeLayout.show(attributePanel, "remove");
         }
+        tfParallelism.setText(props.getProperty("mod_object_parallelism", ""));
+        cbTreeDelete.setSelected(Boolean.parseBoolean(props.getProperty("mod_object_tree_delete")));
 
         pos = 0;
         model = new DefaultTableModel(addAttributeTable.getModel().getRowCount(), addAttributeTable
@@ -449,144 +493,52 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
   public CompositeObject perform(IRequestId reqID, CompositeObject argument,
           IIvyScriptContext cont) throws Exception
   {
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    final ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
     DirContext context;
     String newObjectName;
-    Enumeration<String> enumeration;
-    Enumeration<String> enum2;
-    String attribute;
-    String attribute2;
-    String valueStr;
     Object value;
     BasicAttributes jndiAttributes = new BasicAttributes();
     BasicAttribute jndiAttribute;
 
-    if (objectName.trim().length() == 0)
+    if (objectName.getText().trim().length() == 0)
     {
       return null;
     }
-    else if (objectName.trim().startsWith("\"")
-            && (objectName.trim().endsWith("\"")))
-    {
-      newObjectName = objectName.substring(1, objectName.length() - 1);
-    }
-    else
-    {
-      newObjectName = (String) getVariable(objectName, cont);
-      if (objectName == null)
-      {
-        newObjectName = objectName;
-      }
-    }
+    newObjectName = objectName.resolveString(values);
 
     if (operationCode == DirContext.ADD_ATTRIBUTE)
     {
       // Resolve the values
-      enumeration = attributes.keys();
-      while (enumeration.hasMoreElements())
+      for (Map.Entry<ConfigValue, ConfigValue> entry : attributes.entrySet())
       {
-        attribute = enumeration.nextElement();
-        String newAttribute = (String) getVariable(attribute, cont);
+        String newAttribute = entry.getKey().resolveString(values);
         if (newAttribute.indexOf("_") < 0)
         {
-          value = null;
-          valueStr = attributes.get(attribute);
-          valueStr = valueStr.trim();
-          // if the value starts and ends with " I assume that this is
-          // a constant string
-          if (valueStr.startsWith("\"") && valueStr.endsWith("\""))
-          {
-            value = valueStr.substring(1, valueStr.length() - 1);
-          }
-          else if (valueStr.length() > 0)
-          {
-            // if the value does not start and ends with " I asssume
-            // that this is the name of a
-            // ivy attribute -> try to resBunolve the value as ivy
-            // attribute
-            if (getVariable(valueStr, cont) != null)
-            {
-              // ivyGrid argument found. Get it
-              value = getVariable(valueStr, cont);
-            }
-            else
-            {
-              // no ivy attribute value --> do not set jndi
-              // attribute
-            }
-          }
+          // a constant string, the value of an ivy attribute or the value
+          // string itself if there is no such ivy attribute
+          value = entry.getValue() != null ? entry.getValue().resolve(values) : null;
 
           if (value != null)
           {
             jndiAttribute = new BasicAttribute(newAttribute);
-
-            if (value instanceof Vector)
-            {
-              for (int pos = 0; pos < ((Vector<?>) value).size(); pos++)
-              {
-                jndiAttribute.add(((Vector<?>) value)
-                        .elementAt(pos));
-              }
-            }
-            else
-            {
-              jndiAttribute.add(value);
-            }
+            addValue(jndiAttribute, value);
 
             // more values for the same attribute? The the attribute
             // will have a postfix "_i"
-            enum2 = moreAttributes.keys();
-            while (enum2.hasMoreElements())
+            for (Map.Entry<String, ConfigValue> more : moreAttributes.entrySet())
             {
-              attribute2 = enum2.nextElement();
-              if (attribute2.startsWith(newAttribute + "_"))
+              if (more.getKey().startsWith(newAttribute + "_") && more.getValue() != null)
               {
-                value = null;
-                valueStr = moreAttributes
-                        .get(attribute2);
-                valueStr = valueStr.trim();
-                // if the value starts and ends with " I assume
-                // that this is a constant string
-                if (valueStr.startsWith("\"")
-                        && valueStr.endsWith("\""))
-                {
-                  value = valueStr.substring(1, valueStr
-                          .length() - 1);
-                }
-                else
-                {
-                  // if the value does not start and ends with
-                  // " I asssume that this is the name of a
-                  // ivy attribute -> try to resBunolve the
-                  // value
-                  // as ivy attribute
-                  if (getVariable(valueStr, cont) != null)
-                  {
-                    // ivyGrid argument found. Get it
-                    value = getVariable(valueStr, cont);
-                  }
-                  else
-                  {
-                    // no ivy attribute found with the value
-                    // as name --> use the value string
-                    // itself
-                    // value = valueStr;
-                  }
-                }
+                value = more.getValue().resolve(values);
                 if (value != null)
                 {
-                  if (value instanceof Vector)
-                  {
-                    for (int pos = 0; pos < ((Vector<?>) value)
-                            .size(); pos++)
-                    {
-                      jndiAttribute.add(((Vector<?>) value)
-                              .elementAt(pos));
-                    }
-                  }
-                  else
-                  {
-                    jndiAttribute.add(value);
-                  }
+                  addValue(jndiAttribute, value);
                 }
               }
             }
@@ -595,68 +547,36 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
         }
       }
     }
-    JndiConfig expandedJndiConfig = (JndiConfig) jndiConfig.clone();
-    // try to expand url, name and password fields
-    String propStr = expandedJndiConfig.getUrl();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUrl(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getUserName();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUserName(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getPassword();
-    if (propStr != null)
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
+    if (operationCode != DirContext.ADD_ATTRIBUTE)
     {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setPassword(propStr);
-      }
+      // remove object with its children
+      new SubtreeDeleter(expandedJndiConfig, parallelism, useTreeDelete).delete(newObjectName);
+      return argument;
     }
     // access the naming and directory service
     // context = new InitialDirContext(expandedJndiConfig.getEnvironement()); //
     // this only works in Xivy version < 4.3.15
-    context = JndiUtil.openDirContext(expandedJndiConfig);
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(expandedJndiConfig);
+    context = connection.getContext();
     try
     {
-      if (operationCode == DirContext.ADD_ATTRIBUTE)
-      {
-        // add object
-        // with this
-        // attributes
-        context.bind(newObjectName, null, jndiAttributes);
-      }
-      else
-      {
-        // remove object
-        SearchControls searchControl = new SearchControls();
-        searchControl.setSearchScope(SearchControls.ONELEVEL_SCOPE);
-        removeObjectWithChilds(context, searchControl, newObjectName);
-      }
+      // add object
+      // with this
+      // attributes
+      long writeStart = System.nanoTime();
+      context.bind(newObjectName, null, jndiAttributes);
+      OperationMetrics.write("bind", connection.getServerUrl(), newObjectName, writeStart);
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
     }
     finally
     {
-      if (context != null)
-      {
-        try
-        {
-          context.close();
-        }
-        catch (NamingException ex)
-        {
-        }
-      }
+      SearchResultCache.getInstance().invalidate(newObjectName);
+      connection.close();
     }
     return argument;
   }
@@ -668,6 +588,7 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
   {
     jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
             JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
   }
 
   @Override
@@ -730,12 +651,13 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
       jndiConfig.setPassword(props.getProperty("server_password", ""));
       jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
               Boolean.FALSE.toString())).booleanValue());
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
 
-      objectName = props.getProperty("mod_attr_object_name", "");
-      if (objectName.startsWith("in."))
-      {
-        objectName = objectName.substring(3);
-      }
+      objectName = ConfigValue.parse(props.getProperty("mod_attr_object_name", ""));
+      parallelism = BatchModifier.parseParallelism(props.getProperty("mod_object_parallelism"));
+      useTreeDelete = Boolean.parseBoolean(props.getProperty("mod_object_tree_delete"));
+      Set<String> configuredAttributes = new HashSet<>();
 
       if ("add".equals(props.getProperty("mod_attr_operation", "")))
       {
@@ -756,13 +678,14 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
             }
             // add postfix index to handle attributes with several
             // values
-            if (attributes.containsKey(attribute))
+            ConfigValue configValue = value.trim().isEmpty() ? null : ConfigValue.parse(value);
+            if (!configuredAttributes.add(attribute))
             {
-              moreAttributes.put(attribute + "_" + pos, value);
+              moreAttributes.put(attribute + "_" + pos, configValue);
             }
             else
             {
-              attributes.put(attribute, value);
+              attributes.put(ConfigValue.parseUnquoted(attribute), configValue);
             }
           }
           pos++;
@@ -779,7 +702,7 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
                   + pos, null);
           if ((attribute != null) && (!attribute.equals("")))
           {
-            attributes.put(attribute, "");
+            attributes.put(ConfigValue.parseUnquoted(attribute), null);
           }
           pos++;
         } while (attribute != null);
@@ -803,14 +726,31 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
     }
   }
 
+  private static void addValue(BasicAttribute jndiAttribute, Object value)
+  {
+    if (value instanceof Vector)
+    {
+      for (int pos = 0; pos < ((Vector<?>) value).size(); pos++)
+      {
+        jndiAttribute.add(((Vector<?>) value).elementAt(pos));
+      }
+    }
+    else
+    {
+      jndiAttribute.add(value);
+    }
+  }
+
   @Override
   public void start() throws Exception
   {
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
   }
 
   @Override
   public void stop() throws Exception
   {
+    LdapConnectionManager.getInstance().coolDown(this);
   }
 
   public Object getVariable(String name, IIvyScriptContext cont)
@@ -846,49 +786,4 @@ public class LdapObjectEditBean extends AbstractUserProcessExtension
     }
   }
 
-  /**
-   * Remove this object and its children recoursively
-   * 
-   * @param context the DirContext
-   * @param searchControl "search on level"
-   * @param removeObjectName the object to be removed
-   * @throws NamingException
-   */
-  void removeObjectWithChilds(DirContext context,
-          SearchControls searchControl, String removeObjectName)
-          throws NamingException
-  {
-    NamingEnumeration<SearchResult> resultEnum = context.search(removeObjectName,
-            "(objectclass=*)", searchControl);
-    if (resultEnum == null || !resultEnum.hasMoreElements())
-    {
-      context.unbind(removeObjectName);
-    }
-    else
-    { // recursively delete child objects
-      while (resultEnum.hasMoreElements())
-      {
-        SearchResult searchResult = resultEnum.nextElement();
-        if (searchResult != null)
-        {
-          String subObjectName = searchResult.getName();
-          if (subObjectName != null)
-          {
-            subObjectName = subObjectName.replaceAll("/", "\\\\/");
-            if (subObjectName.startsWith("\"")
-                    && subObjectName.endsWith("\""))
-            {
-              subObjectName = subObjectName.substring(1,
-                      subObjectName.length() - 1);
-            }
-            subObjectName = subObjectName + "," + removeObjectName;
-            removeObjectWithChilds(context, searchControl,
-                    subObjectName);
-          }
-        }
-      }
-      context.unbind(removeObjectName);
-    }
-  }
-
 }
@@ -27,15 +27,13 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.Vector;
 
-import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 import javax.swing.ButtonGroup;
@@ -53,10 +51,25 @@ import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableModel;
 
+import org.apache.commons.lang3.StringUtils;
+
 import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.FilterTemplate;
 import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
 import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
-import ch.ivyteam.ivy.ldap.beans.util.JndiUtil;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.PagedSearchEnumeration;
+import ch.ivyteam.ivy.ldap.beans.util.RangedAttributeReader;
+import ch.ivyteam.ivy.ldap.beans.util.ResultMode;
+import ch.ivyteam.ivy.ldap.beans.util.ResultSorter;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultCache;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultEnumeration;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
 import ch.ivyteam.ivy.persistence.PersistencyException;
 import ch.ivyteam.ivy.process.engine.IRequestId;
 import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
@@ -66,6 +79,7 @@ import ch.ivyteam.ivy.scripting.language.IIvyScriptContext;
 import ch.ivyteam.ivy.scripting.objects.CompositeObject;
 import ch.ivyteam.ivy.scripting.objects.List;
 import ch.ivyteam.ivy.scripting.objects.Recordset;
+import ch.ivyteam.log.Logger;
 /**
  * PI-Element to query LDAP-Servers
  * @author Reto Weiss
@@ -78,15 +92,19 @@ import ch.ivyteam.ivy.scripting.objects.Recordset;
  */
 public class LdapQueryBean extends AbstractUserProcessExtension
 {
+  private static final Logger LOGGER = Logger.getClassLogger(LdapQueryBean.class);
 
   /** Jndi server configuration */
   private JndiConfig jndiConfig;
 
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
   /** Maps the resulting jndi attribute names to ivyGrid attribute names */
   private Hashtable<String, String> resultAttributesHashtable = new Hashtable<>();
 
-  /** Filter attribute names */
-  private Hashtable<String, String> filterAttributesHashtable = new Hashtable<>();
+  /** Search filter compiled from the filter table or text */
+  private FilterTemplate filterTemplate = FilterTemplate.compile("");
 
   /** Jndi search control */
   private SearchControls searchControl = new SearchControls();
@@ -94,8 +112,14 @@ public class LdapQueryBean extends AbstractUserProcessExtension
   /** ivyGrid Attribute to store results in */
   private String ivyGridAttribute = null;
 
+  /** what the query returns */
+  private ResultMode resultMode = ResultMode.FIRST;
+
+  /** ivyGrid attribute to store the result of an exists or count query in */
+  private String countAttribute = "";
+
   /** The root object to begin search for */
-  private String rootObjectName;
+  private ConfigValue rootObjectName = ConfigValue.literal("");
 
   /** include jndi name to result */
   private boolean includeName;
@@ -106,6 +130,27 @@ public class LdapQueryBean extends AbstractUserProcessExtension
   /** To have an ordered list of the attribut names */
   private Vector<String> resultAttributesKeys = new Vector<>();
 
+  /** Number of entries per result page, 0 to disable paging */
+  private int pageSize = PagedSearchEnumeration.DEFAULT_PAGE_SIZE;
+
+  /** Seconds the search results are cached, 0 to disable the cache */
+  private int cacheTtl;
+
+  /** attributes to sort the result by */
+  private ConfigValue sortByAttribute = ConfigValue.literal("");
+
+  /** sort the result descending (and not ascending) */
+  private boolean descendingSort;
+
+  /** locale used to sort the result */
+  private Locale sortLocale = Locale.getDefault();
+
+  /** Number of result rows handed to the batch script at once, 0 to return the whole result */
+  private int batchSize;
+
+  /** Script executed for every batch of result rows */
+  private String batchScript;
+
   /**
    * Configuration editor for jndi query bean
    * 
@@ -170,9 +215,42 @@ public class LdapQueryBean extends AbstractUserProcessExtension
     /** return only first result redio button */
     private JRadioButton rbReturnOnlyFirst;
 
+    /** return only whether an object matches radio button */
+    private JRadioButton rbReturnExists;
+
+    /** return only the number of matching objects radio button */
+    private JRadioButton rbReturnCount;
+
+    /** ivy attribute to store the result of an exists or count query in */
+    private JTextField tfCountAttribute;
+
     /** the name of the root object to start the search at */
     private JTextField tfRootObjectName;
 
+    /** number of entries per result page */
+    private JTextField tfPageSize;
+
+    /** seconds the search results are cached */
+    private JTextField tfCacheTtl;
+
+    /** the names of the attributes to sort the result by */
+    private JTextField tfSortAttributeName;
+
+    /** sort result ascending radio button */
+    private JRadioButton rbSortAscending;
+
+    /** sort result descending radio button */
+    private JRadioButton rbSortDescending;
+
+    /** locale used to sort the result */
+    private JTextField tfSortLocale;
+
+    /** number of result rows per batch */
+    private JTextField tfBatchSize;
+
+    /** script executed for every batch */
+    private JTextField tfBatchScript;
+
     /** should jndi name be included in the result */
     private JCheckBox cbIncludeName;
 
@@ -260,6 +338,30 @@ public class LdapQueryBean extends AbstractUserProcessExtension
               GridBagConstraints.BOTH, GridBagConstraints.WEST, 1.0, 1.0,
               10, 10, 10, 10);
 
+      // page size
+      label = new JLabel(resBun.getString("search_page_size"));
+      AWTUtil.constrain(searchPanel, label, 0, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      tfPageSize = new JTextField(6);
+      tfPageSize.setText(Integer.toString(PagedSearchEnumeration.DEFAULT_PAGE_SIZE));
+      AWTUtil.constrain(searchPanel, tfPageSize, 1, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      // result cache
+      label = new JLabel(resBun.getString("search_cache_ttl"));
+      AWTUtil.constrain(searchPanel, label, 0, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      tfCacheTtl = new JTextField(6);
+      tfCacheTtl.setText("0");
+      AWTUtil.constrain(searchPanel, tfCacheTtl, 1, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
       tabbedPanel
               .add(resBun.getString("search_filter_pane"), searchPanel);
 
@@ -284,11 +386,25 @@ public class LdapQueryBean extends AbstractUserProcessExtension
               GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
               0.0, 0, 10, 0, 10);
 
+      rbReturnExists = new JRadioButton(resBun
+              .getString("search_result_return_exists"));
+      AWTUtil.constrain(resultPanel, rbReturnExists, 1, 2, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 0, 10, 0, 10);
+
+      rbReturnCount = new JRadioButton(resBun
+              .getString("search_result_return_count"));
+      AWTUtil.constrain(resultPanel, rbReturnCount, 1, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 0, 10, 0, 10);
+
       resultButtons.add(rbReturnOnlyFirst);
       resultButtons.add(dbReturnAll);
+      resultButtons.add(rbReturnExists);
+      resultButtons.add(rbReturnCount);
 
       label = new JLabel(resBun.getString("search_result"));
-      AWTUtil.constrain(resultPanel, label, 0, 2, 1, 1,
+      AWTUtil.constrain(resultPanel, label, 0, 4, 1, 1,
               GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
               0.0, 10, 10, 0, 10);
 
@@ -337,9 +453,70 @@ public class LdapQueryBean extends AbstractUserProcessExtension
               GridBagConstraints.BOTH, GridBagConstraints.WEST, 0.0, 0.0,
               0, 0, 0, 0);
 
+      label = new JLabel(resBun
+              .getString("search_result_sort_attribute_name"));
+      AWTUtil.constrain(allResultPanel, label, 0, 1, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 0, 0, 10);
+
+      tfSortAttributeName = new JTextField(30);
+      AWTUtil.constrain(allResultPanel, tfSortAttributeName, 1, 1, 1, 1,
+              GridBagConstraints.BOTH, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 0, 0, 0);
+
+      JPanel sortOrderPanel = new JPanel(new GridBagLayout());
+      ButtonGroup sortButtons = new ButtonGroup();
+      rbSortAscending = new JRadioButton(resBun
+              .getString("search_result_sort_ascending"));
+      rbSortAscending.setSelected(true);
+      AWTUtil.constrain(sortOrderPanel, rbSortAscending, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 2);
+
+      rbSortDescending = new JRadioButton(resBun
+              .getString("search_result_sort_descending"));
+      AWTUtil.constrain(sortOrderPanel, rbSortDescending, 1, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 2, 0, 0);
+      sortButtons.add(rbSortAscending);
+      sortButtons.add(rbSortDescending);
+      AWTUtil.constrain(allResultPanel, sortOrderPanel, 1, 2, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 0);
+
+      label = new JLabel(resBun.getString("search_result_sort_locale"));
+      AWTUtil.constrain(allResultPanel, label, 0, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 10);
+
+      tfSortLocale = new JTextField(10);
+      AWTUtil.constrain(allResultPanel, tfSortLocale, 1, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 0);
+
+      label = new JLabel(resBun.getString("search_result_batch_size"));
+      AWTUtil.constrain(allResultPanel, label, 0, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 0, 0, 10);
+
+      tfBatchSize = new JTextField(6);
+      AWTUtil.constrain(allResultPanel, tfBatchSize, 1, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              10, 0, 0, 0);
+
+      label = new JLabel(resBun.getString("search_result_batch_script"));
+      AWTUtil.constrain(allResultPanel, label, 0, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 10);
+
+      tfBatchScript = new JTextField(30);
+      AWTUtil.constrain(allResultPanel, tfBatchScript, 1, 5, 1, 1,
+              GridBagConstraints.BOTH, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 0);
+
       rbIncludeName2 = new JCheckBox(resBun
               .getString("search_result_include_name"));
-      AWTUtil.constrain(allResultPanel, rbIncludeName2, 0, 1, 2, 1,
+      AWTUtil.constrain(allResultPanel, rbIncludeName2, 0, 6, 2, 1,
               GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
               10, 0, 0, 0);
 
@@ -349,12 +526,25 @@ public class LdapQueryBean extends AbstractUserProcessExtension
       resultAttributeTable
               .setPreferredScrollableViewportSize(new Dimension(300, 200));
       scrollPane = new JScrollPane(resultAttributeTable);
-      AWTUtil.constrain(allResultPanel, scrollPane, 0, 2, 2, 1,
+      AWTUtil.constrain(allResultPanel, scrollPane, 0, 7, 2, 1,
               GridBagConstraints.BOTH, GridBagConstraints.WEST, 1.0, 1.0,
               10, 0, 0, 0);
       returnPanel.add("all", allResultPanel);
 
-      AWTUtil.constrain(resultPanel, returnPanel, 1, 2, 2, 1,
+      // result for exists and count queries
+      JPanel countResultPanel = new JPanel(new GridBagLayout());
+      label = new JLabel(resBun.getString("search_result_count_value"));
+      AWTUtil.constrain(countResultPanel, label, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0, 0.0,
+              0, 0, 0, 0);
+
+      tfCountAttribute = new JTextField(20);
+      AWTUtil.constrain(countResultPanel, tfCountAttribute, 1, 0, 1, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.NORTHWEST,
+              1.0, 1.0, 0, 10, 0, 0);
+      returnPanel.add("count", countResultPanel);
+
+      AWTUtil.constrain(resultPanel, returnPanel, 1, 4, 2, 1,
               GridBagConstraints.BOTH, GridBagConstraints.WEST, 1.0, 1.0,
               10, 10, 10, 10);
 
@@ -363,6 +553,8 @@ public class LdapQueryBean extends AbstractUserProcessExtension
 
       dbReturnAll.addActionListener(new AllActionListener());
       rbReturnOnlyFirst.addActionListener(new OnlyFirstActionListener());
+      rbReturnExists.addActionListener(new CountActionListener());
+      rbReturnCount.addActionListener(new CountActionListener());
     }
 
     /**
@@ -412,6 +604,7 @@ public class LdapQueryBean extends AbstractUserProcessExtension
               .isUseSsl()).toString());
       String defaultContext = jndiConfig.getDefaultContext();
       props.setProperty("server_context", defaultContext);
+      JndiConfigProperties.store(jndiConfig, props);
 
       props.setProperty("search_root_object", tfRootObjectName.getText());
 
@@ -427,6 +620,10 @@ public class LdapQueryBean extends AbstractUserProcessExtension
       {
         props.setProperty("search_scope", "subTree");
       }
+      props.setProperty("search_page_size", Integer.toString(
+              PagedSearchEnumeration.parsePageSize(tfPageSize.getText())));
+      props.setProperty("search_cache_ttl", Integer.toString(JndiConfigProperties
+              .parsePositiveInt(tfCacheTtl.getText(), 0)));
 
       TableModel model = filterTable.getModel();
       for (int pos = 0; pos < model.getRowCount(); pos++)
@@ -500,12 +697,21 @@ public class LdapQueryBean extends AbstractUserProcessExtension
               .getText().trim());
       if (dbReturnAll.isSelected())
       {
-        props.setProperty("result_return", "all");
+        props.setProperty("result_return", ResultMode.ALL.getConfigValue());
+      }
+      else if (rbReturnExists.isSelected())
+      {
+        props.setProperty("result_return", ResultMode.EXISTS.getConfigValue());
+      }
+      else if (rbReturnCount.isSelected())
+      {
+        props.setProperty("result_return", ResultMode.COUNT.getConfigValue());
       }
       else
       {
-        props.setProperty("result_return", "onylFirst");
+        props.setProperty("result_return", ResultMode.FIRST.getConfigValue());
       }
+      props.setProperty("result_count_attribute", tfCountAttribute.getText().trim());
 
       props.setProperty("result_include_name", new Boolean(cbIncludeName
               .isSelected()).toString());
@@ -513,6 +719,14 @@ public class LdapQueryBean extends AbstractUserProcessExtension
               rbIncludeName2.isSelected()).toString());
       props.setProperty("result_ivyGrid_name_attribute",
               tfIvyGridNameAttribute.getText().trim());
+      props.setProperty("result_sort_attribute", tfSortAttributeName
+              .getText().trim());
+      props.setProperty("result_sort_order",
+              rbSortDescending.isSelected() ? "descending" : "ascending");
+      props.setProperty("result_sort_locale", tfSortLocale.getText().trim());
+      props.setProperty("result_batch_size", Integer.toString(JndiConfigProperties
+              .parsePositiveInt(tfBatchSize.getText(), 0)));
+      props.setProperty("result_batch_script", tfBatchScript.getText().trim());
 
       return PropertyUtil.toRawString(props);
     }
@@ -566,6 +780,7 @@ public class LdapQueryBean extends AbstractUserProcessExtension
                 .booleanValue());
         jndiConfig.setDefaultContext(props.getProperty(
                 "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
         jndiConfigPanel.loadModel();
 
         tfRootObjectName.setText(props.getProperty(
@@ -584,6 +799,9 @@ public class LdapQueryBean extends AbstractUserProcessExtension
         {
           rbOneObject.setSelected(true);
         }
+        tfPageSize.setText(Integer.toString(PagedSearchEnumeration
+                .parsePageSize(props.getProperty("search_page_size"))));
+        tfCacheTtl.setText(props.getProperty("search_cache_ttl", "0"));
 
         pos = 0;
         model = new DefaultTableModel(filterTable.getModel()
@@ -655,16 +873,24 @@ public class LdapQueryBean extends AbstractUserProcessExtension
 
         tfIvyGridAttribute.setText(props.getProperty(
                 "result_ivyGrid_attribute", ""));
-        if ("all".equals(props.getProperty("result_return")))
+        ResultMode resultMode = ResultMode.parse(props.getProperty("result_return"));
+        if (resultMode == ResultMode.ALL)
         {
           dbReturnAll.setSelected(true);
           returnLayout.show(returnPanel, "all");
         }
+        else if (resultMode.isCountOnly())
+        {
+          rbReturnExists.setSelected(resultMode == ResultMode.EXISTS);
+          rbReturnCount.setSelected(resultMode == ResultMode.COUNT);
+          returnLayout.show(returnPanel, "count");
+        }
         else
         {
           rbReturnOnlyFirst.setSelected(true);
           returnLayout.show(returnPanel, "onlyFirst");
         }
+        tfCountAttribute.setText(props.getProperty("result_count_attribute", ""));
 
         cbIncludeName.setSelected(new Boolean(props.getProperty(
                 "result_include_name", Boolean.FALSE.toString()))
@@ -674,6 +900,19 @@ public class LdapQueryBean extends AbstractUserProcessExtension
                 .booleanValue());
         tfIvyGridNameAttribute.setText(props.getProperty(
                 "result_ivyGrid_name_attribute", ""));
+        tfSortAttributeName.setText(props.getProperty(
+                "result_sort_attribute", ""));
+        if ("descending".equals(props.getProperty("result_sort_order")))
+        {
+          rbSortDescending.setSelected(true);
+        }
+        else
+        {
+          rbSortAscending.setSelected(true);
+        }
+        tfSortLocale.setText(props.getProperty("result_sort_locale", ""));
+        tfBatchSize.setText(props.getProperty("result_batch_size", "0"));
+        tfBatchScript.setText(props.getProperty("result_batch_script", ""));
       }
       catch (IOException ex)
       {
@@ -734,6 +973,20 @@ public class LdapQueryBean extends AbstractUserProcessExtension
       }
     }
 
+    class CountActionListener implements ActionListener
+    {
+      /**
+       * Invoked when an action occurs.
+       * 
+       * @param e
+       */
+      @Override
+      public void actionPerformed(ActionEvent e)
+      {
+        returnLayout.show(returnPanel, "count");
+      }
+    }
+
   }
 
   /**
@@ -743,6 +996,7 @@ public class LdapQueryBean extends AbstractUserProcessExtension
   {
     jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
             JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
   }
 
   /**
@@ -756,99 +1010,56 @@ public class LdapQueryBean extends AbstractUserProcessExtension
   public CompositeObject perform(IRequestId reqID, CompositeObject argument,
           IIvyScriptContext cont) throws Exception
   {
-    NamingEnumeration<SearchResult> resultEnum = null;
-    DirContext dirContext = null;
-    Enumeration<String> attrEnum;
-    String value;
-    String filter = "";
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    SearchResultEnumeration resultEnum = null;
+    String filter;
     String objectName;
     SearchResult searchResult;
     Vector<Vector<Object>> result = null;
 
-    // Build search filter
-    attrEnum = filterAttributesHashtable.keys();
-    while (attrEnum.hasMoreElements())
-    {
-      String oldAttribute = attrEnum.nextElement();
-      String newAttribute = (String) getVariable(oldAttribute, cont);
-      value = filterAttributesHashtable.get(oldAttribute);
-      value = (String) getVariable(value, cont);
-      value = value.trim();
-      // if the filter value starts and ends with " I assume that this is
-      // a constant string
-      if (value.startsWith("\"") && value.endsWith("\""))
-      {
-        value = value.substring(1, value.length() - 1);
-      }
-      if (filter.length() == 0)
-      {
-        filter += "(&";
-      }
-      filter += "(";
-      filter += newAttribute + "=" + value;
-      filter += ")";
-    }
+    ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
 
-    if (filter.length() > 0)
-    {
-      filter += ")";
-    }
+    // Build search filter
+    filter = filterTemplate.format(values);
 
-    if (rootObjectName.trim().startsWith("\"")
-            && (rootObjectName.trim().endsWith("\"")))
-    {
-      objectName = rootObjectName.substring(1,
-              rootObjectName.length() - 1);
-    }
-    else
-    {
-      objectName = (String) getVariable(rootObjectName, cont);
-      if (objectName == null)
-      {
-        objectName = rootObjectName;
-      }
-    }
+    objectName = rootObjectName.resolveString(values);
 
-    JndiConfig expandedJndiConfig = (JndiConfig) jndiConfig.clone();
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
 
-    // try to expand url, name and password fields
-    String propStr = expandedJndiConfig.getUrl();
-    if (propStr != null)
+    SearchResultCache.Key cacheKey = null;
+    if (cacheTtl > 0)
     {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUrl(propStr);
-      }
+      cacheKey = new SearchResultCache.Key(expandedJndiConfig, objectName, filter, searchControl, null);
+      resultEnum = SearchResultCache.getInstance().lookup(cacheKey);
     }
-    propStr = expandedJndiConfig.getUserName();
-    if (propStr != null)
+
+    // query the naming and directory service
+    LdapConnection connection = null;
+    RangedAttributeReader rangedAttributes = new RangedAttributeReader(expandedJndiConfig);
+    try
     {
-      if (getVariable(propStr, cont) != null)
+      if (resultEnum == null)
       {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUserName(propStr);
+        connection = LdapConnectionManager.getInstance().borrow(expandedJndiConfig);
+        rangedAttributes.useConnectionOf(connection.getContext());
+        resultEnum = PagedSearchEnumeration.search(connection.getContext(),
+                objectName, filter, searchControl, pageSize);
+        if (cacheKey != null)
+        {
+          resultEnum = SearchResultCache.getInstance().record(cacheKey, resultEnum, cacheTtl);
+        }
       }
-    }
-    propStr = expandedJndiConfig.getPassword();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
+
+      if (resultMode.isCountOnly())
       {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setPassword(propStr);
+        setVariable(countAttribute, resultMode.evaluate(resultEnum), argument, cont);
+        return argument;
       }
-    }
-
-    try
-    {
-      // query the naming and directory service
-      // dirContext = new
-      // InitialDirContext(expandedJndiConfig.getEnvironement()); // this only
-      // works in Xivy version < 4.3.15
-      dirContext = JndiUtil.openDirContext(expandedJndiConfig);
-
-      resultEnum = dirContext.search(objectName, filter, searchControl);
 
       if (ivyGridAttribute != null)
       {
@@ -856,7 +1067,7 @@ public class LdapQueryBean extends AbstractUserProcessExtension
       }
 
       // read the result and assign them to the ivyGrid arguments
-      if (!resultEnum.hasMoreElements())
+      if (!resultEnum.hasMore())
       {
         // no result found! --> set output to null
         if (ivyGridAttribute == null)
@@ -885,11 +1096,25 @@ public class LdapQueryBean extends AbstractUserProcessExtension
         tableKeys.addAll(Collections.list(resultAttributesKeys.elements()));
 
         boolean onlyOneDone = false;
-        while (resultEnum.hasMoreElements() && !onlyOneDone)
+        while (!onlyOneDone && resultEnum.hasMore())
         {
-          searchResult = resultEnum.nextElement();
-          onlyOneDone = handleResult(searchResult, result, tableKeys, objectName, argument, cont);
+          searchResult = resultEnum.next();
+          onlyOneDone = handleResult(searchResult, result, tableKeys, objectName, argument, cont,
+                  rangedAttributes);
+          if (isBatchMode() && result.size() >= batchSize)
+          {
+            handleBatch(result, tableKeys, argument, cont);
+          }
+        }
+        if (isBatchMode())
+        {
+          if (!result.isEmpty())
+          {
+            handleBatch(result, tableKeys, argument, cont);
+          }
+          return argument;
         }
+        sortResult(result, tableKeys, values);
         Recordset resultRS = toRecordset(result, tableKeys);
         if (ivyGridAttribute != null)
         {
@@ -897,8 +1122,17 @@ public class LdapQueryBean extends AbstractUserProcessExtension
         }
       }
     }
+    catch (NamingException ex)
+    {
+      if (connection != null)
+      {
+        connection.invalidateOnConnectionError(ex);
+      }
+      throw ex;
+    }
     finally
     {
+      rangedAttributes.close();
       if (resultEnum != null)
       {
         try
@@ -907,25 +1141,29 @@ public class LdapQueryBean extends AbstractUserProcessExtension
         }
         catch (NamingException ex)
         {
+          LOGGER.debug("Could not close search result", ex);
+          if (connection != null)
+          {
+            connection.invalidateOnConnectionError(ex);
+          }
         }
       }
-      if (dirContext != null)
+      if (connection != null)
       {
-        try
-        {
-          dirContext.close();
-        }
-        catch (NamingException ex)
-        {
-        }
+        connection.close();
       }
     }
     return argument;
   }
 
+  /**
+   * Adds a search result as row or assigns it to the process attributes
+   * @return true if no more results are read
+   */
   private boolean handleResult(SearchResult searchResult,
           Vector<Vector<Object>> result, List<String> tableKeys,
-          String objectName, CompositeObject argument, IIvyScriptContext cont)
+          String objectName, CompositeObject argument, IIvyScriptContext cont,
+          RangedAttributeReader rangedAttributes)
           throws PersistencyException, NoSuchFieldException,
           IvyScriptException, NamingException
   {
@@ -956,20 +1194,11 @@ public class LdapQueryBean extends AbstractUserProcessExtension
         }
       }
       
-      Attributes jndiAttributes = searchResult.getAttributes();
       Enumeration<String> attrEnum = resultAttributesHashtable.keys();
       while (attrEnum.hasMoreElements())
       {
         String attribute = attrEnum.nextElement();
-        Attribute jndiAttribute;
-        if (jndiAttributes != null)
-        {
-          jndiAttribute = jndiAttributes.get(attribute);
-        }
-        else
-        {
-          jndiAttribute = null;
-        }
+        Attribute jndiAttribute = rangedAttributes.get(searchResult, attribute);
         if (jndiAttribute != null)
         {
           if (jndiAttribute.size() == 1)
@@ -986,7 +1215,6 @@ public class LdapQueryBean extends AbstractUserProcessExtension
             {
               setVariable(resultAttributesHashtable.get(attribute).toString(),
                       jndiAttribute.get(), argument, cont);
-              return true;
             }
           }
           else if (jndiAttribute.size() > 1)
@@ -1008,12 +1236,13 @@ public class LdapQueryBean extends AbstractUserProcessExtension
         }
       }
     }
-    return false;
+    // only the first result is assigned to the process attributes
+    return ivyGridAttribute == null;
   }
   
   private String getJndiName(SearchResult result, String objectName)
   {
-    if (rootObjectName.trim().equals(""))
+    if (rootObjectName.getText().trim().isEmpty())
     {
       return result.getName();
     }
@@ -1023,6 +1252,37 @@ public class LdapQueryBean extends AbstractUserProcessExtension
     }
   }
 
+  private boolean isBatchMode()
+  {
+    return batchSize > 0 && ivyGridAttribute != null;
+  }
+
+  /**
+   * Hands a batch of result rows to the process and runs the batch script.
+   * The rows are removed afterwards, so at most one batch is kept in memory.
+   */
+  private void handleBatch(Vector<Vector<Object>> result, List<String> tableKeys,
+          CompositeObject argument, IIvyScriptContext cont) throws NoSuchFieldException,
+          IvyScriptException, PersistencyException
+  {
+    setVariable(ivyGridAttribute, toRecordset(result, tableKeys), argument, cont);
+    result.clear();
+    if (StringUtils.isNotBlank(batchScript))
+    {
+      executeIvyScript(cont, batchScript);
+    }
+  }
+
+  private void sortResult(Vector<Vector<Object>> result, List<String> tableKeys, ValueResolver values)
+  {
+    if (result == null || StringUtils.isBlank(sortByAttribute.getText()))
+    {
+      return;
+    }
+    String sortSpec = sortByAttribute.resolveString(values);
+    new ResultSorter(ResultSorter.parse(sortSpec, descendingSort), tableKeys, sortLocale).sort(result);
+  }
+
   private Recordset toRecordset(Vector<Vector<Object>> result, List<String> tableKeys)
   {
     Recordset resultRS = new Recordset(tableKeys);
@@ -1107,12 +1367,10 @@ public class LdapQueryBean extends AbstractUserProcessExtension
               Boolean.FALSE.toString())).booleanValue());
       jndiConfig.setDefaultContext(props
               .getProperty("server_context", ""));
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
 
-      rootObjectName = props.getProperty("search_root_object", "");
-      if (rootObjectName.startsWith("in."))
-      {
-        rootObjectName = rootObjectName.substring(3);
-      }
+      rootObjectName = ConfigValue.parse(props.getProperty("search_root_object", ""));
 
       if ("subTree".equals(props.getProperty("search_scope", "")))
       {
@@ -1126,26 +1384,13 @@ public class LdapQueryBean extends AbstractUserProcessExtension
       {
         searchControl.setSearchScope(SearchControls.OBJECT_SCOPE);
       }
+      pageSize = PagedSearchEnumeration.parsePageSize(props.getProperty("search_page_size"));
+      cacheTtl = JndiConfigProperties.parsePositiveInt(props.getProperty("search_cache_ttl"), 0);
 
-      pos = 0;
-      do
-      {
-        attribute = props.getProperty("search_filter_attribute_" + pos,
-                null);
-        value = props.getProperty("search_filter_value_" + pos, null);
-        if ((attribute != null) && (value != null)
-                && (!attribute.equals("")))
-        {
-          if (value.startsWith("in."))
-          {
-            value = value.substring(3);
-          }
-          filterAttributesHashtable.put(attribute, value);
-        }
-        pos++;
-      } while ((attribute != null) && (value != null));
+      filterTemplate = FilterTemplate.compileAttributeTable(props);
 
-      if ("all".equals(props.getProperty("result_return")))
+      resultMode = ResultMode.parse(props.getProperty("result_return"));
+      if (resultMode == ResultMode.ALL)
       {
         ivyGridAttribute = props.getProperty(
                 "result_ivyGrid_attribute", "");
@@ -1170,7 +1415,7 @@ public class LdapQueryBean extends AbstractUserProcessExtension
           pos++;
         } while (attribute != null);
       }
-      else
+      else if (resultMode == ResultMode.FIRST)
       {
         pos = 0;
         do
@@ -1192,6 +1437,11 @@ public class LdapQueryBean extends AbstractUserProcessExtension
           pos++;
         } while ((attribute != null) && (value != null));
       }
+      countAttribute = props.getProperty("result_count_attribute", "").trim();
+      if (countAttribute.startsWith("in."))
+      {
+        countAttribute = countAttribute.substring(3);
+      }
       if (ivyGridAttribute == null)
       {
         includeName = new Boolean(props.getProperty(
@@ -1211,9 +1461,14 @@ public class LdapQueryBean extends AbstractUserProcessExtension
         ivyGridNameAttribute = ivyGridNameAttribute.substring(3);
       }
 
-      searchControl
-              .setReturningAttributes(resultAttributesHashtable
-                      .keySet().toArray(new String[0]));
+      sortByAttribute = ConfigValue.parseUnquoted(props.getProperty("result_sort_attribute", ""));
+      descendingSort = "descending".equals(props.getProperty("result_sort_order"));
+      sortLocale = ResultSorter.parseLocale(props.getProperty("result_sort_locale"));
+      batchSize = JndiConfigProperties.parsePositiveInt(props.getProperty("result_batch_size"), 0);
+      batchScript = props.getProperty("result_batch_script", "");
+
+      resultMode.configure(searchControl, resultAttributesHashtable
+              .keySet().toArray(new String[0]));
 
       // 31.10.2006 bb: set returningObjFlag to false. If it is true, the
       // dircontext.close() method
@@ -1246,15 +1501,13 @@ public class LdapQueryBean extends AbstractUserProcessExtension
   @Override
   public void start() throws Exception
   {
-    // TODO Auto-generated method stub
-
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
   }
 
   @Override
   public void stop() throws Exception
   {
-    // TODO Auto-generated method stub
-
+    LdapConnectionManager.getInstance().coolDown(this);
   }
 
   public Object getVariable(String name, IIvyScriptContext cont)
@@ -24,20 +24,25 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.ResourceBundle;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
 
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.SortControl;
+import javax.naming.ldap.SortKey;
+import javax.naming.ldap.SortResponseControl;
 import javax.swing.ButtonGroup;
 import javax.swing.JCheckBox;
 import javax.swing.JLabel;
@@ -52,10 +57,29 @@ import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableModel;
 
+import org.apache.commons.lang3.StringUtils;
+
 import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.AsyncExecutor;
+import ch.ivyteam.ivy.ldap.beans.util.AsyncHandle;
+import ch.ivyteam.ivy.ldap.beans.util.AttributeScopedQueryControl;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.FilterTemplate;
 import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
 import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
-import ch.ivyteam.ivy.ldap.beans.util.JndiUtil;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.PagedSearchEnumeration;
+import ch.ivyteam.ivy.ldap.beans.util.RangedAttributeReader;
+import ch.ivyteam.ivy.ldap.beans.util.ResultMode;
+import ch.ivyteam.ivy.ldap.beans.util.ResultSorter;
+import ch.ivyteam.ivy.ldap.beans.util.ResultSorter.SortAttribute;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultCache;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultEnumeration;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
 import ch.ivyteam.ivy.persistence.PersistencyException;
 import ch.ivyteam.ivy.process.engine.IRequestId;
 import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
@@ -65,6 +89,7 @@ import ch.ivyteam.ivy.scripting.language.IIvyScriptContext;
 import ch.ivyteam.ivy.scripting.objects.CompositeObject;
 import ch.ivyteam.ivy.scripting.objects.List;
 import ch.ivyteam.ivy.scripting.objects.Recordset;
+import ch.ivyteam.log.Logger;
 
 /**
  * PI-Element to query LDAP-Servers A variant from LdapQueryBean that returns
@@ -78,18 +103,22 @@ import ch.ivyteam.ivy.scripting.objects.Recordset;
  */
 public class LdapQueryBeanRS extends AbstractUserProcessExtension
 {
+  private static final Logger LOGGER = Logger.getClassLogger(LdapQueryBeanRS.class);
 
   /** Jndi server configuration */
   private JndiConfig jndiConfig;
 
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
   /** Maps the resulting jndi attribute names to ivyGrid attribute names */
   private Hashtable<String, String> resultAttributesHashtable = new Hashtable<>();
 
   /** To have an ordered list of the attribut names */
   private Vector<String> resultAttributesKeys = new Vector<>();
 
-  /** Filter attribute names */
-  private Hashtable<String, String> filterAttributesHashtable = new Hashtable<>();
+  /** Search filter compiled from the filter table or text */
+  private FilterTemplate filterTemplate = FilterTemplate.compile("");
 
   /** Jndi search control */
   private SearchControls searchControl = new SearchControls();
@@ -97,28 +126,65 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
   /** ivyGrid Attribute to store results in */
   private String ivyGridAttribute = null;
 
+  /** what the query returns */
+  private ResultMode resultMode = ResultMode.FIRST;
+
+  /** ivyGrid attribute to store the result of an exists or count query in */
+  private String countAttribute = "";
+
   /** The root object to begin search for */
-  private String rootObjectName;
+  private ConfigValue rootObjectName = ConfigValue.literal("");
 
   /** include jndi name to result */
   private boolean includeName;
 
-  /** any filter as text */
-  private String anyFilterText = null;
-
   /** ivyGrid attribute to store the jndi name in */
   private String ivyGridNameAttribute;
 
   /** attribute name to sort the result */
-  private String sortByAttribute;
+  private ConfigValue sortByAttribute = ConfigValue.literal("");
 
   /** sort the result descending (and not ascending) */
   private boolean descendingSort;
 
+  /** let the directory server sort the result (RFC 2891) */
+  private boolean serverSort;
+
+  /** locale used to sort the result on the client */
+  private Locale sortLocale = Locale.getDefault();
+
+  /** Number of result rows handed to the batch script at once, 0 to return the whole result */
+  private int batchSize;
+
+  /** Script executed for every batch of result rows */
+  private String batchScript;
+
+  /** Number of entries per result page, 0 to disable paging */
+  private int pageSize = PagedSearchEnumeration.DEFAULT_PAGE_SIZE;
+
+  /** Seconds the search results are cached, 0 to disable the cache */
+  private int cacheTtl;
+
+  /**
+   * DN valued attribute of the root object whose referenced entries are
+   * returned (attribute scoped query), empty for a normal search
+   */
+  private String asqAttribute = "";
+
+  /** how the search is run, see {@link AsyncExecutor} */
+  private AsyncExecutor.Mode asyncMode = AsyncExecutor.Mode.OFF;
+
+  /** Milliseconds an asynchronous search may take, 0 for {@link AsyncExecutor#DEFAULT_TIMEOUT_MILLIS} */
+  private int asyncTimeout;
+
+  /** ivyGrid attribute to store the {@link AsyncHandle} of an asynchronous search in */
+  private String asyncHandleAttribute = "";
+
   public LdapQueryBeanRS() throws Exception
   {
     jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
             JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
   }
 
   /**
@@ -167,12 +233,10 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
               Boolean.FALSE.toString())).booleanValue());
       jndiConfig.setDefaultContext(props
               .getProperty("server_context", ""));
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
 
-      rootObjectName = props.getProperty("search_root_object", "");
-      if (rootObjectName.startsWith("in."))
-      {
-        rootObjectName = rootObjectName.substring(3);
-      }
+      rootObjectName = ConfigValue.parse(props.getProperty("search_root_object", ""));
 
       if ("subTree".equals(props.getProperty("search_scope", "")))
       {
@@ -186,26 +250,24 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       {
         searchControl.setSearchScope(SearchControls.OBJECT_SCOPE);
       }
-
-      pos = 0;
-      do
+      pageSize = PagedSearchEnumeration.parsePageSize(props.getProperty("search_page_size"));
+      cacheTtl = JndiConfigProperties.parsePositiveInt(props.getProperty("search_cache_ttl"), 0);
+      asqAttribute = props.getProperty("search_asq_attribute", "").trim();
+      if (!asqAttribute.isEmpty())
       {
-        attribute = props.getProperty("search_filter_attribute_" + pos,
-                null);
-        value = props.getProperty("search_filter_value_" + pos, null);
-        if ((attribute != null) && (value != null)
-                && (!attribute.equals("")))
-        {
-          if (value.startsWith("in."))
-          {
-            value = value.substring(3);
-          }
-          filterAttributesHashtable.put(attribute, value);
-        }
-        pos++;
-      } while ((attribute != null) && (value != null));
+        // an attribute scoped query is always a base object search
+        searchControl.setSearchScope(SearchControls.OBJECT_SCOPE);
+      }
+      asyncMode = AsyncExecutor.Mode.parse(props.getProperty("search_async_mode"));
+      asyncTimeout = JndiConfigProperties.parsePositiveInt(props.getProperty("search_async_timeout"), 0);
+      asyncHandleAttribute = props.getProperty("search_async_handle", "").trim();
+      if (asyncHandleAttribute.startsWith("in."))
+      {
+        asyncHandleAttribute = asyncHandleAttribute.substring(3);
+      }
 
-      if ("all".equals(props.getProperty("result_return")))
+      resultMode = ResultMode.parse(props.getProperty("result_return"));
+      if (resultMode == ResultMode.ALL)
       {
         ivyGridAttribute = props.getProperty(
                 "result_ivyGrid_attribute", "");
@@ -226,7 +288,7 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
           pos++;
         } while (attribute != null);
       }
-      else
+      else if (resultMode == ResultMode.FIRST)
       {
         pos = 0;
         do
@@ -244,6 +306,11 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
           pos++;
         } while ((attribute != null) && (value != null));
       }
+      countAttribute = props.getProperty("result_count_attribute", "").trim();
+      if (countAttribute.startsWith("in."))
+      {
+        countAttribute = countAttribute.substring(3);
+      }
       if (ivyGridAttribute == null)
       {
         includeName = new Boolean(props.getProperty(
@@ -259,7 +326,11 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
 
       if ("filterText".equals(props.getProperty("search_filter_format")))
       {
-        anyFilterText = props.getProperty("search_filter_text");
+        filterTemplate = FilterTemplate.compile(props.getProperty("search_filter_text"));
+      }
+      else
+      {
+        filterTemplate = FilterTemplate.compileAttributeTable(props);
       }
 
       ivyGridNameAttribute = props.getProperty(
@@ -269,7 +340,7 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
         ivyGridNameAttribute = ivyGridNameAttribute.substring(3);
       }
 
-      sortByAttribute = props.getProperty("result_sort_attribute", "");
+      sortByAttribute = ConfigValue.parseUnquoted(props.getProperty("result_sort_attribute", ""));
 
       if ("descending".equals(props.getProperty("result_sort_order")))
       {
@@ -279,10 +350,13 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       {
         descendingSort = false;
       }
+      serverSort = Boolean.parseBoolean(props.getProperty("result_sort_server"));
+      sortLocale = ResultSorter.parseLocale(props.getProperty("result_sort_locale"));
+      batchSize = JndiConfigProperties.parsePositiveInt(props.getProperty("result_batch_size"), 0);
+      batchScript = props.getProperty("result_batch_script", "");
 
-      searchControl
-              .setReturningAttributes(resultAttributesHashtable
-                      .keySet().toArray(new String[0]));
+      resultMode.configure(searchControl, resultAttributesHashtable
+              .keySet().toArray(new String[0]));
 
       // 31.10.2006 bb: set returningObjFlag to false. If it is true, the
       // dircontext.close() method
@@ -318,6 +392,7 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
   @Override
   public void start() throws Exception
   {
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
   }
 
   /**
@@ -328,26 +403,71 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
   @Override
   public void stop() throws Exception
   {
+    LdapConnectionManager.getInstance().coolDown(this);
   }
 
   @Override
   public CompositeObject perform(IRequestId reqID, CompositeObject argument,
           IIvyScriptContext cont) throws Exception
   {
-    final String filter = buildSearchFilter(cont);
-    final String objectName = getRootObjectName(cont);
-    final JndiConfig expandedJndiConfig = createJndiConfig(cont);
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
 
-    DirContext dirContext = null;
-    NamingEnumeration<SearchResult> resultEnum = null;
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
+  {
+    final ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
+    final String filter = filterTemplate.format(values);
+    final String objectName = rootObjectName.resolveString(values);
+    final JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
+
+    final java.util.List<SortAttribute> sortAttributes = getSortAttributes(values);
+
+    final Control[] serverSortControls = createServerSortControls(sortAttributes);
+    final Control[] requestControls = addAttributeScopedQueryControl(serverSortControls);
+    final SearchResultCache.Key cacheKey = getCacheKey(expandedJndiConfig, objectName, filter,
+            sortAttributes, serverSortControls);
+
+    if (asyncMode == AsyncExecutor.Mode.HANDLE && ivyGridAttribute != null && !isBatchMode())
+    {
+      final boolean recordsetResult = isRecordsetResult(values);
+      AsyncExecutor executor = AsyncExecutor.getInstance();
+      CompletableFuture<Object> future = executor.submit(
+              () -> searchGrid(expandedJndiConfig, objectName, filter, sortAttributes,
+                      requestControls, cacheKey, recordsetResult),
+              asyncTimeout);
+      setVariable(asyncHandleAttribute, executor.handle(future), argument);
+      return argument;
+    }
+
+    SearchResultEnumeration resultEnum = null;
+    if (cacheKey != null)
+    {
+      resultEnum = SearchResultCache.getInstance().lookup(cacheKey);
+    }
+
+    // query the naming and directory service
+    LdapConnection connection = null;
+    RangedAttributeReader rangedAttributes = new RangedAttributeReader(expandedJndiConfig);
     try
     {
-      // query the naming and directory service
-      // dirContext = new
-      // InitialDirContext(expandedJndiConfig.getEnvironement()); // this only
-      // works in Xivy version < 4.3.15
-      dirContext = JndiUtil.openDirContext(expandedJndiConfig);
-      resultEnum = dirContext.search(objectName, filter, searchControl);
+      if (resultEnum == null)
+      {
+        connection = LdapConnectionManager.getInstance().borrow(expandedJndiConfig);
+        rangedAttributes.useConnectionOf(connection.getContext());
+        resultEnum = PagedSearchEnumeration.search(connection.getContext(),
+                objectName, filter, searchControl, pageSize, requestControls);
+        if (cacheKey != null)
+        {
+          resultEnum = SearchResultCache.getInstance().record(cacheKey, resultEnum, cacheTtl);
+        }
+      }
+
+      if (resultMode.isCountOnly())
+      {
+        setVariable(countAttribute, resultMode.evaluate(resultEnum), argument);
+        return argument;
+      }
 
       Vector<Vector<Object>> result = null;
       if (ivyGridAttribute != null)
@@ -356,33 +476,47 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       }
 
       // read the result and assign them to the ivyGrid arguments
-      if (resultEnum == null || !resultEnum.hasMoreElements())
+      if (resultEnum == null || !resultEnum.hasMore())
       {
         setNoResult(argument);
       }
       else
       {
-        Vector<Object> row = null;
-        while (resultEnum.hasMoreElements())
+        while (resultEnum.hasMore())
         {
-          SearchResult searchResult = resultEnum.nextElement();
-          appendSearchResultToRow(argument, objectName, searchResult, row);
+          SearchResult searchResult = resultEnum.next();
+          Vector<Object> row = appendSearchResultToRow(argument, objectName, searchResult,
+                  rangedAttributes);
           if (ivyGridAttribute == null)
           {
             return argument;
           }
-          if (result != null)
+          if (result != null && row != null)
           {
             result.add(row);
           }
+          if (isBatchMode() && result.size() >= batchSize)
+          {
+            handleBatch(result, values, cont, argument);
+          }
         }
       }
 
+      if (isBatchMode())
+      {
+        if (result != null && !result.isEmpty())
+        {
+          handleBatch(result, values, cont, argument);
+        }
+        return argument;
+      }
+
       if (ivyGridAttribute != null)
       {
-        if (Recordset.class.equals(getVariable(ivyGridAttribute, cont).getClass()))
+        if (isRecordsetResult(values))
         {
-          Recordset recordset = mapToRecordsetAttribute(cont, result);
+          boolean sortedByServer = isSortedByServer(resultEnum.getResponseControls());
+          Recordset recordset = mapToRecordsetAttribute(result, sortAttributes, sortedByServer);
           setVariable(ivyGridAttribute, recordset, argument);
         }
         else
@@ -391,133 +525,112 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
         }
       }
     }
+    catch (NamingException ex)
+    {
+      if (connection != null)
+      {
+        connection.invalidateOnConnectionError(ex);
+      }
+      throw ex;
+    }
     finally
     {
-      closeHandlesSilently(dirContext, resultEnum);
+      rangedAttributes.close();
+      closeHandlesSilently(connection, resultEnum);
     }
 
     return argument;
   }
 
-  private String buildSearchFilter(IIvyScriptContext cont)
+  private SearchResultCache.Key getCacheKey(JndiConfig expandedJndiConfig, String objectName,
+          String filter, java.util.List<SortAttribute> sortAttributes, Control[] serverSortControls)
   {
-    if (anyFilterText != null)
+    // the results of an attribute scoped query are the referenced entries,
+    // changes of them would not invalidate the cached search of the base
+    if (cacheTtl <= 0 || !asqAttribute.isEmpty())
     {
-      // expand ivy attributtes "in.x.." in the filter string
-      StringBuffer sb = new StringBuffer();
-      int at = anyFilterText.indexOf("in.");
-      int to = 0;
-      while (at >= 0)
-      {
-        sb.append(anyFilterText.substring(to, at));
-        to = anyFilterText.indexOf(")", at);
-        String attr = anyFilterText.substring(at + 3, to);
-        if (getVariable(attr, cont) != null)
-        {
-          // ivyGrid argument found. Get it an make string out of it
-          sb.append(getVariable(attr, cont).toString());
-        }
-        at = anyFilterText.indexOf("in.", to);
-      }
-      sb.append(anyFilterText.substring(to));
-      return sb.toString();
+      return null;
     }
-    else
+    String cacheOptions = serverSortControls.length > 0 ? "serverSort " + sortAttributes : null;
+    return new SearchResultCache.Key(expandedJndiConfig, objectName, filter, searchControl,
+            cacheOptions);
+  }
+
+  /**
+   * Searches and maps all results to a Recordset or list of rows. Does not
+   * touch the process data, so it can run in an {@link AsyncExecutor} thread.
+   * If it is cancelled there, the search and its connection are closed.
+   */
+  private Object searchGrid(JndiConfig expandedJndiConfig, String objectName, String filter,
+          java.util.List<SortAttribute> sortAttributes, Control[] requestControls,
+          SearchResultCache.Key cacheKey, boolean recordsetResult) throws NamingException,
+          NoSuchFieldException
+  {
+    SearchResultEnumeration resultEnum = null;
+    if (cacheKey != null)
     {
-      String filter = "";
-      Enumeration<String> attrEnum = filterAttributesHashtable.keys();
-      while (attrEnum.hasMoreElements())
-      {
-        String oldAttribute = attrEnum.nextElement();
-        String newAttribute = (String) getVariable(oldAttribute, cont);
-        String value = filterAttributesHashtable.get(oldAttribute);
-        value = (String) getVariable(value, cont);
-        value = value.trim();
-        // if the filter value starts and ends with " I assume that this is a constant string
-        if (value.startsWith("\"") && value.endsWith("\""))
-        {
-          value = value.substring(1, value.length() - 1);
-        }
-        else
+      resultEnum = SearchResultCache.getInstance().lookup(cacheKey);
+    }
+    LdapConnection connection = null;
+    RangedAttributeReader rangedAttributes = new RangedAttributeReader(expandedJndiConfig);
+    try
+    {
+      if (resultEnum == null)
+      {
+        connection = LdapConnectionManager.getInstance().borrow(expandedJndiConfig);
+        AsyncExecutor.onCancel(connection::abort);
+        rangedAttributes.useConnectionOf(connection.getContext());
+        resultEnum = PagedSearchEnumeration.search(connection.getContext(),
+                objectName, filter, searchControl, pageSize, requestControls);
+        if (cacheKey != null)
         {
-          // if the filter value does not start and ends with " I
-          // assume that this is the name of a
-          // ivyGrid argument -> try to resBunolve the value as ivyGrid argument
-          if (getVariable(value, cont) != null)
-          {
-            // ivyGrid argument found. Get it an make string out of
-            // it
-            value = getVariable(value, cont).toString();
-          }
-          // no ivyGrid argument found with the value as name --> use
-          // the value string itself
+          resultEnum = SearchResultCache.getInstance().record(cacheKey, resultEnum, cacheTtl);
         }
-        if (filter.length() == 0)
+        SearchResultEnumeration search = resultEnum;
+        AsyncExecutor.onCancel(() -> closeSilently(search));
+      }
+      Vector<Vector<Object>> result = new Vector<>();
+      while (resultEnum.hasMore())
+      {
+        Vector<Object> row = appendSearchResultToRow(null, objectName, resultEnum.next(),
+                rangedAttributes);
+        if (row != null)
         {
-          filter += "(&";
+          result.add(row);
         }
-        filter += "(";
-        filter += newAttribute + "=" + value;
-        filter += ")";
       }
-  
-      if (filter.length() > 0)
+      if (recordsetResult)
       {
-        filter += ")";
+        return mapToRecordsetAttribute(result, sortAttributes,
+                isSortedByServer(resultEnum.getResponseControls()));
       }
-      return filter;
+      return result;
     }
-  }
-
-  private String getRootObjectName(IIvyScriptContext cont)
-  {
-    if (rootObjectName.trim().startsWith("\"") && (rootObjectName.trim().endsWith("\"")))
-    {
-      return rootObjectName.substring(1, rootObjectName.length() - 1);
-    }
-    else
+    catch (NamingException ex)
     {
-      String objectName = (String) getVariable(rootObjectName, cont);
-      if (objectName == null)
+      if (connection != null)
       {
-        objectName = rootObjectName;
+        connection.invalidateOnConnectionError(ex);
       }
-      return objectName;
+      throw ex;
+    }
+    finally
+    {
+      rangedAttributes.close();
+      closeHandlesSilently(connection, resultEnum);
     }
   }
 
-  private JndiConfig createJndiConfig(IIvyScriptContext cont)
+  private static void closeSilently(SearchResultEnumeration search)
   {
-    JndiConfig expandedJndiConfig = (JndiConfig) jndiConfig.clone();
-    // try to expand url, name and password fields
-    String propStr = expandedJndiConfig.getUrl();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUrl(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getUserName();
-    if (propStr != null)
+    try
     {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUserName(propStr);
-      }
+      search.close();
     }
-    propStr = expandedJndiConfig.getPassword();
-    if (propStr != null)
+    catch (NamingException ex)
     {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setPassword(propStr);
-      }
+      LOGGER.debug("Could not close cancelled search", ex);
     }
-    return expandedJndiConfig;
   }
 
   private void setNoResult(CompositeObject argument) throws NoSuchFieldException
@@ -554,72 +667,133 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
     return colNames;
   }
 
-  private Recordset mapToRecordsetAttribute(IIvyScriptContext cont, Vector<Vector<Object>> result)
+  private boolean isBatchMode()
   {
-    if (result == null || result.size() == 0)
+    return batchSize > 0 && ivyGridAttribute != null;
+  }
+
+  /**
+   * Hands a batch of result rows to the process and runs the batch script.
+   * The rows are removed afterwards, so at most one batch is kept in memory.
+   * Batches are never sorted on the client, use the server side sort instead.
+   */
+  private void handleBatch(Vector<Vector<Object>> result, ValueResolver values,
+          IIvyScriptContext cont, CompositeObject argument) throws NoSuchFieldException,
+          IvyScriptException, PersistencyException
+  {
+    if (isRecordsetResult(values))
     {
-      return null;
+      setVariable(ivyGridAttribute, mapToRecordsetAttribute(result,
+              Collections.<SortAttribute>emptyList(), true), argument);
     }
-    
-    Vector<String> colNames = readColumnNames();
-    int sortCol = 0;
-    if (getVariable(sortByAttribute, cont) != null)
+    else
+    { // return as list[list]
+      setVariable(ivyGridAttribute, new Vector<>(result), argument);
+    }
+    result.clear();
+    if (StringUtils.isNotBlank(batchScript))
     {
-      sortByAttribute = getVariable(sortByAttribute, cont).toString();
+      executeIvyScript(cont, batchScript);
     }
-    if (sortByAttribute != null)
+  }
+
+  private boolean isRecordsetResult(ValueResolver values)
+  {
+    Object resultValue = values.resolve("in." + ivyGridAttribute, ivyGridAttribute);
+    return resultValue instanceof Recordset;
+  }
+
+  private java.util.List<SortAttribute> getSortAttributes(ValueResolver values)
+  {
+    String sortSpec = sortByAttribute.resolveString(values);
+    java.util.List<SortAttribute> sortAttributes = ResultSorter.parse(sortSpec, descendingSort);
+    if (sortAttributes.isEmpty())
     {
-      for (int c = 0; c < colNames.size(); c++)
+      // without a sort attribute the result has always been sorted by its first column
+      Vector<String> colNames = readColumnNames();
+      if (!colNames.isEmpty())
       {
-        if (sortByAttribute.equals(colNames.elementAt(c)))
-        {
-          sortCol = c;
-          break;
-        }
+        sortAttributes = Collections.singletonList(
+                new SortAttribute(colNames.firstElement(), descendingSort, null));
       }
     }
-    Object[][] data = new Object[result.size()][colNames.size()];
-    for (int r = 0; r < result.size(); r++)
+    return sortAttributes;
+  }
+
+  /**
+   * Creates the request control that lets the directory server sort the result
+   * @param sortAttributes attributes to sort by
+   * @return sort control or no control if server side sorting is not configured
+   *         or not possible for the given attributes
+   * @throws IOException if the control could not be encoded
+   */
+  private Control[] createServerSortControls(java.util.List<SortAttribute> sortAttributes) throws IOException
+  {
+    if (!serverSort || ivyGridAttribute == null || sortAttributes.isEmpty())
     {
-      Vector<Object> aRow = result.elementAt(r);
-      int insertAt = 0;
-      if (sortByAttribute == null)
-      {
-        insertAt = r;
-      }
-      else if (descendingSort)
+      return new Control[0];
+    }
+    SortKey[] sortKeys = new SortKey[sortAttributes.size()];
+    for (int pos = 0; pos < sortKeys.length; pos++)
+    {
+      SortAttribute sortAttribute = sortAttributes.get(pos);
+      if ("JNDIName".equals(sortAttribute.getName())
+              || sortAttribute.isNullsFirst() != sortAttribute.isDescending())
       {
-        while (insertAt < r
-                && aRow.elementAt(sortCol) != null
-                && data[insertAt][sortCol].toString()
-                        .compareToIgnoreCase(
-                                aRow.elementAt(sortCol)
-                                        .toString()) > 0)
-        {
-          insertAt++;
-        }
+        // the name is no attribute and the server can not order missing values
+        return new Control[0];
       }
-      else
-      { // ascending
-        while (insertAt < r
-                && aRow.elementAt(sortCol) != null
-                && data[insertAt][sortCol].toString()
-                        .compareToIgnoreCase(
-                                aRow.elementAt(sortCol)
-                                        .toString()) < 0)
-        {
-          insertAt++;
-        }
-      }
-      for (int c = 0; c < colNames.size(); c++)
+      sortKeys[pos] = new SortKey(sortAttribute.getName(), !sortAttribute.isDescending(), null);
+    }
+    // non critical: servers without sort support return the result unsorted
+    return new Control[] {new SortControl(sortKeys, Control.NONCRITICAL)};
+  }
+
+  /**
+   * Adds the attribute scoped query control if an attribute is configured.
+   * The control is critical: without it the server would return the root
+   * object itself.
+   */
+  private Control[] addAttributeScopedQueryControl(Control[] controls)
+  {
+    if (asqAttribute.isEmpty())
+    {
+      return controls;
+    }
+    Control[] withAsq = Arrays.copyOf(controls, controls.length + 1);
+    withAsq[controls.length] = new AttributeScopedQueryControl(asqAttribute, Control.CRITICAL);
+    return withAsq;
+  }
+
+  private static boolean isSortedByServer(Control[] responseControls)
+  {
+    if (responseControls == null)
+    {
+      return false;
+    }
+    for (Control control : responseControls)
+    {
+      if (control instanceof SortResponseControl)
       {
-        for (int shift = 0; insertAt < (r - shift); shift++)
-        {
-          data[r - shift][c] = data[r - shift - 1][c];
-        }
-        data[insertAt][c] = aRow.elementAt(c);
+        return ((SortResponseControl) control).isSorted();
       }
     }
+    return false;
+  }
+
+  private Recordset mapToRecordsetAttribute(Vector<Vector<Object>> result,
+          java.util.List<SortAttribute> sortAttributes, boolean sortedByServer)
+  {
+    if (result == null || result.size() == 0)
+    {
+      return null;
+    }
+    
+    Vector<String> colNames = readColumnNames();
+    if (!sortedByServer)
+    {
+      new ResultSorter(sortAttributes, colNames, sortLocale).sort(result);
+    }
 
     List<String> keyList = List.create(String.class);
     for (String object : colNames)
@@ -627,10 +801,10 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       keyList.add(object);
     }
     Recordset returnRS = new Recordset(keyList);
-    for (int j = 0; j < data.length; j++)
+    for (Vector<Object> row : result)
     {
       List<Object> valueList = List.create();
-      for (Object val : data[j])
+      for (Object val : row)
       {
         if (val != null)
           valueList.add(val);
@@ -641,15 +815,16 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
     return returnRS;
   }
 
-  private void appendSearchResultToRow(CompositeObject argument, String objectName,
-          SearchResult searchResult,
-          Vector<Object> row) throws NoSuchFieldException, NamingException
+  private Vector<Object> appendSearchResultToRow(CompositeObject argument, String objectName,
+          SearchResult searchResult, RangedAttributeReader rangedAttributes)
+          throws NoSuchFieldException, NamingException
   {
     if (searchResult == null)
     {
-      return;
+      return null;
     }
     
+    Vector<Object> row = null;
     if (ivyGridAttribute != null)
     {
       row = new Vector<>();
@@ -661,30 +836,40 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       addJndiName(argument, objectName, searchResult, row);
     }
     
-    Attributes jndiAttributes = searchResult.getAttributes();
     Enumeration<String> attrEnum = resultAttributesKeys.elements();
     while (attrEnum.hasMoreElements())
     {
       String resultAttrName = attrEnum.nextElement();
-      Attribute jndiAttribute = getJndiAttribute(jndiAttributes, resultAttrName);
+      Attribute jndiAttribute = rangedAttributes.get(searchResult, resultAttrName);
       appendAttributeEntry(argument, row, resultAttrName, jndiAttribute);
     }
+    return row;
   }
 
   private void addJndiName(CompositeObject argument, String objectName, SearchResult searchResult,
           Vector<Object> row) throws NoSuchFieldException
   {
-    String resultObjectName = searchResult.getName();
-    if (resultObjectName != null)
+    String resultObjectName;
+    if (!asqAttribute.isEmpty())
+    {
+      // the referenced entries are not below the root object
+      resultObjectName = searchResult.getNameInNamespace();
+      objectName = "";
+    }
+    else
     {
-      resultObjectName = resultObjectName.replaceAll(
-              "/", "\\\\/");
-      if (resultObjectName.startsWith("\"")
-              && resultObjectName.endsWith("\""))
+      resultObjectName = searchResult.getName();
+      if (resultObjectName != null)
       {
-        resultObjectName = resultObjectName
-                .substring(1, resultObjectName
-                        .length() - 1);
+        resultObjectName = resultObjectName.replaceAll(
+                "/", "\\\\/");
+        if (resultObjectName.startsWith("\"")
+                && resultObjectName.endsWith("\""))
+        {
+          resultObjectName = resultObjectName
+                  .substring(1, resultObjectName
+                          .length() - 1);
+        }
       }
     }
   
@@ -716,15 +901,6 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
     }
   }
 
-  private static Attribute getJndiAttribute(Attributes jndiAttributes, String resultAttrName)
-  {
-    if (jndiAttributes == null)
-    {
-      return null;
-    }
-    return jndiAttributes.get(resultAttrName);
-  }
-
   private void appendAttributeEntry(CompositeObject argument, Vector<Object> row, String resultAttrName,
           Attribute jndiAttribute) throws NamingException, NoSuchFieldException
   {
@@ -775,7 +951,7 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
     }
   }
 
-  private static void closeHandlesSilently(DirContext dirContext, NamingEnumeration<SearchResult> resultEnum)
+  private static void closeHandlesSilently(LdapConnection connection, NamingEnumeration<SearchResult> resultEnum)
   {
     if (resultEnum != null)
     {
@@ -785,17 +961,16 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       }
       catch (NamingException ex)
       {
+        LOGGER.debug("Could not close search result", ex);
+        if (connection != null)
+        {
+          connection.invalidateOnConnectionError(ex);
+        }
       }
     }
-    if (dirContext != null)
+    if (connection != null)
     {
-      try
-      {
-        dirContext.close();
-      }
-      catch (NamingException ex)
-      {
-      }
+      connection.close();
     }
   }
 
@@ -935,6 +1110,15 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
     /** return only first result redio button */
     private JRadioButton rbReturnOnlyFirst;
 
+    /** return only whether an object matches radio button */
+    private JRadioButton rbReturnExists;
+
+    /** return only the number of matching objects radio button */
+    private JRadioButton rbReturnCount;
+
+    /** ivy attribute to store the result of an exists or count query in */
+    private JTextField tfCountAttribute;
+
     /** the name of the root object to start the search at */
     private JTextField tfRootObjectName;
 
@@ -959,6 +1143,39 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
     /** the name of the attribute object to use for sorting */
     private JTextField tfSortAttributeName;
 
+    /** let the directory server sort the result */
+    private JCheckBox cbServerSort;
+
+    /** locale used to sort the result on the client */
+    private JTextField tfSortLocale;
+
+    /** number of result rows per batch */
+    private JTextField tfBatchSize;
+
+    /** script executed for every batch */
+    private JTextField tfBatchScript;
+
+    /** number of entries per result page */
+    private JTextField tfPageSize;
+
+    /** seconds the search results are cached */
+    private JTextField tfCacheTtl;
+
+    /** attribute of an attribute scoped query */
+    private JTextField tfAsqAttribute;
+
+    /** search in the process engine thread */
+    private JRadioButton rbAsyncOff;
+
+    /** search in an executor thread and store the future */
+    private JRadioButton rbAsyncHandle;
+
+    /** milliseconds an asynchronous search may take */
+    private JTextField tfAsyncTimeout;
+
+    /** attribute for the future of an asynchronous search */
+    private JTextField tfAsyncHandle;
+
     /**
      * Constructor for the Editor object
      */
@@ -1069,6 +1286,83 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
               GridBagConstraints.BOTH, GridBagConstraints.WEST, 1.0, 1.0,
               10, 10, 10, 10);
 
+      // page size
+      label = new JLabel(resBun.getString("search_page_size"));
+      AWTUtil.constrain(searchPanel, label, 0, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      tfPageSize = new JTextField(6);
+      tfPageSize.setText(Integer.toString(PagedSearchEnumeration.DEFAULT_PAGE_SIZE));
+      AWTUtil.constrain(searchPanel, tfPageSize, 1, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      // result cache
+      label = new JLabel(resBun.getString("search_cache_ttl"));
+      AWTUtil.constrain(searchPanel, label, 0, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      tfCacheTtl = new JTextField(6);
+      tfCacheTtl.setText("0");
+      AWTUtil.constrain(searchPanel, tfCacheTtl, 1, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      // attribute scoped query
+      label = new JLabel(resBun.getString("search_asq_attribute"));
+      AWTUtil.constrain(searchPanel, label, 0, 6, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      tfAsqAttribute = new JTextField(20);
+      AWTUtil.constrain(searchPanel, tfAsqAttribute, 1, 6, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      // asynchronous search
+      label = new JLabel(resBun.getString("search_async_mode"));
+      AWTUtil.constrain(searchPanel, label, 0, 7, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      ButtonGroup asyncButtons = new ButtonGroup();
+      rbAsyncOff = new JRadioButton(resBun.getString("search_async_mode_off"));
+      rbAsyncOff.setSelected(true);
+      AWTUtil.constrain(searchPanel, rbAsyncOff, 1, 7, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      rbAsyncHandle = new JRadioButton(resBun.getString("search_async_mode_handle"));
+      AWTUtil.constrain(searchPanel, rbAsyncHandle, 2, 7, 2, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      asyncButtons.add(rbAsyncOff);
+      asyncButtons.add(rbAsyncHandle);
+
+      label = new JLabel(resBun.getString("search_async_timeout"));
+      AWTUtil.constrain(searchPanel, label, 0, 8, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      tfAsyncTimeout = new JTextField(6);
+      tfAsyncTimeout.setText("0");
+      AWTUtil.constrain(searchPanel, tfAsyncTimeout, 1, 8, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      label = new JLabel(resBun.getString("search_async_handle"));
+      AWTUtil.constrain(searchPanel, label, 0, 9, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 10, 10, 10);
+
+      tfAsyncHandle = new JTextField(20);
+      AWTUtil.constrain(searchPanel, tfAsyncHandle, 1, 9, 3, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST, 1.0, 0.0,
+              0, 10, 10, 10);
+
       tabbedPanel
               .add(resBun.getString("search_filter_pane"), searchPanel);
 
@@ -1094,11 +1388,25 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
               GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
               0.0, 0, 10, 0, 10);
 
+      rbReturnExists = new JRadioButton(resBun
+              .getString("search_result_return_exists"));
+      AWTUtil.constrain(resultPanel, rbReturnExists, 1, 2, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 0, 10, 0, 10);
+
+      rbReturnCount = new JRadioButton(resBun
+              .getString("search_result_return_count"));
+      AWTUtil.constrain(resultPanel, rbReturnCount, 1, 3, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 0, 10, 0, 10);
+
       resultButtons.add(rbReturnOnlyFirst);
       resultButtons.add(dbReturnAll);
+      resultButtons.add(rbReturnExists);
+      resultButtons.add(rbReturnCount);
 
       label = new JLabel(resBun.getString("search_result"));
-      AWTUtil.constrain(resultPanel, label, 0, 2, 1, 1,
+      AWTUtil.constrain(resultPanel, label, 0, 4, 1, 1,
               GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
               0.0, 10, 10, 0, 10);
 
@@ -1176,9 +1484,45 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       sortButtons.add(rbSortAscending);
       sortButtons.add(rbSortDescending);
 
+      cbServerSort = new JCheckBox(resBun
+              .getString("search_result_sort_server"));
+      AWTUtil.constrain(allResultPanel, cbServerSort, 1, 3, 2, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0,
+              0.0, 0, 2, 0, 2);
+
+      label = new JLabel(resBun.getString("search_result_sort_locale"));
+      AWTUtil.constrain(allResultPanel, label, 0, 4, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 10);
+
+      tfSortLocale = new JTextField(10);
+      AWTUtil.constrain(allResultPanel, tfSortLocale, 1, 4, 1, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              0.0, 0.0, 0, 0, 0, 0);
+
+      label = new JLabel(resBun.getString("search_result_batch_size"));
+      AWTUtil.constrain(allResultPanel, label, 0, 5, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 10);
+
+      tfBatchSize = new JTextField(6);
+      AWTUtil.constrain(allResultPanel, tfBatchSize, 1, 5, 1, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              0.0, 0.0, 0, 0, 0, 0);
+
+      label = new JLabel(resBun.getString("search_result_batch_script"));
+      AWTUtil.constrain(allResultPanel, label, 0, 6, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.WEST, 0.0, 0.0,
+              0, 0, 0, 10);
+
+      tfBatchScript = new JTextField(20);
+      AWTUtil.constrain(allResultPanel, tfBatchScript, 1, 6, 2, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
+              0.0, 0.0, 0, 0, 0, 0);
+
       rbIncludeName2 = new JCheckBox(resBun
               .getString("search_result_include_name"));
-      AWTUtil.constrain(allResultPanel, rbIncludeName2, 0, 3, 3, 1,
+      AWTUtil.constrain(allResultPanel, rbIncludeName2, 0, 7, 3, 1,
               GridBagConstraints.HORIZONTAL, GridBagConstraints.WEST,
               0.0, 0.0, 10, 0, 0, 0);
 
@@ -1188,12 +1532,25 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       resultAttributeTable
               .setPreferredScrollableViewportSize(new Dimension(200, 200));
       scrollPane = new JScrollPane(resultAttributeTable);
-      AWTUtil.constrain(allResultPanel, scrollPane, 0, 4, 3, 1,
+      AWTUtil.constrain(allResultPanel, scrollPane, 0, 8, 3, 1,
               GridBagConstraints.BOTH, GridBagConstraints.WEST, 1.0, 1.0,
               10, 0, 0, 0);
       returnPanel.add("all", allResultPanel);
 
-      AWTUtil.constrain(resultPanel, returnPanel, 1, 2, 2, 1,
+      // result for exists and count queries
+      JPanel countResultPanel = new JPanel(new GridBagLayout());
+      label = new JLabel(resBun.getString("search_result_count_value"));
+      AWTUtil.constrain(countResultPanel, label, 0, 0, 1, 1,
+              GridBagConstraints.NONE, GridBagConstraints.NORTHWEST, 0.0, 0.0,
+              0, 0, 0, 0);
+
+      tfCountAttribute = new JTextField(20);
+      AWTUtil.constrain(countResultPanel, tfCountAttribute, 1, 0, 1, 1,
+              GridBagConstraints.HORIZONTAL, GridBagConstraints.NORTHWEST,
+              1.0, 1.0, 0, 10, 0, 0);
+      returnPanel.add("count", countResultPanel);
+
+      AWTUtil.constrain(resultPanel, returnPanel, 1, 4, 2, 1,
               GridBagConstraints.BOTH, GridBagConstraints.WEST, 1.0, 1.0,
               10, 10, 10, 10);
 
@@ -1202,6 +1559,8 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
 
       dbReturnAll.addActionListener(new AllActionListener());
       rbReturnOnlyFirst.addActionListener(new OnlyFirstActionListener());
+      rbReturnExists.addActionListener(new CountActionListener());
+      rbReturnCount.addActionListener(new CountActionListener());
     }
 
     /**
@@ -1253,6 +1612,7 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
                 .booleanValue());
         jndiConfig.setDefaultContext(props.getProperty(
                 "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
         jndiConfigPanel.loadModel();
 
         tfRootObjectName.setText(props.getProperty(
@@ -1284,6 +1644,15 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
           filterLayout.show(filterPanel, "filterTable");
         }
         filterText.setText(props.getProperty("search_filter_text"));
+        tfPageSize.setText(Integer.toString(PagedSearchEnumeration
+                .parsePageSize(props.getProperty("search_page_size"))));
+        tfCacheTtl.setText(props.getProperty("search_cache_ttl", "0"));
+        tfAsqAttribute.setText(props.getProperty("search_asq_attribute", ""));
+        AsyncExecutor.Mode asyncMode = AsyncExecutor.Mode.parse(props.getProperty("search_async_mode"));
+        rbAsyncOff.setSelected(asyncMode == AsyncExecutor.Mode.OFF);
+        rbAsyncHandle.setSelected(asyncMode == AsyncExecutor.Mode.HANDLE);
+        tfAsyncTimeout.setText(props.getProperty("search_async_timeout", "0"));
+        tfAsyncHandle.setText(props.getProperty("search_async_handle", ""));
 
         pos = 0;
         model = new DefaultTableModel(filterTable.getModel().getRowCount(), filterTable.getModel()
@@ -1358,16 +1727,24 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
         tfSortAttributeName.setText(props.getProperty(
                 "result_sort_attribute", ""));
 
-        if ("all".equals(props.getProperty("result_return")))
+        ResultMode resultMode = ResultMode.parse(props.getProperty("result_return"));
+        if (resultMode == ResultMode.ALL)
         {
           dbReturnAll.setSelected(true);
           returnLayout.show(returnPanel, "all");
         }
+        else if (resultMode.isCountOnly())
+        {
+          rbReturnExists.setSelected(resultMode == ResultMode.EXISTS);
+          rbReturnCount.setSelected(resultMode == ResultMode.COUNT);
+          returnLayout.show(returnPanel, "count");
+        }
         else
         {
           rbReturnOnlyFirst.setSelected(true);
           returnLayout.show(returnPanel, "onlyFirst");
         }
+        tfCountAttribute.setText(props.getProperty("result_count_attribute", ""));
 
         if ("descending".equals(props.getProperty("result_sort_order")))
         {
@@ -1377,6 +1754,11 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
         {
           rbSortAscending.setSelected(true);
         }
+        cbServerSort.setSelected(Boolean.parseBoolean(props
+                .getProperty("result_sort_server")));
+        tfSortLocale.setText(props.getProperty("result_sort_locale", ""));
+        tfBatchSize.setText(props.getProperty("result_batch_size", "0"));
+        tfBatchScript.setText(props.getProperty("result_batch_script", ""));
 
         cbIncludeName.setSelected(new Boolean(props.getProperty(
                 "result_include_name", Boolean.FALSE.toString()))
@@ -1458,6 +1840,7 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
               .isUseSsl()).toString());
       String defaultContext = jndiConfig.getDefaultContext();
       props.setProperty("server_context", defaultContext);
+      JndiConfigProperties.store(jndiConfig, props);
 
       props.setProperty("search_root_object", tfRootObjectName.getText());
 
@@ -1479,6 +1862,17 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
         props.setProperty("search_filter_format", "filterText");
       }
       props.setProperty("search_filter_text", filterText.getText());
+      props.setProperty("search_page_size", Integer.toString(
+              PagedSearchEnumeration.parsePageSize(tfPageSize.getText())));
+      props.setProperty("search_cache_ttl", Integer.toString(JndiConfigProperties
+              .parsePositiveInt(tfCacheTtl.getText(), 0)));
+      props.setProperty("search_asq_attribute", tfAsqAttribute.getText().trim());
+      AsyncExecutor.Mode asyncMode = rbAsyncHandle.isSelected() ? AsyncExecutor.Mode.HANDLE
+              : AsyncExecutor.Mode.OFF;
+      props.setProperty("search_async_mode", asyncMode.name().toLowerCase(Locale.ROOT));
+      props.setProperty("search_async_timeout", Integer.toString(
+              JndiConfigProperties.parsePositiveInt(tfAsyncTimeout.getText(), 0)));
+      props.setProperty("search_async_handle", tfAsyncHandle.getText().trim());
 
       TableModel model = filterTable.getModel();
       for (int pos = 0; pos < model.getRowCount(); pos++)
@@ -1556,12 +1950,21 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
 
       if (dbReturnAll.isSelected())
       {
-        props.setProperty("result_return", "all");
+        props.setProperty("result_return", ResultMode.ALL.getConfigValue());
+      }
+      else if (rbReturnExists.isSelected())
+      {
+        props.setProperty("result_return", ResultMode.EXISTS.getConfigValue());
+      }
+      else if (rbReturnCount.isSelected())
+      {
+        props.setProperty("result_return", ResultMode.COUNT.getConfigValue());
       }
       else
       {
-        props.setProperty("result_return", "onylFirst");
+        props.setProperty("result_return", ResultMode.FIRST.getConfigValue());
       }
+      props.setProperty("result_count_attribute", tfCountAttribute.getText().trim());
 
       if (rbSortDescending.isSelected())
       {
@@ -1571,6 +1974,12 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       {
         props.setProperty("result_sort_order", "ascending");
       }
+      props.setProperty("result_sort_server", Boolean.toString(cbServerSort
+              .isSelected()));
+      props.setProperty("result_sort_locale", tfSortLocale.getText().trim());
+      props.setProperty("result_batch_size", Integer.toString(JndiConfigProperties
+              .parsePositiveInt(tfBatchSize.getText(), 0)));
+      props.setProperty("result_batch_script", tfBatchScript.getText().trim());
 
       props.setProperty("result_include_name", new Boolean(cbIncludeName
               .isSelected()).toString());
@@ -1616,6 +2025,20 @@ public class LdapQueryBeanRS extends AbstractUserProcessExtension
       }
     }
 
+    class CountActionListener implements ActionListener
+    {
+      /**
+       * Invoked when an action occurs.
+       * 
+       * @param e
+       */
+      @Override
+      public void actionPerformed(ActionEvent e)
+      {
+        returnLayout.show(returnPanel, "count");
+      }
+    }
+
     class FilterTableActionListener implements ActionListener
     {
       /**
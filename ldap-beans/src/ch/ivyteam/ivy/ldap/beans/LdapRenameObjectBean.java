@@ -32,9 +32,16 @@ import javax.swing.JTabbedPane;
 import javax.swing.JTextField;
 
 import ch.ivyteam.awtExt.AWTUtil;
+import ch.ivyteam.ivy.ldap.beans.util.ConfigValue;
+import ch.ivyteam.ivy.ldap.beans.util.DynamicJndiConfig;
 import ch.ivyteam.ivy.ldap.beans.util.JndiConfig;
+import ch.ivyteam.ivy.ldap.beans.util.JndiConfigProperties;
 import ch.ivyteam.ivy.ldap.beans.util.JndiProvider;
-import ch.ivyteam.ivy.ldap.beans.util.JndiUtil;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnection;
+import ch.ivyteam.ivy.ldap.beans.util.LdapConnectionManager;
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics;
+import ch.ivyteam.ivy.ldap.beans.util.SearchResultCache;
+import ch.ivyteam.ivy.ldap.beans.util.ValueResolver;
 import ch.ivyteam.ivy.persistence.PersistencyException;
 import ch.ivyteam.ivy.process.engine.IRequestId;
 import ch.ivyteam.ivy.process.extension.impl.AbstractProcessExtensionConfigurationEditor;
@@ -62,11 +69,14 @@ public class LdapRenameObjectBean extends AbstractUserProcessExtension
   /** Jndi Configuration */
   private JndiConfig jndiConfig;
 
+  /** server configuration with classified url, user name and password */
+  private DynamicJndiConfig dynamicJndiConfig;
+
   /** object name */
-  private String objectName;
+  private ConfigValue objectName = ConfigValue.literal("");
 
   /** new object name */
-  private String newObjectName;
+  private ConfigValue newObjectName = ConfigValue.literal("");
 
   /**
    * Configuration editor for the jndi attribute modifier bean
@@ -182,6 +192,7 @@ public class LdapRenameObjectBean extends AbstractUserProcessExtension
               .isUseSsl()).toString());
       String defaultContext = jndiConfig.getDefaultContext();
       props.setProperty("server_context", defaultContext);
+      JndiConfigProperties.store(jndiConfig, props);
 
       props.setProperty("rename_name_oldObject", tfObjectName.getText().trim());
 
@@ -237,6 +248,7 @@ public class LdapRenameObjectBean extends AbstractUserProcessExtension
                 .booleanValue());
         jndiConfig.setDefaultContext(props.getProperty(
                 "server_context", ""));
+        JndiConfigProperties.load(jndiConfig, props);
         jndiConfigPanel.loadModel();
 
         tfObjectName.setText(props.getProperty("rename_name_oldObject", ""));
@@ -270,6 +282,7 @@ public class LdapRenameObjectBean extends AbstractUserProcessExtension
   {
     jndiConfig = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://",
             JndiConfig.AUTH_KIND_SIMPLE, "", "", false, false, "");
+    dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
   }
 
   /**
@@ -282,72 +295,28 @@ public class LdapRenameObjectBean extends AbstractUserProcessExtension
   @Override
   public CompositeObject perform(IRequestId reqID, CompositeObject argument,
           IIvyScriptContext cont) throws Exception
+  {
+    return OperationMetrics.getInstance().record(getClass(), () -> performOperation(argument, cont));
+  }
+
+  private CompositeObject performOperation(CompositeObject argument, IIvyScriptContext cont)
+          throws Exception
   {
     DirContext dirContext;
     String modifyObjectName;
     String newName;
 
-    if (objectName.trim().startsWith("\"")
-            && (objectName.trim().endsWith("\"")))
-    {
-      modifyObjectName = objectName.substring(1, objectName.length() - 1);
-    }
-    else
-    {
-      modifyObjectName = (String) getVariable(objectName, cont);
-      if (modifyObjectName == null)
-      {
-        modifyObjectName = objectName;
-      }
-    }
-
-    if (newObjectName.trim().startsWith("\"") && newObjectName.trim().endsWith("\""))
-    {
-      newName = newObjectName.substring(1, newObjectName.length() - 1);
-    }
-    else
-    {
-      newName = (String) getVariable(newObjectName, cont);
-      if (newName == null)
-      {
-        newName = newObjectName;
-      }
-    }
+    ValueResolver values = new ValueResolver(script -> executeIvyScript(cont, script));
+    modifyObjectName = objectName.resolveString(values);
+    newName = newObjectName.resolveString(values);
 
-    JndiConfig expandedJndiConfig = (JndiConfig) jndiConfig.clone();
-    // try to expand url, name and password fields
-    String propStr = expandedJndiConfig.getUrl();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUrl(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getUserName();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setUserName(propStr);
-      }
-    }
-    propStr = expandedJndiConfig.getPassword();
-    if (propStr != null)
-    {
-      if (getVariable(propStr, cont) != null)
-      {
-        propStr = (String) getVariable(propStr, cont);
-        expandedJndiConfig.setPassword(propStr);
-      }
-    }
+    JndiConfig expandedJndiConfig = dynamicJndiConfig.resolve(values);
 
     // query the naming and directory service
     // dirContext = new InitialDirContext(expandedJndiConfig.getEnvironement());
     // // this only works in Xivy version < 4.3.15
-    dirContext = JndiUtil.openDirContext(expandedJndiConfig);
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(expandedJndiConfig);
+    dirContext = connection.getContext();
     try
     {
       /*
@@ -357,20 +326,20 @@ public class LdapRenameObjectBean extends AbstractUserProcessExtension
        * "cn=Lager_AG_020,ou=Drucker,ou=Infrastruktur,ou=Informatik,DC=SNB,DC=CH"
        * ;
        */
+      long writeStart = System.nanoTime();
       dirContext.rename(modifyObjectName, newName);
+      OperationMetrics.write("rename", connection.getServerUrl(), modifyObjectName, writeStart);
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
     }
     finally
     {
-      if (dirContext != null)
-      {
-        try
-        {
-          dirContext.close();
-        }
-        catch (NamingException ex)
-        {
-        }
-      }
+      SearchResultCache.getInstance().invalidate(modifyObjectName);
+      SearchResultCache.getInstance().invalidate(newName);
+      connection.close();
     }
 
     return argument;
@@ -437,18 +406,12 @@ public class LdapRenameObjectBean extends AbstractUserProcessExtension
       jndiConfig.setPassword(props.getProperty("server_password", ""));
       jndiConfig.setUseSsl(new Boolean(props.getProperty("server_useSsl",
               Boolean.FALSE.toString())).booleanValue());
+      JndiConfigProperties.load(jndiConfig, props);
+      dynamicJndiConfig = new DynamicJndiConfig(jndiConfig);
 
-      objectName = props.getProperty("rename_name_oldObject", "");
-      if (objectName.startsWith("in."))
-      {
-        objectName = objectName.substring(3);
-      }
+      objectName = ConfigValue.parse(props.getProperty("rename_name_oldObject", ""));
 
-      newObjectName = props.getProperty("rename_name_newObject", "");
-      if (newObjectName.startsWith("in."))
-      {
-        newObjectName = newObjectName.substring(3);
-      }
+      newObjectName = ConfigValue.parse(props.getProperty("rename_name_newObject", ""));
 
     }
     catch (IOException ex)
@@ -472,15 +435,13 @@ public class LdapRenameObjectBean extends AbstractUserProcessExtension
   @Override
   public void start() throws Exception
   {
-    // TODO Auto-generated method stub
-
+    LdapConnectionManager.getInstance().warmUp(this, dynamicJndiConfig);
   }
 
   @Override
   public void stop() throws Exception
   {
-    // TODO Auto-generated method stub
-
+    LdapConnectionManager.getInstance().coolDown(this);
   }
 
   public Object getVariable(String name, IIvyScriptContext cont)
@@ -0,0 +1,340 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs directory operations of the beans outside of the process engine
+ * threads.
+ * <p>
+ * At most {@link #getMaxThreads()} operations run at the same time and at
+ * most {@link #getMaxQueued()} wait for a thread, further operations are
+ * rejected instead of piling up. On Java 21 and later the operations run on
+ * virtual threads.
+ * </p>
+ * <p>
+ * An operation that does not complete within its timeout, at most
+ * {@value #DEFAULT_TIMEOUT_MILLIS} ms if none is given, fails with a
+ * {@link TimeoutException}. It is interrupted and the actions it registered
+ * with {@link #onCancel(Runnable)} are run, e.g. to close the connection a
+ * blocking read waits on.
+ * </p>
+ * <p>
+ * The process engine has no way to resume a process when an operation
+ * completes. The beans therefore store a serializable {@link AsyncHandle} in
+ * the process data, which a later step uses to get the result. Results are
+ * kept for {@value #DEFAULT_RETENTION_MILLIS} ms after the operation
+ * completed.
+ * </p>
+ * <p>
+ * Only searches run asynchronously. The next steps of a process rely on the
+ * changes of the modifying beans, and their errors must reach the error
+ * handling of the process.
+ * </p>
+ * <p>
+ * The limits can be changed with the system properties
+ * <code>ch.ivyteam.ivy.ldap.beans.async.maxThreads</code>,
+ * <code>ch.ivyteam.ivy.ldap.beans.async.maxQueued</code> and
+ * <code>ch.ivyteam.ivy.ldap.beans.async.retentionMillis</code>.
+ * </p>
+ */
+public final class AsyncExecutor
+{
+  /** Timeout of operations submitted without one */
+  public static final int DEFAULT_TIMEOUT_MILLIS = 60000;
+  /** Default time the result of a completed operation is kept for its handle */
+  public static final int DEFAULT_RETENTION_MILLIS = 600000;
+
+  private static final AsyncExecutor INSTANCE = new AsyncExecutor(
+          Integer.getInteger("ch.ivyteam.ivy.ldap.beans.async.maxThreads", 32),
+          Integer.getInteger("ch.ivyteam.ivy.ldap.beans.async.maxQueued", 1000),
+          Integer.getInteger("ch.ivyteam.ivy.ldap.beans.async.retentionMillis", DEFAULT_RETENTION_MILLIS));
+
+  /** cancel actions of the operation running on the current thread */
+  private static final ThreadLocal<CancelActions> cancelActions = new ThreadLocal<>();
+
+  private final int maxThreads;
+  private final int maxQueued;
+  private final long retentionMillis;
+  private final ThreadPoolExecutor executor;
+  private final ScheduledThreadPoolExecutor timer;
+  /** operations with a handle by handle id */
+  private final Map<String, CompletableFuture<?>> handles = new ConcurrentHashMap<>();
+
+  AsyncExecutor(int maxThreads, int maxQueued, long retentionMillis)
+  {
+    this.maxThreads = Math.max(1, maxThreads);
+    this.maxQueued = Math.max(1, maxQueued);
+    this.retentionMillis = Math.max(0, retentionMillis);
+    executor = new ThreadPoolExecutor(this.maxThreads, this.maxThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(this.maxQueued), createThreadFactory("ldap-beans-async-"));
+    executor.allowCoreThreadTimeOut(true);
+    timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "ldap-beans-async-timeout");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Gets the executor shared by all beans
+   * @return executor
+   */
+  public static AsyncExecutor getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * Submits a directory operation. It is recorded as continuation of the
+   * operation of the calling thread (see {@link OperationMetrics#propagate(Callable)}).
+   * @param operation the operation
+   * @param timeoutMillis max milliseconds the operation may run including the
+   *          time it waits for a thread, 0 for {@value #DEFAULT_TIMEOUT_MILLIS}
+   * @return future of the operation result. Cancelling it stops the operation.
+   * @throws RejectedExecutionException if too many operations wait for a thread
+   */
+  public <T> CompletableFuture<T> submit(Callable<T> operation, long timeoutMillis)
+  {
+    long timeout = timeoutMillis > 0 ? timeoutMillis : DEFAULT_TIMEOUT_MILLIS;
+    Callable<T> recorded = OperationMetrics.propagate(operation);
+    CompletableFuture<T> result = new CompletableFuture<>();
+    CancelActions actions = new CancelActions();
+    Future<?> task = executor.submit(() -> {
+      cancelActions.set(actions);
+      try
+      {
+        result.complete(recorded.call());
+      }
+      catch (Throwable ex)
+      {
+        result.completeExceptionally(ex);
+      }
+      finally
+      {
+        cancelActions.remove();
+      }
+    });
+    ScheduledFuture<?> timeoutTask = timer.schedule(() -> {
+      result.completeExceptionally(new TimeoutException(
+              "Directory operation did not complete within " + timeout + " ms"));
+    }, timeout, TimeUnit.MILLISECONDS);
+    result.whenComplete((value, error) -> {
+      timeoutTask.cancel(false);
+      if (error != null)
+      {
+        // timed out or cancelled: stop the operation if it is still running.
+        // Interrupting does not stop every blocking read, the cancel actions
+        // close what the operation reads from.
+        task.cancel(true);
+        actions.run();
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Registers an action that stops the operation running on the current
+   * thread if it times out or is cancelled, e.g. closing its connection. Does
+   * nothing if the current thread does not run an operation of an executor.
+   * @param action the action, run by another thread than the operation
+   */
+  public static void onCancel(Runnable action)
+  {
+    CancelActions actions = cancelActions.get();
+    if (actions != null)
+    {
+      actions.add(action);
+    }
+  }
+
+  /**
+   * Creates a serializable handle to the result of an operation, which can be
+   * stored in the process data
+   * @param future future returned by {@link #submit(Callable, long)}
+   * @return handle
+   */
+  public AsyncHandle handle(CompletableFuture<?> future)
+  {
+    String id = UUID.randomUUID().toString();
+    handles.put(id, future);
+    future.whenComplete((value, error) -> timer.schedule(() -> handles.remove(id),
+            retentionMillis, TimeUnit.MILLISECONDS));
+    return new AsyncHandle(id, this);
+  }
+
+  /**
+   * @param id id of a handle
+   * @return the operation of the handle or null if its result is no longer kept
+   */
+  CompletableFuture<?> getOperation(String id)
+  {
+    return handles.get(id);
+  }
+
+  /**
+   * @return max number of operations running at the same time
+   */
+  public int getMaxThreads()
+  {
+    return maxThreads;
+  }
+
+  /**
+   * @return max number of operations waiting for a thread
+   */
+  public int getMaxQueued()
+  {
+    return maxQueued;
+  }
+
+  /**
+   * @return number of operations currently running
+   */
+  public int getActiveCount()
+  {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return number of operations currently waiting for a thread
+   */
+  public int getQueueLength()
+  {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Stops the threads. Used by tests.
+   */
+  void shutdown()
+  {
+    executor.shutdownNow();
+    timer.shutdownNow();
+  }
+
+  /**
+   * Creates a factory for virtual threads if the runtime supports them
+   * (Java 21), otherwise for daemon threads.
+   */
+  private static ThreadFactory createThreadFactory(String namePrefix)
+  {
+    try
+    {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+      Method factory = builderClass.getMethod("factory");
+      return (ThreadFactory) factory.invoke(builder);
+    }
+    catch (ReflectiveOperationException | RuntimeException ex)
+    {
+      AtomicInteger count = new AtomicInteger();
+      return runnable -> {
+        Thread thread = new Thread(runnable, namePrefix + count.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      };
+    }
+  }
+
+  /**
+   * Actions that stop a running operation
+   */
+  private static final class CancelActions
+  {
+    /** Guarded by this */
+    private final List<Runnable> actions = new ArrayList<>();
+    /** Guarded by this */
+    private boolean cancelled;
+
+    void add(Runnable action)
+    {
+      synchronized (this)
+      {
+        if (!cancelled)
+        {
+          actions.add(action);
+          return;
+        }
+      }
+      action.run();
+    }
+
+    void run()
+    {
+      List<Runnable> toRun;
+      synchronized (this)
+      {
+        cancelled = true;
+        toRun = new ArrayList<>(actions);
+        actions.clear();
+      }
+      // the last registered first, e.g. the search before its connection
+      Collections.reverse(toRun);
+      for (Runnable action : toRun)
+      {
+        try
+        {
+          action.run();
+        }
+        catch (RuntimeException ex)
+        {
+          // the remaining actions must still run
+        }
+      }
+    }
+  }
+
+  /**
+   * How a bean runs its directory operation
+   */
+  public enum Mode
+  {
+    /** in the process engine thread */
+    OFF,
+    /** in an executor thread, the bean stores an {@link AsyncHandle} and continues */
+    HANDLE;
+
+    /**
+     * Parses a configured mode. The former mode <code>wait</code>, which
+     * blocked the process engine thread as well, is run as {@link #OFF}.
+     * @param value configured mode
+     * @return mode, {@link #OFF} if not configured or unknown
+     */
+    public static Mode parse(String value)
+    {
+      if (value == null)
+      {
+        return OFF;
+      }
+      try
+      {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      }
+      catch (IllegalArgumentException ex)
+      {
+        return OFF;
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.io.Serializable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handle to the result of an asynchronous directory operation that a bean
+ * stores in the process data. A later step of the process gets the result
+ * with {@link #get(long)}, e.g. <code>in.users = in.searchHandle.get(5000)</code>.
+ * <p>
+ * The handle only holds an id, the result is kept by the
+ * {@link AsyncExecutor} of the engine for a limited time after the operation
+ * completed. After that or after a restart of the engine the result is lost
+ * and {@link #get(long)} fails.
+ * </p>
+ */
+public final class AsyncHandle implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+
+  private final String id;
+  /** executor that runs the operation, null after deserialization */
+  private transient AsyncExecutor executor;
+
+  AsyncHandle(String id, AsyncExecutor executor)
+  {
+    this.id = id;
+    this.executor = executor;
+  }
+
+  /**
+   * @return id of the operation
+   */
+  public String getId()
+  {
+    return id;
+  }
+
+  /**
+   * @return true if the operation completed, failed or its result is no
+   *         longer available
+   */
+  public boolean isDone()
+  {
+    CompletableFuture<?> operation = getOperation();
+    return operation == null || operation.isDone();
+  }
+
+  /**
+   * Gets the result of the operation, waits for it if it is still running
+   * @param timeoutMillis max milliseconds to wait
+   * @return the result
+   * @throws Exception the exception of the operation, a
+   *           {@link TimeoutException} if the operation or the wait timed out,
+   *           an {@link IllegalStateException} if the result is no longer
+   *           available
+   */
+  public Object get(long timeoutMillis) throws Exception
+  {
+    CompletableFuture<?> operation = getOperation();
+    if (operation == null)
+    {
+      throw new IllegalStateException("Result of asynchronous operation " + id + " is no longer available");
+    }
+    try
+    {
+      return operation.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    catch (ExecutionException ex)
+    {
+      Throwable cause = ex.getCause();
+      if (cause instanceof Exception)
+      {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error)
+      {
+        throw (Error) cause;
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Stops the operation if it is still running
+   * @return true if the operation was stopped
+   */
+  public boolean cancel()
+  {
+    CompletableFuture<?> operation = getOperation();
+    return operation != null && operation.completeExceptionally(new CancellationException(
+            "Asynchronous operation " + id + " cancelled"));
+  }
+
+  private CompletableFuture<?> getOperation()
+  {
+    if (executor == null)
+    {
+      executor = AsyncExecutor.getInstance();
+    }
+    return executor.getOperation(id);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "AsyncHandle[" + id + "]";
+  }
+}
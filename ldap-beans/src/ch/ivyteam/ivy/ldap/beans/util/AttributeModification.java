@@ -0,0 +1,107 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import javax.naming.directory.DirContext;
+
+/**
+ * One row of a batch modification: an attribute value to add, replace or
+ * remove on a jndi object.
+ * @see BatchModifier
+ */
+public final class AttributeModification
+{
+  private final String objectName;
+  private final String attribute;
+  private final Object value;
+  private final int operation;
+
+  /**
+   * Constructor
+   * @param objectName distinguished name of the object to modify
+   * @param attribute attribute name
+   * @param value value; a collection for several values, null for no value
+   *          (e.g. to remove all values of the attribute)
+   * @param operation {@link DirContext#ADD_ATTRIBUTE},
+   *          {@link DirContext#REPLACE_ATTRIBUTE} or
+   *          {@link DirContext#REMOVE_ATTRIBUTE}
+   */
+  public AttributeModification(String objectName, String attribute, Object value, int operation)
+  {
+    this.objectName = objectName;
+    this.attribute = attribute;
+    this.value = value;
+    this.operation = operation;
+  }
+
+  public String getObjectName()
+  {
+    return objectName;
+  }
+
+  public String getAttribute()
+  {
+    return attribute;
+  }
+
+  public Object getValue()
+  {
+    return value;
+  }
+
+  public int getOperation()
+  {
+    return operation;
+  }
+
+  /**
+   * Parses an operation name
+   * @param operation <code>add</code>, <code>replace</code> or
+   *          <code>remove</code> (case insensitive)
+   * @param defaultOperation operation used if the name is null or empty
+   * @return {@link DirContext} modification operation or -1 if the name is
+   *         unknown
+   */
+  public static int parseOperation(String operation, int defaultOperation)
+  {
+    if (operation == null || operation.trim().isEmpty())
+    {
+      return defaultOperation;
+    }
+    switch (operation.trim().toLowerCase())
+    {
+      case "add":
+        return DirContext.ADD_ATTRIBUTE;
+      case "replace":
+        return DirContext.REPLACE_ATTRIBUTE;
+      case "remove":
+        return DirContext.REMOVE_ATTRIBUTE;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Gets the name of an operation
+   * @param operation {@link DirContext} modification operation
+   * @return <code>add</code>, <code>replace</code> or <code>remove</code>
+   */
+  public static String toOperationName(int operation)
+  {
+    switch (operation)
+    {
+      case DirContext.ADD_ATTRIBUTE:
+        return "add";
+      case DirContext.REPLACE_ATTRIBUTE:
+        return "replace";
+      case DirContext.REMOVE_ATTRIBUTE:
+        return "remove";
+      default:
+        return Integer.toString(operation);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return toOperationName(operation) + " " + attribute + "=" + value + " on " + objectName;
+  }
+}
@@ -0,0 +1,63 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.naming.ldap.BasicControl;
+
+/**
+ * Attribute scoped query request control (Active Directory). A base object
+ * search with this control is not applied to the base entry but to the
+ * entries referenced by the given DN valued attribute of the base entry, e.g.
+ * to read the attributes of all members of a group with one search.
+ * <p>
+ * The control value is <code>SEQUENCE { sourceAttribute OCTET STRING }</code>.
+ * </p>
+ */
+public class AttributeScopedQueryControl extends BasicControl
+{
+  /** Object identifier of the control */
+  public static final String OID = "1.2.840.113556.1.4.1504";
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructor
+   * @param sourceAttribute DN valued attribute of the base entry, e.g.
+   *          <code>member</code>
+   * @param criticality true if the search must fail on servers that do not
+   *          support the control
+   */
+  public AttributeScopedQueryControl(String sourceAttribute, boolean criticality)
+  {
+    super(OID, criticality, encode(sourceAttribute));
+  }
+
+  static byte[] encode(String sourceAttribute)
+  {
+    byte[] attribute = sourceAttribute.getBytes(StandardCharsets.UTF_8);
+    byte[] octetString = tlv((byte) 0x04, attribute);
+    return tlv((byte) 0x30, octetString);
+  }
+
+  private static byte[] tlv(byte tag, byte[] content)
+  {
+    int length = content.length;
+    int lengthBytes = length < 0x80 ? 0 : length < 0x100 ? 1 : length < 0x10000 ? 2 : 3;
+    byte[] encoded = new byte[2 + lengthBytes + length];
+    encoded[0] = tag;
+    if (lengthBytes == 0)
+    {
+      encoded[1] = (byte) length;
+    }
+    else
+    {
+      encoded[1] = (byte) (0x80 | lengthBytes);
+      for (int pos = 0; pos < lengthBytes; pos++)
+      {
+        encoded[1 + lengthBytes - pos] = (byte) (length >> (8 * pos));
+      }
+    }
+    System.arraycopy(content, 0, encoded, 2 + lengthBytes, length);
+    return encoded;
+  }
+}
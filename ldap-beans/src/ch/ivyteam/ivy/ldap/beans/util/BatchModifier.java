@@ -0,0 +1,277 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+
+/**
+ * Applies many attribute modifications to a directory.
+ * <p>
+ * The rows are grouped by object, every object is modified with a single
+ * request containing all its modification items. The objects are shared by
+ * up to <code>parallelism</code> workers, each of them keeps one pooled
+ * connection for all objects it modifies. A failing object does not abort
+ * the batch, the error is reported for its rows.
+ * </p>
+ */
+public final class BatchModifier
+{
+  /** Number of parallel connections if not configured */
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  private final JndiConfig jndiConfig;
+  private final int parallelism;
+
+  /**
+   * Constructor
+   * @param jndiConfig server configuration
+   * @param parallelism max number of parallel connections. Limited by the max
+   *          pool size of the configuration.
+   */
+  public BatchModifier(JndiConfig jndiConfig, int parallelism)
+  {
+    this.jndiConfig = jndiConfig;
+    this.parallelism = Math.max(1, Math.min(parallelism, jndiConfig.getPoolMaxSize()));
+  }
+
+  /**
+   * Parses a configured parallelism
+   * @param value configured value
+   * @return parallelism, at least 1
+   */
+  public static int parseParallelism(String value)
+  {
+    if (value == null || value.trim().isEmpty())
+    {
+      return DEFAULT_PARALLELISM;
+    }
+    try
+    {
+      return Math.max(1, Integer.parseInt(value.trim()));
+    }
+    catch (NumberFormatException ex)
+    {
+      return DEFAULT_PARALLELISM;
+    }
+  }
+
+  /**
+   * Applies the modifications
+   * @param rows modifications
+   * @return for every row the error message or null if the row was applied
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public String[] modify(List<AttributeModification> rows) throws InterruptedException
+  {
+    String[] errors = new String[rows.size()];
+    List<ObjectModification> objects = group(rows, errors);
+    AtomicInteger next = new AtomicInteger();
+    int workers = Math.min(parallelism, objects.size());
+    if (workers <= 1)
+    {
+      work(objects, next, errors);
+      return errors;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(workers - 1, runnable -> {
+      Thread thread = new Thread(runnable, "ldap-beans-batch-modifier");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try
+    {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int worker = 1; worker < workers; worker++)
+      {
+        futures.add(executor.submit(() -> work(objects, next, errors)));
+      }
+      // the calling thread is a worker too
+      work(objects, next, errors);
+      for (Future<?> future : futures)
+      {
+        future.get();
+      }
+    }
+    catch (ExecutionException ex)
+    {
+      throw new IllegalStateException("Batch modification worker failed", ex.getCause());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+    return errors;
+  }
+
+  private void work(List<ObjectModification> objects, AtomicInteger next, String[] errors)
+  {
+    LdapConnection connection = null;
+    try
+    {
+      int index;
+      while ((index = next.getAndIncrement()) < objects.size())
+      {
+        ObjectModification object = objects.get(index);
+        try
+        {
+          if (connection == null)
+          {
+            connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+          }
+          long start = System.nanoTime();
+          connection.getContext().modifyAttributes(object.objectName, object.getItems());
+          OperationMetrics.write("modifyAttributes", connection.getServerUrl(), object.objectName, start);
+        }
+        catch (NamingException ex)
+        {
+          object.fail(errors, ex);
+          if (connection != null)
+          {
+            connection.invalidateOnConnectionError(ex);
+            if (!connection.isReusable())
+            {
+              connection.close();
+              connection = null;
+            }
+          }
+        }
+        catch (RuntimeException ex)
+        {
+          object.fail(errors, ex);
+        }
+        finally
+        {
+          SearchResultCache.getInstance().invalidate(object.objectName);
+        }
+      }
+    }
+    finally
+    {
+      if (connection != null)
+      {
+        connection.close();
+      }
+    }
+  }
+
+  /**
+   * Groups the rows by object. Values of rows with the same object, attribute
+   * and operation are merged into one modification item.
+   * @param rows modifications
+   * @param errors receives the errors of invalid rows
+   * @return modifications per object in the order of the rows
+   */
+  static List<ObjectModification> group(List<AttributeModification> rows, String[] errors)
+  {
+    Map<String, ObjectModification> objects = new LinkedHashMap<>();
+    for (int pos = 0; pos < rows.size(); pos++)
+    {
+      AttributeModification row = rows.get(pos);
+      if (isEmpty(row.getObjectName()))
+      {
+        errors[pos] = "No object name";
+        continue;
+      }
+      if (isEmpty(row.getAttribute()))
+      {
+        errors[pos] = "No attribute name";
+        continue;
+      }
+      if (row.getOperation() < DirContext.ADD_ATTRIBUTE || row.getOperation() > DirContext.REMOVE_ATTRIBUTE)
+      {
+        errors[pos] = "Unknown modification operation, expected add, replace or remove";
+        continue;
+      }
+      String objectName = row.getObjectName().trim();
+      ObjectModification object = objects.get(objectName);
+      if (object == null)
+      {
+        object = new ObjectModification(objectName);
+        objects.put(objectName, object);
+      }
+      object.add(pos, row);
+    }
+    return new ArrayList<>(objects.values());
+  }
+
+  private static boolean isEmpty(String value)
+  {
+    return value == null || value.trim().isEmpty();
+  }
+
+  private static String getMessage(Exception ex)
+  {
+    return ex.getMessage() != null ? ex.getMessage() : ex.getClass().getName();
+  }
+
+  /**
+   * All modifications of one object
+   */
+  static final class ObjectModification
+  {
+    final String objectName;
+    private final List<Integer> rows = new ArrayList<>();
+    private final Map<String, ModificationItem> items = new LinkedHashMap<>();
+
+    ObjectModification(String objectName)
+    {
+      this.objectName = objectName;
+    }
+
+    void add(int row, AttributeModification modification)
+    {
+      rows.add(row);
+      String attribute = modification.getAttribute().trim();
+      String key = modification.getOperation() + ":" + attribute.toLowerCase();
+      ModificationItem item = items.get(key);
+      if (item == null)
+      {
+        item = new ModificationItem(modification.getOperation(), new BasicAttribute(attribute));
+        items.put(key, item);
+      }
+      Object value = modification.getValue();
+      if (value instanceof Collection)
+      {
+        for (Object element : (Collection<?>) value)
+        {
+          item.getAttribute().add(element);
+        }
+      }
+      else if (value != null)
+      {
+        item.getAttribute().add(value);
+      }
+    }
+
+    ModificationItem[] getItems()
+    {
+      return items.values().toArray(new ModificationItem[items.size()]);
+    }
+
+    List<Integer> getRows()
+    {
+      return rows;
+    }
+
+    void fail(String[] errors, Exception ex)
+    {
+      String message = getMessage(ex);
+      for (int row : rows)
+      {
+        errors[row] = message;
+      }
+    }
+  }
+}
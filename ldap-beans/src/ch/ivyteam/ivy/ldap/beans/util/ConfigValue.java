@@ -0,0 +1,203 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+/**
+ * A configured bean value classified once when the configuration is set.
+ * <ul>
+ * <li>A value in double quotes is a constant.</li>
+ * <li>An attribute path with or without <code>in.</code> prefix, e.g.
+ * <code>in.user.name</code>, refers to process data. If the path can not be
+ * evaluated, e.g. because the process data has no such attribute, the path
+ * itself is used for this invocation. Every invocation evaluates the path
+ * again, a failure of one invocation does not change the later ones.</li>
+ * <li>Other values containing <code>in.</code>, e.g.
+ * <code>in.firstName + " " + in.lastName</code>, are ivy scripts.</li>
+ * <li>Everything else, e.g. <code>ldap://localhost:389</code>, is a
+ * constant.</li>
+ * </ul>
+ */
+public final class ConfigValue
+{
+  private static final String IN_PREFIX = "in.";
+
+  /** The kind of a configured value */
+  public enum Kind
+  {
+    /** constant value */
+    LITERAL,
+    /** process data attribute path */
+    PATH,
+    /** ivy script */
+    SCRIPT
+  }
+
+  private final Kind kind;
+  private final String text;
+  private final String expression;
+
+  private ConfigValue(Kind kind, String text, String expression)
+  {
+    this.kind = kind;
+    this.text = text;
+    this.expression = expression;
+  }
+
+  /**
+   * Classifies a configured value. Values in double quotes are constants.
+   * @param value configured value
+   * @return classified value
+   */
+  public static ConfigValue parse(String value)
+  {
+    if (value != null)
+    {
+      String trimmed = value.trim();
+      if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\""))
+      {
+        return literal(trimmed.substring(1, trimmed.length() - 1));
+      }
+    }
+    return parseUnquoted(value);
+  }
+
+  /**
+   * Classifies a configured value that has no constant syntax, e.g. a server
+   * url or password where quotes are part of the value
+   * @param value configured value
+   * @return classified value
+   */
+  public static ConfigValue parseUnquoted(String value)
+  {
+    if (value == null)
+    {
+      return literal(null);
+    }
+    String path = value.trim();
+    if (path.startsWith(IN_PREFIX))
+    {
+      path = path.substring(IN_PREFIX.length());
+    }
+    if (isPath(path))
+    {
+      return new ConfigValue(Kind.PATH, path, IN_PREFIX + path);
+    }
+    if (containsInPrefix(value))
+    {
+      return new ConfigValue(Kind.SCRIPT, value, value);
+    }
+    return literal(value);
+  }
+
+  /**
+   * Creates a constant value
+   * @param value constant
+   * @return value
+   */
+  public static ConfigValue literal(String value)
+  {
+    return new ConfigValue(Kind.LITERAL, value, null);
+  }
+
+  public Kind getKind()
+  {
+    return kind;
+  }
+
+  /**
+   * Gets the configured text: the constant without quotes, the attribute path
+   * without <code>in.</code> prefix or the script
+   * @return text
+   */
+  public String getText()
+  {
+    return text;
+  }
+
+  /**
+   * @return true if the value is a constant that needs no evaluation
+   */
+  public boolean isLiteral()
+  {
+    return kind == Kind.LITERAL;
+  }
+
+  /**
+   * Gets the value
+   * @param resolver resolver of the current invocation
+   * @return the constant, the value of the expression (may be null) or the
+   *         text if the expression can not be evaluated
+   */
+  public Object resolve(ValueResolver resolver)
+  {
+    return resolve(resolver, text);
+  }
+
+  /**
+   * Gets the value as string
+   * @param resolver resolver of the current invocation
+   * @return the value or the text if the value is null
+   */
+  public String resolveString(ValueResolver resolver)
+  {
+    Object value = resolve(resolver);
+    return value != null ? value.toString() : text;
+  }
+
+  /**
+   * Gets the value
+   * @param resolver resolver of the current invocation
+   * @param fallback returned if the expression can not be evaluated
+   * @return the constant, the value of the expression (may be null) or the
+   *         fallback
+   */
+  Object resolve(ValueResolver resolver, Object fallback)
+  {
+    if (kind == Kind.LITERAL)
+    {
+      return text;
+    }
+    // the resolver remembers a failure only for the current invocation
+    return resolver.resolve(expression, fallback);
+  }
+
+  static boolean isPath(String value)
+  {
+    if (value.isEmpty() || !Character.isJavaIdentifierStart(value.charAt(0)) || value.endsWith("."))
+    {
+      return false;
+    }
+    for (int pos = 1; pos < value.length(); pos++)
+    {
+      char ch = value.charAt(pos);
+      if (ch == '.' ? value.charAt(pos - 1) == '.' : !Character.isJavaIdentifierPart(ch))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean isPathPart(char ch)
+  {
+    return Character.isJavaIdentifierPart(ch) || ch == '.';
+  }
+
+  private static boolean containsInPrefix(String value)
+  {
+    int at = value.indexOf(IN_PREFIX);
+    while (at >= 0)
+    {
+      if (at == 0 || !isPathPart(value.charAt(at - 1)))
+      {
+        return true;
+      }
+      at = value.indexOf(IN_PREFIX, at + 1);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString()
+  {
+    return kind + "[" + text + "]";
+  }
+}
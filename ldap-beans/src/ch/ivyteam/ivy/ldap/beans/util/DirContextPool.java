@@ -0,0 +1,496 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * A bounded pool of ldap contexts that were all opened with the same jndi
+ * configuration. Idle contexts are closed after the idle timeout, contexts
+ * older than the max lifetime are never handed out again and an idle context
+ * is validated before it is borrowed.
+ * <p>
+ * If the configuration lists several servers, every borrow asks the
+ * {@link ServerSelector} for the servers to use and hands out an idle context
+ * of the first one, or opens a new context to it. Servers that can not be
+ * reached are reported to their {@link ServerHealth} and the next server is
+ * tried.
+ * </p>
+ * <p>
+ * While a bean that uses the pool runs, the pool is warm: it keeps at least
+ * {@link JndiConfig#getPoolMinIdle()} idle contexts open, so the first
+ * requests do not pay the connect and bind costs. Idle contexts are probed
+ * with a read of their base entry by the maintenance of the
+ * {@link LdapConnectionManager}, so dead sockets are closed before they are
+ * borrowed.
+ * </p>
+ * @see LdapConnectionManager
+ */
+class DirContextPool
+{
+  /** Contexts used more recently than this are handed out without validation */
+  private static final long VALIDATION_GRACE_MILLIS = 1000;
+
+  private static final String[] NO_ATTRIBUTES = new String[] {"1.1"};
+
+  private final JndiConfig jndiConfig;
+  private final long idleTimeoutMillis;
+  private final long maxLifetimeMillis;
+  private final int maxSize;
+  private final int minIdle;
+  private final Semaphore permits;
+  /** number of running beans that keep this pool warm */
+  private final AtomicInteger warmUsers = new AtomicInteger();
+
+  /** idle contexts, the most recently used first. Guarded by this. */
+  private final Deque<PooledContext> idle = new ArrayDeque<>();
+  private volatile boolean closed;
+
+  DirContextPool(JndiConfig jndiConfig)
+  {
+    this.jndiConfig = (JndiConfig) jndiConfig.clone();
+    this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(0, jndiConfig.getPoolIdleTimeout()));
+    this.maxLifetimeMillis = TimeUnit.SECONDS.toMillis(Math.max(0, jndiConfig.getPoolMaxLifetime()));
+    this.maxSize = Math.max(1, jndiConfig.getPoolMaxSize());
+    this.minIdle = Math.min(maxSize, Math.max(0, jndiConfig.getPoolMinIdle()));
+    this.permits = new Semaphore(maxSize, true);
+  }
+
+  /**
+   * Borrows a context from the pool. Opens a new one if no valid idle context
+   * is available. Blocks if all contexts of this pool are borrowed.
+   * @param timeoutMillis max time to wait for a free context
+   * @return connection that must be closed after use or null if the pool was
+   *         closed, borrow from a new pool then
+   * @throws NamingException if no context could be opened or the pool is exhausted
+   */
+  LdapConnection borrow(long timeoutMillis) throws NamingException
+  {
+    acquirePermit(timeoutMillis);
+    synchronized (this)
+    {
+      // see closeIfUnused
+      if (closed)
+      {
+        permits.release();
+        return null;
+      }
+    }
+    try
+    {
+      NamingException lastError = null;
+      for (String server : ServerSelector.select(jndiConfig))
+      {
+        PooledContext context;
+        while ((context = pollIdle(server)) != null)
+        {
+          long now = System.currentTimeMillis();
+          if (!isExpired(context, now) && isValid(context, now))
+          {
+            return new LdapConnection(this, context);
+          }
+          context.destroy();
+        }
+        try
+        {
+          return new LdapConnection(this, open(server));
+        }
+        catch (NamingException ex)
+        {
+          if (!LdapConnection.isConnectionError(ex))
+          {
+            throw ex;
+          }
+          lastError = ex;
+        }
+      }
+      if (lastError != null)
+      {
+        throw lastError;
+      }
+      throw new ServiceUnavailableException("No server of " + jndiConfig.getUrl() + " is available");
+    }
+    catch (NamingException | RuntimeException ex)
+    {
+      permits.release();
+      throw ex;
+    }
+  }
+
+  /**
+   * Reports a connection error of a borrowed context
+   * @param context the context
+   */
+  void connectionFailed(PooledContext context)
+  {
+    ServerHealth.get(context.server).recordFailure(jndiConfig);
+  }
+
+  /**
+   * Gives a borrowed context back to the pool
+   * @param context the context
+   * @param reusable false if the context must not be used anymore
+   */
+  void giveBack(PooledContext context, boolean reusable)
+  {
+    try
+    {
+      long now = System.currentTimeMillis();
+      boolean kept = false;
+      if (reusable && !closed && !isExpired(context, now) && context.reset())
+      {
+        context.lastUsed = now;
+        synchronized (this)
+        {
+          // contexts of several servers must not exceed the pool size
+          if (idle.size() < maxSize)
+          {
+            idle.addFirst(context);
+            kept = true;
+          }
+        }
+      }
+      if (!kept)
+      {
+        context.destroy();
+      }
+    }
+    finally
+    {
+      permits.release();
+    }
+  }
+
+  /**
+   * Closes idle contexts that exceeded their idle timeout or max lifetime. A
+   * warm pool keeps its min idle contexts regardless of the idle timeout.
+   */
+  void evict()
+  {
+    long now = System.currentTimeMillis();
+    int keepIdle = isWarm() ? minIdle : 0;
+    List<PooledContext> evicted = new ArrayList<>();
+    synchronized (this)
+    {
+      int kept = 0;
+      Iterator<PooledContext> iterator = idle.iterator();
+      while (iterator.hasNext())
+      {
+        PooledContext context = iterator.next();
+        if (isExpired(context, now) || (now - context.lastUsed > idleTimeoutMillis && kept >= keepIdle))
+        {
+          iterator.remove();
+          evicted.add(context);
+        }
+        else
+        {
+          kept++;
+        }
+      }
+    }
+    for (PooledContext context : evicted)
+    {
+      context.destroy();
+    }
+  }
+
+  /**
+   * Probes the idle contexts that were not used recently and closes the dead ones
+   */
+  void keepAlive()
+  {
+    long now = System.currentTimeMillis();
+    List<PooledContext> probed = new ArrayList<>();
+    synchronized (this)
+    {
+      // probe outside of the lock, borrowers must not get a context that is probed
+      Iterator<PooledContext> iterator = idle.iterator();
+      while (iterator.hasNext())
+      {
+        PooledContext context = iterator.next();
+        if (now - context.lastUsed >= VALIDATION_GRACE_MILLIS)
+        {
+          iterator.remove();
+          probed.add(context);
+        }
+      }
+    }
+    for (PooledContext context : probed)
+    {
+      if (isValid(context, now))
+      {
+        addIdle(context);
+      }
+      else
+      {
+        connectionFailed(context);
+        context.destroy();
+      }
+    }
+  }
+
+  /**
+   * Opens new contexts until the pool has its min idle contexts. Stops at the
+   * first server that can not be reached, the next run tries again.
+   */
+  void fill()
+  {
+    while (!closed && getIdleCount() < minIdle)
+    {
+      List<String> servers = ServerSelector.select(jndiConfig);
+      if (servers.isEmpty())
+      {
+        return;
+      }
+      try
+      {
+        addIdle(open(servers.get(0)));
+      }
+      catch (NamingException ex)
+      {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Keeps the pool warm while a bean that uses it runs
+   */
+  void addWarmUser()
+  {
+    warmUsers.incrementAndGet();
+  }
+
+  /**
+   * Called when a bean that kept the pool warm stops
+   */
+  void removeWarmUser()
+  {
+    warmUsers.decrementAndGet();
+  }
+
+  boolean isWarm()
+  {
+    return warmUsers.get() > 0;
+  }
+
+  /**
+   * Closes all idle contexts. Borrowed contexts are closed when they are given back.
+   */
+  void close()
+  {
+    closed = true;
+    List<PooledContext> contexts;
+    synchronized (this)
+    {
+      contexts = new ArrayList<>(idle);
+      idle.clear();
+    }
+    for (PooledContext context : contexts)
+    {
+      context.destroy();
+    }
+  }
+
+  /**
+   * Closes the pool if it is not used. A borrower that got the pool before
+   * and takes its permit afterwards sees the pool closed.
+   * @return true if the pool was closed
+   */
+  boolean closeIfUnused()
+  {
+    synchronized (this)
+    {
+      if (!isUnused())
+      {
+        return false;
+      }
+      closed = true;
+    }
+    close();
+    return true;
+  }
+
+  synchronized int getIdleCount()
+  {
+    return idle.size();
+  }
+
+  boolean isUnused()
+  {
+    return !isWarm() && getIdleCount() == 0 && permits.availablePermits() == maxSize;
+  }
+
+  private void acquirePermit(long timeoutMillis) throws NamingException
+  {
+    try
+    {
+      if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+      {
+        throw new ServiceUnavailableException("All " + jndiConfig.getPoolMaxSize()
+                + " pooled connections to " + jndiConfig.getUrl() + " are in use");
+      }
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Interrupted while waiting for a pooled connection to "
+              + jndiConfig.getUrl());
+    }
+  }
+
+  /**
+   * Opens a new context to a server. The time the connect and bind took and
+   * connection errors are reported to the health of the server.
+   */
+  private PooledContext open(String server) throws NamingException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      LdapContext context = JndiUtil.openLdapContext(jndiConfig, server);
+      ServerHealth.get(server).recordSuccess(System.nanoTime() - start);
+      return new PooledContext(context, server);
+    }
+    catch (NamingException ex)
+    {
+      if (LdapConnection.isConnectionError(ex))
+      {
+        ServerHealth.get(server).recordFailure(jndiConfig);
+      }
+      throw ex;
+    }
+    finally
+    {
+      OperationMetrics.phase(OperationMetrics.Phase.OPEN, start);
+    }
+  }
+
+  /**
+   * Adds a context that is not borrowed to the idle contexts, closes it if
+   * the pool is closed or full
+   */
+  private void addIdle(PooledContext context)
+  {
+    synchronized (this)
+    {
+      if (!closed && idle.size() < maxSize)
+      {
+        // behind the recently used contexts, so they are borrowed first
+        idle.addLast(context);
+        return;
+      }
+    }
+    context.destroy();
+  }
+
+  /**
+   * Removes the most recently used idle context of a server
+   */
+  private synchronized PooledContext pollIdle(String server)
+  {
+    Iterator<PooledContext> iterator = idle.iterator();
+    while (iterator.hasNext())
+    {
+      PooledContext context = iterator.next();
+      if (context.server.equals(server))
+      {
+        iterator.remove();
+        return context;
+      }
+    }
+    return null;
+  }
+
+  private boolean isExpired(PooledContext context, long now)
+  {
+    return now - context.created > maxLifetimeMillis;
+  }
+
+  private static boolean isValid(PooledContext context, long now)
+  {
+    if (now - context.lastUsed < VALIDATION_GRACE_MILLIS)
+    {
+      return true;
+    }
+    try
+    {
+      readBaseEntry(context.context);
+      return true;
+    }
+    catch (NamingException ex)
+    {
+      // otherwise the server answered, e.g. that the base entry does not
+      // exist, so the connection is alive
+      return !LdapConnection.isConnectionError(ex);
+    }
+  }
+
+  /**
+   * Reads the entry of the base dn of the server url without attributes. It
+   * is the root DSE only if the url has no base dn. The empty name of a
+   * context can not address the root DSE, and a second connection would not
+   * test this one.
+   */
+  private static void readBaseEntry(LdapContext context) throws NamingException
+  {
+    context.getAttributes("", NO_ATTRIBUTES);
+  }
+
+  /**
+   * A pooled ldap context with its usage timestamps
+   */
+  static class PooledContext
+  {
+    final LdapContext context;
+    /** url of the server the context is connected to */
+    final String server;
+    final long created;
+    volatile long lastUsed;
+
+    PooledContext(LdapContext context, String server)
+    {
+      this.context = context;
+      this.server = server;
+      this.created = System.currentTimeMillis();
+      this.lastUsed = created;
+    }
+
+    /**
+     * Removes request controls a bean may have set so the next borrower gets a clean context
+     * @return false if the context could not be reset
+     */
+    boolean reset()
+    {
+      try
+      {
+        context.setRequestControls(null);
+        return true;
+      }
+      catch (NamingException ex)
+      {
+        return false;
+      }
+    }
+
+    void destroy()
+    {
+      try
+      {
+        context.close();
+      }
+      catch (NamingException ex)
+      {
+      }
+    }
+  }
+}
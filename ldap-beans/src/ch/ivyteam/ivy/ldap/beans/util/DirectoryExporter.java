@@ -0,0 +1,230 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.naming.InvalidNameException;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Exports directory entries with paged searches. Every entry is written as
+ * soon as it is received, so the memory needed does not depend on the number
+ * of exported entries.
+ */
+public final class DirectoryExporter
+{
+  private static final String[] NO_ATTRIBUTES = new String[] {"1.1"};
+
+  private final JndiConfig jndiConfig;
+  private final int pageSize;
+  private final String[] attributes;
+
+  /**
+   * Constructor
+   * @param jndiConfig server configuration
+   * @param pageSize entries per page, 0 to disable paging
+   * @param attributes attributes to export or null for all attributes
+   */
+  public DirectoryExporter(JndiConfig jndiConfig, int pageSize, String[] attributes)
+  {
+    this.jndiConfig = jndiConfig;
+    this.pageSize = pageSize;
+    this.attributes = attributes;
+  }
+
+  /**
+   * Exports the entries of a subtree
+   * @param base root of the subtree
+   * @param filter search filter
+   * @param writer writer to write the entries to
+   * @return number of exported entries
+   * @throws NamingException if the search fails
+   * @throws IOException if an entry can not be written
+   */
+  public long export(String base, String filter, EntryWriter writer) throws NamingException, IOException
+  {
+    return export(base, filter, SearchControls.SUBTREE_SCOPE, writer);
+  }
+
+  /**
+   * Exports a subtree into one file for the root and one file for each direct
+   * child of the root (usually the top level organizational units). The
+   * children are exported in parallel.
+   * @param base root of the subtree
+   * @param filter search filter
+   * @param directory directory to write the files to. Created if it does not
+   *          exist.
+   * @param format output format
+   * @param parallelism number of files written at the same time. Limited by
+   *          the max pool size of the configuration.
+   * @return number of exported entries
+   * @throws NamingException if a search fails
+   * @throws IOException if an entry can not be written
+   * @throws InterruptedException if interrupted while waiting for the writers
+   */
+  public long exportSharded(String base, String filter, Path directory, EntryWriter.Format format,
+          int parallelism) throws NamingException, IOException, InterruptedException
+  {
+    Files.createDirectories(directory);
+    long count;
+    try (EntryWriter writer = EntryWriter.open(directory.resolve("base" + format.getExtension()), format))
+    {
+      count = export(base, filter, SearchControls.OBJECT_SCOPE, writer);
+    }
+
+    List<String> children = listChildren(base);
+    int threads = Math.max(1, Math.min(Math.min(parallelism, jndiConfig.getPoolMaxSize()), children.size()));
+    ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "ldap-beans-export");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try
+    {
+      List<Future<Long>> shards = new ArrayList<>();
+      Set<String> fileNames = new HashSet<>();
+      for (String child : children)
+      {
+        Path file = directory.resolve(getFileName(child, fileNames) + format.getExtension());
+        shards.add(executor.submit(() -> {
+          try (EntryWriter writer = EntryWriter.open(file, format))
+          {
+            return export(child, filter, SearchControls.SUBTREE_SCOPE, writer);
+          }
+        }));
+      }
+      for (Future<Long> shard : shards)
+      {
+        count += shard.get();
+      }
+    }
+    catch (ExecutionException ex)
+    {
+      Throwable cause = ex.getCause();
+      if (cause instanceof NamingException)
+      {
+        throw (NamingException) cause;
+      }
+      if (cause instanceof IOException)
+      {
+        throw (IOException) cause;
+      }
+      throw new IllegalStateException("Export failed", cause);
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+    return count;
+  }
+
+  private long export(String base, String filter, int scope, EntryWriter writer)
+          throws NamingException, IOException
+  {
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(scope);
+    searchControls.setReturningAttributes(attributes);
+    long count = 0;
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+    PagedSearchEnumeration resultEnum = null;
+    try
+    {
+      resultEnum = PagedSearchEnumeration.search(connection.getContext(), base, filter,
+              searchControls, pageSize);
+      while (resultEnum.hasMore())
+      {
+        SearchResult result = resultEnum.next();
+        writer.write(result.getNameInNamespace(), result.getAttributes());
+        count++;
+      }
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      if (resultEnum != null)
+      {
+        resultEnum.close();
+      }
+      connection.close();
+    }
+    return count;
+  }
+
+  /**
+   * @return names of the direct children of the base relative to the context
+   */
+  private List<String> listChildren(String base) throws NamingException
+  {
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+    searchControls.setReturningAttributes(NO_ATTRIBUTES);
+    List<String> children = new ArrayList<>();
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+    PagedSearchEnumeration resultEnum = null;
+    try
+    {
+      resultEnum = PagedSearchEnumeration.search(connection.getContext(), base,
+              "(objectClass=*)", searchControls, pageSize);
+      while (resultEnum.hasMore())
+      {
+        String name = resultEnum.next().getName();
+        children.add(base.isEmpty() ? name : name + "," + base);
+      }
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      if (resultEnum != null)
+      {
+        resultEnum.close();
+      }
+      connection.close();
+    }
+    return children;
+  }
+
+  /**
+   * @return a file name without extension derived from the relative name of
+   *         the child, unique within the given names
+   */
+  static String getFileName(String child, Set<String> fileNames)
+  {
+    String rdn = child;
+    try
+    {
+      LdapName name = new LdapName(child);
+      rdn = name.getRdn(name.size() - 1).toString();
+    }
+    catch (InvalidNameException | IndexOutOfBoundsException ex)
+    {
+      // use the whole name
+    }
+    String fileName = rdn.replaceAll("[^A-Za-z0-9._=-]", "_");
+    String unique = fileName;
+    for (int pos = 2; !fileNames.add(unique.toLowerCase()) || "base".equalsIgnoreCase(unique); pos++)
+    {
+      unique = fileName + "_" + pos;
+    }
+    return unique;
+  }
+}
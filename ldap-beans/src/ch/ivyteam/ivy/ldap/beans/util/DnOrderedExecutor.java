@@ -0,0 +1,160 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+/**
+ * Executes directory operations in parallel while keeping the order of
+ * operations on related entries.
+ * <p>
+ * An operation only starts after all earlier operations on the same entry,
+ * on one of its parents or on one of its children have finished. So a parent
+ * is always created before its children and children are deleted before
+ * their parent, while operations on unrelated entries run in parallel.
+ * </p>
+ * <p>
+ * At most <code>4 * parallelism</code> operations are pending; submitting
+ * blocks until one of them finished. This bounds the memory needed to
+ * process large inputs.
+ * </p>
+ */
+public final class DnOrderedExecutor implements AutoCloseable
+{
+  private final ExecutorService executor;
+  private final int windowSize;
+  private final Semaphore window;
+
+  /** submitted operations that have not finished. Guarded by this. */
+  private final List<Operation> pending = new ArrayList<>();
+  private volatile Throwable failure;
+
+  /**
+   * Constructor
+   * @param parallelism number of operations executed at the same time
+   * @param threadName name of the worker threads
+   */
+  public DnOrderedExecutor(int parallelism, String threadName)
+  {
+    int threads = Math.max(1, parallelism);
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, threadName);
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.windowSize = threads * 4;
+    this.window = new Semaphore(windowSize);
+  }
+
+  /**
+   * Submits an operation. Blocks if too many operations are pending.
+   * @param dns distinguished names of the entries the operation touches
+   * @param task the operation. Should handle its errors itself.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void submit(Collection<String> dns, Runnable task) throws InterruptedException
+  {
+    window.acquire();
+    Operation operation = new Operation(dns);
+    List<CompletableFuture<Void>> predecessors = new ArrayList<>();
+    synchronized (this)
+    {
+      for (Operation other : pending)
+      {
+        if (operation.isRelated(other))
+        {
+          predecessors.add(other.done);
+        }
+      }
+      pending.add(operation);
+    }
+    CompletableFuture<Void> ready = predecessors.isEmpty()
+            ? CompletableFuture.completedFuture(null)
+            : CompletableFuture.allOf(predecessors.toArray(new CompletableFuture<?>[predecessors.size()]));
+    ready.thenRunAsync(task, executor).whenComplete((result, ex) -> {
+      if (ex != null && failure == null)
+      {
+        failure = ex;
+      }
+      synchronized (this)
+      {
+        pending.remove(operation);
+      }
+      window.release();
+      operation.done.complete(null);
+    });
+  }
+
+  /**
+   * Waits until all submitted operations have finished
+   * @throws InterruptedException if interrupted while waiting
+   * @throws IllegalStateException if an operation threw an exception
+   */
+  public void awaitCompletion() throws InterruptedException
+  {
+    window.acquire(windowSize);
+    window.release(windowSize);
+    if (failure != null)
+    {
+      throw new IllegalStateException("Operation failed", failure);
+    }
+  }
+
+  /**
+   * Stops the worker threads. Pending operations are not executed.
+   */
+  @Override
+  public void close()
+  {
+    executor.shutdownNow();
+  }
+
+  private static final class Operation
+  {
+    final List<List<Rdn>> names = new ArrayList<>();
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    Operation(Collection<String> dns)
+    {
+      for (String dn : dns)
+      {
+        try
+        {
+          names.add(new LdapName(dn).getRdns());
+        }
+        catch (InvalidNameException | RuntimeException ex)
+        {
+          // not a valid name: the operation will fail, no order required
+        }
+      }
+    }
+
+    boolean isRelated(Operation other)
+    {
+      for (List<Rdn> name : names)
+      {
+        for (List<Rdn> otherName : other.names)
+        {
+          if (isPrefix(name, otherName) || isPrefix(otherName, name))
+          {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private static boolean isPrefix(List<Rdn> prefix, List<Rdn> name)
+    {
+      return prefix.size() <= name.size() && prefix.equals(name.subList(0, prefix.size()));
+    }
+  }
+}
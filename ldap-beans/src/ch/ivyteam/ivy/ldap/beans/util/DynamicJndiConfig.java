@@ -0,0 +1,78 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+/**
+ * A server configuration whose url, user name and password may refer to
+ * process data, e.g. <code>in.ldapUrl</code>. The values are classified once,
+ * a configuration without expressions is resolved without copying it.
+ */
+public final class DynamicJndiConfig
+{
+  private final JndiConfig jndiConfig;
+  private final ConfigValue url;
+  private final ConfigValue userName;
+  private final ConfigValue password;
+
+  /**
+   * Constructor
+   * @param jndiConfig configuration. It is copied, later changes have no effect.
+   */
+  public DynamicJndiConfig(JndiConfig jndiConfig)
+  {
+    this.jndiConfig = (JndiConfig) jndiConfig.clone();
+    this.url = ConfigValue.parseUnquoted(jndiConfig.getUrl());
+    this.userName = ConfigValue.parseUnquoted(jndiConfig.getUserName());
+    this.password = ConfigValue.parseUnquoted(jndiConfig.getPassword());
+  }
+
+  /**
+   * Gets the configuration with the url, user name and password of the current
+   * invocation. Values that resolve to null keep their configured text.
+   * @param resolver resolver of the current invocation
+   * @return configuration, must not be modified
+   */
+  public JndiConfig resolve(ValueResolver resolver)
+  {
+    if (url.isLiteral() && userName.isLiteral() && password.isLiteral())
+    {
+      return jndiConfig;
+    }
+    JndiConfig resolved = (JndiConfig) jndiConfig.clone();
+    resolved.setUrl(resolve(url, jndiConfig.getUrl(), resolver));
+    resolved.setUserName(resolve(userName, jndiConfig.getUserName(), resolver));
+    resolved.setPassword(resolve(password, jndiConfig.getPassword(), resolver));
+    return resolved;
+  }
+
+  /**
+   * Gets the configuration as configured, before any request was resolved. A
+   * bare word such as <code>secret</code> is taken as configured, it refers
+   * to process data only if the process has such an attribute.
+   * @return configuration, must not be modified; null if the url, user name
+   *         or password have an <code>in.</code> prefix or are expressions
+   */
+  public JndiConfig getStaticConfig()
+  {
+    if (isStatic(url, jndiConfig.getUrl()) && isStatic(userName, jndiConfig.getUserName())
+            && isStatic(password, jndiConfig.getPassword()))
+    {
+      return jndiConfig;
+    }
+    return null;
+  }
+
+  private static boolean isStatic(ConfigValue value, String configured)
+  {
+    return value.isLiteral()
+            || (value.getKind() == ConfigValue.Kind.PATH && !configured.trim().startsWith("in."));
+  }
+
+  private static String resolve(ConfigValue value, String configured, ValueResolver resolver)
+  {
+    if (value.getKind() == ConfigValue.Kind.LITERAL)
+    {
+      return configured;
+    }
+    Object resolved = value.resolve(resolver, configured);
+    return resolved != null ? resolved.toString() : configured;
+  }
+}
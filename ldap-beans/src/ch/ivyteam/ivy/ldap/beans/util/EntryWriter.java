@@ -0,0 +1,326 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+/**
+ * Writes directory entries one after the other to an LDIF (RFC 2849) or
+ * NDJSON file. Nothing but the current entry is kept in memory.
+ * <p>
+ * LDIF values that are binary or not safe strings (e.g. non ASCII
+ * characters or leading spaces) are written base64 encoded, long lines are
+ * folded. An NDJSON line looks like
+ * <code>{"dn":"cn=Meier,o=ivyteam","attributes":{"cn":["Meier"]},"binary":{"jpegPhoto":["/9j/4AAQ..."]}}</code>
+ * where <code>binary</code> contains the base64 encoded binary values and is
+ * only written if the entry has any.
+ * </p>
+ */
+public final class EntryWriter implements Closeable
+{
+  /** The output format */
+  public enum Format
+  {
+    /** LDAP data interchange format (RFC 2849) */
+    LDIF(".ldif"),
+    /** one JSON object per line */
+    NDJSON(".ndjson");
+
+    private final String extension;
+
+    Format(String extension)
+    {
+      this.extension = extension;
+    }
+
+    /**
+     * @return file extension including the dot
+     */
+    public String getExtension()
+    {
+      return extension;
+    }
+
+    /**
+     * Parses a configured format
+     * @param value <code>ldif</code> or <code>ndjson</code>
+     * @return format, LDIF if not configured
+     */
+    public static Format parse(String value)
+    {
+      return "ndjson".equalsIgnoreCase(value != null ? value.trim() : null) ? NDJSON : LDIF;
+    }
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_LINE_LENGTH = 76;
+
+  private final Writer out;
+  private final Format format;
+  private long count;
+
+  /**
+   * Constructor
+   * @param out writer to write the entries to
+   * @param format output format
+   * @throws IOException if the LDIF header can not be written
+   */
+  public EntryWriter(Writer out, Format format) throws IOException
+  {
+    this.out = out;
+    this.format = format;
+    if (format == Format.LDIF)
+    {
+      out.write("version: 1\n");
+    }
+  }
+
+  /**
+   * Creates or overwrites a file and opens a buffered writer on its channel
+   * @param file the file
+   * @param format output format
+   * @return writer, must be closed
+   * @throws IOException if the file can not be opened
+   */
+  public static EntryWriter open(Path file, Format format) throws IOException
+  {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    Writer writer = new BufferedWriter(Channels.newWriter(channel,
+            StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+    try
+    {
+      return new EntryWriter(writer, format);
+    }
+    catch (IOException ex)
+    {
+      writer.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Writes an entry
+   * @param dn distinguished name
+   * @param attributes attributes of the entry
+   * @throws IOException if the entry can not be written
+   * @throws NamingException if the attribute values can not be read
+   */
+  public void write(String dn, Attributes attributes) throws IOException, NamingException
+  {
+    if (format == Format.LDIF)
+    {
+      writeLdif(dn, attributes);
+    }
+    else
+    {
+      writeJson(dn, attributes);
+    }
+    count++;
+  }
+
+  /**
+   * @return number of entries written
+   */
+  public long getCount()
+  {
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    out.close();
+  }
+
+  private void writeLdif(String dn, Attributes attributes) throws IOException, NamingException
+  {
+    out.write('\n');
+    writeLdifValue("dn", dn);
+    NamingEnumeration<? extends Attribute> attributeEnum = attributes.getAll();
+    while (attributeEnum.hasMore())
+    {
+      Attribute attribute = attributeEnum.next();
+      NamingEnumeration<?> valueEnum = attribute.getAll();
+      while (valueEnum.hasMore())
+      {
+        writeLdifValue(attribute.getID(), valueEnum.next());
+      }
+    }
+  }
+
+  private void writeLdifValue(String name, Object value) throws IOException
+  {
+    if (value instanceof byte[])
+    {
+      writeLdifLine(name + ":: " + Base64.getEncoder().encodeToString((byte[]) value));
+      return;
+    }
+    String text = value != null ? value.toString() : "";
+    if (isSafe(text))
+    {
+      writeLdifLine(name + ": " + text);
+    }
+    else
+    {
+      writeLdifLine(name + ":: " + Base64.getEncoder().encodeToString(
+              text.getBytes(StandardCharsets.UTF_8)));
+    }
+  }
+
+  private void writeLdifLine(String line) throws IOException
+  {
+    if (line.length() <= MAX_LINE_LENGTH)
+    {
+      out.write(line);
+    }
+    else
+    {
+      out.write(line, 0, MAX_LINE_LENGTH);
+      for (int pos = MAX_LINE_LENGTH; pos < line.length(); pos += MAX_LINE_LENGTH - 1)
+      {
+        out.write("\n ");
+        out.write(line, pos, Math.min(MAX_LINE_LENGTH - 1, line.length() - pos));
+      }
+    }
+    out.write('\n');
+  }
+
+  /**
+   * @return true if the value can be written as LDIF SAFE-STRING
+   */
+  static boolean isSafe(String value)
+  {
+    if (value.isEmpty())
+    {
+      return true;
+    }
+    char first = value.charAt(0);
+    if (first == ' ' || first == ':' || first == '<' || value.charAt(value.length() - 1) == ' ')
+    {
+      return false;
+    }
+    for (int pos = 0; pos < value.length(); pos++)
+    {
+      char ch = value.charAt(pos);
+      if (ch == '\0' || ch == '\n' || ch == '\r' || ch > 0x7f)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeJson(String dn, Attributes attributes) throws IOException, NamingException
+  {
+    out.write("{\"dn\":");
+    writeJsonString(dn);
+    out.write(",\"attributes\":{");
+    List<Attribute> binaryAttributes = null;
+    boolean first = true;
+    NamingEnumeration<? extends Attribute> attributeEnum = attributes.getAll();
+    while (attributeEnum.hasMore())
+    {
+      Attribute attribute = attributeEnum.next();
+      if (attribute.size() > 0 && attribute.get() instanceof byte[])
+      {
+        if (binaryAttributes == null)
+        {
+          binaryAttributes = new ArrayList<>();
+        }
+        binaryAttributes.add(attribute);
+        continue;
+      }
+      first = writeJsonAttribute(attribute, first);
+    }
+    out.write('}');
+    if (binaryAttributes != null)
+    {
+      out.write(",\"binary\":{");
+      first = true;
+      for (Attribute attribute : binaryAttributes)
+      {
+        first = writeJsonAttribute(attribute, first);
+      }
+      out.write('}');
+    }
+    out.write("}\n");
+  }
+
+  private boolean writeJsonAttribute(Attribute attribute, boolean first) throws IOException, NamingException
+  {
+    if (!first)
+    {
+      out.write(',');
+    }
+    writeJsonString(attribute.getID());
+    out.write(":[");
+    NamingEnumeration<?> valueEnum = attribute.getAll();
+    boolean firstValue = true;
+    while (valueEnum.hasMore())
+    {
+      if (!firstValue)
+      {
+        out.write(',');
+      }
+      firstValue = false;
+      Object value = valueEnum.next();
+      writeJsonString(value instanceof byte[]
+              ? Base64.getEncoder().encodeToString((byte[]) value)
+              : String.valueOf(value));
+    }
+    out.write(']');
+    return false;
+  }
+
+  private void writeJsonString(String value) throws IOException
+  {
+    out.write('"');
+    for (int pos = 0; pos < value.length(); pos++)
+    {
+      char ch = value.charAt(pos);
+      switch (ch)
+      {
+        case '"':
+          out.write("\\\"");
+          break;
+        case '\\':
+          out.write("\\\\");
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          if (ch < 0x20)
+          {
+            out.write(String.format("\\u%04x", (int) ch));
+          }
+          else
+          {
+            out.write(ch);
+          }
+      }
+    }
+    out.write('"');
+  }
+}
@@ -0,0 +1,303 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A search filter compiled from the bean configuration into literal segments
+ * and slots bound to ivy script expressions.
+ * <p>
+ * The template is parsed once when the configuration is set. Formatting it
+ * only evaluates the slots and appends them between the literals. Values of
+ * evaluated expressions are escaped according to RFC 4515, so a value can
+ * never change the structure of the filter. If an expression can not be
+ * evaluated the expression text itself is used, like the beans always did.
+ * </p>
+ * <p>
+ * Filter texts may reference process data with <code>in.</code> expressions,
+ * e.g. <code>(&amp;(objectClass=person)(cn=in.user.name*))</code>. The
+ * <code>in.</code> prefix is not recognized inside a word, so values like
+ * <code>(cn=Martin.Meier)</code> are kept as they are.
+ * </p>
+ */
+public final class FilterTemplate
+{
+  private static final String IN_PREFIX = "in.";
+  private static final int ESTIMATED_VALUE_LENGTH = 16;
+
+  private final String[] literals;
+  private final Slot[] slots;
+  private final int estimatedLength;
+
+  private FilterTemplate(List<String> literals, List<Slot> slots)
+  {
+    this.literals = literals.toArray(new String[literals.size()]);
+    this.slots = slots.toArray(new Slot[slots.size()]);
+    int length = 0;
+    for (String literal : literals)
+    {
+      length += literal.length();
+    }
+    this.estimatedLength = length + slots.size() * ESTIMATED_VALUE_LENGTH;
+  }
+
+  /**
+   * Compiles a filter text that may contain <code>in.</code> expressions
+   * @param filterText filter text
+   * @return template
+   */
+  public static FilterTemplate compile(String filterText)
+  {
+    List<String> literals = new ArrayList<>();
+    List<Slot> slots = new ArrayList<>();
+    String text = filterText != null ? filterText : "";
+    int literalStart = 0;
+    int at = findExpression(text, 0);
+    while (at >= 0)
+    {
+      int end = endOfPath(text, at + IN_PREFIX.length());
+      literals.add(text.substring(literalStart, at));
+      String path = text.substring(at + IN_PREFIX.length(), end);
+      slots.add(new Slot(ConfigValue.parseUnquoted(IN_PREFIX + path), true, false));
+      literalStart = end;
+      at = findExpression(text, end);
+    }
+    literals.add(text.substring(literalStart));
+    return new FilterTemplate(literals, slots);
+  }
+
+  /**
+   * Compiles the attribute table of a query bean configuration
+   * (<code>search_filter_attribute_n</code>, <code>search_filter_value_n</code>)
+   * into an and filter. The attributes keep the order of the table.
+   * <p>
+   * A value in double quotes is a constant. Any other value is the name of a
+   * process data attribute (with or without the <code>in.</code> prefix) and
+   * only used as it is if no such attribute exists.
+   * </p>
+   * @param props bean configuration
+   * @return template
+   */
+  public static FilterTemplate compileAttributeTable(Properties props)
+  {
+    List<String> literals = new ArrayList<>();
+    List<Slot> slots = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    boolean empty = true;
+    for (int pos = 0;; pos++)
+    {
+      String attribute = props.getProperty("search_filter_attribute_" + pos);
+      String value = props.getProperty("search_filter_value_" + pos);
+      if (attribute == null || value == null)
+      {
+        break;
+      }
+      if (attribute.isEmpty())
+      {
+        continue;
+      }
+      literal.append(empty ? "(&(" : "(");
+      empty = false;
+      if (attribute.startsWith(IN_PREFIX))
+      {
+        literals.add(literal.toString());
+        literal.setLength(0);
+        slots.add(new Slot(ConfigValue.parseUnquoted(attribute), false, false));
+      }
+      else
+      {
+        literal.append(attribute);
+      }
+      literal.append('=');
+
+      value = value.trim();
+      if (value.startsWith(IN_PREFIX))
+      {
+        value = value.substring(IN_PREFIX.length());
+      }
+      if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+      {
+        literal.append(value, 1, value.length() - 1);
+      }
+      else if (ConfigValue.isPath(value))
+      {
+        literals.add(literal.toString());
+        literal.setLength(0);
+        slots.add(new Slot(ConfigValue.parseUnquoted(value), true, true));
+      }
+      else
+      {
+        literal.append(value);
+      }
+      literal.append(')');
+    }
+    if (!empty)
+    {
+      literal.append(')');
+    }
+    literals.add(literal.toString());
+    return new FilterTemplate(literals, slots);
+  }
+
+  /**
+   * Formats the filter
+   * @param resolver evaluates the expressions of the template
+   * @return filter
+   */
+  public String format(ValueResolver resolver)
+  {
+    if (slots.length == 0)
+    {
+      return literals[0];
+    }
+    return format(resolver, new StringBuilder(estimatedLength)).toString();
+  }
+
+  /**
+   * Appends the filter to a builder
+   * @param resolver evaluates the expressions of the template
+   * @param builder builder to append the filter to
+   * @return the given builder
+   */
+  public StringBuilder format(ValueResolver resolver, StringBuilder builder)
+  {
+    builder.append(literals[0]);
+    for (int pos = 0; pos < slots.length; pos++)
+    {
+      slots[pos].appendTo(builder, resolver);
+      builder.append(literals[pos + 1]);
+    }
+    return builder;
+  }
+
+  /**
+   * Escapes a value for use in a search filter (RFC 4515)
+   * @param value value
+   * @return escaped value
+   */
+  public static String escape(String value)
+  {
+    return escape(value, new StringBuilder(value.length() + 8)).toString();
+  }
+
+  private static StringBuilder escape(Object value, StringBuilder builder)
+  {
+    if (value instanceof byte[])
+    {
+      for (byte b : (byte[]) value)
+      {
+        appendHex(builder, b & 0xff);
+      }
+      return builder;
+    }
+    String text = value.toString();
+    for (int pos = 0; pos < text.length(); pos++)
+    {
+      char ch = text.charAt(pos);
+      switch (ch)
+      {
+        case '*':
+        case '(':
+        case ')':
+        case '\\':
+        case '\0':
+          appendHex(builder, ch);
+          break;
+        default:
+          builder.append(ch);
+      }
+    }
+    return builder;
+  }
+
+  private static void appendHex(StringBuilder builder, int value)
+  {
+    builder.append('\\');
+    builder.append(Character.forDigit(value >> 4, 16));
+    builder.append(Character.forDigit(value & 0xf, 16));
+  }
+
+  private static int findExpression(String text, int from)
+  {
+    int at = text.indexOf(IN_PREFIX, from);
+    while (at >= 0)
+    {
+      if ((at == 0 || !ConfigValue.isPathPart(text.charAt(at - 1)))
+              && at + IN_PREFIX.length() < text.length()
+              && Character.isJavaIdentifierStart(text.charAt(at + IN_PREFIX.length())))
+      {
+        return at;
+      }
+      at = text.indexOf(IN_PREFIX, at + 1);
+    }
+    return -1;
+  }
+
+  private static int endOfPath(String text, int from)
+  {
+    int end = from;
+    while (end < text.length() && ConfigValue.isPathPart(text.charAt(end)))
+    {
+      end++;
+    }
+    while (text.charAt(end - 1) == '.')
+    {
+      end--;
+    }
+    return end;
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder builder = new StringBuilder(literals[0]);
+    for (int pos = 0; pos < slots.length; pos++)
+    {
+      builder.append('{').append(slots[pos].value.getText()).append('}');
+      builder.append(literals[pos + 1]);
+    }
+    return builder.toString();
+  }
+
+  private static final class Slot
+  {
+    private final ConfigValue value;
+    private final boolean escape;
+    private final boolean trim;
+
+    Slot(ConfigValue value, boolean escape, boolean trim)
+    {
+      this.value = value;
+      this.escape = escape;
+      this.trim = trim;
+    }
+
+    void appendTo(StringBuilder builder, ValueResolver resolver)
+    {
+      Object resolved = value.resolve(resolver, this);
+      if (resolved == this)
+      {
+        // no such process data: use the expression text as it is
+        builder.append(value.getText());
+        return;
+      }
+      if (resolved == null)
+      {
+        return;
+      }
+      if (trim && resolved instanceof String)
+      {
+        resolved = ((String) resolved).trim();
+      }
+      if (escape)
+      {
+        escape(resolved, builder);
+      }
+      else
+      {
+        builder.append(resolved);
+      }
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Answers direct and nested group membership questions.
+ * <p>
+ * On Active Directory the matching rule <code>LDAP_MATCHING_RULE_IN_CHAIN</code>
+ * ({@value #IN_CHAIN_OID}) lets the server resolve the nesting with a single
+ * search. Other servers are answered from a {@link GroupMembershipGraph} that
+ * is shared by all instances with the same server and group configuration.
+ * </p>
+ */
+public final class GroupMembership
+{
+  /** Matching rule that follows DN valued attributes transitively (Active Directory) */
+  public static final String IN_CHAIN_OID = "1.2.840.113556.1.4.1941";
+  /** Groups of Active Directory and of the standard schema */
+  public static final String DEFAULT_GROUP_FILTER = "(|(objectClass=group)(objectClass=groupOfNames)(objectClass=groupOfUniqueNames))";
+  /** Default member attribute */
+  public static final String DEFAULT_MEMBER_ATTRIBUTE = "member";
+  /** Default max age of a membership graph in seconds */
+  public static final int DEFAULT_REFRESH_SECONDS = 300;
+
+  /** Active Directory capability listed in <code>supportedCapabilities</code> of the root DSE */
+  private static final String AD_CAPABILITY_OID = "1.2.840.113556.1.4.800";
+  private static final String[] NO_ATTRIBUTES = new String[] {"1.1"};
+
+  /** servers that support the in chain matching rule */
+  private static final Map<JndiConfig, Boolean> inChainSupport = new ConcurrentHashMap<>();
+  /** graphs by server, base, filter and member attribute */
+  private static final Map<List<Object>, GroupMembershipGraph> graphs = new ConcurrentHashMap<>();
+
+  /**
+   * How memberships are resolved
+   */
+  public enum Mode
+  {
+    /** in chain matching rule if the server supports it, otherwise graph */
+    AUTO,
+    /** in chain matching rule */
+    CHAIN,
+    /** cached membership graph */
+    GRAPH;
+
+    /**
+     * Parses a configured mode
+     * @param value configured mode
+     * @return mode, {@link #AUTO} if not configured or unknown
+     */
+    public static Mode parse(String value)
+    {
+      if (value == null)
+      {
+        return AUTO;
+      }
+      try
+      {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      }
+      catch (IllegalArgumentException ex)
+      {
+        return AUTO;
+      }
+    }
+  }
+
+  private final JndiConfig jndiConfig;
+  private final String groupBase;
+  private final String groupFilter;
+  private final String memberAttribute;
+  private final Mode mode;
+  private final int refreshSeconds;
+
+  /**
+   * Constructor
+   * @param jndiConfig server configuration
+   * @param groupBase root of the groups relative to the context
+   * @param groupFilter filter matching all groups
+   * @param memberAttribute DN valued member attribute of the groups
+   * @param mode how memberships are resolved
+   * @param refreshSeconds max age of the graph in seconds
+   */
+  public GroupMembership(JndiConfig jndiConfig, String groupBase, String groupFilter,
+          String memberAttribute, Mode mode, int refreshSeconds)
+  {
+    this.jndiConfig = jndiConfig;
+    this.groupBase = groupBase;
+    this.groupFilter = groupFilter;
+    this.memberAttribute = memberAttribute;
+    this.mode = mode;
+    this.refreshSeconds = refreshSeconds;
+  }
+
+  /**
+   * Checks whether an entry is direct or nested member of a group
+   * @param memberDn distinguished name of the user or group
+   * @param groupDn distinguished name of the group
+   * @return true if the entry is member of the group
+   * @throws NamingException if the directory can not be read
+   */
+  public boolean isMember(String memberDn, String groupDn) throws NamingException
+  {
+    if (useChain())
+    {
+      return isMemberInChain(memberDn, groupDn);
+    }
+    return getGraph().isMember(memberDn, groupDn);
+  }
+
+  /**
+   * Gets all groups an entry is direct or nested member of
+   * @param memberDn distinguished name of the user or group
+   * @return distinguished names of the groups
+   * @throws NamingException if the directory can not be read
+   */
+  public List<String> getGroups(String memberDn) throws NamingException
+  {
+    if (useChain())
+    {
+      return getGroupsInChain(memberDn);
+    }
+    return getGraph().getGroups(memberDn);
+  }
+
+  private GroupMembershipGraph getGraph() throws NamingException
+  {
+    GroupMembershipGraph graph = graphs.computeIfAbsent(
+            Arrays.asList(jndiConfig, groupBase, groupFilter, memberAttribute),
+            key -> new GroupMembershipGraph(jndiConfig, groupBase, groupFilter, memberAttribute));
+    graph.refreshIfOlder(refreshSeconds);
+    return graph;
+  }
+
+  private boolean useChain() throws NamingException
+  {
+    if (mode != Mode.AUTO)
+    {
+      return mode == Mode.CHAIN;
+    }
+    Boolean supported = inChainSupport.get(jndiConfig);
+    if (supported == null)
+    {
+      supported = isInChainSupported();
+      inChainSupport.put(jndiConfig, supported);
+    }
+    return supported;
+  }
+
+  private boolean isInChainSupported() throws NamingException
+  {
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+    try
+    {
+      Attribute capabilities = connection.getContext()
+              .getAttributes("", new String[] {"supportedCapabilities"})
+              .get("supportedCapabilities");
+      return capabilities != null && capabilities.contains(AD_CAPABILITY_OID);
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      connection.close();
+    }
+  }
+
+  private String getInChainFilter(String memberDn)
+  {
+    return "(" + memberAttribute + ":" + IN_CHAIN_OID + ":=" + FilterTemplate.escape(memberDn) + ")";
+  }
+
+  private boolean isMemberInChain(String memberDn, String groupDn) throws NamingException
+  {
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(SearchControls.OBJECT_SCOPE);
+    searchControls.setReturningAttributes(NO_ATTRIBUTES);
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+    NamingEnumeration<SearchResult> resultEnum = null;
+    try
+    {
+      LdapContext context = connection.getContext();
+      resultEnum = context.search(JndiUtil.getRelativeName(context, groupDn),
+              getInChainFilter(memberDn), JndiUtil.limitSearchTime(context, searchControls));
+      return resultEnum.hasMore();
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      if (resultEnum != null)
+      {
+        resultEnum.close();
+      }
+      connection.close();
+    }
+  }
+
+  private List<String> getGroupsInChain(String memberDn) throws NamingException
+  {
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    searchControls.setReturningAttributes(NO_ATTRIBUTES);
+    List<String> groups = new ArrayList<>();
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+    PagedSearchEnumeration resultEnum = null;
+    try
+    {
+      resultEnum = PagedSearchEnumeration.search(connection.getContext(), groupBase,
+              "(&" + groupFilter + getInChainFilter(memberDn) + ")", searchControls,
+              PagedSearchEnumeration.DEFAULT_PAGE_SIZE);
+      while (resultEnum.hasMore())
+      {
+        groups.add(resultEnum.next().getNameInNamespace());
+      }
+      return groups;
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      if (resultEnum != null)
+      {
+        resultEnum.close();
+      }
+      connection.close();
+    }
+  }
+}
@@ -0,0 +1,398 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.naming.InvalidNameException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+/**
+ * In memory graph of the group memberships of a directory, used to answer
+ * nested membership questions without directory requests.
+ * <p>
+ * The graph is loaded with a paged search of all groups. For every group the
+ * groups it is transitively member of are precomputed, so
+ * {@link #isMember(String, String)} only looks at the direct groups of the
+ * member. Groups that are (transitively) member of themselves are detected
+ * and do not break the computation.
+ * </p>
+ * <p>
+ * Refreshes only read the groups changed since the last load
+ * (<code>modifyTimestamp</code>) and replace the index at once; readers keep
+ * using the previous index meanwhile. Deleted groups are only noticed by a
+ * full reload, which is done every {@value #FULL_RELOAD_SECONDS} seconds.
+ * </p>
+ */
+public final class GroupMembershipGraph
+{
+  /** Seconds after which a refresh reloads all groups */
+  public static final int FULL_RELOAD_SECONDS = 3600;
+
+  private static final String MODIFY_TIMESTAMP = "modifyTimestamp";
+
+  private final JndiConfig jndiConfig;
+  private final String base;
+  private final String filter;
+  private final String memberAttribute;
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+
+  /** Guarded by this */
+  private Map<String, Set<String>> groupMembers = new HashMap<>();
+  /** original names of the groups by normalized name. Guarded by this */
+  private Map<String, String> groupNames = new HashMap<>();
+  /** highest modify timestamp seen. Guarded by this */
+  private String lastModified;
+  private volatile long lastRefresh;
+  private volatile long lastFullLoad;
+  private volatile Index index = new Index(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashSet<>());
+
+  /**
+   * Constructor. The graph is empty until it is refreshed.
+   * @param jndiConfig server configuration
+   * @param base root of the group search
+   * @param filter filter matching all groups
+   * @param memberAttribute DN valued member attribute of the groups
+   */
+  public GroupMembershipGraph(JndiConfig jndiConfig, String base, String filter, String memberAttribute)
+  {
+    this.jndiConfig = jndiConfig;
+    this.base = base;
+    this.filter = filter;
+    this.memberAttribute = memberAttribute;
+  }
+
+  /**
+   * Refreshes the graph if it is older than the given age. The first call
+   * loads the graph, later calls refresh it in the calling thread while other
+   * threads still use the current index.
+   * @param maxAgeSeconds max age of the graph in seconds
+   * @throws NamingException if the groups can not be read
+   */
+  public void refreshIfOlder(int maxAgeSeconds) throws NamingException
+  {
+    long now = System.nanoTime();
+    if (lastRefresh != 0 && now - lastRefresh < TimeUnit.SECONDS.toNanos(maxAgeSeconds))
+    {
+      return;
+    }
+    if (lastRefresh == 0)
+    {
+      // nothing to answer from yet: wait for the first load
+      synchronized (this)
+      {
+        if (lastRefresh == 0)
+        {
+          refresh(true);
+        }
+      }
+      return;
+    }
+    if (refreshing.compareAndSet(false, true))
+    {
+      try
+      {
+        refresh(now - lastFullLoad >= TimeUnit.SECONDS.toNanos(FULL_RELOAD_SECONDS));
+      }
+      finally
+      {
+        refreshing.set(false);
+      }
+    }
+  }
+
+  /**
+   * Loads the groups
+   * @param full true to load all groups, false to load only the groups changed
+   *          since the last load
+   * @throws NamingException if the groups can not be read
+   */
+  public synchronized void refresh(boolean full) throws NamingException
+  {
+    long start = System.nanoTime();
+    boolean incremental = !full && lastModified != null;
+    Map<String, Set<String>> members = incremental ? new HashMap<>(groupMembers) : new HashMap<>();
+    Map<String, String> names = incremental ? new HashMap<>(groupNames) : new HashMap<>();
+    String modified = incremental ? lastModified : null;
+
+    String searchFilter = incremental
+            ? "(&" + filter + "(" + MODIFY_TIMESTAMP + ">=" + lastModified + "))"
+            : filter;
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    searchControls.setReturningAttributes(new String[] {memberAttribute, MODIFY_TIMESTAMP});
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+    PagedSearchEnumeration resultEnum = null;
+    try (RangedAttributeReader rangedAttributes = new RangedAttributeReader(jndiConfig))
+    {
+      rangedAttributes.useConnectionOf(connection.getContext());
+      resultEnum = PagedSearchEnumeration.search(connection.getContext(), base, searchFilter,
+              searchControls, PagedSearchEnumeration.DEFAULT_PAGE_SIZE);
+      while (resultEnum.hasMore())
+      {
+        SearchResult result = resultEnum.next();
+        String group = normalize(result.getNameInNamespace());
+        if (group == null)
+        {
+          continue;
+        }
+        names.put(group, result.getNameInNamespace());
+        members.put(group, normalizeAll(rangedAttributes.get(result, memberAttribute)));
+        Attribute timestamp = result.getAttributes().get(MODIFY_TIMESTAMP);
+        if (timestamp != null && timestamp.get() != null)
+        {
+          String value = timestamp.get().toString();
+          if (modified == null || value.compareTo(modified) > 0)
+          {
+            modified = value;
+          }
+        }
+      }
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      if (resultEnum != null)
+      {
+        resultEnum.close();
+      }
+      connection.close();
+    }
+
+    groupMembers = members;
+    groupNames = names;
+    lastModified = modified;
+    index = buildIndex(members, names);
+    lastRefresh = start;
+    if (!incremental)
+    {
+      lastFullLoad = start;
+    }
+  }
+
+  /**
+   * Checks whether an entry is direct or nested member of a group
+   * @param memberDn distinguished name of the user or group
+   * @param groupDn distinguished name of the group
+   * @return true if the entry is member of the group
+   */
+  public boolean isMember(String memberDn, String groupDn)
+  {
+    return index.isMember(normalize(memberDn), normalize(groupDn));
+  }
+
+  /**
+   * Gets all groups an entry is direct or nested member of
+   * @param memberDn distinguished name of the user or group
+   * @return distinguished names of the groups
+   */
+  public List<String> getGroups(String memberDn)
+  {
+    return index.getGroups(normalize(memberDn));
+  }
+
+  /**
+   * @return distinguished names of the groups that are member of themselves
+   */
+  public List<String> getGroupsInCycles()
+  {
+    Index current = index;
+    List<String> groups = new ArrayList<>();
+    for (String group : current.cycles)
+    {
+      groups.add(current.names.get(group));
+    }
+    return groups;
+  }
+
+  /**
+   * @return number of loaded groups
+   */
+  public int getGroupCount()
+  {
+    return index.names.size();
+  }
+
+  /**
+   * Builds the index of a graph
+   * @param groupMembers normalized member names by normalized group name
+   * @param groupNames original group names by normalized name
+   * @return index
+   */
+  static Index buildIndex(Map<String, Set<String>> groupMembers, Map<String, String> groupNames)
+  {
+    Map<String, Set<String>> parents = new HashMap<>();
+    for (Map.Entry<String, Set<String>> group : groupMembers.entrySet())
+    {
+      for (String member : group.getValue())
+      {
+        parents.computeIfAbsent(member, key -> new HashSet<>()).add(group.getKey());
+      }
+    }
+
+    Map<String, Set<String>> ancestors = new HashMap<>();
+    Set<String> cycles = new HashSet<>();
+    for (String group : groupMembers.keySet())
+    {
+      Set<String> reachable = new HashSet<>();
+      Deque<String> pending = new ArrayDeque<>(parents.getOrDefault(group, Collections.emptySet()));
+      while (!pending.isEmpty())
+      {
+        String parent = pending.pop();
+        if (reachable.add(parent))
+        {
+          pending.addAll(parents.getOrDefault(parent, Collections.emptySet()));
+        }
+      }
+      if (reachable.contains(group))
+      {
+        cycles.add(group);
+      }
+      if (!reachable.isEmpty())
+      {
+        ancestors.put(group, reachable);
+      }
+    }
+    return new Index(parents, ancestors, new HashMap<>(groupNames), cycles);
+  }
+
+  private static Set<String> normalizeAll(Attribute attribute) throws NamingException
+  {
+    if (attribute == null)
+    {
+      return Collections.emptySet();
+    }
+    Set<String> members = new HashSet<>();
+    NamingEnumeration<?> values = attribute.getAll();
+    while (values.hasMore())
+    {
+      String member = normalize(String.valueOf(values.next()));
+      if (member != null)
+      {
+        members.add(member);
+      }
+    }
+    return members;
+  }
+
+  /**
+   * Normalizes a distinguished name so that equal names are equal strings
+   * @param dn distinguished name
+   * @return normalized name or null if the name is invalid
+   */
+  static String normalize(String dn)
+  {
+    if (dn == null)
+    {
+      return null;
+    }
+    try
+    {
+      List<Rdn> rdns = new LdapName(dn).getRdns();
+      StringBuilder normalized = new StringBuilder(dn.length());
+      for (int pos = rdns.size() - 1; pos >= 0; pos--)
+      {
+        if (normalized.length() > 0)
+        {
+          normalized.append(',');
+        }
+        normalized.append(rdns.get(pos).toString());
+      }
+      return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+    catch (InvalidNameException ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Precomputed memberships, never changed after creation
+   */
+  static final class Index
+  {
+    /** direct groups by member */
+    final Map<String, Set<String>> parents;
+    /** all groups a group is direct or nested member of */
+    final Map<String, Set<String>> ancestors;
+    final Map<String, String> names;
+    final Set<String> cycles;
+
+    Index(Map<String, Set<String>> parents, Map<String, Set<String>> ancestors,
+            Map<String, String> names, Set<String> cycles)
+    {
+      this.parents = parents;
+      this.ancestors = ancestors;
+      this.names = names;
+      this.cycles = cycles;
+    }
+
+    boolean isMember(String member, String group)
+    {
+      if (member == null || group == null)
+      {
+        return false;
+      }
+      Set<String> direct = parents.get(member);
+      if (direct == null)
+      {
+        return false;
+      }
+      if (direct.contains(group))
+      {
+        return true;
+      }
+      for (String parent : direct)
+      {
+        Set<String> nested = ancestors.get(parent);
+        if (nested != null && nested.contains(group))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    List<String> getGroups(String member)
+    {
+      Set<String> groups = new LinkedHashSet<>();
+      Collection<String> direct = member != null ? parents.get(member) : null;
+      if (direct == null)
+      {
+        return Collections.emptyList();
+      }
+      for (String parent : direct)
+      {
+        groups.add(parent);
+        groups.addAll(ancestors.getOrDefault(parent, Collections.emptySet()));
+      }
+      List<String> result = new ArrayList<>(groups.size());
+      for (String group : groups)
+      {
+        result.add(names.getOrDefault(group, group));
+      }
+      return result;
+    }
+  }
+}
@@ -1,7 +1,10 @@
 package ch.ivyteam.ivy.ldap.beans.util;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
 
 import javax.naming.Context;
 import javax.naming.InvalidNameException;
@@ -28,6 +31,29 @@ public class JndiConfig implements Serializable, Cloneable
   public static final String AUTH_KIND_SIMPLE = "simple";
   
   private static final String LDAP_CONNECTION_POOL = "com.sun.jndi.ldap.connect.pool";
+  static final String LDAP_CONNECT_TIMEOUT = "com.sun.jndi.ldap.connect.timeout";
+  private static final String LDAP_READ_TIMEOUT = "com.sun.jndi.ldap.read.timeout";
+  /** Environment property with the search time limit, read by {@link JndiUtil#limitSearchTime} */
+  static final String SEARCH_TIME_LIMIT = "ch.ivyteam.ivy.ldap.beans.search.timeLimit";
+
+  /** Default maximum number of connections kept per server and user */
+  public static final int DEFAULT_POOL_MAX_SIZE = 8;
+  /** Default time in seconds an unused connection stays in the pool */
+  public static final int DEFAULT_POOL_IDLE_TIMEOUT = 300;
+  /** Default time in seconds after which a connection is no longer reused */
+  public static final int DEFAULT_POOL_MAX_LIFETIME = 1800;
+  /** Default number of connections opened when a bean starts */
+  public static final int DEFAULT_POOL_MIN_IDLE = 1;
+  /**
+   * Default time in milliseconds to wait for a connection to a server. Also
+   * used for configurations stored before the timeout existed.
+   */
+  public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+  /**
+   * Default time in milliseconds to wait for a response of a server. Also
+   * used for configurations stored before the timeout existed.
+   */
+  public static final int DEFAULT_READ_TIMEOUT = 60000;
   
   private JndiProvider provider;
   private String url;
@@ -37,6 +63,14 @@ public class JndiConfig implements Serializable, Cloneable
   private String defaultContext;
   private boolean useSsl;
   private boolean useLdapConnectionPool;
+  private int poolMaxSize = DEFAULT_POOL_MAX_SIZE;
+  private int poolIdleTimeout = DEFAULT_POOL_IDLE_TIMEOUT;
+  private int poolMaxLifetime = DEFAULT_POOL_MAX_LIFETIME;
+  private int poolMinIdle = DEFAULT_POOL_MIN_IDLE;
+  private ServerSelection serverSelection = ServerSelection.ORDERED;
+  private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+  private int readTimeout = DEFAULT_READ_TIMEOUT;
+  private int searchTimeLimit;
   
   public JndiConfig(JndiProvider provider, String url, String authenticationKind, String userName, String password, boolean useSsl, boolean useLdapConnectionPool, String defaultContext)
   {
@@ -70,6 +104,27 @@ public class JndiConfig implements Serializable, Cloneable
     return url;
   }
 
+  /**
+   * Gets the servers of this configuration. The url may contain several
+   * server urls separated by spaces, e.g. the domain controllers of a domain.
+   * @return server urls in the configured order
+   */
+  public List<String> getUrls()
+  {
+    List<String> urls = new ArrayList<>();
+    if (url != null)
+    {
+      for (String server : url.trim().split("\\s+"))
+      {
+        if (!server.isEmpty())
+        {
+          urls.add(server);
+        }
+      }
+    }
+    return urls;
+  }
+
   public void setAuthenticationKind(String authenticationKind)
   {
     this.authenticationKind = authenticationKind;
@@ -148,10 +203,20 @@ public class JndiConfig implements Serializable, Cloneable
   }
 
   Hashtable<?,?> createEnvironment()
+  {
+    return createEnvironment(url);
+  }
+
+  /**
+   * Creates the jndi environment to connect to one of the servers
+   * @param serverUrl url of the server
+   * @return jndi environment
+   */
+  Hashtable<String, Object> createEnvironment(String serverUrl)
   {
     Hashtable<String, Object> env = new Hashtable<String, Object>();
     env.put(Context.INITIAL_CONTEXT_FACTORY, provider.getProviderClass());
-    env.put(Context.PROVIDER_URL, url);
+    env.put(Context.PROVIDER_URL, serverUrl);
     if (authenticationKind.equals(AUTH_KIND_NONE))
     {
       env.put(Context.SECURITY_AUTHENTICATION, AUTH_KIND_NONE);
@@ -175,6 +240,18 @@ public class JndiConfig implements Serializable, Cloneable
     {
       env.put(LDAP_CONNECTION_POOL, "true");
     }
+    if (connectTimeout > 0)
+    {
+      env.put(LDAP_CONNECT_TIMEOUT, Integer.toString(connectTimeout));
+    }
+    if (readTimeout > 0)
+    {
+      env.put(LDAP_READ_TIMEOUT, Integer.toString(readTimeout));
+    }
+    if (searchTimeLimit > 0)
+    {
+      env.put(SEARCH_TIME_LIMIT, Integer.toString(searchTimeLimit));
+    }
     
     env.put(Context.REFERRAL, "follow");
     
@@ -249,4 +326,156 @@ public class JndiConfig implements Serializable, Cloneable
   {
     this.useLdapConnectionPool = _useLdapConnectionPool;
   }
+
+  /**
+   * Gets the maximum number of connections the connection pool keeps open
+   * (borrowed and idle) for this configuration
+   * @return max pool size
+   */
+  public int getPoolMaxSize()
+  {
+    return poolMaxSize;
+  }
+
+  public void setPoolMaxSize(int poolMaxSize)
+  {
+    this.poolMaxSize = poolMaxSize;
+  }
+
+  /**
+   * Gets the time in seconds an idle connection is kept in the pool before it is closed
+   * @return idle timeout in seconds
+   */
+  public int getPoolIdleTimeout()
+  {
+    return poolIdleTimeout;
+  }
+
+  public void setPoolIdleTimeout(int poolIdleTimeout)
+  {
+    this.poolIdleTimeout = poolIdleTimeout;
+  }
+
+  /**
+   * Gets the time in seconds after which a pooled connection is closed instead of reused
+   * @return max lifetime in seconds
+   */
+  public int getPoolMaxLifetime()
+  {
+    return poolMaxLifetime;
+  }
+
+  public void setPoolMaxLifetime(int poolMaxLifetime)
+  {
+    this.poolMaxLifetime = poolMaxLifetime;
+  }
+
+  /**
+   * Gets the number of connections that are opened when a bean starts and
+   * kept open while it runs
+   * @return min idle connections, 0 for none
+   */
+  public int getPoolMinIdle()
+  {
+    return poolMinIdle;
+  }
+
+  public void setPoolMinIdle(int poolMinIdle)
+  {
+    this.poolMinIdle = poolMinIdle;
+  }
+
+  /**
+   * Gets the time in milliseconds to wait for a connection to a server
+   * @return connect timeout in milliseconds, 0 to wait for the TCP timeout
+   */
+  public int getConnectTimeout()
+  {
+    return connectTimeout;
+  }
+
+  public void setConnectTimeout(int connectTimeout)
+  {
+    this.connectTimeout = connectTimeout;
+  }
+
+  /**
+   * Gets the time in milliseconds to wait for a response of a server, e.g.
+   * for the next page of a search
+   * @return read timeout in milliseconds, 0 to wait forever
+   */
+  public int getReadTimeout()
+  {
+    return readTimeout;
+  }
+
+  public void setReadTimeout(int readTimeout)
+  {
+    this.readTimeout = readTimeout;
+  }
+
+  /**
+   * Gets the time in milliseconds a server may spend on a search
+   * ({@link javax.naming.directory.SearchControls#setTimeLimit(int)})
+   * @return search time limit in milliseconds, 0 for the limit of the server
+   */
+  public int getSearchTimeLimit()
+  {
+    return searchTimeLimit;
+  }
+
+  public void setSearchTimeLimit(int searchTimeLimit)
+  {
+    this.searchTimeLimit = searchTimeLimit;
+  }
+
+  /**
+   * Gets how the server of a new connection is chosen if the url contains
+   * several servers
+   * @return server selection
+   */
+  public ServerSelection getServerSelection()
+  {
+    return serverSelection;
+  }
+
+  public void setServerSelection(ServerSelection serverSelection)
+  {
+    this.serverSelection = serverSelection;
+  }
+
+  /**
+   * How the server of a new connection is chosen. Servers whose circuit is
+   * open (see {@link ServerHealth}) are always skipped.
+   */
+  public enum ServerSelection
+  {
+    /** the first available server in the configured order (failover) */
+    ORDERED,
+    /** the available servers in turn. A server listed several times gets a bigger share. */
+    ROUND_ROBIN,
+    /** the available server with the lowest rolling latency */
+    LEAST_LATENCY;
+
+    /**
+     * Parses a configured server selection
+     * @param value configured selection
+     * @return selection, {@link #ORDERED} if not configured or unknown
+     */
+    public static ServerSelection parse(String value)
+    {
+      if (value == null)
+      {
+        return ORDERED;
+      }
+      try
+      {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+      }
+      catch (IllegalArgumentException ex)
+      {
+        return ORDERED;
+      }
+    }
+  }
 }
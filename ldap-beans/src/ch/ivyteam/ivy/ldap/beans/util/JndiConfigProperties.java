@@ -0,0 +1,182 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reads and writes the connection settings of a {@link JndiConfig} that are
+ * shared by all beans from and to their configuration properties.
+ */
+public class JndiConfigProperties
+{
+  public static final String POOL_MAX_SIZE = "server_pool_max_size";
+  public static final String POOL_IDLE_TIMEOUT = "server_pool_idle_timeout";
+  public static final String POOL_MAX_LIFETIME = "server_pool_max_lifetime";
+  public static final String POOL_MIN_IDLE = "server_pool_min_idle";
+  public static final String SERVER_SELECTION = "server_selection";
+  public static final String CONNECT_TIMEOUT = "server_connect_timeout";
+  public static final String READ_TIMEOUT = "server_read_timeout";
+  public static final String SEARCH_TIME_LIMIT = "server_search_time_limit";
+
+  private JndiConfigProperties()
+  {
+  }
+
+  /**
+   * Loads the connection settings into the jndi configuration. Missing or
+   * invalid values are replaced by their defaults. Configurations stored
+   * before the timeouts existed get the default timeouts too.
+   * @param jndiConfig configuration to update
+   * @param props bean configuration properties
+   */
+  public static void load(JndiConfig jndiConfig, Properties props)
+  {
+    jndiConfig.setPoolMaxSize(getInt(props, POOL_MAX_SIZE, JndiConfig.DEFAULT_POOL_MAX_SIZE));
+    jndiConfig.setPoolIdleTimeout(getInt(props, POOL_IDLE_TIMEOUT, JndiConfig.DEFAULT_POOL_IDLE_TIMEOUT));
+    jndiConfig.setPoolMaxLifetime(getInt(props, POOL_MAX_LIFETIME, JndiConfig.DEFAULT_POOL_MAX_LIFETIME));
+    jndiConfig.setPoolMinIdle(parseTimeout(props.getProperty(POOL_MIN_IDLE), JndiConfig.DEFAULT_POOL_MIN_IDLE));
+    jndiConfig.setServerSelection(JndiConfig.ServerSelection.parse(props.getProperty(SERVER_SELECTION)));
+    loadTimeouts(jndiConfig, props, "");
+  }
+
+  /**
+   * Stores the connection settings of the jndi configuration
+   * @param jndiConfig configuration to store
+   * @param props bean configuration properties
+   */
+  public static void store(JndiConfig jndiConfig, Properties props)
+  {
+    props.setProperty(POOL_MAX_SIZE, Integer.toString(jndiConfig.getPoolMaxSize()));
+    props.setProperty(POOL_IDLE_TIMEOUT, Integer.toString(jndiConfig.getPoolIdleTimeout()));
+    props.setProperty(POOL_MAX_LIFETIME, Integer.toString(jndiConfig.getPoolMaxLifetime()));
+    props.setProperty(POOL_MIN_IDLE, Integer.toString(jndiConfig.getPoolMinIdle()));
+    props.setProperty(SERVER_SELECTION, jndiConfig.getServerSelection().name());
+    storeTimeouts(jndiConfig, props, "");
+  }
+
+  /**
+   * Stores a complete server configuration with prefixed keys, used by beans
+   * that talk to a second server
+   * @param jndiConfig configuration to store
+   * @param props bean configuration properties
+   * @param prefix prefix of the keys, e.g. <code>copy_target_</code>
+   */
+  public static void storeServer(JndiConfig jndiConfig, Properties props, String prefix)
+  {
+    props.setProperty(prefix + "server_provider", jndiConfig.getProvider().getProviderName());
+    props.setProperty(prefix + "server_url", StringUtils.defaultString(jndiConfig.getUrl()));
+    props.setProperty(prefix + "server_authkind", jndiConfig.getAuthenticationKind());
+    props.setProperty(prefix + "server_username", StringUtils.defaultString(jndiConfig.getUserName()));
+    props.setProperty(prefix + "server_password", StringUtils.defaultString(jndiConfig.getPassword()));
+    props.setProperty(prefix + "server_useSsl", Boolean.toString(jndiConfig.isUseSsl()));
+    props.setProperty(prefix + "server_context", StringUtils.defaultString(jndiConfig.getDefaultContext()));
+    props.setProperty(prefix + POOL_MAX_SIZE, Integer.toString(jndiConfig.getPoolMaxSize()));
+    props.setProperty(prefix + POOL_IDLE_TIMEOUT, Integer.toString(jndiConfig.getPoolIdleTimeout()));
+    props.setProperty(prefix + POOL_MAX_LIFETIME, Integer.toString(jndiConfig.getPoolMaxLifetime()));
+    props.setProperty(prefix + POOL_MIN_IDLE, Integer.toString(jndiConfig.getPoolMinIdle()));
+    props.setProperty(prefix + SERVER_SELECTION, jndiConfig.getServerSelection().name());
+    storeTimeouts(jndiConfig, props, prefix);
+  }
+
+  /**
+   * Loads a complete server configuration stored with
+   * {@link #storeServer(JndiConfig, Properties, String)}
+   * @param jndiConfig configuration to update
+   * @param props bean configuration properties
+   * @param prefix prefix of the keys
+   */
+  public static void loadServer(JndiConfig jndiConfig, Properties props, String prefix)
+  {
+    String providerName = props.getProperty(prefix + "server_provider");
+    for (JndiProvider provider : JndiProvider.PROVIDERS)
+    {
+      if (provider.getProviderName().equals(providerName))
+      {
+        jndiConfig.setProvider(provider);
+        break;
+      }
+    }
+    jndiConfig.setUrl(props.getProperty(prefix + "server_url", jndiConfig.getUrl()));
+    jndiConfig.setAuthenticationKind(props.getProperty(prefix + "server_authkind",
+            jndiConfig.getAuthenticationKind()));
+    jndiConfig.setUserName(props.getProperty(prefix + "server_username", ""));
+    jndiConfig.setPassword(props.getProperty(prefix + "server_password", ""));
+    jndiConfig.setUseSsl(Boolean.parseBoolean(props.getProperty(prefix + "server_useSsl")));
+    jndiConfig.setDefaultContext(props.getProperty(prefix + "server_context", ""));
+    jndiConfig.setPoolMaxSize(getInt(props, prefix + POOL_MAX_SIZE, JndiConfig.DEFAULT_POOL_MAX_SIZE));
+    jndiConfig.setPoolIdleTimeout(getInt(props, prefix + POOL_IDLE_TIMEOUT, JndiConfig.DEFAULT_POOL_IDLE_TIMEOUT));
+    jndiConfig.setPoolMaxLifetime(getInt(props, prefix + POOL_MAX_LIFETIME, JndiConfig.DEFAULT_POOL_MAX_LIFETIME));
+    jndiConfig.setPoolMinIdle(parseTimeout(props.getProperty(prefix + POOL_MIN_IDLE),
+            JndiConfig.DEFAULT_POOL_MIN_IDLE));
+    jndiConfig.setServerSelection(JndiConfig.ServerSelection.parse(props.getProperty(prefix + SERVER_SELECTION)));
+    loadTimeouts(jndiConfig, props, prefix);
+  }
+
+  /**
+   * Parses a positive integer
+   * @param value text to parse
+   * @param defaultValue value used if the text is blank or no positive integer
+   * @return parsed value or default value
+   */
+  public static int parsePositiveInt(String value, int defaultValue)
+  {
+    if (StringUtils.isBlank(value))
+    {
+      return defaultValue;
+    }
+    try
+    {
+      int parsed = Integer.parseInt(value.trim());
+      return parsed > 0 ? parsed : defaultValue;
+    }
+    catch (NumberFormatException ex)
+    {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Parses a timeout, limit or count where 0 means none
+   * @param value text to parse
+   * @param defaultValue value used if the text is blank or invalid
+   * @return parsed value or default value
+   */
+  public static int parseTimeout(String value, int defaultValue)
+  {
+    if (StringUtils.isBlank(value))
+    {
+      return defaultValue;
+    }
+    try
+    {
+      int parsed = Integer.parseInt(value.trim());
+      return parsed >= 0 ? parsed : defaultValue;
+    }
+    catch (NumberFormatException ex)
+    {
+      return defaultValue;
+    }
+  }
+
+  private static void loadTimeouts(JndiConfig jndiConfig, Properties props, String prefix)
+  {
+    jndiConfig.setConnectTimeout(parseTimeout(props.getProperty(prefix + CONNECT_TIMEOUT),
+            JndiConfig.DEFAULT_CONNECT_TIMEOUT));
+    jndiConfig.setReadTimeout(parseTimeout(props.getProperty(prefix + READ_TIMEOUT),
+            JndiConfig.DEFAULT_READ_TIMEOUT));
+    jndiConfig.setSearchTimeLimit(parseTimeout(props.getProperty(prefix + SEARCH_TIME_LIMIT), 0));
+  }
+
+  private static void storeTimeouts(JndiConfig jndiConfig, Properties props, String prefix)
+  {
+    props.setProperty(prefix + CONNECT_TIMEOUT, Integer.toString(jndiConfig.getConnectTimeout()));
+    props.setProperty(prefix + READ_TIMEOUT, Integer.toString(jndiConfig.getReadTimeout()));
+    props.setProperty(prefix + SEARCH_TIME_LIMIT, Integer.toString(jndiConfig.getSearchTimeLimit()));
+  }
+
+  private static int getInt(Properties props, String key, int defaultValue)
+  {
+    return parsePositiveInt(props.getProperty(key), defaultValue);
+  }
+}
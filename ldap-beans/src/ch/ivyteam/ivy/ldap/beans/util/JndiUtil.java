@@ -1,10 +1,16 @@
 package ch.ivyteam.ivy.ldap.beans.util;
 
 import java.util.Hashtable;
+import java.util.Map;
 
+import javax.naming.Name;
 import javax.naming.NamingException;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
 
 /**
  * Utility class for jndi
@@ -39,4 +45,90 @@ public class JndiUtil
     return context;
   }
 
+  /**
+   * Opens a new ldap context that supports request and response controls.
+   * Beans should not call this directly but borrow a pooled context from the
+   * {@link LdapConnectionManager}.
+   * @param jndiConfig the jndi configuration
+   * @return ldap context
+   * @throws NamingException if context could not be created
+   */
+  public static LdapContext openLdapContext(JndiConfig jndiConfig) throws NamingException
+  {
+    return new InitialLdapContext(jndiConfig.createEnvironment(), null);
+  }
+
+  /**
+   * Opens a new ldap context to one of the servers of a configuration
+   * @param jndiConfig the jndi configuration
+   * @param serverUrl url of the server
+   * @return ldap context
+   * @throws NamingException if context could not be created
+   */
+  public static LdapContext openLdapContext(JndiConfig jndiConfig, String serverUrl) throws NamingException
+  {
+    return new InitialLdapContext(jndiConfig.createEnvironment(serverUrl), null);
+  }
+
+  /**
+   * Applies the search time limit of the configuration the context was opened
+   * with to search controls that have no time limit
+   * @param context the context
+   * @param searchControls search controls, not changed
+   * @return search controls with the time limit
+   * @throws NamingException if the environment of the context can not be read
+   */
+  public static SearchControls limitSearchTime(DirContext context, SearchControls searchControls)
+          throws NamingException
+  {
+    if (searchControls.getTimeLimit() > 0)
+    {
+      return searchControls;
+    }
+    Map<?, ?> environment = context.getEnvironment();
+    Object timeLimit = environment != null ? environment.get(JndiConfig.SEARCH_TIME_LIMIT) : null;
+    if (timeLimit == null)
+    {
+      return searchControls;
+    }
+    return new SearchControls(searchControls.getSearchScope(),
+            searchControls.getCountLimit(), Integer.parseInt(timeLimit.toString()),
+            searchControls.getReturningAttributes(), searchControls.getReturningObjFlag(),
+            searchControls.getDerefLinkFlag());
+  }
+
+  /**
+   * Converts a distinguished name (e.g. from <code>getNameInNamespace()</code>
+   * or a DN valued attribute) to a name relative to the context
+   * @param context the context
+   * @param dn distinguished name
+   * @return name relative to the context, the name itself if it is not below
+   *         the context
+   * @throws NamingException if the name is invalid
+   */
+  public static Name getRelativeName(LdapContext context, String dn) throws NamingException
+  {
+    LdapName name = new LdapName(dn);
+    LdapName contextName = new LdapName(context.getNameInNamespace());
+    if (name.startsWith(contextName))
+    {
+      return name.getSuffix(contextName.size());
+    }
+    return name;
+  }
+
+  /**
+   * Removes the base dn from a server url. The empty name of a context opened
+   * with this url is the root DSE of the server and not the base entry.
+   * @param serverUrl url of a single server, e.g.
+   *          <code>ldap://dc1:389/dc=ivyteam,dc=ch</code>
+   * @return url without base dn, e.g. <code>ldap://dc1:389</code>
+   */
+  public static String getServerRootUrl(String serverUrl)
+  {
+    int host = serverUrl.indexOf("://");
+    int path = serverUrl.indexOf('/', host < 0 ? 0 : host + 3);
+    return path < 0 ? serverUrl : serverUrl.substring(0, path);
+  }
+
 }
@@ -0,0 +1,126 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency distribution with fixed buckets. Recording only increments striped
+ * counters, so concurrent operations do not contend on a lock. Percentiles are
+ * the upper bound of the bucket they fall in.
+ */
+public final class LatencyHistogram
+{
+  /** Upper bounds of the buckets in milliseconds, the last bucket is unbounded */
+  private static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500,
+      1000, 2000, 5000, 10000, 30000, 60000};
+  private static final long[] BOUNDS_NANOS = new long[BOUNDS_MILLIS.length];
+
+  static
+  {
+    for (int pos = 0; pos < BOUNDS_MILLIS.length; pos++)
+    {
+      BOUNDS_NANOS[pos] = TimeUnit.MILLISECONDS.toNanos(BOUNDS_MILLIS[pos]);
+    }
+  }
+
+  private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+  private final LongAdder sumNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  LatencyHistogram()
+  {
+    for (int pos = 0; pos < buckets.length; pos++)
+    {
+      buckets[pos] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records a latency
+   * @param nanos latency in nanoseconds
+   */
+  void record(long nanos)
+  {
+    int bucket = 0;
+    while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket])
+    {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    sumNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  long getSumNanos()
+  {
+    return sumNanos.sum();
+  }
+
+  public long getCount()
+  {
+    long count = 0;
+    for (LongAdder bucket : buckets)
+    {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  public double getMeanMillis()
+  {
+    long count = getCount();
+    return count == 0 ? 0 : toMillis(sumNanos.sum()) / count;
+  }
+
+  public double getMaxMillis()
+  {
+    return toMillis(maxNanos.get());
+  }
+
+  public double getP50Millis()
+  {
+    return getPercentileMillis(0.5);
+  }
+
+  public double getP95Millis()
+  {
+    return getPercentileMillis(0.95);
+  }
+
+  public double getP99Millis()
+  {
+    return getPercentileMillis(0.99);
+  }
+
+  private double getPercentileMillis(double quantile)
+  {
+    long[] counts = new long[buckets.length];
+    long count = 0;
+    for (int pos = 0; pos < buckets.length; pos++)
+    {
+      counts[pos] = buckets[pos].sum();
+      count += counts[pos];
+    }
+    if (count == 0)
+    {
+      return 0;
+    }
+    long rank = (long) Math.ceil(quantile * count);
+    long seen = 0;
+    for (int pos = 0; pos < BOUNDS_MILLIS.length; pos++)
+    {
+      seen += counts[pos];
+      if (seen >= rank)
+      {
+        return Math.min(BOUNDS_MILLIS[pos], getMaxMillis());
+      }
+    }
+    return getMaxMillis();
+  }
+
+  private static double toMillis(long nanos)
+  {
+    return nanos / 1_000_000.0;
+  }
+}
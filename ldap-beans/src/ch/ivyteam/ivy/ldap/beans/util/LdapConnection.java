@@ -0,0 +1,165 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * A ldap context borrowed from the {@link LdapConnectionManager}. Must be
+ * closed after use, which gives the context back to its pool. Never close the
+ * context itself.
+ *
+ * <pre>
+ * LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+ * try
+ * {
+ *   connection.getContext().search(...);
+ * }
+ * catch (NamingException ex)
+ * {
+ *   connection.invalidateOnConnectionError(ex);
+ *   throw ex;
+ * }
+ * finally
+ * {
+ *   connection.close();
+ * }
+ * </pre>
+ */
+public class LdapConnection implements AutoCloseable
+{
+  private final DirContextPool pool;
+  private final DirContextPool.PooledContext pooledContext;
+  private boolean reusable = true;
+  private boolean connectionError;
+  private boolean closed;
+
+  LdapConnection(DirContextPool pool, DirContextPool.PooledContext pooledContext)
+  {
+    this.pool = pool;
+    this.pooledContext = pooledContext;
+  }
+
+  /**
+   * Gets the borrowed ldap context
+   * @return context
+   */
+  public LdapContext getContext()
+  {
+    return pooledContext.context;
+  }
+
+  /**
+   * @return url of the server the context is connected to
+   */
+  public String getServerUrl()
+  {
+    return pooledContext.server;
+  }
+
+  /**
+   * Marks the context as broken. It is closed instead of given back to the pool.
+   */
+  public void invalidate()
+  {
+    reusable = false;
+  }
+
+  /**
+   * Stops an operation that another thread runs on the context by closing
+   * it. The context is not given back to the pool. Used to cancel
+   * asynchronous operations (see {@link AsyncExecutor#onCancel(Runnable)}).
+   */
+  public void abort()
+  {
+    invalidate();
+    try
+    {
+      pooledContext.context.close();
+    }
+    catch (NamingException ex)
+    {
+      // the operation fails anyway
+    }
+  }
+
+  /**
+   * @return false if the context is broken and must not be used anymore
+   */
+  public boolean isReusable()
+  {
+    return reusable;
+  }
+
+  /**
+   * Invalidates the context if the given exception signals that the connection
+   * to the server is broken
+   * @param ex exception thrown by an operation on this context
+   */
+  public void invalidateOnConnectionError(NamingException ex)
+  {
+    if (isConnectionError(ex))
+    {
+      invalidate();
+      connectionError = true;
+    }
+  }
+
+  /**
+   * Checks whether an exception signals that the server could not be reached
+   * or the connection to it is broken
+   * @param ex exception thrown by a directory operation
+   * @return true for connection errors
+   */
+  public static boolean isConnectionError(NamingException ex)
+  {
+    return ex instanceof CommunicationException
+            || ex instanceof ServiceUnavailableException
+            || ex.getRootCause() instanceof IOException
+            || isReadTimeout(ex);
+  }
+
+  /**
+   * Checks whether a read timeout caused the exception
+   */
+  private static boolean isReadTimeout(NamingException ex)
+  {
+    for (Throwable cause = ex.getRootCause(); cause != null; cause = cause.getCause())
+    {
+      if (cause instanceof SocketTimeoutException)
+      {
+        return true;
+      }
+    }
+    // the ldap provider of the JDK signals a read timeout with a plain
+    // NamingException without root cause, only its message tells the reason
+    String message = ex.getMessage();
+    return message != null && message.contains("read timed out");
+  }
+
+  /**
+   * Gives the context back to the pool
+   */
+  @Override
+  public void close()
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    if (connectionError)
+    {
+      pool.connectionFailed(pooledContext);
+    }
+    else
+    {
+      ServerHealth.get(pooledContext.server).recordSuccess();
+    }
+    pool.giveBack(pooledContext, reusable);
+  }
+}
@@ -0,0 +1,276 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+
+/**
+ * Keeps a bounded pool of open ldap contexts for every resolved jndi
+ * configuration (provider, url, principal, credentials, ssl and default
+ * context), so that the beans do not pay TCP, TLS and bind costs on every
+ * call. Pool size, idle timeout and max lifetime are taken from the
+ * {@link JndiConfig} that first opens a pool.
+ * <p>
+ * Beans warm up the pool of their server configuration when they start, see
+ * {@link #warmUp(Object, DynamicJndiConfig)}. A background maintenance run
+ * every {@value #MAINTENANCE_INTERVAL_SECONDS} seconds closes expired idle
+ * connections, probes the remaining ones and tops up warm pools. When the
+ * last running bean stops, all pools are closed and the background threads
+ * end, see {@link #coolDown(Object)}.
+ * </p>
+ */
+public class LdapConnectionManager
+{
+  /** Max time to wait for a free connection if a pool is exhausted */
+  private static final long BORROW_TIMEOUT_MILLIS = 30000;
+
+  /** Interval of the maintenance run (eviction, keep alive probes and warm-up) */
+  static final long MAINTENANCE_INTERVAL_SECONDS = 30;
+
+  private static final LdapConnectionManager INSTANCE = new LdapConnectionManager();
+
+  private final Map<PoolKey, DirContextPool> pools = new ConcurrentHashMap<>();
+  /** pools kept warm by running beans */
+  private final Map<Object, DirContextPool> warmPools = new ConcurrentHashMap<>();
+  /** running beans. Guarded by this. */
+  private final Set<Object> runningBeans = new HashSet<>();
+  private volatile ScheduledExecutorService maintenance;
+
+  LdapConnectionManager()
+  {
+  }
+
+  /**
+   * Gets the connection manager shared by all ldap beans
+   * @return connection manager
+   */
+  public static LdapConnectionManager getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * Borrows an open ldap context for the given (already expanded) jndi configuration
+   * @param jndiConfig resolved jndi configuration
+   * @return connection that must be closed after use
+   * @throws NamingException if no connection could be established
+   */
+  public LdapConnection borrow(JndiConfig jndiConfig) throws NamingException
+  {
+    long start = System.nanoTime();
+    LdapConnection connection;
+    while ((connection = getPool(jndiConfig).borrow(BORROW_TIMEOUT_MILLIS)) == null)
+    {
+      // the pool was closed after getPool, the next getPool creates a new one
+    }
+    OperationMetrics.Recording recording = OperationMetrics.current();
+    if (recording != null)
+    {
+      recording.add(OperationMetrics.Phase.CONNECT, System.nanoTime() - start);
+      recording.connected(connection.getServerUrl());
+    }
+    return connection;
+  }
+
+  /**
+   * Keeps the pool of a server configuration warm while a bean runs. The min
+   * idle connections of the configuration are opened in the background, so
+   * the start of the bean is not delayed by an unreachable server.
+   * Configurations whose url or credentials refer to process data are not
+   * known before a request and are not warmed up.
+   * @param owner the bean, identifies the warm-up in {@link #coolDown(Object)}
+   * @param jndiConfig server configuration of the bean
+   */
+  public synchronized void warmUp(Object owner, DynamicJndiConfig jndiConfig)
+  {
+    endWarmUp(owner);
+    runningBeans.add(owner);
+    JndiConfig staticConfig = jndiConfig.getStaticConfig();
+    if (staticConfig == null || staticConfig.getPoolMinIdle() <= 0)
+    {
+      return;
+    }
+    DirContextPool pool = getPool(staticConfig);
+    pool.addWarmUser();
+    warmPools.put(owner, pool);
+    maintenance.execute(pool::fill);
+  }
+
+  /**
+   * Ends the warm-up of a bean that stops. The connections are closed by the
+   * idle eviction once no other running bean uses the pool. If it was the
+   * last running bean, all pools are closed and the maintenance and the
+   * server probes stop until a connection is borrowed again.
+   * @param owner the bean
+   */
+  public synchronized void coolDown(Object owner)
+  {
+    endWarmUp(owner);
+    if (runningBeans.remove(owner) && runningBeans.isEmpty())
+    {
+      shutdown();
+    }
+  }
+
+  private void endWarmUp(Object owner)
+  {
+    DirContextPool pool = warmPools.remove(owner);
+    if (pool != null)
+    {
+      pool.removeWarmUser();
+    }
+  }
+
+  /**
+   * Closes all pools and stops the background threads. Borrowed connections
+   * are closed when they are given back.
+   */
+  synchronized void shutdown()
+  {
+    ScheduledExecutorService executor = maintenance;
+    maintenance = null;
+    if (executor != null)
+    {
+      executor.shutdownNow();
+    }
+    closeAll();
+    ServerHealth.shutdown();
+  }
+
+  /**
+   * Closes all idle connections of all pools
+   */
+  public void closeAll()
+  {
+    warmPools.clear();
+    Iterator<DirContextPool> iterator = pools.values().iterator();
+    while (iterator.hasNext())
+    {
+      DirContextPool pool = iterator.next();
+      iterator.remove();
+      pool.close();
+    }
+  }
+
+  DirContextPool getPool(JndiConfig jndiConfig)
+  {
+    DirContextPool pool = pools.computeIfAbsent(new PoolKey(jndiConfig), key -> new DirContextPool(jndiConfig));
+    startMaintenance();
+    return pool;
+  }
+
+  private void startMaintenance()
+  {
+    if (maintenance != null)
+    {
+      return;
+    }
+    synchronized (this)
+    {
+      if (maintenance == null)
+      {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "ldap-beans-connection-pool");
+          thread.setDaemon(true);
+          return thread;
+        });
+        executor.scheduleWithFixedDelay(this::maintainPools,
+                MAINTENANCE_INTERVAL_SECONDS, MAINTENANCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        maintenance = executor;
+      }
+    }
+  }
+
+  private void maintainPools()
+  {
+    for (PoolKey key : pools.keySet())
+    {
+      try
+      {
+        DirContextPool pool = pools.get(key);
+        if (pool == null)
+        {
+          continue;
+        }
+        pool.evict();
+        pool.keepAlive();
+        if (pool.isWarm())
+        {
+          pool.fill();
+        }
+        else
+        {
+          // forget pools of configurations that are no longer used (e.g. dynamic
+          // urls). Borrowers that got the pool before find it closed and retry.
+          pools.computeIfPresent(key, (k, p) -> p.closeIfUnused() ? null : p);
+        }
+      }
+      catch (RuntimeException ex)
+      {
+        // keep the maintenance thread alive
+      }
+    }
+  }
+
+  /**
+   * Identifies a pool. Two configurations share a pool if they connect to the
+   * same server with the same credentials.
+   */
+  private static final class PoolKey
+  {
+    private final Object[] values;
+    private final int hashCode;
+
+    PoolKey(JndiConfig config)
+    {
+      values = new Object[] {
+          config.getProvider() != null ? config.getProvider().getProviderClass() : null,
+          config.getUrl(),
+          config.getAuthenticationKind(),
+          config.getUserName(),
+          config.getPassword(),
+          config.isUseSsl(),
+          config.isUseLdapConnectionPool(),
+          config.getDefaultContext(),
+          config.getConnectTimeout(),
+          config.getReadTimeout(),
+          config.getSearchTimeLimit()};
+      hashCode = Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (this == obj)
+      {
+        return true;
+      }
+      if (!(obj instanceof PoolKey))
+      {
+        return false;
+      }
+      return Arrays.equals(values, ((PoolKey) obj).values);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hashCode;
+    }
+
+    @Override
+    public String toString()
+    {
+      // never expose the credentials
+      return "PoolKey[url=" + values[1] + ", user=" + values[3] + ", ssl=" + values[5] + "]";
+    }
+  }
+}
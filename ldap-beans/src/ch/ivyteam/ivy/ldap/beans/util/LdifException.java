@@ -0,0 +1,33 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.io.IOException;
+
+/**
+ * A malformed record of an LDIF file. The reader skipped the record and can
+ * continue with the next one.
+ */
+public class LdifException extends IOException
+{
+  private static final long serialVersionUID = 1L;
+
+  private final int lineNumber;
+
+  /**
+   * Constructor
+   * @param lineNumber line of the malformed record
+   * @param message description of the problem
+   */
+  public LdifException(int lineNumber, String message)
+  {
+    super("Line " + lineNumber + ": " + message);
+    this.lineNumber = lineNumber;
+  }
+
+  /**
+   * @return line of the malformed record
+   */
+  public int getLineNumber()
+  {
+    return lineNumber;
+  }
+}
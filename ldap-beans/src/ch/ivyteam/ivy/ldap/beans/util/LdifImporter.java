@@ -0,0 +1,334 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingException;
+import javax.naming.directory.ModificationItem;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Applies the change records of an LDIF file to a directory.
+ * <p>
+ * The file is streamed, records are applied in parallel over pooled
+ * connections as soon as they are read. Records on related entries keep
+ * their order (see {@link DnOrderedExecutor}). A failing record does not
+ * abort the import; failures, progress and a summary are written to the
+ * log.
+ * </p>
+ * <p>
+ * Values read from file urls (<code>:&lt;</code>) are only allowed below the
+ * directory set by the system property {@value #URL_DIRECTORY_PROPERTY}.
+ * Without it, records with such values fail.
+ * </p>
+ */
+public final class LdifImporter
+{
+  /** Number of records between two progress lines in the log */
+  public static final int PROGRESS_INTERVAL = 1000;
+  /** System property with the directory of the files that values may be read from */
+  public static final String URL_DIRECTORY_PROPERTY = "ch.ivyteam.ivy.ldap.beans.ldif.urlDirectory";
+
+  private static final String DELETE_RDN = "java.naming.ldap.deleteRDN";
+
+  private final JndiConfig jndiConfig;
+  private final int parallelism;
+
+  /**
+   * Constructor
+   * @param jndiConfig server configuration
+   * @param parallelism max number of parallel connections. Limited by the max
+   *          pool size of the configuration.
+   */
+  public LdifImporter(JndiConfig jndiConfig, int parallelism)
+  {
+    this.jndiConfig = jndiConfig;
+    this.parallelism = Math.max(1, Math.min(parallelism, jndiConfig.getPoolMaxSize()));
+  }
+
+  /**
+   * Imports an LDIF file
+   * @param ldif LDIF content. Not closed.
+   * @param log receives failures, progress and summary. May be null.
+   * @return result
+   * @throws IOException if the file or log can not be read or written
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public Result importLdif(Reader ldif, Writer log) throws IOException, InterruptedException
+  {
+    Result result = new Result(log);
+    long start = System.nanoTime();
+    String urlDirectory = System.getProperty(URL_DIRECTORY_PROPERTY);
+    LdifReader reader = new LdifReader(ldif, StringUtils.isBlank(urlDirectory) ? null : Paths.get(urlDirectory));
+    try (DnOrderedExecutor executor = new DnOrderedExecutor(parallelism, "ldap-beans-ldif-import"))
+    {
+      while (true)
+      {
+        LdifRecord record;
+        try
+        {
+          record = reader.next();
+        }
+        catch (LdifException ex)
+        {
+          result.read.incrementAndGet();
+          result.fail(ex.getLineNumber(), null, null, ex.getMessage());
+          continue;
+        }
+        if (record == null)
+        {
+          break;
+        }
+        executor.submit(record.getDns(), () -> apply(record, result));
+        if (result.read.incrementAndGet() % PROGRESS_INTERVAL == 0)
+        {
+          result.log("# " + result.read + " records read, " + result.applied + " applied, "
+                  + result.failed + " failed");
+        }
+      }
+      executor.awaitCompletion();
+    }
+    result.log("# finished: " + result.read + " records, " + result.applied + " applied, "
+            + result.failed + " failed in "
+            + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s");
+    result.flush();
+    return result;
+  }
+
+  private void apply(LdifRecord record, Result result)
+  {
+    LdapConnection connection = null;
+    try
+    {
+      connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+      apply(connection, record);
+      result.applied.incrementAndGet();
+    }
+    catch (NamingException ex)
+    {
+      if (connection != null)
+      {
+        connection.invalidateOnConnectionError(ex);
+      }
+      result.fail(record.getLineNumber(), record.getDn(), record.getChangeType(), ex.toString());
+    }
+    catch (RuntimeException ex)
+    {
+      result.fail(record.getLineNumber(), record.getDn(), record.getChangeType(), ex.toString());
+    }
+    finally
+    {
+      if (connection != null)
+      {
+        connection.close();
+      }
+      for (String dn : record.getDns())
+      {
+        SearchResultCache.getInstance().invalidate(dn);
+      }
+    }
+  }
+
+  private static void apply(LdapConnection connection, LdifRecord record) throws NamingException
+  {
+    long start = System.nanoTime();
+    applyChange(connection.getContext(), record);
+    OperationMetrics.write(getOperationName(record.getChangeType()), connection.getServerUrl(),
+            record.getDn(), start);
+  }
+
+  private static String getOperationName(LdifRecord.ChangeType changeType)
+  {
+    switch (changeType)
+    {
+      case ADD:
+        return "bind";
+      case DELETE:
+        return "unbind";
+      case MODIFY:
+        return "modifyAttributes";
+      default:
+        return "rename";
+    }
+  }
+
+  private static void applyChange(LdapContext context, LdifRecord record) throws NamingException
+  {
+    switch (record.getChangeType())
+    {
+      case ADD:
+        context.bind(record.getDn(), null, record.getAttributes());
+        break;
+      case DELETE:
+        context.unbind(record.getDn());
+        break;
+      case MODIFY:
+        List<ModificationItem> modifications = record.getModifications();
+        context.modifyAttributes(record.getDn(),
+                modifications.toArray(new ModificationItem[modifications.size()]));
+        break;
+      default:
+        if (record.isDeleteOldRdn())
+        {
+          context.rename(record.getDn(), record.getNewDn());
+          break;
+        }
+        context.addToEnvironment(DELETE_RDN, "false");
+        try
+        {
+          context.rename(record.getDn(), record.getNewDn());
+        }
+        finally
+        {
+          context.addToEnvironment(DELETE_RDN, "true");
+        }
+    }
+  }
+
+  /**
+   * Result of an import
+   */
+  public static final class Result
+  {
+    private final Writer log;
+    private final AtomicInteger read = new AtomicInteger();
+    private final AtomicInteger applied = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    /** Guarded by this */
+    private final List<Failure> failures = new ArrayList<>();
+    private IOException logFailure;
+
+    Result(Writer log)
+    {
+      this.log = log;
+    }
+
+    /**
+     * @return number of records read, including malformed ones
+     */
+    public int getRecords()
+    {
+      return read.get();
+    }
+
+    /**
+     * @return number of records applied
+     */
+    public int getApplied()
+    {
+      return applied.get();
+    }
+
+    /**
+     * @return failed records in the order they failed
+     */
+    public synchronized List<Failure> getFailures()
+    {
+      return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    void fail(int lineNumber, String dn, LdifRecord.ChangeType changeType, String error)
+    {
+      failed.incrementAndGet();
+      Failure failure = new Failure(lineNumber, dn, changeType, error);
+      synchronized (this)
+      {
+        failures.add(failure);
+      }
+      log(failure.toString());
+    }
+
+    synchronized void log(String line)
+    {
+      if (log == null || logFailure != null)
+      {
+        return;
+      }
+      try
+      {
+        log.write(line);
+        log.write(System.lineSeparator());
+      }
+      catch (IOException ex)
+      {
+        logFailure = ex;
+      }
+    }
+
+    synchronized void flush() throws IOException
+    {
+      if (logFailure != null)
+      {
+        throw logFailure;
+      }
+      if (log != null)
+      {
+        log.flush();
+      }
+    }
+  }
+
+  /**
+   * A record that could not be applied
+   */
+  public static final class Failure
+  {
+    private final int lineNumber;
+    private final String dn;
+    private final LdifRecord.ChangeType changeType;
+    private final String error;
+
+    Failure(int lineNumber, String dn, LdifRecord.ChangeType changeType, String error)
+    {
+      this.lineNumber = lineNumber;
+      this.dn = dn;
+      this.changeType = changeType;
+      this.error = error;
+    }
+
+    public int getLineNumber()
+    {
+      return lineNumber;
+    }
+
+    /**
+     * @return distinguished name or null if the record is malformed
+     */
+    public String getDn()
+    {
+      return dn;
+    }
+
+    /**
+     * @return change type or null if the record is malformed
+     */
+    public LdifRecord.ChangeType getChangeType()
+    {
+      return changeType;
+    }
+
+    public String getError()
+    {
+      return error;
+    }
+
+    @Override
+    public String toString()
+    {
+      if (dn == null)
+      {
+        return error;
+      }
+      return "Line " + lineNumber + ": " + changeType + " " + dn + ": " + error;
+    }
+  }
+}
@@ -0,0 +1,408 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+
+/**
+ * Reads the records of an LDIF file (RFC 2849) one after the other. Only the
+ * current record is kept in memory, so files of any size can be read.
+ * <p>
+ * Folded lines, comments, base64 encoded values (<code>::</code>) and values
+ * read from <code>file:</code> urls (<code>:&lt;</code>) are supported.
+ * Base64 encoded and file values are returned as <code>byte[]</code>. Controls
+ * are ignored.
+ * </p>
+ * <p>
+ * Values read from urls are only allowed for files in a given directory, so
+ * an LDIF file can not copy other files of the server into the directory.
+ * </p>
+ */
+public final class LdifReader implements Closeable
+{
+  private final BufferedReader reader;
+  /** directory of the files that values may be read from, null if none */
+  private final Path urlDirectory;
+  private int lineNumber;
+  private String lookahead;
+  private int lookaheadLineNumber;
+  private boolean firstRecord = true;
+
+  /**
+   * Constructor. Values read from urls are rejected.
+   * @param reader LDIF content
+   */
+  public LdifReader(Reader reader)
+  {
+    this(reader, null);
+  }
+
+  /**
+   * Constructor
+   * @param reader LDIF content
+   * @param urlDirectory directory of the files that values may be read from,
+   *          null to reject values read from urls
+   */
+  public LdifReader(Reader reader, Path urlDirectory)
+  {
+    this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    this.urlDirectory = urlDirectory;
+  }
+
+  /**
+   * Reads the next record
+   * @return record or null at the end of the file
+   * @throws LdifException if the record is malformed. The record is skipped,
+   *           the next call reads the following record.
+   * @throws IOException if the file can not be read
+   */
+  public LdifRecord next() throws IOException
+  {
+    List<String> lines = new ArrayList<>();
+    int recordLineNumber = 0;
+    Line line;
+    while ((line = nextLine()) != null)
+    {
+      if (line.text.isEmpty())
+      {
+        if (lines.isEmpty())
+        {
+          continue;
+        }
+        break;
+      }
+      if (lines.isEmpty())
+      {
+        if (firstRecord && line.text.startsWith("version:"))
+        {
+          continue;
+        }
+        recordLineNumber = line.number;
+      }
+      lines.add(line.text);
+    }
+    if (lines.isEmpty())
+    {
+      return null;
+    }
+    firstRecord = false;
+    return parse(recordLineNumber, lines);
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    reader.close();
+  }
+
+  private LdifRecord parse(int lineNumber, List<String> lines) throws LdifException
+  {
+    int pos = 0;
+    String[] dn = split(lineNumber, lines.get(pos++));
+    if (!"dn".equalsIgnoreCase(dn[0]))
+    {
+      throw new LdifException(lineNumber, "Record does not start with dn");
+    }
+    String dnValue = toText(decode(lineNumber, dn));
+
+    while (pos < lines.size() && lines.get(pos).regionMatches(true, 0, "control:", 0, 8))
+    {
+      pos++;
+    }
+
+    LdifRecord.ChangeType changeType = LdifRecord.ChangeType.ADD;
+    if (pos < lines.size() && lines.get(pos).regionMatches(true, 0, "changetype:", 0, 11))
+    {
+      String type = toText(decode(lineNumber, split(lineNumber, lines.get(pos++)))).trim().toLowerCase();
+      switch (type)
+      {
+        case "add":
+          changeType = LdifRecord.ChangeType.ADD;
+          break;
+        case "delete":
+          changeType = LdifRecord.ChangeType.DELETE;
+          break;
+        case "modify":
+          changeType = LdifRecord.ChangeType.MODIFY;
+          break;
+        case "modrdn":
+        case "moddn":
+          changeType = LdifRecord.ChangeType.MODDN;
+          break;
+        default:
+          throw new LdifException(lineNumber, "Unknown change type " + type);
+      }
+    }
+
+    LdifRecord record = new LdifRecord(lineNumber, dnValue, changeType);
+    switch (changeType)
+    {
+      case ADD:
+        parseAttributes(record, lines, pos);
+        break;
+      case DELETE:
+        if (pos < lines.size())
+        {
+          throw new LdifException(lineNumber, "Delete record with content");
+        }
+        break;
+      case MODIFY:
+        parseModifications(record, lines, pos);
+        break;
+      default:
+        parseModDn(record, lines, pos);
+    }
+    return record;
+  }
+
+  private void parseAttributes(LdifRecord record, List<String> lines, int pos)
+          throws LdifException
+  {
+    if (pos >= lines.size())
+    {
+      throw new LdifException(record.getLineNumber(), "Add record without attributes");
+    }
+    for (; pos < lines.size(); pos++)
+    {
+      String[] line = split(record.getLineNumber(), lines.get(pos));
+      Attribute attribute = record.getAttributes().get(line[0]);
+      if (attribute == null)
+      {
+        attribute = new BasicAttribute(line[0]);
+        record.getAttributes().put(attribute);
+      }
+      attribute.add(decode(record.getLineNumber(), line));
+    }
+  }
+
+  private void parseModifications(LdifRecord record, List<String> lines, int pos)
+          throws LdifException
+  {
+    while (pos < lines.size())
+    {
+      String[] spec = split(record.getLineNumber(), lines.get(pos++));
+      int operation;
+      switch (spec[0].toLowerCase())
+      {
+        case "add":
+          operation = DirContext.ADD_ATTRIBUTE;
+          break;
+        case "delete":
+          operation = DirContext.REMOVE_ATTRIBUTE;
+          break;
+        case "replace":
+          operation = DirContext.REPLACE_ATTRIBUTE;
+          break;
+        default:
+          throw new LdifException(record.getLineNumber(), "Unknown modification " + spec[0]);
+      }
+      String attributeName = toText(decode(record.getLineNumber(), spec)).trim();
+      Attribute attribute = new BasicAttribute(attributeName);
+      while (pos < lines.size() && !"-".equals(lines.get(pos)))
+      {
+        String[] line = split(record.getLineNumber(), lines.get(pos++));
+        if (!line[0].equalsIgnoreCase(attributeName))
+        {
+          throw new LdifException(record.getLineNumber(), "Value of " + line[0]
+                  + " in modification of " + attributeName);
+        }
+        attribute.add(decode(record.getLineNumber(), line));
+      }
+      pos++;
+      record.addModification(new ModificationItem(operation, attribute));
+    }
+  }
+
+  private void parseModDn(LdifRecord record, List<String> lines, int pos)
+          throws LdifException
+  {
+    for (; pos < lines.size(); pos++)
+    {
+      String[] line = split(record.getLineNumber(), lines.get(pos));
+      String value = toText(decode(record.getLineNumber(), line));
+      switch (line[0].toLowerCase())
+      {
+        case "newrdn":
+          record.setNewRdn(value);
+          break;
+        case "deleteoldrdn":
+          record.setDeleteOldRdn(!"0".equals(value.trim()));
+          break;
+        case "newsuperior":
+          record.setNewSuperior(value);
+          break;
+        default:
+          throw new LdifException(record.getLineNumber(), "Unknown moddn field " + line[0]);
+      }
+    }
+    if (record.getNewRdn() == null)
+    {
+      throw new LdifException(record.getLineNumber(), "Moddn record without newrdn");
+    }
+  }
+
+  /**
+   * Splits a line into the attribute name and the value part including its
+   * type marker (<code>:</code>, <code>::</code> or <code>:&lt;</code>)
+   */
+  private static String[] split(int lineNumber, String line) throws LdifException
+  {
+    int colon = line.indexOf(':');
+    if (colon <= 0)
+    {
+      throw new LdifException(lineNumber, "Missing attribute name in '" + line + "'");
+    }
+    return new String[] {line.substring(0, colon).trim(), line.substring(colon + 1)};
+  }
+
+  private Object decode(int lineNumber, String[] line) throws LdifException
+  {
+    String value = line[1];
+    if (value.startsWith(":"))
+    {
+      try
+      {
+        return Base64.getMimeDecoder().decode(value.substring(1).trim());
+      }
+      catch (IllegalArgumentException ex)
+      {
+        throw new LdifException(lineNumber, "Invalid base64 value of " + line[0]);
+      }
+    }
+    if (value.startsWith("<"))
+    {
+      return readUrl(lineNumber, value.substring(1).trim());
+    }
+    int start = 0;
+    while (start < value.length() && value.charAt(start) == ' ')
+    {
+      start++;
+    }
+    return value.substring(start);
+  }
+
+  private byte[] readUrl(int lineNumber, String url) throws LdifException
+  {
+    if (urlDirectory == null)
+    {
+      throw new LdifException(lineNumber, "Values read from urls are not allowed: " + url);
+    }
+    if (!url.regionMatches(true, 0, "file:", 0, 5))
+    {
+      throw new LdifException(lineNumber, "Only file urls are supported: " + url);
+    }
+    Path file;
+    boolean allowed;
+    try
+    {
+      // real paths, so neither '..' nor links lead out of the directory
+      file = Paths.get(new URI(url)).toRealPath();
+      allowed = file.startsWith(urlDirectory.toRealPath());
+    }
+    catch (URISyntaxException | IllegalArgumentException | IOException ex)
+    {
+      throw new LdifException(lineNumber, "Can not read " + url + ": " + ex.getMessage());
+    }
+    if (!allowed)
+    {
+      throw new LdifException(lineNumber, "File " + url + " is not in the directory " + urlDirectory);
+    }
+    try
+    {
+      return Files.readAllBytes(file);
+    }
+    catch (IOException ex)
+    {
+      throw new LdifException(lineNumber, "Can not read " + url + ": " + ex.getMessage());
+    }
+  }
+
+  private static String toText(Object value)
+  {
+    return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : (String) value;
+  }
+
+  /**
+   * Reads the next line with all its continuation lines, skipping comments
+   * @return line, an empty text for a separator line or null at the end
+   */
+  private Line nextLine() throws IOException
+  {
+    while (true)
+    {
+      String text;
+      int number;
+      if (lookahead != null)
+      {
+        text = lookahead;
+        number = lookaheadLineNumber;
+        lookahead = null;
+      }
+      else
+      {
+        text = readPhysicalLine();
+        number = lineNumber;
+      }
+      if (text == null)
+      {
+        return null;
+      }
+      if (text.isEmpty())
+      {
+        return new Line(number, text);
+      }
+      StringBuilder folded = null;
+      while ((lookahead = readPhysicalLine()) != null && lookahead.startsWith(" "))
+      {
+        if (folded == null)
+        {
+          folded = new StringBuilder(text);
+        }
+        folded.append(lookahead, 1, lookahead.length());
+      }
+      lookaheadLineNumber = lineNumber;
+      if (text.startsWith("#"))
+      {
+        continue;
+      }
+      return new Line(number, folded != null ? folded.toString() : text);
+    }
+  }
+
+  private String readPhysicalLine() throws IOException
+  {
+    String line = reader.readLine();
+    if (line != null)
+    {
+      lineNumber++;
+    }
+    return line;
+  }
+
+  private static final class Line
+  {
+    final int number;
+    final String text;
+
+    Line(int number, String text)
+    {
+      this.number = number;
+      this.text = text;
+    }
+  }
+}
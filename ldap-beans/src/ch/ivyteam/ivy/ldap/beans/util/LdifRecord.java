@@ -0,0 +1,185 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.ModificationItem;
+
+/**
+ * A change record of an LDIF file (RFC 2849). Records without change type are
+ * read as <code>add</code> records.
+ * @see LdifReader
+ */
+public final class LdifRecord
+{
+  /** The change type of a record */
+  public enum ChangeType
+  {
+    /** add an entry */
+    ADD,
+    /** delete an entry */
+    DELETE,
+    /** modify attributes of an entry */
+    MODIFY,
+    /** rename or move an entry (modrdn or moddn) */
+    MODDN;
+
+    @Override
+    public String toString()
+    {
+      return name().toLowerCase();
+    }
+  }
+
+  private final int lineNumber;
+  private final String dn;
+  private final ChangeType changeType;
+  private final Attributes attributes = new BasicAttributes(true);
+  private final List<ModificationItem> modifications = new ArrayList<>();
+  private String newRdn;
+  private boolean deleteOldRdn = true;
+  private String newSuperior;
+
+  LdifRecord(int lineNumber, String dn, ChangeType changeType)
+  {
+    this.lineNumber = lineNumber;
+    this.dn = dn;
+    this.changeType = changeType;
+  }
+
+  /**
+   * @return line number of the first line of the record
+   */
+  public int getLineNumber()
+  {
+    return lineNumber;
+  }
+
+  public String getDn()
+  {
+    return dn;
+  }
+
+  public ChangeType getChangeType()
+  {
+    return changeType;
+  }
+
+  /**
+   * @return attributes of an add record
+   */
+  public Attributes getAttributes()
+  {
+    return attributes;
+  }
+
+  /**
+   * @return modifications of a modify record
+   */
+  public List<ModificationItem> getModifications()
+  {
+    return Collections.unmodifiableList(modifications);
+  }
+
+  void addModification(ModificationItem modification)
+  {
+    modifications.add(modification);
+  }
+
+  /**
+   * @return new relative name of a moddn record
+   */
+  public String getNewRdn()
+  {
+    return newRdn;
+  }
+
+  void setNewRdn(String newRdn)
+  {
+    this.newRdn = newRdn;
+  }
+
+  /**
+   * @return true if a moddn record removes the old rdn values from the entry
+   */
+  public boolean isDeleteOldRdn()
+  {
+    return deleteOldRdn;
+  }
+
+  void setDeleteOldRdn(boolean deleteOldRdn)
+  {
+    this.deleteOldRdn = deleteOldRdn;
+  }
+
+  /**
+   * @return new parent of a moddn record or null if the entry stays below its
+   *         parent
+   */
+  public String getNewSuperior()
+  {
+    return newSuperior;
+  }
+
+  void setNewSuperior(String newSuperior)
+  {
+    this.newSuperior = newSuperior;
+  }
+
+  /**
+   * Gets the new distinguished name of a moddn record
+   * @return new name or null for other records
+   */
+  public String getNewDn()
+  {
+    if (changeType != ChangeType.MODDN)
+    {
+      return null;
+    }
+    String parent = newSuperior;
+    if (parent == null)
+    {
+      int separator = indexOfRdnSeparator(dn);
+      parent = separator >= 0 ? dn.substring(separator + 1) : "";
+    }
+    return parent.isEmpty() ? newRdn : newRdn + "," + parent;
+  }
+
+  /**
+   * Gets the distinguished names the record touches: its own name and for a
+   * moddn record also the new name
+   * @return names
+   */
+  public List<String> getDns()
+  {
+    String newDn = getNewDn();
+    return newDn != null ? Arrays.asList(dn, newDn) : Collections.singletonList(dn);
+  }
+
+  private static int indexOfRdnSeparator(String dn)
+  {
+    for (int pos = 0; pos < dn.length(); pos++)
+    {
+      char ch = dn.charAt(pos);
+      if (ch == '\\')
+      {
+        pos++;
+      }
+      else if (ch == ',')
+      {
+        return pos;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString()
+  {
+    return changeType + " " + dn + " (line " + lineNumber + ")";
+  }
+}
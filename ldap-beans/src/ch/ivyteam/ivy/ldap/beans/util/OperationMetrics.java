@@ -0,0 +1,456 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchResult;
+
+/**
+ * Latency, result and error metrics of the bean operations, tagged by bean,
+ * server url and search base.
+ * <p>
+ * A bean runs its operation with {@link #record(Class, Operation)}. While it
+ * runs, the connection manager, the connection pool and the paged search add
+ * the time of their phases to the operation of the current thread. Phases of
+ * helpers that run on other threads (parallel writes, sharded exports) are
+ * not attributed to the operation and count as {@link Phase#MAP}. Asynchronous
+ * searches outlive the operation that started them and are recorded as
+ * operations of their own (see {@link #propagate(Callable)}).
+ * </p>
+ * <p>
+ * The metrics are exposed through the platform MBean server as
+ * {@value #OBJECT_NAME}, registered when the first operation is recorded. At
+ * most {@value #DEFAULT_MAX_KEYS} (system property
+ * <code>ch.ivyteam.ivy.ldap.beans.metrics.maxKeys</code>) combinations of bean,
+ * server and search base are tracked, further search bases are counted as
+ * {@value #OTHER}.
+ * </p>
+ */
+public final class OperationMetrics implements OperationMetricsMXBean
+{
+  /** Name of the MXBean */
+  public static final String OBJECT_NAME = "ch.ivyteam.ivy.ldap.beans:type=OperationMetrics";
+  /** Default max number of tracked bean, server and search base combinations */
+  public static final int DEFAULT_MAX_KEYS = 500;
+  /** Search base or server of operations beyond the max number of keys */
+  public static final String OTHER = "(other)";
+  /** Appended to the bean of operations continued on another thread */
+  public static final String ASYNC_SUFFIX = " (async)";
+
+  private static final OperationMetrics INSTANCE = new OperationMetrics(
+          JndiConfigProperties.parsePositiveInt(
+                  System.getProperty("ch.ivyteam.ivy.ldap.beans.metrics.maxKeys"), DEFAULT_MAX_KEYS));
+
+  private static final ThreadLocal<Recording> current = new ThreadLocal<>();
+
+  /**
+   * Phases of an operation
+   */
+  public enum Phase
+  {
+    /** borrowing a connection from the pool, includes {@link #OPEN} */
+    CONNECT,
+    /** connecting and binding a new connection */
+    OPEN,
+    /** sending a search until the first results arrive */
+    SEARCH,
+    /** reading the results, including further pages */
+    READ,
+    /** adding, modifying, renaming or deleting entries */
+    WRITE,
+    /** time not spent in the other phases: resolving process data and mapping the results back */
+    MAP
+  }
+
+  /**
+   * An operation of a bean
+   * @param <T> result type
+   */
+  public interface Operation<T>
+  {
+    T run() throws Exception;
+  }
+
+  private final Map<List<String>, OperationStats> stats = new ConcurrentHashMap<>();
+  private final int maxKeys;
+  private volatile boolean registered;
+
+  OperationMetrics(int maxKeys)
+  {
+    this.maxKeys = maxKeys;
+  }
+
+  /**
+   * Gets the metrics shared by all ldap beans
+   * @return metrics
+   */
+  public static OperationMetrics getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * Runs and records an operation of a bean
+   * @param bean class of the bean
+   * @param operation the operation
+   * @return result of the operation
+   * @throws Exception if the operation fails
+   */
+  public <T> T record(Class<?> bean, Operation<T> operation) throws Exception
+  {
+    return record(bean.getSimpleName(), operation);
+  }
+
+  /**
+   * Binds an operation to the operation of the current thread, so it can run
+   * on another thread. It is recorded as an operation of the same bean with
+   * the suffix {@value #ASYNC_SUFFIX}, so that its phases, results and errors
+   * and the context of the {@link SlowOperationLog} are not lost, even if the
+   * operation of the current thread completes before it.
+   * @param operation operation to run on another thread
+   * @return operation that records itself, the given operation if the current
+   *         thread does not record an operation
+   */
+  public static <T> Callable<T> propagate(Callable<T> operation)
+  {
+    Recording caller = current.get();
+    if (caller == null)
+    {
+      return operation;
+    }
+    String bean = caller.getBean() + ASYNC_SUFFIX;
+    return () -> INSTANCE.record(bean, operation::call);
+  }
+
+  private <T> T record(String bean, Operation<T> operation) throws Exception
+  {
+    register();
+    Recording parent = current.get();
+    Recording recording = new Recording(bean);
+    current.set(recording);
+    try
+    {
+      return operation.run();
+    }
+    catch (Exception ex)
+    {
+      recording.failed = true;
+      throw ex;
+    }
+    finally
+    {
+      if (parent == null)
+      {
+        current.remove();
+      }
+      else
+      {
+        current.set(parent);
+      }
+      getStats(recording).record(recording, System.nanoTime() - recording.start);
+    }
+  }
+
+  /**
+   * Adds the time since the start of a phase to the operation of the current
+   * thread. Does nothing if no operation is recorded.
+   * @param phase the phase
+   * @param startNanos start of the phase from {@link System#nanoTime()}
+   */
+  public static void phase(Phase phase, long startNanos)
+  {
+    Recording recording = current.get();
+    if (recording != null)
+    {
+      recording.add(phase, System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Adds the time of a write to the operation of the current thread and logs
+   * the write if it was slow
+   * @param operation <code>modifyAttributes</code>, <code>bind</code>,
+   *        <code>rename</code> or <code>unbind</code>
+   * @param server url of the server
+   * @param name the written entry
+   * @param startNanos start of the write from {@link System#nanoTime()}
+   */
+  public static void write(String operation, String server, String name, long startNanos)
+  {
+    long nanos = System.nanoTime() - startNanos;
+    Recording recording = current.get();
+    if (recording != null)
+    {
+      recording.add(Phase.WRITE, nanos);
+    }
+    SlowOperationLog.getInstance().write(nanos, operation, server, name);
+  }
+
+  /**
+   * @return operation of the current thread or null
+   */
+  static Recording current()
+  {
+    return current.get();
+  }
+
+  @Override
+  public List<OperationStats> getOperations()
+  {
+    return new ArrayList<>(stats.values());
+  }
+
+  @Override
+  public List<ServerStats> getServers()
+  {
+    List<ServerStats> servers = new ArrayList<>();
+    for (ServerHealth health : ServerHealth.getAll())
+    {
+      servers.add(new ServerStats(health));
+    }
+    return servers;
+  }
+
+  @Override
+  public int getAsyncActiveCount()
+  {
+    return AsyncExecutor.getInstance().getActiveCount();
+  }
+
+  @Override
+  public int getAsyncQueueLength()
+  {
+    return AsyncExecutor.getInstance().getQueueLength();
+  }
+
+  @Override
+  public void reset()
+  {
+    stats.clear();
+  }
+
+  private OperationStats getStats(Recording recording)
+  {
+    String server = recording.server != null ? recording.server : "";
+    String base = recording.base != null ? recording.base : "";
+    List<String> key = Arrays.asList(recording.bean, server, base);
+    OperationStats operationStats = stats.get(key);
+    if (operationStats != null)
+    {
+      return operationStats;
+    }
+    if (stats.size() >= maxKeys)
+    {
+      key = Arrays.asList(recording.bean, server, OTHER);
+      if (!stats.containsKey(key) && stats.size() >= maxKeys + maxKeys / 10)
+      {
+        key = Arrays.asList(recording.bean, OTHER, OTHER);
+      }
+    }
+    return stats.computeIfAbsent(key, k -> new OperationStats(k.get(0), k.get(1), k.get(2)));
+  }
+
+  private void register()
+  {
+    if (registered)
+    {
+      return;
+    }
+    synchronized (this)
+    {
+      if (registered)
+      {
+        return;
+      }
+      registered = true;
+      try
+      {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name))
+        {
+          // left over from a previous version of the bundle
+          server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+      }
+      catch (JMException | SecurityException ex)
+      {
+        // metrics are still recorded, only not exposed
+      }
+    }
+  }
+
+  /**
+   * The phases, results and errors of a running operation. Only used by the
+   * thread that runs the operation.
+   */
+  static final class Recording
+  {
+    private final String bean;
+    private final long start = System.nanoTime();
+    private final long[] nanos = new long[Phase.values().length];
+    private String server;
+    private String base;
+    private long entries;
+    private long bytes;
+    private boolean failed;
+
+    Recording(String bean)
+    {
+      this.bean = bean;
+    }
+
+    void add(Phase phase, long phaseNanos)
+    {
+      nanos[phase.ordinal()] += phaseNanos;
+    }
+
+    /**
+     * Tags the operation with the server of the first connection it used
+     */
+    void connected(String serverUrl)
+    {
+      if (server == null)
+      {
+        server = serverUrl;
+      }
+    }
+
+    /**
+     * Tags the operation with the base of its first search
+     */
+    void searched(String searchBase)
+    {
+      if (base == null)
+      {
+        base = searchBase;
+      }
+    }
+
+    /**
+     * Counts a returned entry and its estimated size
+     */
+    void entry(SearchResult result)
+    {
+      entries++;
+      bytes += estimateSize(result);
+    }
+
+    String getBean()
+    {
+      return bean;
+    }
+
+    long getNanos(Phase phase)
+    {
+      return nanos[phase.ordinal()];
+    }
+
+    long getEntries()
+    {
+      return entries;
+    }
+
+    long getBytes()
+    {
+      return bytes;
+    }
+
+    boolean isFailed()
+    {
+      return failed;
+    }
+  }
+
+  /**
+   * Health of a directory server as exposed by the MXBean
+   */
+  public static final class ServerStats
+  {
+    private final String url;
+    private final String state;
+    private final double latencyMillis;
+    private final double errorRate;
+
+    ServerStats(ServerHealth health)
+    {
+      url = health.getUrl();
+      state = health.getState().name();
+      latencyMillis = health.getLatencyMillis();
+      errorRate = health.getErrorRate();
+    }
+
+    public String getUrl()
+    {
+      return url;
+    }
+
+    public String getState()
+    {
+      return state;
+    }
+
+    public double getLatencyMillis()
+    {
+      return latencyMillis;
+    }
+
+    public double getErrorRate()
+    {
+      return errorRate;
+    }
+  }
+
+  /**
+   * Estimates the size of an entry from its name and the length of its
+   * attribute ids and values
+   */
+  static long estimateSize(SearchResult result)
+  {
+    long size = result.getName() != null ? result.getName().length() : 0;
+    Attributes attributes = result.getAttributes();
+    if (attributes == null)
+    {
+      return size;
+    }
+    try
+    {
+      NamingEnumeration<? extends Attribute> all = attributes.getAll();
+      while (all.hasMore())
+      {
+        Attribute attribute = all.next();
+        size += attribute.getID().length();
+        for (int pos = 0; pos < attribute.size(); pos++)
+        {
+          Object value = attribute.get(pos);
+          if (value instanceof byte[])
+          {
+            size += ((byte[]) value).length;
+          }
+          else if (value != null)
+          {
+            size += value.toString().length();
+          }
+        }
+      }
+    }
+    catch (NamingException ex)
+    {
+      // attributes of a search result are in memory, this does not happen
+    }
+    return size;
+  }
+}
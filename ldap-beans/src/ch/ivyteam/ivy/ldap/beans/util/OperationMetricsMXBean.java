@@ -0,0 +1,35 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link OperationMetrics}, registered as
+ * {@value OperationMetrics#OBJECT_NAME}
+ */
+public interface OperationMetricsMXBean
+{
+  /**
+   * @return metrics of the bean operations by bean, server url and search base
+   */
+  List<OperationStats> getOperations();
+
+  /**
+   * @return health of the directory servers
+   */
+  List<OperationMetrics.ServerStats> getServers();
+
+  /**
+   * @return asynchronous searches that are running
+   */
+  int getAsyncActiveCount();
+
+  /**
+   * @return asynchronous searches that wait for a thread
+   */
+  int getAsyncQueueLength();
+
+  /**
+   * Forgets all operation metrics
+   */
+  void reset();
+}
@@ -0,0 +1,158 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics.Phase;
+
+/**
+ * Metrics of the operations of one bean on one server and search base
+ * @see OperationMetrics
+ */
+public final class OperationStats
+{
+  private final String bean;
+  private final String serverUrl;
+  private final String searchBase;
+
+  private final LatencyHistogram total = new LatencyHistogram();
+  private final Map<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder entries = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+
+  OperationStats(String bean, String serverUrl, String searchBase)
+  {
+    this.bean = bean;
+    this.serverUrl = serverUrl;
+    this.searchBase = searchBase;
+    for (Phase phase : Phase.values())
+    {
+      phases.put(phase, new LatencyHistogram());
+    }
+  }
+
+  /**
+   * Records a finished operation
+   * @param recording the operation
+   * @param totalNanos duration of the whole operation
+   */
+  void record(OperationMetrics.Recording recording, long totalNanos)
+  {
+    total.record(totalNanos);
+    long directoryNanos = 0;
+    for (Phase phase : Phase.values())
+    {
+      long nanos = recording.getNanos(phase);
+      if (nanos > 0)
+      {
+        phases.get(phase).record(nanos);
+        if (phase != Phase.OPEN)
+        {
+          // opening a connection is part of the connect phase
+          directoryNanos += nanos;
+        }
+      }
+    }
+    phases.get(Phase.MAP).record(Math.max(0, totalNanos - directoryNanos));
+    if (recording.isFailed())
+    {
+      errors.increment();
+    }
+    entries.add(recording.getEntries());
+    bytes.add(recording.getBytes());
+  }
+
+  public String getBean()
+  {
+    return bean;
+  }
+
+  public String getServerUrl()
+  {
+    return serverUrl;
+  }
+
+  public String getSearchBase()
+  {
+    return searchBase;
+  }
+
+  public long getCount()
+  {
+    return total.getCount();
+  }
+
+  public long getErrorCount()
+  {
+    return errors.sum();
+  }
+
+  /**
+   * @return entries returned by the directory
+   */
+  public long getResultCount()
+  {
+    return entries.sum();
+  }
+
+  /**
+   * @return estimated size of the names and attribute values returned by the directory
+   */
+  public long getBytesReturned()
+  {
+    return bytes.sum();
+  }
+
+  /**
+   * @return entries returned per second of search and read time
+   */
+  public double getEntriesPerSecond()
+  {
+    long nanos = phases.get(Phase.SEARCH).getSumNanos() + phases.get(Phase.READ).getSumNanos();
+    return nanos == 0 ? 0 : entries.sum() * 1_000_000_000.0 / nanos;
+  }
+
+  public LatencyHistogram getTotal()
+  {
+    return total;
+  }
+
+  public LatencyHistogram getConnect()
+  {
+    return phases.get(Phase.CONNECT);
+  }
+
+  public LatencyHistogram getOpen()
+  {
+    return phases.get(Phase.OPEN);
+  }
+
+  public LatencyHistogram getSearch()
+  {
+    return phases.get(Phase.SEARCH);
+  }
+
+  public LatencyHistogram getRead()
+  {
+    return phases.get(Phase.READ);
+  }
+
+  public LatencyHistogram getWrite()
+  {
+    return phases.get(Phase.WRITE);
+  }
+
+  public LatencyHistogram getMap()
+  {
+    return phases.get(Phase.MAP);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "OperationStats[bean=" + bean + ", serverUrl=" + serverUrl + ", searchBase=" + searchBase
+            + ", count=" + getCount() + ", errors=" + getErrorCount() + "]";
+  }
+}
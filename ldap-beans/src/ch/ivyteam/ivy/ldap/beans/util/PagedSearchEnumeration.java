@@ -0,0 +1,311 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.SizeLimitExceededException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+/**
+ * Runs a search with the simple paged results control (RFC 2696) and
+ * enumerates the results of all pages as if it was one search. The next page
+ * is only requested when the results of the current page are consumed.
+ * <p>
+ * The paged results control is sent non critical, so servers that do not
+ * support it return the whole result at once.
+ * </p>
+ * <p>
+ * If the search controls define a count limit, reaching it ends the results
+ * instead of throwing a {@link SizeLimitExceededException}.
+ * </p>
+ * <p>
+ * The time spent in the search and in reading its results is added to the
+ * recorded operation (see {@link OperationMetrics}) and the search is
+ * reported to the {@link SlowOperationLog} when it is closed.
+ * </p>
+ */
+public class PagedSearchEnumeration implements SearchResultEnumeration
+{
+  /** Page size used if the bean configuration does not define one */
+  public static final int DEFAULT_PAGE_SIZE = 500;
+
+  private final LdapContext context;
+  private final String name;
+  private final String filter;
+  private final SearchControls searchControls;
+  private final int pageSize;
+  private final List<Control> requestControls;
+  /** operation the search belongs to, null if it is not recorded */
+  private final OperationMetrics.Recording recording;
+
+  private NamingEnumeration<SearchResult> page;
+  private Control[] responseControls;
+  private boolean lastPage;
+  private boolean exhausted;
+  private boolean closed;
+  /** time spent in the search and in reading the results */
+  private long elapsedNanos;
+  private long results;
+
+  private PagedSearchEnumeration(LdapContext context, String name, String filter,
+          SearchControls searchControls, int pageSize, Control[] requestControls)
+  {
+    this.context = context;
+    this.name = name;
+    this.filter = filter;
+    this.searchControls = searchControls;
+    this.pageSize = pageSize;
+    this.requestControls = Arrays.asList(requestControls);
+    this.recording = OperationMetrics.current();
+  }
+
+  /**
+   * Searches the context page by page
+   * @param context the context to search. Its request controls are changed by this search.
+   * @param name the name of the context to search
+   * @param filter search filter
+   * @param searchControls search controls
+   * @param pageSize number of entries per page. If 0 or less no paging is used.
+   * @param requestControls additional request controls sent with every page
+   * @return search results of all pages
+   * @throws NamingException if the search of the first page fails
+   */
+  public static PagedSearchEnumeration search(LdapContext context, String name, String filter,
+          SearchControls searchControls, int pageSize, Control... requestControls) throws NamingException
+  {
+    PagedSearchEnumeration enumeration = new PagedSearchEnumeration(context, name, filter,
+            JndiUtil.limitSearchTime(context, searchControls), pageSize, requestControls);
+    long start = System.nanoTime();
+    enumeration.searchPage(null);
+    long nanos = System.nanoTime() - start;
+    enumeration.elapsedNanos = nanos;
+    if (enumeration.recording != null)
+    {
+      enumeration.recording.add(OperationMetrics.Phase.SEARCH, nanos);
+      enumeration.recording.searched(name);
+    }
+    return enumeration;
+  }
+
+  /**
+   * Parses a configured page size
+   * @param value configured page size
+   * @return page size, 0 if paging is disabled or {@link #DEFAULT_PAGE_SIZE} if not configured
+   */
+  public static int parsePageSize(String value)
+  {
+    if (value == null || value.trim().isEmpty())
+    {
+      return DEFAULT_PAGE_SIZE;
+    }
+    try
+    {
+      return Math.max(0, Integer.parseInt(value.trim()));
+    }
+    catch (NumberFormatException ex)
+    {
+      return DEFAULT_PAGE_SIZE;
+    }
+  }
+
+  /**
+   * Gets the response controls of the last page read. Only available after all
+   * results have been read.
+   * @return response controls or null
+   */
+  @Override
+  public Control[] getResponseControls()
+  {
+    return responseControls;
+  }
+
+  @Override
+  public boolean hasMore() throws NamingException
+  {
+    long start = System.nanoTime();
+    try
+    {
+      return hasMoreResults();
+    }
+    finally
+    {
+      read(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public SearchResult next() throws NamingException
+  {
+    long start = System.nanoTime();
+    if (!hasMoreResults())
+    {
+      throw new NoSuchElementException();
+    }
+    SearchResult result = page.next();
+    read(System.nanoTime() - start);
+    results++;
+    if (recording != null)
+    {
+      recording.entry(result);
+    }
+    return result;
+  }
+
+  private void read(long nanos)
+  {
+    elapsedNanos += nanos;
+    if (recording != null)
+    {
+      recording.add(OperationMetrics.Phase.READ, nanos);
+    }
+  }
+
+  private boolean hasMoreResults() throws NamingException
+  {
+    if (exhausted)
+    {
+      return false;
+    }
+    long countLimit = searchControls.getCountLimit();
+    if (countLimit > 0 && results >= countLimit)
+    { // do not ask the server for entries it will not send
+      exhausted = true;
+      return false;
+    }
+    try
+    {
+      while (!page.hasMore())
+      {
+        byte[] cookie = readPageResponse();
+        if (lastPage || cookie == null || cookie.length == 0)
+        {
+          exhausted = true;
+          return false;
+        }
+        searchPage(cookie);
+      }
+    }
+    catch (SizeLimitExceededException ex)
+    {
+      if (countLimit <= 0)
+      { // limit of the server, the result is incomplete
+        throw ex;
+      }
+      exhausted = true;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Ends the results if reading them fails. Use {@link #hasMore()} and
+   * {@link #next()} to get the error.
+   */
+  @Override
+  public boolean hasMoreElements()
+  {
+    try
+    {
+      return hasMore();
+    }
+    catch (NamingException ex)
+    {
+      return false;
+    }
+  }
+
+  @Override
+  public SearchResult nextElement()
+  {
+    try
+    {
+      return next();
+    }
+    catch (NamingException ex)
+    {
+      throw new NoSuchElementException(ex.toString());
+    }
+  }
+
+  @Override
+  public void close() throws NamingException
+  {
+    exhausted = true;
+    if (!closed)
+    {
+      closed = true;
+      SlowOperationLog slowLog = SlowOperationLog.getInstance();
+      if (slowLog.isSlow(elapsedNanos))
+      {
+        slowLog.search(elapsedNanos, getServer(), name, filter, searchControls, results);
+      }
+    }
+    page.close();
+  }
+
+  private String getServer()
+  {
+    try
+    {
+      Object url = context.getEnvironment().get(Context.PROVIDER_URL);
+      return url != null ? url.toString() : null;
+    }
+    catch (NamingException ex)
+    {
+      return null;
+    }
+  }
+
+  private void searchPage(byte[] cookie) throws NamingException
+  {
+    List<Control> controls = new ArrayList<>(requestControls);
+    if (pageSize > 0)
+    {
+      try
+      {
+        controls.add(new PagedResultsControl(pageSize, cookie, Control.NONCRITICAL));
+      }
+      catch (IOException ex)
+      {
+        NamingException namingEx = new NamingException("Could not encode paged results control");
+        namingEx.setRootCause(ex);
+        throw namingEx;
+      }
+    }
+    else
+    {
+      lastPage = true;
+    }
+    context.setRequestControls(controls.isEmpty() ? null : controls.toArray(new Control[controls.size()]));
+    page = context.search(name, filter, searchControls);
+  }
+
+  private byte[] readPageResponse() throws NamingException
+  {
+    page.close();
+    responseControls = context.getResponseControls();
+    if (responseControls == null)
+    {
+      return null;
+    }
+    for (Control control : responseControls)
+    {
+      if (control instanceof PagedResultsResponseControl)
+      {
+        return ((PagedResultsResponseControl) control).getCookie();
+      }
+    }
+    return null;
+  }
+}
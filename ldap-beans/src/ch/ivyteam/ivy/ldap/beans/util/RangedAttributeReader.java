@@ -0,0 +1,213 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Reads attributes of search results including values that the server only
+ * returns in ranges.
+ * <p>
+ * Active Directory returns at most 1500 values of a multi valued attribute
+ * (e.g. <code>member</code>) with a search. The values are then returned as
+ * <code>member;range=0-1499</code> and the plain attribute is missing. This
+ * reader detects such attributes and reads the following ranges with one
+ * base object request each until the server signals the last range with
+ * <code>*</code>. The values of every range are added to the result and the
+ * range is dropped before the next one is read.
+ * </p>
+ * <p>
+ * The ranges are read on the connection of the search (see
+ * {@link #useConnectionOf(LdapContext)}), so a search does not need a second
+ * pooled connection while it holds its own. Only if the search results do not
+ * come from a connection, e.g. from the {@link SearchResultCache}, a pooled
+ * connection is borrowed when a ranged attribute is found. The reader must be
+ * closed to give it back.
+ * </p>
+ */
+public final class RangedAttributeReader implements AutoCloseable
+{
+  private static final String RANGE = ";range=";
+
+  private final JndiConfig jndiConfig;
+  /** context of the search, null if the results do not come from a connection */
+  private LdapContext searchContext;
+  /** context the ranges are read with, null until the first range is read */
+  private LdapContext rangeContext;
+  /** connection borrowed to read the ranges, null if the search context is used */
+  private LdapConnection connection;
+
+  /**
+   * Constructor
+   * @param jndiConfig configuration of the server the search results come from
+   */
+  public RangedAttributeReader(JndiConfig jndiConfig)
+  {
+    this.jndiConfig = jndiConfig;
+  }
+
+  /**
+   * Reads the ranges on the connection of the search instead of borrowing
+   * another one. The ranges are read with a new instance of the context,
+   * which shares the connection but not the request controls of the search.
+   * @param context context the search results are read from
+   */
+  public void useConnectionOf(LdapContext context)
+  {
+    this.searchContext = context;
+  }
+
+  /**
+   * Gets an attribute of a search result with all its values
+   * @param searchResult search result
+   * @param attributeName name of the attribute without range option
+   * @return attribute or null if the search result does not contain it
+   * @throws NamingException if a range can not be read
+   */
+  public Attribute get(SearchResult searchResult, String attributeName) throws NamingException
+  {
+    Attributes attributes = searchResult.getAttributes();
+    if (attributes == null)
+    {
+      return null;
+    }
+    Attribute attribute = attributes.get(attributeName);
+    if (attribute != null)
+    {
+      return attribute;
+    }
+    Attribute range = findRange(attributes, attributeName);
+    if (range == null)
+    {
+      return null;
+    }
+
+    // ordered: allows adding without searching the values added before
+    Attribute all = new BasicAttribute(attributeName, true);
+    while (true)
+    {
+      NamingEnumeration<?> values = range.getAll();
+      while (values.hasMore())
+      {
+        all.add(values.next());
+      }
+      String next = getNextRange(range.getID());
+      if (next == null)
+      {
+        return all;
+      }
+      range = readRange(searchResult, attributeName + RANGE + next);
+      if (range == null)
+      {
+        return all;
+      }
+    }
+  }
+
+  /**
+   * Closes the context the ranges were read with and gives the connection
+   * back to the pool if one was borrowed
+   */
+  @Override
+  public void close()
+  {
+    if (connection != null)
+    {
+      connection.close();
+      connection = null;
+    }
+    else if (rangeContext != null)
+    {
+      try
+      {
+        rangeContext.close();
+      }
+      catch (NamingException ex)
+      {
+        // the connection is closed with the search context
+      }
+    }
+    rangeContext = null;
+  }
+
+  private static Attribute findRange(Attributes attributes, String attributeName)
+  {
+    String prefix = attributeName + RANGE;
+    NamingEnumeration<String> ids = attributes.getIDs();
+    while (ids.hasMoreElements())
+    {
+      String id = ids.nextElement();
+      if (id.regionMatches(true, 0, prefix, 0, prefix.length()))
+      {
+        return attributes.get(id);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the range following a returned range
+   * @param rangedName returned attribute name, e.g. <code>member;range=0-1499</code>
+   * @return next range, e.g. <code>1500-*</code>, or null if the returned
+   *         range was the last one
+   */
+  static String getNextRange(String rangedName)
+  {
+    int pos = rangedName.toLowerCase().indexOf(RANGE);
+    if (pos < 0)
+    {
+      return null;
+    }
+    String range = rangedName.substring(pos + RANGE.length());
+    int dash = range.indexOf('-');
+    if (dash < 0 || range.endsWith("*"))
+    {
+      return null;
+    }
+    try
+    {
+      return (Long.parseLong(range.substring(dash + 1).trim()) + 1) + "-*";
+    }
+    catch (NumberFormatException ex)
+    {
+      return null;
+    }
+  }
+
+  private Attribute readRange(SearchResult searchResult, String rangedName) throws NamingException
+  {
+    if (rangeContext == null)
+    {
+      if (searchContext != null)
+      {
+        // the search context carries the paged results control of the search
+        rangeContext = searchContext.newInstance(null);
+      }
+      else
+      {
+        connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+        rangeContext = connection.getContext();
+      }
+    }
+    try
+    {
+      Attributes attributes = rangeContext.getAttributes(
+              JndiUtil.getRelativeName(rangeContext, searchResult.getNameInNamespace()),
+              new String[] {rangedName});
+      return findRange(attributes, rangedName.substring(0, rangedName.indexOf(';')));
+    }
+    catch (NamingException ex)
+    {
+      if (connection != null)
+      {
+        connection.invalidateOnConnectionError(ex);
+      }
+      // otherwise the search handles errors of its connection
+      throw ex;
+    }
+  }
+}
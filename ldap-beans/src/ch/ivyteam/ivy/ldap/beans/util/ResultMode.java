@@ -0,0 +1,108 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+/**
+ * What a query returns. The modes that need at most one entry limit the
+ * search to one entry, so the server stops after it. The modes that only
+ * test or count the matching entries request no attributes at all.
+ */
+public enum ResultMode
+{
+  /** the attributes of all matching entries */
+  ALL("all"),
+  /** the attributes of the first matching entry */
+  FIRST("onylFirst"),
+  /** whether an entry matches */
+  EXISTS("exists"),
+  /** the number of matching entries */
+  COUNT("count");
+
+  /** Returning attribute that requests no attributes (RFC 4511, 4.5.1.8) */
+  public static final String NO_ATTRIBUTES = "1.1";
+
+  private final String configValue;
+
+  private ResultMode(String configValue)
+  {
+    this.configValue = configValue;
+  }
+
+  /**
+   * Gets the value stored in the bean configuration
+   * @return configuration value
+   */
+  public String getConfigValue()
+  {
+    return configValue;
+  }
+
+  /**
+   * Parses a configured result mode
+   * @param value configured mode
+   * @return mode, {@link #FIRST} if not configured or unknown
+   */
+  public static ResultMode parse(String value)
+  {
+    for (ResultMode mode : values())
+    {
+      if (mode.configValue.equals(value))
+      {
+        return mode;
+      }
+    }
+    return FIRST;
+  }
+
+  /**
+   * @return true if the mode does not read any attributes but only tests or
+   *         counts the matching entries
+   */
+  public boolean isCountOnly()
+  {
+    return this == EXISTS || this == COUNT;
+  }
+
+  /**
+   * Sets the count limit and the returning attributes of the search
+   * @param searchControls search controls of the query
+   * @param attributes attributes the query returns
+   */
+  public void configure(SearchControls searchControls, String[] attributes)
+  {
+    searchControls.setCountLimit(this == FIRST || this == EXISTS ? 1 : 0);
+    searchControls.setReturningAttributes(isCountOnly() ? new String[] {NO_ATTRIBUTES} : attributes);
+  }
+
+  /**
+   * Reads the results of an {@link #EXISTS} or {@link #COUNT} query. Only the
+   * entries are counted, their attributes are not read.
+   * @param results search results
+   * @return {@link Boolean} whether an entry matches for {@link #EXISTS},
+   *         otherwise the {@link Integer} number of matching entries
+   * @throws NamingException if reading the results fails
+   */
+  public Object evaluate(NamingEnumeration<SearchResult> results) throws NamingException
+  {
+    if (this == EXISTS)
+    {
+      if (results.hasMore())
+      {
+        // read the entry, so that a recording cache sees a complete result
+        results.next();
+        return true;
+      }
+      return false;
+    }
+    int count = 0;
+    while (results.hasMore())
+    {
+      results.next();
+      count++;
+    }
+    return count;
+  }
+}
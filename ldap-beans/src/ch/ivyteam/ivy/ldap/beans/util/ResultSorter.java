@@ -0,0 +1,285 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.lang.reflect.Array;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Sorts query result rows by one or more columns.
+ * <p>
+ * The collation keys of all sort values are computed once per row and an index
+ * array is sorted, so rows are neither compared by string conversion nor moved
+ * during the sort. Like the server side sort (RFC 2891) a missing value is
+ * greater than any other value and a multi-valued attribute is compared by its
+ * smallest value in ascending and its largest value in descending order.
+ * </p>
+ * <p>
+ * Sort specifications are a comma separated list of attribute names, each
+ * optionally followed by <code>asc</code> or <code>desc</code> and
+ * <code>nullsFirst</code> or <code>nullsLast</code>, e.g.
+ * <code>sn, givenName desc nullsLast</code>.
+ * </p>
+ */
+public class ResultSorter
+{
+  private final List<SortAttribute> sortAttributes;
+  private final int[] columns;
+  private final Locale locale;
+
+  /**
+   * Constructor
+   * @param sortAttributes attributes to sort by
+   * @param columnNames names of the row columns
+   * @param locale locale used to compare the values
+   */
+  public ResultSorter(List<SortAttribute> sortAttributes, List<String> columnNames, Locale locale)
+  {
+    this.sortAttributes = sortAttributes;
+    this.locale = locale != null ? locale : Locale.getDefault();
+    this.columns = new int[sortAttributes.size()];
+    for (int pos = 0; pos < columns.length; pos++)
+    {
+      columns[pos] = indexOfIgnoreCase(columnNames, sortAttributes.get(pos).getName());
+    }
+  }
+
+  /**
+   * Parses a sort specification
+   * @param sortSpec comma separated list of attributes with optional order and null handling
+   * @param descending order of attributes without explicit order
+   * @return sort attributes, empty if the specification is blank
+   */
+  public static List<SortAttribute> parse(String sortSpec, boolean descending)
+  {
+    if (StringUtils.isBlank(sortSpec))
+    {
+      return Collections.emptyList();
+    }
+    List<SortAttribute> sortAttributes = new ArrayList<>();
+    for (String part : StringUtils.split(sortSpec, ','))
+    {
+      String[] tokens = StringUtils.split(part);
+      if (tokens.length == 0)
+      {
+        continue;
+      }
+      boolean attributeDescending = descending;
+      Boolean nullsFirst = null;
+      for (int pos = 1; pos < tokens.length; pos++)
+      {
+        String token = tokens[pos];
+        if ("asc".equalsIgnoreCase(token))
+        {
+          attributeDescending = false;
+        }
+        else if ("desc".equalsIgnoreCase(token))
+        {
+          attributeDescending = true;
+        }
+        else if ("nullsFirst".equalsIgnoreCase(token))
+        {
+          nullsFirst = Boolean.TRUE;
+        }
+        else if ("nullsLast".equalsIgnoreCase(token))
+        {
+          nullsFirst = Boolean.FALSE;
+        }
+        else
+        {
+          throw new IllegalArgumentException("Unknown sort option '" + token + "' in '" + sortSpec + "'");
+        }
+      }
+      sortAttributes.add(new SortAttribute(tokens[0], attributeDescending, nullsFirst));
+    }
+    return sortAttributes;
+  }
+
+  /**
+   * Parses a locale configuration
+   * @param languageTag IETF language tag, e.g. de-CH
+   * @return locale or the default locale if the tag is blank
+   */
+  public static Locale parseLocale(String languageTag)
+  {
+    if (StringUtils.isBlank(languageTag))
+    {
+      return Locale.getDefault();
+    }
+    return Locale.forLanguageTag(languageTag.trim());
+  }
+
+  /**
+   * Sorts the rows. Each row is a list of column values. The sort is stable.
+   * @param rows rows to sort
+   */
+  public <R extends List<?>> void sort(List<R> rows)
+  {
+    if (rows.size() < 2 || sortAttributes.isEmpty())
+    {
+      return;
+    }
+    Integer[] order = sortedIndexes(rows);
+    List<R> sorted = new ArrayList<>(rows.size());
+    for (Integer index : order)
+    {
+      sorted.add(rows.get(index));
+    }
+    for (int pos = 0; pos < sorted.size(); pos++)
+    {
+      rows.set(pos, sorted.get(pos));
+    }
+  }
+
+  /**
+   * Gets the indexes of the rows in sort order without modifying the rows
+   * @param rows rows to sort
+   * @return row indexes in sort order
+   */
+  public Integer[] sortedIndexes(List<? extends List<?>> rows)
+  {
+    Collator collator = Collator.getInstance(locale);
+    collator.setStrength(Collator.SECONDARY);
+
+    final CollationKey[][] keys = new CollationKey[sortAttributes.size()][rows.size()];
+    for (int row = 0; row < rows.size(); row++)
+    {
+      List<?> values = rows.get(row);
+      for (int key = 0; key < keys.length; key++)
+      {
+        int column = columns[key];
+        Object value = column >= 0 && column < values.size() ? values.get(column) : null;
+        keys[key][row] = toCollationKey(collator, value, sortAttributes.get(key).isDescending());
+      }
+    }
+
+    Integer[] order = new Integer[rows.size()];
+    for (int pos = 0; pos < order.length; pos++)
+    {
+      order[pos] = pos;
+    }
+    Arrays.sort(order, (row1, row2) -> {
+      for (int key = 0; key < keys.length; key++)
+      {
+        int result = compare(sortAttributes.get(key), keys[key][row1], keys[key][row2]);
+        if (result != 0)
+        {
+          return result;
+        }
+      }
+      return 0;
+    });
+    return order;
+  }
+
+  private static int compare(SortAttribute sortAttribute, CollationKey key1, CollationKey key2)
+  {
+    if (key1 == null || key2 == null)
+    {
+      if (key1 == key2)
+      {
+        return 0;
+      }
+      return (key1 == null) == sortAttribute.isNullsFirst() ? -1 : 1;
+    }
+    int result = key1.compareTo(key2);
+    return sortAttribute.isDescending() ? -result : result;
+  }
+
+  /**
+   * Gets the collation key of a value. Of multi-valued attributes the smallest
+   * value is used for ascending and the largest for descending order.
+   */
+  private static CollationKey toCollationKey(Collator collator, Object value, boolean descending)
+  {
+    if (value instanceof Collection)
+    {
+      return toCollationKey(collator, ((Collection<?>) value).toArray(), descending);
+    }
+    if (value != null && value.getClass().isArray() && !(value instanceof byte[]))
+    {
+      CollationKey result = null;
+      for (int pos = 0; pos < Array.getLength(value); pos++)
+      {
+        CollationKey key = toCollationKey(collator, Array.get(value, pos), descending);
+        if (key != null && (result == null || (descending ? key.compareTo(result) > 0 : key.compareTo(result) < 0)))
+        {
+          result = key;
+        }
+      }
+      return result;
+    }
+    if (value == null || "".equals(value) || value instanceof Enumeration)
+    {
+      // an enumeration can only be read once, so it must not be consumed here
+      return null;
+    }
+    return collator.getCollationKey(value.toString());
+  }
+
+  private static int indexOfIgnoreCase(List<String> names, String name)
+  {
+    for (int pos = 0; pos < names.size(); pos++)
+    {
+      if (name.equalsIgnoreCase(names.get(pos)))
+      {
+        return pos;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * An attribute to sort by
+   */
+  public static class SortAttribute
+  {
+    private final String name;
+    private final boolean descending;
+    private final boolean nullsFirst;
+
+    /**
+     * Constructor
+     * @param name attribute name
+     * @param descending true to sort descending
+     * @param nullsFirst true if rows without value come first, false if they
+     *          come last, null to treat a missing value as greater than any
+     *          other value (RFC 2891)
+     */
+    public SortAttribute(String name, boolean descending, Boolean nullsFirst)
+    {
+      this.name = name;
+      this.descending = descending;
+      this.nullsFirst = nullsFirst != null ? nullsFirst.booleanValue() : descending;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public boolean isDescending()
+    {
+      return descending;
+    }
+
+    public boolean isNullsFirst()
+    {
+      return nullsFirst;
+    }
+
+    @Override
+    public String toString()
+    {
+      return name + (descending ? " desc" : " asc") + (nullsFirst ? " nullsFirst" : " nullsLast");
+    }
+  }
+}
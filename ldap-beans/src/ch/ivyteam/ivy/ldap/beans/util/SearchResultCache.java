@@ -0,0 +1,490 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.naming.InvalidNameException;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Caches search results of the query beans for a configurable time.
+ * <p>
+ * Entries are evicted when their time to live expired, when the cache holds
+ * more than {@link #getMaxEntries()} searches or more than
+ * {@link #getMaxWeight()} search results in total (least recently used first)
+ * and when an object below or above their search base is changed by one of
+ * the modifying beans. Results of a search that was still read when an
+ * object changed are not cached.
+ * </p>
+ * <p>
+ * The limits can be changed with the system properties
+ * <code>ch.ivyteam.ivy.ldap.beans.cache.maxEntries</code> and
+ * <code>ch.ivyteam.ivy.ldap.beans.cache.maxWeight</code>.
+ * </p>
+ */
+public class SearchResultCache
+{
+  private static final SearchResultCache INSTANCE = new SearchResultCache(
+          Integer.getInteger("ch.ivyteam.ivy.ldap.beans.cache.maxEntries", 1000),
+          Integer.getInteger("ch.ivyteam.ivy.ldap.beans.cache.maxWeight", 100000));
+
+  private final int maxEntries;
+  private final int maxWeight;
+
+  /** cached searches in access order. Guarded by this. */
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  /** number of cached search results. Guarded by this. */
+  private long weight;
+  /**
+   * incremented by every invalidation, so a search that was read while an
+   * object changed is not cached. Guarded by this.
+   */
+  private long generation;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  SearchResultCache(int maxEntries, int maxWeight)
+  {
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Gets the cache shared by all query beans
+   * @return cache
+   */
+  public static SearchResultCache getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * Gets the cached results of a search
+   * @param key search key
+   * @return cached results or null if the search is not cached
+   */
+  public SearchResultEnumeration lookup(Key key)
+  {
+    Entry entry;
+    synchronized (this)
+    {
+      entry = entries.get(key);
+      if (entry != null && entry.isExpired(System.nanoTime()))
+      {
+        remove(key);
+        entry = null;
+      }
+    }
+    if (entry == null)
+    {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return new CachedEnumeration(entry);
+  }
+
+  /**
+   * Records the results of a search while they are read. The results are
+   * cached when they have been read completely or when as many results as
+   * the count limit of the search have been read.
+   * @param key search key
+   * @param results search results
+   * @param ttlSeconds time to live of the cache entry in seconds
+   * @return enumeration that must be used instead of the given results
+   */
+  public SearchResultEnumeration record(Key key, SearchResultEnumeration results, int ttlSeconds)
+  {
+    return new RecordingEnumeration(key, results, TimeUnit.SECONDS.toNanos(ttlSeconds), getGeneration());
+  }
+
+  /**
+   * Removes all searches whose search base is the given object, one of its
+   * parents or one of its children
+   * @param objectName name of a changed object
+   */
+  public void invalidate(String objectName)
+  {
+    LdapName changed = toLdapName(objectName);
+    synchronized (this)
+    {
+      generation++;
+      Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext())
+      {
+        Map.Entry<Key, Entry> entry = iterator.next();
+        if (changed == null || entry.getKey().isAffectedBy(changed))
+        {
+          weight -= entry.getValue().results.size();
+          iterator.remove();
+          invalidations.increment();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all cached searches
+   */
+  public synchronized void clear()
+  {
+    generation++;
+    invalidations.add(entries.size());
+    entries.clear();
+    weight = 0;
+  }
+
+  public long getHitCount()
+  {
+    return hits.sum();
+  }
+
+  public long getMissCount()
+  {
+    return misses.sum();
+  }
+
+  public long getEvictionCount()
+  {
+    return evictions.sum();
+  }
+
+  public long getInvalidationCount()
+  {
+    return invalidations.sum();
+  }
+
+  public synchronized int getSize()
+  {
+    return entries.size();
+  }
+
+  public synchronized long getWeight()
+  {
+    return weight;
+  }
+
+  public int getMaxEntries()
+  {
+    return maxEntries;
+  }
+
+  public int getMaxWeight()
+  {
+    return maxWeight;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "SearchResultCache[size=" + getSize() + ", weight=" + getWeight()
+            + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+            + ", evictions=" + getEvictionCount() + ", invalidations=" + getInvalidationCount() + "]";
+  }
+
+  private synchronized long getGeneration()
+  {
+    return generation;
+  }
+
+  /**
+   * Caches the results of a search unless an object changed since the search
+   * started
+   */
+  private synchronized void put(Key key, Entry entry, long searchGeneration)
+  {
+    if (searchGeneration != generation)
+    {
+      return;
+    }
+    remove(key);
+    entries.put(key, entry);
+    weight += entry.results.size();
+    long now = System.nanoTime();
+    Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext() && (entries.size() > maxEntries || weight > maxWeight))
+    {
+      Map.Entry<Key, Entry> eldest = iterator.next();
+      weight -= eldest.getValue().results.size();
+      iterator.remove();
+      if (!eldest.getValue().isExpired(now))
+      {
+        evictions.increment();
+      }
+    }
+  }
+
+  private void remove(Key key)
+  {
+    Entry removed = entries.remove(key);
+    if (removed != null)
+    {
+      weight -= removed.results.size();
+    }
+  }
+
+  static LdapName toLdapName(String name)
+  {
+    try
+    {
+      return new LdapName(name == null ? "" : name);
+    }
+    catch (InvalidNameException ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Identifies a search: server, principal, search base, filter, scope,
+   * returned attributes and additional request options like sorting.
+   */
+  public static final class Key
+  {
+    private final LdapName base;
+    private final long countLimit;
+    private final List<Object> values;
+    private final int hashCode;
+
+    /**
+     * Constructor
+     * @param jndiConfig resolved server configuration
+     * @param base search base
+     * @param filter resolved search filter
+     * @param searchControls search controls
+     * @param options additional options that change the result, e.g. the server side sort
+     */
+    public Key(JndiConfig jndiConfig, String base, String filter, SearchControls searchControls, String options)
+    {
+      String[] attributes = searchControls.getReturningAttributes();
+      List<String> attributeList = null;
+      if (attributes != null)
+      {
+        attributeList = new ArrayList<>();
+        for (String attribute : attributes)
+        {
+          attributeList.add(attribute.toLowerCase());
+        }
+        Collections.sort(attributeList);
+      }
+      this.base = toLdapName(base);
+      this.countLimit = searchControls.getCountLimit();
+      // the credentials are part of the key, so a wrong password never gets cached results
+      this.values = Arrays.<Object>asList(
+              jndiConfig.getProvider() != null ? jndiConfig.getProvider().getProviderClass() : null,
+              jndiConfig.getUrl(),
+              jndiConfig.getUserName(),
+              jndiConfig.getPassword(),
+              this.base != null ? this.base : base,
+              filter,
+              searchControls.getSearchScope(),
+              searchControls.getCountLimit(),
+              attributeList,
+              options);
+      this.hashCode = values.hashCode();
+    }
+
+    boolean isAffectedBy(LdapName changed)
+    {
+      return base == null || base.startsWith(changed) || changed.startsWith(base);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      return obj instanceof Key && values.equals(((Key) obj).values);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hashCode;
+    }
+
+    @Override
+    public String toString()
+    {
+      return "Key[url=" + values.get(1) + ", user=" + values.get(2) + ", base=" + values.get(4)
+              + ", filter=" + values.get(5) + "]";
+    }
+  }
+
+  private static final class Entry
+  {
+    private final List<SearchResult> results;
+    private final Control[] responseControls;
+    private final long expires;
+
+    Entry(List<SearchResult> results, Control[] responseControls, long expires)
+    {
+      this.results = results;
+      this.responseControls = responseControls;
+      this.expires = expires;
+    }
+
+    boolean isExpired(long now)
+    {
+      return now - expires > 0;
+    }
+  }
+
+  private static final class CachedEnumeration implements SearchResultEnumeration
+  {
+    private final Entry entry;
+    private int next;
+
+    CachedEnumeration(Entry entry)
+    {
+      this.entry = entry;
+    }
+
+    @Override
+    public Control[] getResponseControls()
+    {
+      return entry.responseControls;
+    }
+
+    @Override
+    public boolean hasMore()
+    {
+      return next < entry.results.size();
+    }
+
+    @Override
+    public SearchResult next()
+    {
+      if (!hasMore())
+      {
+        throw new NoSuchElementException();
+      }
+      return entry.results.get(next++);
+    }
+
+    @Override
+    public boolean hasMoreElements()
+    {
+      return hasMore();
+    }
+
+    @Override
+    public SearchResult nextElement()
+    {
+      return next();
+    }
+
+    @Override
+    public void close()
+    {
+      next = entry.results.size();
+    }
+  }
+
+  private final class RecordingEnumeration implements SearchResultEnumeration
+  {
+    private final Key key;
+    private final SearchResultEnumeration results;
+    private final long ttlNanos;
+    /** generation of the cache when the search started */
+    private final long generation;
+    private List<SearchResult> recorded = new ArrayList<>();
+
+    RecordingEnumeration(Key key, SearchResultEnumeration results, long ttlNanos, long generation)
+    {
+      this.key = key;
+      this.results = results;
+      this.ttlNanos = ttlNanos;
+      this.generation = generation;
+    }
+
+    @Override
+    public Control[] getResponseControls()
+    {
+      return results.getResponseControls();
+    }
+
+    @Override
+    public boolean hasMore() throws NamingException
+    {
+      boolean hasMore = results.hasMore();
+      if (!hasMore && recorded != null)
+      {
+        put(key, new Entry(recorded, results.getResponseControls(), System.nanoTime() + ttlNanos), generation);
+        recorded = null;
+      }
+      return hasMore;
+    }
+
+    @Override
+    public SearchResult next() throws NamingException
+    {
+      SearchResult result = results.next();
+      if (recorded != null)
+      {
+        recorded.add(result);
+        if (recorded.size() > maxWeight)
+        {
+          // too large to be cached
+          recorded = null;
+        }
+        else if (key.countLimit > 0 && recorded.size() >= key.countLimit)
+        {
+          // the server does not send more, e.g. a first result lookup that stops reading here
+          put(key, new Entry(recorded, results.getResponseControls(), System.nanoTime() + ttlNanos), generation);
+          recorded = null;
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public boolean hasMoreElements()
+    {
+      try
+      {
+        return hasMore();
+      }
+      catch (NamingException ex)
+      {
+        // an incomplete result must not be cached
+        recorded = null;
+        return false;
+      }
+    }
+
+    @Override
+    public SearchResult nextElement()
+    {
+      try
+      {
+        return next();
+      }
+      catch (NamingException ex)
+      {
+        recorded = null;
+        throw new NoSuchElementException(ex.toString());
+      }
+    }
+
+    @Override
+    public void close() throws NamingException
+    {
+      recorded = null;
+      results.close();
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+
+/**
+ * Search results together with the response controls the server sent with them
+ */
+public interface SearchResultEnumeration extends NamingEnumeration<SearchResult>
+{
+  /**
+   * Gets the response controls of the search. Only available after all
+   * results have been read.
+   * @return response controls or null
+   */
+  Control[] getResponseControls();
+}
@@ -0,0 +1,312 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Health of a directory server, shared by all configurations that use its url.
+ * <p>
+ * Tracks the rolling latency of the server, measured as the time to connect
+ * and bind, and the rolling rate of connection errors. After {@value #FAILURE_THRESHOLD} connection
+ * errors or timeouts in a row the circuit of the server opens: it is skipped
+ * when new connections are opened, so callers fail fast instead of waiting
+ * for its timeouts. Every {@value #PROBE_INTERVAL_SECONDS} seconds the circuit
+ * of such a server half-opens for a single probe (connect, bind and root DSE
+ * read with the timeouts of the configuration). The circuit closes if the
+ * server answers and opens again otherwise.
+ * </p>
+ */
+public final class ServerHealth
+{
+  /** Connection errors in a row that open the circuit */
+  public static final int FAILURE_THRESHOLD = 3;
+  /** Interval of the probes of servers with an open circuit */
+  public static final long PROBE_INTERVAL_SECONDS = 10;
+
+  /** Weight of a new sample in the rolling values */
+  private static final double SAMPLE_WEIGHT = 0.2;
+  private static final String[] NO_ATTRIBUTES = new String[] {"1.1"};
+
+  private static final Map<String, ServerHealth> servers = new ConcurrentHashMap<>();
+  private static volatile ScheduledExecutorService prober;
+
+  /**
+   * State of the circuit of a server
+   */
+  public enum State
+  {
+    /** the server is used */
+    CLOSED,
+    /** the server is skipped until a probe succeeds */
+    OPEN,
+    /** the server is probed, still skipped by other callers */
+    HALF_OPEN
+  }
+
+  private final String url;
+
+  /** rolling latency in milliseconds, negative if unknown. Guarded by this. */
+  private double latencyMillis = -1;
+  /** rolling rate of connection errors between 0 and 1. Guarded by this. */
+  private double errorRate;
+  /** Guarded by this */
+  private int consecutiveFailures;
+  /** Guarded by this */
+  private State state = State.CLOSED;
+  /** configuration used to probe the server. Guarded by this. */
+  private JndiConfig probeConfig;
+
+  private ServerHealth(String url)
+  {
+    this.url = url;
+  }
+
+  /**
+   * Gets the health of a server
+   * @param url url of a single server
+   * @return health
+   */
+  public static ServerHealth get(String url)
+  {
+    return servers.computeIfAbsent(url, ServerHealth::new);
+  }
+
+  /**
+   * @return health of all servers used so far
+   */
+  public static Collection<ServerHealth> getAll()
+  {
+    return new ArrayList<>(servers.values());
+  }
+
+  /**
+   * Records a successful use of a connection to the server. The duration of
+   * the use does not tell anything about the server, so it is not recorded.
+   */
+  public synchronized void recordSuccess()
+  {
+    errorRate -= SAMPLE_WEIGHT * errorRate;
+    consecutiveFailures = 0;
+  }
+
+  /**
+   * Records a successful connect and bind to the server
+   * @param latencyNanos time the connect and bind took
+   */
+  public synchronized void recordSuccess(long latencyNanos)
+  {
+    double millis = latencyNanos / 1_000_000.0;
+    latencyMillis = latencyMillis < 0 ? millis : latencyMillis + SAMPLE_WEIGHT * (millis - latencyMillis);
+    recordSuccess();
+  }
+
+  /**
+   * Records a connection error. Opens the circuit if the server failed
+   * {@value #FAILURE_THRESHOLD} times in a row.
+   * @param jndiConfig configuration that failed, used to probe the server
+   */
+  public void recordFailure(JndiConfig jndiConfig)
+  {
+    synchronized (this)
+    {
+      errorRate += SAMPLE_WEIGHT * (1 - errorRate);
+      consecutiveFailures++;
+      if (consecutiveFailures < FAILURE_THRESHOLD || state != State.CLOSED)
+      {
+        return;
+      }
+      state = State.OPEN;
+      probeConfig = (JndiConfig) jndiConfig.clone();
+    }
+    startProber();
+  }
+
+  /**
+   * @return true if new connections may be opened to the server
+   */
+  public synchronized boolean isAvailable()
+  {
+    return state == State.CLOSED;
+  }
+
+  public String getUrl()
+  {
+    return url;
+  }
+
+  public synchronized State getState()
+  {
+    return state;
+  }
+
+  /**
+   * @return rolling connect and bind latency in milliseconds, negative if no
+   *         connection was opened to the server yet
+   */
+  public synchronized double getLatencyMillis()
+  {
+    return latencyMillis;
+  }
+
+  /**
+   * @return rolling rate of connection errors between 0 and 1
+   */
+  public synchronized double getErrorRate()
+  {
+    return errorRate;
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return "ServerHealth[url=" + url + ", state=" + state + ", latencyMillis=" + latencyMillis
+            + ", errorRate=" + errorRate + "]";
+  }
+
+  /**
+   * Half-opens the circuit and probes the server. Closes the circuit if the
+   * server answers, opens it again otherwise.
+   */
+  void probe()
+  {
+    JndiConfig config;
+    synchronized (this)
+    {
+      if (state != State.OPEN)
+      {
+        return;
+      }
+      state = State.HALF_OPEN;
+      config = probeConfig;
+    }
+    long start = System.nanoTime();
+    long latency;
+    // without the base dn, so the probe reads the root DSE
+    Hashtable<String, Object> env = config.createEnvironment(JndiUtil.getServerRootUrl(url));
+    // never wait for the operating system connect timeout
+    env.putIfAbsent(JndiConfig.LDAP_CONNECT_TIMEOUT, Integer.toString(JndiConfig.DEFAULT_CONNECT_TIMEOUT));
+    LdapContext context = null;
+    try
+    {
+      context = new InitialLdapContext(env, null);
+      latency = System.nanoTime() - start;
+      context.getAttributes("", NO_ATTRIBUTES);
+    }
+    catch (NamingException ex)
+    {
+      if (LdapConnection.isConnectionError(ex))
+      {
+        reopen();
+      }
+      else
+      {
+        // the server answered, e.g. with an authentication error
+        reinstate(System.nanoTime() - start);
+      }
+      return;
+    }
+    finally
+    {
+      if (context != null)
+      {
+        try
+        {
+          context.close();
+        }
+        catch (NamingException ex)
+        {
+        }
+      }
+    }
+    reinstate(latency);
+  }
+
+  private synchronized void reopen()
+  {
+    state = State.OPEN;
+    errorRate += SAMPLE_WEIGHT * (1 - errorRate);
+  }
+
+  private synchronized void reinstate(long latencyNanos)
+  {
+    state = State.CLOSED;
+    probeConfig = null;
+    recordSuccess(latencyNanos);
+  }
+
+  private static void startProber()
+  {
+    if (prober != null)
+    {
+      return;
+    }
+    synchronized (ServerHealth.class)
+    {
+      if (prober == null)
+      {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "ldap-beans-server-probe");
+          thread.setDaemon(true);
+          return thread;
+        });
+        executor.scheduleWithFixedDelay(ServerHealth::probeOpenServers,
+                PROBE_INTERVAL_SECONDS, PROBE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        prober = executor;
+      }
+    }
+  }
+
+  /**
+   * Stops the probes and forgets the health of all servers. Called when the
+   * last bean stops, see {@link LdapConnectionManager#coolDown(Object)}.
+   */
+  static void shutdown()
+  {
+    ScheduledExecutorService executor;
+    synchronized (ServerHealth.class)
+    {
+      executor = prober;
+      prober = null;
+      // an open circuit would never be probed again
+      servers.clear();
+    }
+    if (executor != null)
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void probeOpenServers()
+  {
+    List<ServerHealth> open = new ArrayList<>();
+    for (ServerHealth server : servers.values())
+    {
+      if (server.getState() == State.OPEN)
+      {
+        open.add(server);
+      }
+    }
+    for (ServerHealth server : open)
+    {
+      try
+      {
+        server.probe();
+      }
+      catch (RuntimeException ex)
+      {
+        // keep the probe thread alive
+      }
+    }
+  }
+}
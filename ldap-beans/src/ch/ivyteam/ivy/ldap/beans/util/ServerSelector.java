@@ -0,0 +1,63 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the servers a new connection is tried on, according to the
+ * {@link JndiConfig.ServerSelection} of a configuration and the
+ * {@link ServerHealth} of its servers.
+ */
+final class ServerSelector
+{
+  /** next round robin position by url list */
+  private static final Map<String, AtomicInteger> positions = new ConcurrentHashMap<>();
+
+  private ServerSelector()
+  {
+  }
+
+  /**
+   * Gets the servers to try in the order they should be tried
+   * @param jndiConfig configuration
+   * @return urls of the available servers, empty if the circuits of all
+   *         servers are open
+   */
+  static List<String> select(JndiConfig jndiConfig)
+  {
+    List<String> urls = jndiConfig.getUrls();
+    if (urls.size() > 1)
+    {
+      switch (jndiConfig.getServerSelection())
+      {
+        case ROUND_ROBIN:
+          int position = positions.computeIfAbsent(jndiConfig.getUrl(), key -> new AtomicInteger())
+                  .getAndIncrement();
+          Collections.rotate(urls, -Math.floorMod(position, urls.size()));
+          break;
+        case LEAST_LATENCY:
+          // unknown latencies (negative) first, so every server gets measured
+          urls.sort(Comparator.comparingDouble(url -> ServerHealth.get(url).getLatencyMillis()));
+          break;
+        default:
+          break;
+      }
+    }
+    List<String> available = new ArrayList<>(urls.size());
+    // a server listed several times is tried only once
+    for (String url : new LinkedHashSet<>(urls))
+    {
+      if (ServerHealth.get(url).isAvailable())
+      {
+        available.add(url);
+      }
+    }
+    return available;
+  }
+}
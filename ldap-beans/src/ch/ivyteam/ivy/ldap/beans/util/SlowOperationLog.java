@@ -0,0 +1,171 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.naming.directory.SearchControls;
+
+import ch.ivyteam.log.Logger;
+
+/**
+ * Logs directory operations that take longer than a threshold, with the
+ * context needed to reproduce them: bean, server, base or entry, filter,
+ * scope, number of requested attributes and number of results.
+ * <p>
+ * Configured with system properties:
+ * </p>
+ * <ul>
+ * <li><code>ch.ivyteam.ivy.ldap.beans.slowlog.thresholdMillis</code>: min
+ * duration of a logged operation, default {@value #DEFAULT_THRESHOLD_MILLIS},
+ * 0 disables the log</li>
+ * <li><code>ch.ivyteam.ivy.ldap.beans.slowlog.maxPerMinute</code>: max number
+ * of log lines per minute, default {@value #DEFAULT_MAX_PER_MINUTE}</li>
+ * <li><code>ch.ivyteam.ivy.ldap.beans.slowlog.samplePercent</code>: percentage
+ * of the slow operations that are logged, default 100</li>
+ * </ul>
+ * <p>
+ * Operations that are not logged because of the rate limit or the sampling
+ * are counted and reported with the next log line. Credentials are never
+ * logged, servers are identified by their url only.
+ * </p>
+ */
+public final class SlowOperationLog
+{
+  /** Default min duration of a logged operation */
+  public static final int DEFAULT_THRESHOLD_MILLIS = 2000;
+  /** Default max number of log lines per minute */
+  public static final int DEFAULT_MAX_PER_MINUTE = 60;
+
+  private static final String PREFIX = "ch.ivyteam.ivy.ldap.beans.slowlog.";
+  private static final Logger LOGGER = Logger.getClassLogger(SlowOperationLog.class);
+  private static final SlowOperationLog INSTANCE = new SlowOperationLog(
+          JndiConfigProperties.parseTimeout(System.getProperty(PREFIX + "thresholdMillis"), DEFAULT_THRESHOLD_MILLIS),
+          JndiConfigProperties.parsePositiveInt(System.getProperty(PREFIX + "maxPerMinute"), DEFAULT_MAX_PER_MINUTE),
+          Math.min(100, JndiConfigProperties.parsePositiveInt(System.getProperty(PREFIX + "samplePercent"), 100)),
+          LOGGER::warn);
+
+  private final long thresholdNanos;
+  private final int maxPerMinute;
+  private final int samplePercent;
+  private final Consumer<String> sink;
+
+  /** start of the current rate limit window. Guarded by this. */
+  private long windowStart;
+  /** lines logged in the current window. Guarded by this. */
+  private int logged;
+  /** slow operations not logged since the last line. Guarded by this. */
+  private long suppressed;
+
+  SlowOperationLog(int thresholdMillis, int maxPerMinute, int samplePercent, Consumer<String> sink)
+  {
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    this.maxPerMinute = maxPerMinute;
+    this.samplePercent = samplePercent;
+    this.sink = sink;
+  }
+
+  /**
+   * Gets the log shared by all ldap beans
+   * @return slow operation log
+   */
+  public static SlowOperationLog getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * @param nanos duration of an operation
+   * @return true if the operation is slow enough to be logged
+   */
+  public boolean isSlow(long nanos)
+  {
+    return thresholdNanos > 0 && nanos >= thresholdNanos;
+  }
+
+  /**
+   * Logs a search if it was slow
+   * @param nanos time spent in the search and in reading its results
+   * @param server url of the server, null if unknown
+   * @param base base of the search
+   * @param filter final filter
+   * @param searchControls search controls
+   * @param results number of results read
+   */
+  void search(long nanos, String server, String base, String filter, SearchControls searchControls,
+          long results)
+  {
+    if (!isSlow(nanos))
+    {
+      return;
+    }
+    String[] attributes = searchControls.getReturningAttributes();
+    log(nanos, "search", server, "base=" + base
+            + ", filter=" + filter
+            + ", scope=" + getScopeName(searchControls.getSearchScope())
+            + ", attributes=" + (attributes != null ? Integer.toString(attributes.length) : "all")
+            + ", results=" + results);
+  }
+
+  /**
+   * Logs a write if it was slow
+   * @param nanos duration of the write
+   * @param operation <code>modifyAttributes</code>, <code>bind</code>,
+   *        <code>rename</code> or <code>unbind</code>
+   * @param server url of the server, null if unknown
+   * @param name the written entry
+   */
+  void write(long nanos, String operation, String server, String name)
+  {
+    if (isSlow(nanos))
+    {
+      log(nanos, operation, server, "entry=" + name);
+    }
+  }
+
+  private void log(long nanos, String operation, String server, String details)
+  {
+    long suppressedBefore;
+    synchronized (this)
+    {
+      long now = System.nanoTime();
+      if (now - windowStart >= TimeUnit.MINUTES.toNanos(1))
+      {
+        windowStart = now;
+        logged = 0;
+      }
+      if (logged >= maxPerMinute || ThreadLocalRandom.current().nextInt(100) >= samplePercent)
+      {
+        suppressed++;
+        return;
+      }
+      logged++;
+      suppressedBefore = suppressed;
+      suppressed = 0;
+    }
+    OperationMetrics.Recording recording = OperationMetrics.current();
+    StringBuilder line = new StringBuilder("Slow LDAP ").append(operation)
+            .append(" took ").append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms")
+            .append(": bean=").append(recording != null ? recording.getBean() : "-")
+            .append(", server=").append(server != null ? server : "-")
+            .append(", ").append(details);
+    if (suppressedBefore > 0)
+    {
+      line.append(" (").append(suppressedBefore).append(" slow operations not logged before)");
+    }
+    sink.accept(line.toString());
+  }
+
+  private static String getScopeName(int scope)
+  {
+    switch (scope)
+    {
+      case SearchControls.OBJECT_SCOPE:
+        return "object";
+      case SearchControls.ONELEVEL_SCOPE:
+        return "oneLevel";
+      default:
+        return "subTree";
+    }
+  }
+}
@@ -0,0 +1,311 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.InvalidNameException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+/**
+ * Copies all entries found by a search to another place, possibly on another
+ * server.
+ * <p>
+ * The source entries are streamed from a paged search and handed to writer
+ * threads through a bounded window (see {@link DnOrderedExecutor}), so only
+ * a few entries are in memory at the same time. Each entry is bound under the
+ * target name with the search base replaced by the target base. A parent is
+ * bound before its children as long as the search returns parents first,
+ * which directories do for subtree searches. The naming attribute of the
+ * base entry is replaced by the one of the target name.
+ * </p>
+ * <p>
+ * A failing entry does not abort the copy, its children will fail too.
+ * A target base inside the source subtree of the same server is rejected,
+ * the search would find the copies and copy them again.
+ * </p>
+ */
+public final class SubtreeCopier
+{
+  private final JndiConfig source;
+  private final JndiConfig target;
+  private final int parallelism;
+  private final int pageSize;
+
+  /**
+   * Constructor
+   * @param source server to read the entries from
+   * @param target server to write the entries to, may be the same as the source
+   * @param parallelism number of writer threads. Limited by the max pool size
+   *          of the target configuration.
+   * @param pageSize entries per page of the source search, 0 to disable paging
+   */
+  public SubtreeCopier(JndiConfig source, JndiConfig target, int parallelism, int pageSize)
+  {
+    this.source = source;
+    this.target = target;
+    this.parallelism = Math.max(1, Math.min(parallelism, target.getPoolMaxSize()));
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Copies the entries
+   * @param base search base relative to the source context
+   * @param filter search filter
+   * @param searchControls search controls. All attributes are copied unless
+   *          the controls restrict them.
+   * @param targetBase name the search base is copied to, relative to the
+   *          target context
+   * @return result
+   * @throws NamingException if the source can not be searched
+   * @throws InvalidNameException if the target base lies inside the source
+   *           subtree on the same server
+   * @throws InterruptedException if interrupted while waiting for the writers
+   */
+  public Result copy(String base, String filter, SearchControls searchControls, String targetBase)
+          throws NamingException, InterruptedException
+  {
+    LdapName targetBaseName = new LdapName(targetBase);
+    Result result = new Result();
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(source);
+    PagedSearchEnumeration resultEnum = null;
+    try (DnOrderedExecutor executor = new DnOrderedExecutor(parallelism, "ldap-beans-subtree-copy"))
+    {
+      LdapName baseName = new LdapName(connection.getContext().getNameInNamespace());
+      baseName.addAll(new LdapName(unquote(base)));
+      if (isSameServer(source, target))
+      {
+        LdapName targetInNamespace = target.getDefaultContextName();
+        targetInNamespace.addAll(targetBaseName);
+        checkTargetOutsideSource(baseName, targetInNamespace);
+      }
+      resultEnum = PagedSearchEnumeration.search(connection.getContext(), base, filter,
+              searchControls, pageSize);
+      while (resultEnum.hasMore())
+      {
+        SearchResult entry = resultEnum.next();
+        String sourceDn = entry.getNameInNamespace();
+        LdapName targetName;
+        try
+        {
+          targetName = getTargetName(baseName, new LdapName(sourceDn), targetBaseName);
+        }
+        catch (InvalidNameException ex)
+        {
+          result.fail(sourceDn, null, ex.toString());
+          continue;
+        }
+        Attributes attributes = entry.getAttributes();
+        if (targetName.size() == targetBaseName.size())
+        {
+          renameAttribute(attributes, baseName.getRdn(baseName.size() - 1),
+                  targetName.getRdn(targetName.size() - 1));
+        }
+        executor.submit(Collections.singletonList(targetName.toString()),
+                () -> bind(sourceDn, targetName, attributes, result));
+      }
+      executor.awaitCompletion();
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      if (resultEnum != null)
+      {
+        resultEnum.close();
+      }
+      connection.close();
+      SearchResultCache.getInstance().invalidate(targetBase);
+    }
+    return result;
+  }
+
+  /**
+   * Rewrites the name of a source entry
+   * @param baseName source search base in the namespace
+   * @param sourceName source entry in the namespace
+   * @param targetBase target base relative to the target context
+   * @return target name relative to the target context
+   * @throws InvalidNameException if the entry is not below the search base
+   */
+  static LdapName getTargetName(LdapName baseName, LdapName sourceName, LdapName targetBase)
+          throws InvalidNameException
+  {
+    if (!sourceName.startsWith(baseName))
+    {
+      throw new InvalidNameException(sourceName + " is not below " + baseName);
+    }
+    LdapName targetName = (LdapName) targetBase.clone();
+    targetName.addAll(sourceName.getSuffix(baseName.size()));
+    return targetName;
+  }
+
+  /**
+   * @param source source configuration
+   * @param target target configuration
+   * @return true if both configurations share a server url
+   */
+  static boolean isSameServer(JndiConfig source, JndiConfig target)
+  {
+    for (String url : target.getUrls())
+    {
+      for (String sourceUrl : source.getUrls())
+      {
+        if (url.equalsIgnoreCase(sourceUrl))
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rejects a target that lies inside the searched subtree
+   * @param baseName source search base in the namespace
+   * @param targetBase target base in the namespace
+   * @throws InvalidNameException if the target base is the search base or
+   *           below it
+   */
+  static void checkTargetOutsideSource(LdapName baseName, LdapName targetBase)
+          throws InvalidNameException
+  {
+    if (targetBase.startsWith(baseName))
+    {
+      throw new InvalidNameException("Can not copy " + baseName + " into its own subtree " + targetBase);
+    }
+  }
+
+  private static void renameAttribute(Attributes attributes, Rdn sourceRdn, Rdn targetRdn)
+  {
+    if (sourceRdn.equals(targetRdn))
+    {
+      return;
+    }
+    attributes.remove(sourceRdn.getType());
+    attributes.put(targetRdn.getType(), targetRdn.getValue());
+  }
+
+  private void bind(String sourceDn, LdapName targetName, Attributes attributes, Result result)
+  {
+    LdapConnection connection = null;
+    try
+    {
+      connection = LdapConnectionManager.getInstance().borrow(target);
+      long start = System.nanoTime();
+      connection.getContext().bind(targetName, null, attributes);
+      OperationMetrics.write("bind", connection.getServerUrl(), targetName.toString(), start);
+      result.copied.incrementAndGet();
+    }
+    catch (NamingException ex)
+    {
+      if (connection != null)
+      {
+        connection.invalidateOnConnectionError(ex);
+      }
+      result.fail(sourceDn, targetName.toString(), ex.toString());
+    }
+    catch (RuntimeException ex)
+    {
+      result.fail(sourceDn, targetName.toString(), ex.toString());
+    }
+    finally
+    {
+      if (connection != null)
+      {
+        connection.close();
+      }
+    }
+  }
+
+  private static String unquote(String name)
+  {
+    if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\""))
+    {
+      return name.substring(1, name.length() - 1);
+    }
+    return name;
+  }
+
+  /**
+   * Result of a copy
+   */
+  public static final class Result
+  {
+    private final AtomicInteger copied = new AtomicInteger();
+    /** Guarded by this */
+    private final List<Failure> failures = new ArrayList<>();
+
+    /**
+     * @return number of entries copied
+     */
+    public int getCopied()
+    {
+      return copied.get();
+    }
+
+    /**
+     * @return entries that could not be copied in the order they failed
+     */
+    public synchronized List<Failure> getFailures()
+    {
+      return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    synchronized void fail(String sourceDn, String targetDn, String error)
+    {
+      failures.add(new Failure(sourceDn, targetDn, error));
+    }
+  }
+
+  /**
+   * An entry that could not be copied
+   */
+  public static final class Failure
+  {
+    private final String sourceDn;
+    private final String targetDn;
+    private final String error;
+
+    Failure(String sourceDn, String targetDn, String error)
+    {
+      this.sourceDn = sourceDn;
+      this.targetDn = targetDn;
+      this.error = error;
+    }
+
+    public String getSourceDn()
+    {
+      return sourceDn;
+    }
+
+    /**
+     * @return target name relative to the target context or null if it could
+     *         not be built
+     */
+    public String getTargetDn()
+    {
+      return targetDn;
+    }
+
+    public String getError()
+    {
+      return error;
+    }
+
+    @Override
+    public String toString()
+    {
+      return sourceDn + " -> " + targetDn + ": " + error;
+    }
+  }
+}
@@ -0,0 +1,288 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Deletes an entry together with all entries below it.
+ * <p>
+ * The names of the subtree are read with a single paged subtree search that
+ * returns no attributes. The entries are then deleted leaves first, one depth
+ * level after the other. The entries of a level are deleted in parallel by up
+ * to <code>parallelism</code> workers: the calling thread and threads of a
+ * pool shared by all deletes, which keeps idle threads for a minute.
+ * </p>
+ * <p>
+ * If enabled and the server lists the tree delete control
+ * ({@value #TREE_DELETE_OID}, Active Directory) in the
+ * <code>supportedControl</code> attribute of its root DSE, the whole subtree
+ * is deleted with one request instead.
+ * </p>
+ */
+public final class SubtreeDeleter
+{
+  /** Tree delete control (Active Directory) */
+  public static final String TREE_DELETE_OID = "1.2.840.113556.1.4.805";
+
+  private static final String[] NO_ATTRIBUTES = new String[] {"1.1"};
+
+  /** additional workers of all deletes */
+  private static final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "ldap-beans-subtree-delete");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /** servers that support the tree delete control */
+  private static final Map<JndiConfig, Boolean> treeDeleteSupport = new ConcurrentHashMap<>();
+
+  private final JndiConfig jndiConfig;
+  private final int parallelism;
+  private final boolean useTreeDelete;
+
+  /**
+   * Constructor
+   * @param jndiConfig server configuration
+   * @param parallelism max number of parallel connections. Limited by the max
+   *          pool size of the configuration.
+   * @param useTreeDelete true to use the tree delete control if the server
+   *          supports it
+   */
+  public SubtreeDeleter(JndiConfig jndiConfig, int parallelism, boolean useTreeDelete)
+  {
+    this.jndiConfig = jndiConfig;
+    this.parallelism = Math.max(1, Math.min(parallelism, jndiConfig.getPoolMaxSize()));
+    this.useTreeDelete = useTreeDelete;
+  }
+
+  /**
+   * Deletes an entry and its subtree
+   * @param name name of the entry relative to the context
+   * @throws NamingException if an entry can not be deleted. Entries of deeper
+   *           levels may have been deleted already.
+   * @throws InterruptedException if interrupted while waiting for the workers
+   */
+  public void delete(String name) throws NamingException, InterruptedException
+  {
+    try
+    {
+      if (useTreeDelete && deleteTree(name))
+      {
+        return;
+      }
+      for (List<LdapName> level : groupByDepth(listSubtree(name)))
+      {
+        deleteLevel(level);
+      }
+    }
+    finally
+    {
+      SearchResultCache.getInstance().invalidate(name);
+    }
+  }
+
+  /**
+   * Deletes the subtree with the tree delete control
+   * @return false if the server does not support the control
+   */
+  private boolean deleteTree(String name) throws NamingException
+  {
+    Boolean supported = treeDeleteSupport.get(jndiConfig);
+    if (Boolean.FALSE.equals(supported))
+    {
+      return false;
+    }
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+    try
+    {
+      LdapContext context = connection.getContext();
+      if (supported == null)
+      {
+        supported = isTreeDeleteSupported(context);
+        treeDeleteSupport.put(jndiConfig, supported);
+        if (!supported)
+        {
+          return false;
+        }
+      }
+      context.setRequestControls(new Control[] {new BasicControl(TREE_DELETE_OID, true, null)});
+      try
+      {
+        long start = System.nanoTime();
+        context.unbind(name);
+        OperationMetrics.write("unbind", connection.getServerUrl(), name, start);
+      }
+      finally
+      {
+        context.setRequestControls(null);
+      }
+      return true;
+    }
+    catch (OperationNotSupportedException ex)
+    {
+      // control rejected although advertised
+      treeDeleteSupport.put(jndiConfig, Boolean.FALSE);
+      return false;
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      connection.close();
+    }
+  }
+
+  private static boolean isTreeDeleteSupported(LdapContext context) throws NamingException
+  {
+    Attribute controls = context.getAttributes("", new String[] {"supportedControl"})
+            .get("supportedControl");
+    return controls != null && controls.contains(TREE_DELETE_OID);
+  }
+
+  /**
+   * @return names of all entries of the subtree relative to the context
+   */
+  private List<LdapName> listSubtree(String name) throws NamingException
+  {
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    searchControls.setReturningAttributes(NO_ATTRIBUTES);
+    List<LdapName> names = new ArrayList<>();
+    LdapConnection connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+    PagedSearchEnumeration resultEnum = null;
+    try
+    {
+      LdapContext context = connection.getContext();
+      int contextSize = new LdapName(context.getNameInNamespace()).size();
+      resultEnum = PagedSearchEnumeration.search(context, name, "(objectClass=*)",
+              searchControls, PagedSearchEnumeration.DEFAULT_PAGE_SIZE);
+      while (resultEnum.hasMore())
+      {
+        LdapName entry = new LdapName(resultEnum.next().getNameInNamespace());
+        names.add((LdapName) entry.getSuffix(Math.min(contextSize, entry.size())));
+      }
+    }
+    catch (NamingException ex)
+    {
+      connection.invalidateOnConnectionError(ex);
+      throw ex;
+    }
+    finally
+    {
+      if (resultEnum != null)
+      {
+        resultEnum.close();
+      }
+      connection.close();
+    }
+    return names;
+  }
+
+  /**
+   * Groups names by their number of rdns
+   * @param names names
+   * @return names per level, deepest level first
+   */
+  static List<List<LdapName>> groupByDepth(List<LdapName> names)
+  {
+    TreeMap<Integer, List<LdapName>> levels = new TreeMap<>(Collections.reverseOrder());
+    for (LdapName name : names)
+    {
+      levels.computeIfAbsent(name.size(), size -> new ArrayList<>()).add(name);
+    }
+    return new ArrayList<>(levels.values());
+  }
+
+  private void deleteLevel(List<LdapName> names) throws NamingException, InterruptedException
+  {
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<NamingException> failure = new AtomicReference<>();
+    List<Future<?>> futures = new ArrayList<>();
+    int workerCount = Math.min(parallelism, names.size());
+    for (int worker = 1; worker < workerCount; worker++)
+    {
+      futures.add(workers.submit(() -> work(names, next, failure)));
+    }
+    // the calling thread is a worker too
+    work(names, next, failure);
+    try
+    {
+      for (Future<?> future : futures)
+      {
+        future.get();
+      }
+    }
+    catch (ExecutionException ex)
+    {
+      throw new IllegalStateException("Subtree delete worker failed", ex.getCause());
+    }
+    catch (InterruptedException ex)
+    {
+      for (Future<?> future : futures)
+      {
+        future.cancel(true);
+      }
+      throw ex;
+    }
+    if (failure.get() != null)
+    {
+      throw failure.get();
+    }
+  }
+
+  private void work(List<LdapName> names, AtomicInteger next, AtomicReference<NamingException> failure)
+  {
+    LdapConnection connection = null;
+    try
+    {
+      int index;
+      while (failure.get() == null && (index = next.getAndIncrement()) < names.size())
+      {
+        if (connection == null)
+        {
+          connection = LdapConnectionManager.getInstance().borrow(jndiConfig);
+        }
+        long start = System.nanoTime();
+        connection.getContext().unbind(names.get(index));
+        OperationMetrics.write("unbind", connection.getServerUrl(), names.get(index).toString(), start);
+      }
+    }
+    catch (NamingException ex)
+    {
+      failure.compareAndSet(null, ex);
+      if (connection != null)
+      {
+        connection.invalidateOnConnectionError(ex);
+      }
+    }
+    finally
+    {
+      if (connection != null)
+      {
+        connection.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Evaluates the expressions of one bean invocation. Every expression is
+ * evaluated at most once, further requests get the remembered value or the
+ * fallback if the evaluation failed.
+ * <p>
+ * Not thread safe, create a new resolver for every invocation.
+ * </p>
+ */
+public final class ValueResolver
+{
+  private static final Object FAILED = new Object();
+
+  private final ScriptEngine engine;
+  private final Map<String, Object> values = new HashMap<>();
+
+  /**
+   * Constructor
+   * @param engine executes the ivy scripts, e.g.
+   *          <code>script -&gt; executeIvyScript(cont, script)</code>
+   */
+  public ValueResolver(ScriptEngine engine)
+  {
+    this.engine = engine;
+  }
+
+  /**
+   * Executes ivy scripts
+   */
+  public interface ScriptEngine
+  {
+    /**
+     * Executes a script
+     * @param script ivy script, e.g. <code>in.user.name</code>
+     * @return result of the script
+     * @throws Exception if the script can not be executed
+     */
+    Object execute(String script) throws Exception;
+  }
+
+  /**
+   * Evaluates an expression
+   * @param expression ivy script expression
+   * @param fallback value returned if the expression can not be evaluated
+   * @return value of the expression or the fallback
+   */
+  public Object resolve(String expression, Object fallback)
+  {
+    Object value = values.get(expression);
+    if (value == null && !values.containsKey(expression))
+    {
+      try
+      {
+        value = engine.execute(expression);
+      }
+      catch (Exception ex)
+      {
+        value = FAILED;
+      }
+      values.put(expression, value);
+    }
+    return value == FAILED ? fallback : value;
+  }
+}
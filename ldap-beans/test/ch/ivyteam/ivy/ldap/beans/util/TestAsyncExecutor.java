@@ -0,0 +1,137 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.naming.NameNotFoundException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestAsyncExecutor
+{
+  private final AsyncExecutor executor = new AsyncExecutor(1, 1, 60000);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void shutdown()
+  {
+    release.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void result() throws Exception
+  {
+    assertThat(join(executor.submit(() -> "ou=users", 0))).isEqualTo("ou=users");
+
+    Throwable error = catchThrowable(() -> join(executor.submit(() -> {
+      throw new NameNotFoundException("cn=Meier");
+    }, 0)));
+    assertThat(error).isInstanceOf(NameNotFoundException.class);
+  }
+
+  @Test
+  public void timeout()
+  {
+    CompletableFuture<Object> future = executor.submit(this::block, 50);
+
+    assertThat(catchThrowable(() -> join(future))).isInstanceOf(TimeoutException.class);
+  }
+
+  @Test
+  public void stopTimedOutOperation() throws Exception
+  {
+    CountDownLatch aborted = new CountDownLatch(1);
+    CompletableFuture<Object> future = executor.submit(() -> {
+      AsyncExecutor.onCancel(aborted::countDown);
+      return block();
+    }, 50);
+
+    assertThat(catchThrowable(() -> join(future))).isInstanceOf(TimeoutException.class);
+    assertThat(aborted.await(5, TimeUnit.SECONDS)).isTrue();
+    // the interrupted operation gives its thread back
+    assertThat(join(executor.submit(() -> "next", 0))).isEqualTo("next");
+  }
+
+  @Test
+  public void handle() throws Exception
+  {
+    AsyncHandle handle = executor.handle(executor.submit(() -> "ou=users", 0));
+    assertThat(handle.get(5000)).isEqualTo("ou=users");
+    assertThat(handle.isDone()).isTrue();
+
+    AsyncHandle deserialized = serializeAndBack(handle);
+    assertThat(deserialized.getId()).isEqualTo(handle.getId());
+    // the shared executor does not know operations of this executor
+    assertThat(catchThrowable(() -> deserialized.get(0))).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void cancelHandle()
+  {
+    AsyncHandle handle = executor.handle(executor.submit(this::block, 0));
+    assertThat(handle.isDone()).isFalse();
+    assertThat(catchThrowable(() -> handle.get(10))).isInstanceOf(TimeoutException.class);
+
+    assertThat(handle.cancel()).isTrue();
+    assertThat(catchThrowable(() -> handle.get(10))).isInstanceOf(CancellationException.class);
+  }
+
+  @Test
+  public void recordAsOperationOfCaller() throws Exception
+  {
+    OperationMetrics.getInstance().record(TestAsyncExecutor.class,
+            () -> join(executor.submit(() -> "ou=users", 0)));
+
+    assertThat(OperationMetrics.getInstance().getOperations())
+            .extracting(OperationStats::getBean)
+            .contains("TestAsyncExecutor", "TestAsyncExecutor" + OperationMetrics.ASYNC_SUFFIX);
+  }
+
+  @Test
+  public void queueLimit()
+  {
+    executor.submit(this::block, 0);
+    executor.submit(this::block, 0);
+
+    assertThat(catchThrowable(() -> executor.submit(() -> "rejected", 0)))
+            .isInstanceOf(RejectedExecutionException.class);
+  }
+
+  private static AsyncHandle serializeAndBack(AsyncHandle handle) throws IOException, ClassNotFoundException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+    {
+      out.writeObject(handle);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+    {
+      return (AsyncHandle) in.readObject();
+    }
+  }
+
+  private Object block() throws InterruptedException
+  {
+    release.await();
+    return null;
+  }
+
+  private Object join(CompletableFuture<?> future) throws Exception
+  {
+    return executor.handle(future).get(5000);
+  }
+}
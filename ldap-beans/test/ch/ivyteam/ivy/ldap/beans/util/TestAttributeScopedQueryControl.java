@@ -0,0 +1,38 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class TestAttributeScopedQueryControl
+{
+  @Test
+  public void encode()
+  {
+    AttributeScopedQueryControl control = new AttributeScopedQueryControl("member", true);
+
+    assertThat(control.getID()).isEqualTo("1.2.840.113556.1.4.1504");
+    assertThat(control.isCritical()).isTrue();
+    assertThat(control.getEncodedValue()).containsExactly(
+            0x30, 0x08, 0x04, 0x06, 'm', 'e', 'm', 'b', 'e', 'r');
+  }
+
+  @Test
+  public void encodeLongLength()
+  {
+    StringBuilder attribute = new StringBuilder();
+    for (int pos = 0; pos < 200; pos++)
+    {
+      attribute.append('a');
+    }
+    byte[] encoded = AttributeScopedQueryControl.encode(attribute.toString());
+
+    assertThat(encoded).hasSize(206);
+    assertThat(encoded[0]).isEqualTo((byte) 0x30);
+    assertThat(encoded[1]).isEqualTo((byte) 0x81);
+    assertThat(encoded[2]).isEqualTo((byte) 203);
+    assertThat(encoded[3]).isEqualTo((byte) 0x04);
+    assertThat(encoded[4]).isEqualTo((byte) 0x81);
+    assertThat(encoded[5]).isEqualTo((byte) 200);
+  }
+}
@@ -0,0 +1,70 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+
+import org.junit.Test;
+
+import ch.ivyteam.ivy.ldap.beans.util.BatchModifier.ObjectModification;
+
+public class TestBatchModifier
+{
+  private static final String MEIER = "cn=Meier,ou=users,dc=ivyteam,dc=ch";
+  private static final String MUSTER = "cn=Muster,ou=users,dc=ivyteam,dc=ch";
+
+  @Test
+  public void groupByObject() throws NamingException
+  {
+    List<AttributeModification> rows = Arrays.asList(
+            new AttributeModification(MEIER, "mail", "meier@ivyteam.ch", DirContext.REPLACE_ATTRIBUTE),
+            new AttributeModification(MUSTER, "mail", "muster@ivyteam.ch", DirContext.REPLACE_ATTRIBUTE),
+            new AttributeModification(MEIER, "telephoneNumber", "+41 41 000", DirContext.ADD_ATTRIBUTE),
+            new AttributeModification(" " + MEIER, "TelephoneNumber", Arrays.asList("+41 41 001", "+41 41 002"),
+                    DirContext.ADD_ATTRIBUTE),
+            new AttributeModification(MEIER, "description", null, DirContext.REMOVE_ATTRIBUTE));
+    String[] errors = new String[rows.size()];
+
+    List<ObjectModification> objects = BatchModifier.group(rows, errors);
+
+    assertThat(errors).containsOnly((String) null);
+    assertThat(objects).hasSize(2);
+    assertThat(objects.get(0).objectName).isEqualTo(MEIER);
+    assertThat(objects.get(0).getRows()).containsExactly(0, 2, 3, 4);
+    ModificationItem[] items = objects.get(0).getItems();
+    assertThat(items).hasSize(3);
+    assertThat(items[0].getModificationOp()).isEqualTo(DirContext.REPLACE_ATTRIBUTE);
+    assertThat(items[1].getAttribute().getID()).isEqualTo("telephoneNumber");
+    assertThat(items[1].getAttribute().size()).isEqualTo(3);
+    assertThat(items[2].getModificationOp()).isEqualTo(DirContext.REMOVE_ATTRIBUTE);
+    assertThat(items[2].getAttribute().size()).isEqualTo(0);
+    assertThat(objects.get(1).objectName).isEqualTo(MUSTER);
+  }
+
+  @Test
+  public void invalidRows()
+  {
+    List<AttributeModification> rows = Arrays.asList(
+            new AttributeModification("", "mail", "x", DirContext.ADD_ATTRIBUTE),
+            new AttributeModification(MEIER, null, "x", DirContext.ADD_ATTRIBUTE),
+            new AttributeModification(MEIER, "mail", "x",
+                    AttributeModification.parseOperation("merge", DirContext.ADD_ATTRIBUTE)),
+            new AttributeModification(MEIER, "mail", "x",
+                    AttributeModification.parseOperation(null, DirContext.ADD_ATTRIBUTE)));
+    String[] errors = new String[rows.size()];
+
+    List<ObjectModification> objects = BatchModifier.group(rows, errors);
+
+    assertThat(errors[0]).isEqualTo("No object name");
+    assertThat(errors[1]).isEqualTo("No attribute name");
+    assertThat(errors[2]).startsWith("Unknown modification operation");
+    assertThat(errors[3]).isNull();
+    assertThat(objects).hasSize(1);
+    assertThat(objects.get(0).getRows()).containsExactly(3);
+  }
+}
@@ -0,0 +1,70 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestConfigValue
+{
+  private final Map<String, Object> in = new HashMap<>();
+  private final List<String> executed = new ArrayList<>();
+
+  @Test
+  public void classify()
+  {
+    assertThat(ConfigValue.parse("\"in.name\"").getKind()).isEqualTo(ConfigValue.Kind.LITERAL);
+    assertThat(ConfigValue.parse("\"in.name\"").getText()).isEqualTo("in.name");
+    assertThat(ConfigValue.parse("in.user.name").getKind()).isEqualTo(ConfigValue.Kind.PATH);
+    assertThat(ConfigValue.parse("in.user.name").getText()).isEqualTo("user.name");
+    assertThat(ConfigValue.parse("cn").getKind()).isEqualTo(ConfigValue.Kind.PATH);
+    assertThat(ConfigValue.parse("in.first + \" \" + in.last").getKind()).isEqualTo(ConfigValue.Kind.SCRIPT);
+    assertThat(ConfigValue.parse("ldap://localhost:389").getKind()).isEqualTo(ConfigValue.Kind.LITERAL);
+    assertThat(ConfigValue.parseUnquoted("\"secret\"").getText()).isEqualTo("\"secret\"");
+  }
+
+  @Test
+  public void evaluateOncePerInvocation()
+  {
+    in.put("in.name", "Meier");
+    ConfigValue value = ConfigValue.parse("in.name");
+    ValueResolver resolver = new ValueResolver(this::execute);
+
+    assertThat(value.resolve(resolver)).isEqualTo("Meier");
+    assertThat(value.resolve(resolver)).isEqualTo("Meier");
+    assertThat(executed).containsExactly("in.name");
+
+    value.resolve(new ValueResolver(this::execute));
+    assertThat(executed).containsExactly("in.name", "in.name");
+  }
+
+  @Test
+  public void unknownPathFallsBackForOneInvocation()
+  {
+    ConfigValue value = ConfigValue.parse("cn");
+    ValueResolver resolver = new ValueResolver(this::execute);
+
+    assertThat(value.resolveString(resolver)).isEqualTo("cn");
+    assertThat(value.resolveString(resolver)).isEqualTo("cn");
+    assertThat(value.isLiteral()).isFalse();
+    assertThat(executed).containsExactly("in.cn");
+
+    in.put("in.cn", "Meier");
+    assertThat(value.resolveString(new ValueResolver(this::execute))).isEqualTo("Meier");
+    assertThat(executed).containsExactly("in.cn", "in.cn");
+  }
+
+  private Object execute(String script)
+  {
+    executed.add(script);
+    if (!in.containsKey(script))
+    {
+      throw new IllegalArgumentException("Unknown attribute " + script);
+    }
+    return in.get(script);
+  }
+}
@@ -0,0 +1,87 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestDnOrderedExecutor
+{
+  private final List<String> executed = new CopyOnWriteArrayList<>();
+
+  @Test
+  public void parentBeforeChildren() throws InterruptedException
+  {
+    CountDownLatch release = new CountDownLatch(1);
+    try (DnOrderedExecutor executor = new DnOrderedExecutor(4, "test"))
+    {
+      executor.submit(dn("ou=users,dc=ivyteam,dc=ch"), () -> {
+        await(release);
+        executed.add("ou=users");
+      });
+      executor.submit(dn("cn=Meier,ou=users,dc=ivyteam,dc=ch"), () -> executed.add("cn=Meier"));
+      executor.submit(dn("CN=Meier,OU=users,DC=ivyteam,DC=ch"), () -> executed.add("CN=Meier"));
+      executor.submit(dn("ou=groups,dc=ivyteam,dc=ch"), () -> executed.add("ou=groups"));
+
+      waitFor("ou=groups");
+      assertThat(executed).containsExactly("ou=groups");
+
+      release.countDown();
+      executor.awaitCompletion();
+    }
+    assertThat(executed).containsExactly("ou=groups", "ou=users", "cn=Meier", "CN=Meier");
+  }
+
+  @Test
+  public void childrenBeforeParentDelete() throws InterruptedException
+  {
+    CountDownLatch release = new CountDownLatch(1);
+    try (DnOrderedExecutor executor = new DnOrderedExecutor(4, "test"))
+    {
+      executor.submit(dn("cn=Meier,ou=users,dc=ivyteam,dc=ch"), () -> {
+        await(release);
+        executed.add("cn=Meier");
+      });
+      executor.submit(dn("cn=Muster,ou=users,dc=ivyteam,dc=ch"), () -> executed.add("cn=Muster"));
+      executor.submit(dn("ou=users,dc=ivyteam,dc=ch"), () -> executed.add("ou=users"));
+
+      waitFor("cn=Muster");
+      release.countDown();
+      executor.awaitCompletion();
+    }
+    assertThat(executed).containsExactly("cn=Muster", "cn=Meier", "ou=users");
+  }
+
+  private void waitFor(String operation) throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + 5000;
+    while (!executed.contains(operation) && System.currentTimeMillis() < end)
+    {
+      Thread.sleep(5);
+    }
+    // give blocked operations the chance to run too early
+    Thread.sleep(50);
+  }
+
+  private static void await(CountDownLatch latch)
+  {
+    try
+    {
+      latch.await(5, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static List<String> dn(String dn)
+  {
+    return Collections.singletonList(dn);
+  }
+}
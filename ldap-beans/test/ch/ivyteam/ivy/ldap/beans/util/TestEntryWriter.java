@@ -0,0 +1,89 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import org.junit.Test;
+
+public class TestEntryWriter
+{
+  private static final String DN = "cn=Meier,ou=users,dc=ivyteam,dc=ch";
+
+  @Test
+  public void ldif() throws IOException, NamingException
+  {
+    StringWriter out = new StringWriter();
+    try (EntryWriter writer = new EntryWriter(out, EntryWriter.Format.LDIF))
+    {
+      writer.write(DN, entry());
+      assertThat(writer.getCount()).isEqualTo(1);
+    }
+
+    assertThat(out.toString()).startsWith("version: 1\n\ndn: " + DN + "\n")
+            .contains("cn: Meier\n")
+            .contains("jpegPhoto:: AQID\n")
+            .contains("description:: w6RiYw==\n");
+
+    LdifRecord record = new LdifReader(new StringReader(out.toString())).next();
+    assertThat(record.getDn()).isEqualTo(DN);
+    assertThat(record.getAttributes().get("info").get())
+            .isEqualTo(new String(new char[100]).replace('\0', 'x'));
+  }
+
+  @Test
+  public void ndjson() throws IOException, NamingException
+  {
+    StringWriter out = new StringWriter();
+    try (EntryWriter writer = new EntryWriter(out, EntryWriter.Format.NDJSON))
+    {
+      writer.write(DN, entry());
+      writer.write("cn=\"quoted\"", new BasicAttributes(true));
+    }
+
+    String[] lines = out.toString().split("\n");
+    assertThat(lines).hasSize(2);
+    assertThat(lines[0]).startsWith("{\"dn\":\"" + DN + "\",\"attributes\":{")
+            .contains("\"cn\":[\"Meier\"]")
+            .endsWith(",\"binary\":{\"jpegPhoto\":[\"AQID\"]}}");
+    assertThat(lines[1]).isEqualTo("{\"dn\":\"cn=\\\"quoted\\\"\",\"attributes\":{}}");
+  }
+
+  @Test
+  public void safeStrings()
+  {
+    assertThat(EntryWriter.isSafe("Meier")).isTrue();
+    assertThat(EntryWriter.isSafe(" Meier")).isFalse();
+    assertThat(EntryWriter.isSafe(":Meier")).isFalse();
+    assertThat(EntryWriter.isSafe("Meier\n")).isFalse();
+    assertThat(EntryWriter.isSafe("M\u00fcller")).isFalse();
+  }
+
+  @Test
+  public void shardFileNames()
+  {
+    Set<String> names = new HashSet<>();
+    assertThat(DirectoryExporter.getFileName("ou=Sales and Marketing,dc=ivyteam,dc=ch", names))
+            .isEqualTo("ou=Sales_and_Marketing");
+    assertThat(DirectoryExporter.getFileName("ou=Sales/and/Marketing,dc=ivyteam,dc=ch", names))
+            .isEqualTo("ou=Sales_and_Marketing_2");
+  }
+
+  private static BasicAttributes entry()
+  {
+    BasicAttributes attributes = new BasicAttributes(true);
+    attributes.put("cn", "Meier");
+    attributes.put("description", "\u00e4bc");
+    attributes.put("info", new String(new char[100]).replace('\0', 'x'));
+    attributes.put(new BasicAttribute("jpegPhoto", new byte[] {1, 2, 3}));
+    return attributes;
+  }
+}
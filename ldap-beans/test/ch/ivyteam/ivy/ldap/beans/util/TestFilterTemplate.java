@@ -0,0 +1,86 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class TestFilterTemplate
+{
+  private final Map<String, Object> in = new HashMap<>();
+
+  @Test
+  public void filterText()
+  {
+    in.put("in.user.name", "Meier");
+    FilterTemplate template = FilterTemplate.compile("(&(objectClass=person)(cn=in.user.name*))");
+
+    assertThat(template.format(new ValueResolver(this::resolve))).isEqualTo("(&(objectClass=person)(cn=Meier*))");
+  }
+
+  @Test
+  public void filterTextIgnoresInInsideWords()
+  {
+    FilterTemplate template = FilterTemplate.compile("(|(cn=Martin.Meier)(description=main.in.x))");
+
+    assertThat(template.format(new ValueResolver(this::resolve))).isEqualTo("(|(cn=Martin.Meier)(description=main.in.x))");
+  }
+
+  @Test
+  public void filterTextKeepsUnknownExpression()
+  {
+    FilterTemplate template = FilterTemplate.compile("(cn=in.unknown)");
+
+    assertThat(template.format(new ValueResolver(this::resolve))).isEqualTo("(cn=unknown)");
+  }
+
+  @Test
+  public void escapeValues()
+  {
+    in.put("in.name", "*)(uid=*");
+    FilterTemplate template = FilterTemplate.compile("(cn=in.name)");
+
+    assertThat(template.format(new ValueResolver(this::resolve))).isEqualTo("(cn=\\2a\\29\\28uid=\\2a)");
+    assertThat(FilterTemplate.escape("a\\b\u0000")).isEqualTo("a\\5cb\\00");
+  }
+
+  @Test
+  public void attributeTableKeepsOrder()
+  {
+    in.put("in.firstName", " Hans ");
+    Properties props = new Properties();
+    props.setProperty("search_filter_attribute_0", "sn");
+    props.setProperty("search_filter_value_0", "\"Mei*\"");
+    props.setProperty("search_filter_attribute_1", "givenName");
+    props.setProperty("search_filter_value_1", "in.firstName");
+    props.setProperty("search_filter_attribute_2", "");
+    props.setProperty("search_filter_value_2", "");
+    props.setProperty("search_filter_attribute_3", "objectClass");
+    props.setProperty("search_filter_value_3", "person");
+    props.setProperty("search_filter_attribute_4", "mail");
+    props.setProperty("search_filter_value_4", "*@ivyteam.ch");
+
+    FilterTemplate template = FilterTemplate.compileAttributeTable(props);
+
+    assertThat(template.format(new ValueResolver(this::resolve)))
+            .isEqualTo("(&(sn=Mei*)(givenName=Hans)(objectClass=person)(mail=*@ivyteam.ch))");
+  }
+
+  @Test
+  public void emptyAttributeTable()
+  {
+    assertThat(FilterTemplate.compileAttributeTable(new Properties()).format(new ValueResolver(this::resolve))).isEmpty();
+  }
+
+  private Object resolve(String expression)
+  {
+    if (!in.containsKey(expression))
+    {
+      throw new IllegalArgumentException("Unknown attribute " + expression);
+    }
+    return in.get(expression);
+  }
+}
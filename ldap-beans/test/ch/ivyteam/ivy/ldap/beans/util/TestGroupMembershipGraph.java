@@ -0,0 +1,82 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestGroupMembershipGraph
+{
+  private static final String ADMINS = "cn=Admins,ou=groups,dc=ivy";
+  private static final String STAFF = "cn=Staff,ou=groups,dc=ivy";
+  private static final String ALL = "cn=All,ou=groups,dc=ivy";
+  private static final String MEIER = "cn=Meier,ou=users,dc=ivy";
+
+  private final Map<String, Set<String>> groupMembers = new HashMap<>();
+  private final Map<String, String> groupNames = new HashMap<>();
+
+  @Test
+  public void nestedMembership()
+  {
+    group(ADMINS, MEIER);
+    group(STAFF, ADMINS);
+    group(ALL, STAFF);
+
+    GroupMembershipGraph.Index index = GroupMembershipGraph.buildIndex(groupMembers, groupNames);
+
+    assertThat(isMember(index, MEIER, ADMINS)).isTrue();
+    assertThat(isMember(index, MEIER, ALL)).isTrue();
+    assertThat(isMember(index, STAFF, ADMINS)).isFalse();
+    assertThat(isMember(index, "cn=Mueller,ou=users,dc=ivy", ALL)).isFalse();
+    assertThat(index.getGroups(GroupMembershipGraph.normalize(MEIER)))
+            .containsExactlyInAnyOrder(ADMINS, STAFF, ALL);
+    assertThat(index.cycles).isEmpty();
+  }
+
+  @Test
+  public void cycle()
+  {
+    group(ADMINS, MEIER, ALL);
+    group(STAFF, ADMINS);
+    group(ALL, STAFF);
+
+    GroupMembershipGraph.Index index = GroupMembershipGraph.buildIndex(groupMembers, groupNames);
+
+    assertThat(isMember(index, MEIER, ALL)).isTrue();
+    assertThat(isMember(index, ALL, ALL)).isTrue();
+    assertThat(index.getGroups(GroupMembershipGraph.normalize(MEIER)))
+            .containsExactlyInAnyOrder(ADMINS, STAFF, ALL);
+    assertThat(index.cycles).hasSize(3);
+  }
+
+  @Test
+  public void normalize()
+  {
+    assertThat(GroupMembershipGraph.normalize("CN=Meier, OU=Users,dc=IVY"))
+            .isEqualTo(GroupMembershipGraph.normalize(MEIER));
+    assertThat(GroupMembershipGraph.normalize("cn=Meier\\, Hans,dc=ivy"))
+            .isEqualTo(GroupMembershipGraph.normalize("cn=meier\\2C hans,dc=ivy"));
+    assertThat(GroupMembershipGraph.normalize("no dn")).isNull();
+  }
+
+  private void group(String group, String... members)
+  {
+    Set<String> normalized = new HashSet<>();
+    for (String member : Arrays.asList(members))
+    {
+      normalized.add(GroupMembershipGraph.normalize(member));
+    }
+    groupMembers.put(GroupMembershipGraph.normalize(group), normalized);
+    groupNames.put(GroupMembershipGraph.normalize(group), group);
+  }
+
+  private static boolean isMember(GroupMembershipGraph.Index index, String member, String group)
+  {
+    return index.isMember(GroupMembershipGraph.normalize(member), GroupMembershipGraph.normalize(group));
+  }
+}
@@ -0,0 +1,88 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class TestLdapConnectionManager
+{
+  private final LdapConnectionManager manager = new LdapConnectionManager();
+
+  @Test
+  public void warmUpStaticConfig()
+  {
+    JndiConfig config = config("ldap://127.0.0.1:1", "secret");
+    Object bean = new Object();
+    Object otherBean = new Object();
+
+    manager.warmUp(bean, new DynamicJndiConfig(config));
+    manager.warmUp(otherBean, new DynamicJndiConfig(config));
+    DirContextPool pool = manager.getPool(config);
+    assertThat(pool.isWarm()).isTrue();
+    assertThat(pool.isUnused()).isFalse();
+
+    manager.coolDown(bean);
+    assertThat(pool.isWarm()).isTrue();
+    manager.coolDown(otherBean);
+    manager.coolDown(otherBean);
+    assertThat(pool.isWarm()).isFalse();
+  }
+
+  @Test
+  public void closePoolsWhenLastBeanStops()
+  {
+    JndiConfig config = config("ldap://127.0.0.1:1", "in.password");
+    Object bean = new Object();
+    Object otherBean = new Object();
+    manager.warmUp(bean, new DynamicJndiConfig(config));
+    manager.warmUp(otherBean, new DynamicJndiConfig(config));
+    DirContextPool pool = manager.getPool(config);
+
+    manager.coolDown(bean);
+    assertThat(manager.getPool(config)).isSameAs(pool);
+
+    manager.coolDown(otherBean);
+    assertThat(manager.getPool(config)).isNotSameAs(pool);
+  }
+
+  @Test
+  public void noWarmUpOfProcessData()
+  {
+    JndiConfig config = config("ldap://127.0.0.1:1", "in.password");
+    Object bean = new Object();
+
+    manager.warmUp(bean, new DynamicJndiConfig(config));
+
+    assertThat(new DynamicJndiConfig(config).getStaticConfig()).isNull();
+    assertThat(manager.getPool(config).isWarm()).isFalse();
+  }
+
+  @Test
+  public void noWarmUpWithoutMinIdle()
+  {
+    JndiConfig config = config("ldap://127.0.0.1:1", "secret");
+    config.setPoolMinIdle(0);
+    Object bean = new Object();
+
+    manager.warmUp(bean, new DynamicJndiConfig(config));
+
+    assertThat(manager.getPool(config).isWarm()).isFalse();
+  }
+
+  @Test
+  public void borrowFromClosedPool() throws Exception
+  {
+    JndiConfig config = config("ldap://127.0.0.1:1", "secret");
+    DirContextPool pool = manager.getPool(config);
+
+    assertThat(pool.closeIfUnused()).isTrue();
+    assertThat(pool.borrow(100)).isNull();
+    assertThat(pool.isUnused()).isTrue();
+  }
+
+  private static JndiConfig config(String url, String password)
+  {
+    return new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, url,
+            JndiConfig.AUTH_KIND_SIMPLE, "cn=admin", password, false, false, "");
+  }
+}
@@ -0,0 +1,154 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestLdifReader
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void addRecords() throws IOException, NamingException
+  {
+    LdifReader reader = reader(
+            "version: 1",
+            "# a comment",
+            "dn: cn=Meier,ou=users,",
+            " dc=ivyteam,dc=ch",
+            "objectClass: person",
+            "objectClass: inetOrgPerson",
+            "cn: Meier",
+            "description:: w6RiYw==",
+            "",
+            "",
+            "dn: cn=Muster,ou=users,dc=ivyteam,dc=ch",
+            "changetype: add",
+            "cn:  Muster");
+
+    LdifRecord meier = reader.next();
+    assertThat(meier.getDn()).isEqualTo("cn=Meier,ou=users,dc=ivyteam,dc=ch");
+    assertThat(meier.getLineNumber()).isEqualTo(3);
+    assertThat(meier.getChangeType()).isEqualTo(LdifRecord.ChangeType.ADD);
+    assertThat(meier.getAttributes().get("objectclass").size()).isEqualTo(2);
+    assertThat((byte[]) meier.getAttributes().get("description").get()).isEqualTo("\u00e4bc".getBytes("UTF-8"));
+
+    LdifRecord muster = reader.next();
+    assertThat(muster.getLineNumber()).isEqualTo(11);
+    assertThat(muster.getAttributes().get("cn").get()).isEqualTo("Muster");
+    assertThat(reader.next()).isNull();
+  }
+
+  @Test
+  public void changeRecords() throws IOException
+  {
+    LdifReader reader = reader(
+            "dn: cn=Meier,ou=users,dc=ivyteam,dc=ch",
+            "changetype: modify",
+            "replace: mail",
+            "mail: meier@ivyteam.ch",
+            "-",
+            "delete: description",
+            "-",
+            "",
+            "dn: cn=Meier,ou=users,dc=ivyteam,dc=ch",
+            "changetype: modrdn",
+            "newrdn: cn=Meier Hans",
+            "deleteoldrdn: 0",
+            "",
+            "dn: cn=Muster,ou=users,dc=ivyteam,dc=ch",
+            "changetype: delete");
+
+    LdifRecord modify = reader.next();
+    assertThat(modify.getChangeType()).isEqualTo(LdifRecord.ChangeType.MODIFY);
+    assertThat(modify.getModifications()).hasSize(2);
+    ModificationItem replace = modify.getModifications().get(0);
+    assertThat(replace.getModificationOp()).isEqualTo(DirContext.REPLACE_ATTRIBUTE);
+    assertThat(replace.getAttribute().contains("meier@ivyteam.ch")).isTrue();
+    assertThat(modify.getModifications().get(1).getAttribute().size()).isEqualTo(0);
+
+    LdifRecord modDn = reader.next();
+    assertThat(modDn.isDeleteOldRdn()).isFalse();
+    assertThat(modDn.getNewDn()).isEqualTo("cn=Meier Hans,ou=users,dc=ivyteam,dc=ch");
+    assertThat(modDn.getDns()).hasSize(2);
+
+    assertThat(reader.next().getChangeType()).isEqualTo(LdifRecord.ChangeType.DELETE);
+    assertThat(reader.next()).isNull();
+  }
+
+  @Test
+  public void skipMalformedRecord() throws IOException
+  {
+    LdifReader reader = reader(
+            "cn: Meier",
+            "",
+            "dn: cn=Muster,ou=users,dc=ivyteam,dc=ch",
+            "changetype: delete");
+    try
+    {
+      reader.next();
+      fail("malformed record not detected");
+    }
+    catch (LdifException ex)
+    {
+      assertThat(ex.getLineNumber()).isEqualTo(1);
+    }
+    assertThat(reader.next().getDn()).isEqualTo("cn=Muster,ou=users,dc=ivyteam,dc=ch");
+  }
+
+  @Test
+  public void urlValues() throws IOException, NamingException
+  {
+    File allowed = folder.newFolder("ldif");
+    File photo = new File(allowed, "photo.jpg");
+    Files.write(photo.toPath(), new byte[] {1, 2, 3});
+    File secret = folder.newFile("secret.txt");
+    String[] lines = {
+        "dn: cn=Meier,ou=users,dc=ivyteam,dc=ch",
+        "jpegPhoto:< " + photo.toURI(),
+        "",
+        "dn: cn=Muster,ou=users,dc=ivyteam,dc=ch",
+        "description:< " + secret.toURI(),
+        "",
+        "dn: cn=Muster,ou=users,dc=ivyteam,dc=ch",
+        "description:< " + new File(allowed, "../secret.txt").toURI()};
+
+    LdifReader reader = new LdifReader(new StringReader(String.join("\n", lines)), allowed.toPath());
+    assertThat((byte[]) reader.next().getAttributes().get("jpegPhoto").get()).containsExactly(1, 2, 3);
+    assertRejected(reader, 4);
+    assertRejected(reader, 7);
+
+    assertRejected(reader(lines), 1);
+  }
+
+  private static void assertRejected(LdifReader reader, int lineNumber) throws IOException
+  {
+    try
+    {
+      reader.next();
+      fail("url value outside of the directory not rejected");
+    }
+    catch (LdifException ex)
+    {
+      assertThat(ex.getLineNumber()).isEqualTo(lineNumber);
+    }
+  }
+
+  private static LdifReader reader(String... lines)
+  {
+    return new LdifReader(new StringReader(String.join("\n", lines)));
+  }
+}
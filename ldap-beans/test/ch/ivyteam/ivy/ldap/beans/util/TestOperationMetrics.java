@@ -0,0 +1,94 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.naming.NameNotFoundException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+
+import org.junit.Test;
+
+import ch.ivyteam.ivy.ldap.beans.util.OperationMetrics.Phase;
+
+public class TestOperationMetrics
+{
+  private final OperationMetrics metrics = new OperationMetrics(2);
+
+  @Test
+  public void phases() throws Exception
+  {
+    String result = metrics.record(TestOperationMetrics.class, () -> {
+      OperationMetrics.Recording recording = OperationMetrics.current();
+      recording.connected("ldap://dc1");
+      recording.add(Phase.CONNECT, TimeUnit.MILLISECONDS.toNanos(3));
+      recording.searched("ou=users");
+      recording.add(Phase.SEARCH, TimeUnit.MILLISECONDS.toNanos(7));
+      recording.entry(new SearchResult("cn=Meier", null, new BasicAttributes("cn", "Meier")));
+      return "done";
+    });
+
+    assertThat(result).isEqualTo("done");
+    assertThat(OperationMetrics.current()).isNull();
+    assertThat(metrics.getOperations()).hasSize(1);
+    OperationStats stats = metrics.getOperations().get(0);
+    assertThat(stats.getBean()).isEqualTo("TestOperationMetrics");
+    assertThat(stats.getServerUrl()).isEqualTo("ldap://dc1");
+    assertThat(stats.getSearchBase()).isEqualTo("ou=users");
+    assertThat(stats.getCount()).isEqualTo(1);
+    assertThat(stats.getResultCount()).isEqualTo(1);
+    assertThat(stats.getBytesReturned()).isEqualTo("cn=Meier".length() + "cn".length() + "Meier".length());
+    assertThat(stats.getConnect().getP50Millis()).isEqualTo(3);
+    assertThat(stats.getSearch().getMaxMillis()).isEqualTo(7);
+    assertThat(stats.getRead().getCount()).isEqualTo(0);
+    assertThat(stats.getMap().getCount()).isEqualTo(1);
+    assertThat(stats.getEntriesPerSecond()).isGreaterThan(100);
+  }
+
+  @Test
+  public void errors()
+  {
+    Throwable error = catchThrowable(() -> metrics.record(TestOperationMetrics.class, () -> {
+      throw new NameNotFoundException("cn=Meier");
+    }));
+
+    assertThat(error).isInstanceOf(NameNotFoundException.class);
+    assertThat(metrics.getOperations().get(0).getErrorCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void maxKeys() throws Exception
+  {
+    for (String base : new String[] {"ou=a", "ou=b", "ou=c", "ou=d"})
+    {
+      metrics.record(TestOperationMetrics.class, () -> {
+        OperationMetrics.current().searched(base);
+        return null;
+      });
+    }
+
+    assertThat(metrics.getOperations()).extracting(OperationStats::getSearchBase)
+            .containsOnly("ou=a", "ou=b", OperationMetrics.OTHER);
+  }
+
+  @Test
+  public void mxBean() throws Exception
+  {
+    metrics.record(TestOperationMetrics.class, () -> null);
+
+    Object operations = ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(new ObjectName(OperationMetrics.OBJECT_NAME), "Operations");
+
+    assertThat(operations).isInstanceOf(CompositeData[].class);
+    CompositeData stats = ((CompositeData[]) operations)[0];
+    assertThat(stats.get("bean")).isEqualTo("TestOperationMetrics");
+    assertThat(((CompositeData) stats.get("total")).get("count")).isEqualTo(1L);
+    assertThat(ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(new ObjectName(OperationMetrics.OBJECT_NAME), "Servers")).isInstanceOf(CompositeData[].class);
+  }
+}
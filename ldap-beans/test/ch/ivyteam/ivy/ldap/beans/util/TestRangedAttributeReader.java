@@ -0,0 +1,135 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+import javax.naming.spi.InitialContextFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestRangedAttributeReader
+{
+  @After
+  public void closePools()
+  {
+    LdapConnectionManager.getInstance().closeAll();
+  }
+
+  @Test
+  public void nextRange()
+  {
+    assertThat(RangedAttributeReader.getNextRange("member;range=0-1499")).isEqualTo("1500-*");
+    assertThat(RangedAttributeReader.getNextRange("member;Range=1500-2999")).isEqualTo("3000-*");
+    assertThat(RangedAttributeReader.getNextRange("member;range=3000-*")).isNull();
+    assertThat(RangedAttributeReader.getNextRange("member")).isNull();
+  }
+
+  @Test
+  public void plainAndLastRange() throws NamingException
+  {
+    BasicAttributes attributes = new BasicAttributes(true);
+    attributes.put("cn", "Admins");
+    Attribute range = new BasicAttribute("member;range=0-*");
+    range.add("cn=a");
+    range.add("cn=b");
+    attributes.put(range);
+    SearchResult result = new SearchResult("cn=Admins", null, attributes);
+
+    try (RangedAttributeReader reader = new RangedAttributeReader(null))
+    {
+      assertThat(reader.get(result, "cn").get()).isEqualTo("Admins");
+      Attribute member = reader.get(result, "member");
+      assertThat(member.getID()).isEqualTo("member");
+      assertThat(member.size()).isEqualTo(2);
+      assertThat(member.get(1)).isEqualTo("cn=b");
+      assertThat(reader.get(result, "mail")).isNull();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void readRangesOnConnectionOfSearch() throws NamingException
+  {
+    JndiConfig config = new JndiConfig(new JndiProvider("Ranges", RangeContextFactory.class.getName()),
+            "ldap://ranges", JndiConfig.AUTH_KIND_SIMPLE, "cn=admin", "secret", false, false, "");
+    config.setPoolMaxSize(1);
+    BasicAttributes attributes = new BasicAttributes(true);
+    Attribute range = new BasicAttribute("member;range=0-1");
+    range.add("cn=a");
+    range.add("cn=b");
+    attributes.put(range);
+    SearchResult result = new SearchResult("cn=Admins", null, attributes);
+    result.setNameInNamespace("cn=Admins,dc=ivyteam,dc=ch");
+
+    try (LdapConnection connection = LdapConnectionManager.getInstance().borrow(config);
+            RangedAttributeReader reader = new RangedAttributeReader(config))
+    {
+      reader.useConnectionOf(connection.getContext());
+      int rangeReads = RangeContextFactory.rangeReads.get();
+
+      // the only connection of the pool is held by the search
+      Attribute member = reader.get(result, "member");
+
+      assertThat(member.size()).isEqualTo(3);
+      assertThat(member.get(2)).isEqualTo("cn=c");
+      assertThat(RangeContextFactory.rangeReads.get()).isEqualTo(rangeReads + 1);
+    }
+  }
+
+  /**
+   * Creates contexts that return the last range <code>2-*</code> of the
+   * member attribute, but only on new instances which do not share the
+   * request controls of the search
+   */
+  public static class RangeContextFactory implements InitialContextFactory
+  {
+    static final AtomicInteger rangeReads = new AtomicInteger();
+
+    @Override
+    public Context getInitialContext(Hashtable<?, ?> environment)
+    {
+      return create(environment, false);
+    }
+
+    private static LdapContext create(Hashtable<?, ?> environment, boolean newInstance)
+    {
+      return (LdapContext) Proxy.newProxyInstance(RangeContextFactory.class.getClassLoader(),
+              new Class<?>[] {LdapContext.class}, (proxy, method, args) -> {
+                switch (method.getName())
+                {
+                  case "newInstance":
+                    return create(environment, true);
+                  case "getNameInNamespace":
+                    return "dc=ivyteam,dc=ch";
+                  case "getEnvironment":
+                    return environment;
+                  case "getAttributes":
+                    if (!newInstance)
+                    {
+                      throw new IllegalStateException("Range read with the request controls of the search");
+                    }
+                    rangeReads.incrementAndGet();
+                    BasicAttributes attributes = new BasicAttributes(true);
+                    attributes.put("member;range=2-*", "cn=c");
+                    return attributes;
+                  case "hashCode":
+                    return System.identityHashCode(proxy);
+                  case "equals":
+                    return proxy == args[0];
+                  default:
+                    return null;
+                }
+              });
+    }
+  }
+}
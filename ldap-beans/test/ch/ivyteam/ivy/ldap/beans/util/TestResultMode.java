@@ -0,0 +1,124 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.junit.Test;
+
+public class TestResultMode
+{
+  private static final String[] ATTRIBUTES = {"cn", "mail"};
+
+  @Test
+  public void parse()
+  {
+    assertThat(ResultMode.parse("all")).isEqualTo(ResultMode.ALL);
+    assertThat(ResultMode.parse("onylFirst")).isEqualTo(ResultMode.FIRST);
+    assertThat(ResultMode.parse("exists")).isEqualTo(ResultMode.EXISTS);
+    assertThat(ResultMode.parse("count")).isEqualTo(ResultMode.COUNT);
+    assertThat(ResultMode.parse(null)).isEqualTo(ResultMode.FIRST);
+    assertThat(ResultMode.parse("unknown")).isEqualTo(ResultMode.FIRST);
+  }
+
+  @Test
+  public void limitSearchToOneEntry()
+  {
+    assertThat(configure(ResultMode.ALL).getCountLimit()).isEqualTo(0);
+    assertThat(configure(ResultMode.FIRST).getCountLimit()).isEqualTo(1);
+    assertThat(configure(ResultMode.EXISTS).getCountLimit()).isEqualTo(1);
+    assertThat(configure(ResultMode.COUNT).getCountLimit()).isEqualTo(0);
+  }
+
+  @Test
+  public void requestNoAttributesIfOnlyCounting()
+  {
+    assertThat(configure(ResultMode.ALL).getReturningAttributes()).containsExactly(ATTRIBUTES);
+    assertThat(configure(ResultMode.FIRST).getReturningAttributes()).containsExactly(ATTRIBUTES);
+    assertThat(configure(ResultMode.EXISTS).getReturningAttributes()).containsExactly(ResultMode.NO_ATTRIBUTES);
+    assertThat(configure(ResultMode.COUNT).getReturningAttributes()).containsExactly(ResultMode.NO_ATTRIBUTES);
+  }
+
+  @Test
+  public void exists() throws NamingException
+  {
+    CountingEnumeration results = results("cn=a", "cn=b");
+    assertThat(ResultMode.EXISTS.evaluate(results)).isEqualTo(Boolean.TRUE);
+    assertThat(results.read).isEqualTo(1);
+
+    assertThat(ResultMode.EXISTS.evaluate(results())).isEqualTo(Boolean.FALSE);
+  }
+
+  @Test
+  public void count() throws NamingException
+  {
+    assertThat(ResultMode.COUNT.evaluate(results("cn=a", "cn=b", "cn=c"))).isEqualTo(3);
+    assertThat(ResultMode.COUNT.evaluate(results())).isEqualTo(0);
+  }
+
+  private static SearchControls configure(ResultMode mode)
+  {
+    SearchControls searchControls = new SearchControls();
+    mode.configure(searchControls, ATTRIBUTES);
+    return searchControls;
+  }
+
+  private static CountingEnumeration results(String... names)
+  {
+    List<SearchResult> results = new ArrayList<>();
+    for (String name : names)
+    {
+      results.add(new SearchResult(name, null, new BasicAttributes()));
+    }
+    return new CountingEnumeration(results);
+  }
+
+  private static class CountingEnumeration implements NamingEnumeration<SearchResult>
+  {
+    private final Iterator<SearchResult> results;
+    private int read;
+
+    CountingEnumeration(List<SearchResult> results)
+    {
+      this.results = results.iterator();
+    }
+
+    @Override
+    public boolean hasMore()
+    {
+      return results.hasNext();
+    }
+
+    @Override
+    public SearchResult next()
+    {
+      read++;
+      return results.next();
+    }
+
+    @Override
+    public boolean hasMoreElements()
+    {
+      return hasMore();
+    }
+
+    @Override
+    public SearchResult nextElement()
+    {
+      return next();
+    }
+
+    @Override
+    public void close()
+    {
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class TestResultSorter
+{
+  private static final List<String> COLUMNS = Arrays.asList("JNDIName", "sn", "givenName", "mail");
+
+  @Test
+  public void sortAscendingCaseInsensitive()
+  {
+    List<List<Object>> rows = rows(
+            row("cn=1", "meier", "Hans", null),
+            row("cn=2", "Baumann", "Anna", null),
+            row("cn=3", "Z\u00fcrcher", "Eva", null),
+            row("cn=4", "arnold", "Urs", null));
+
+    sort(rows, "sn", false);
+
+    assertThat(names(rows)).containsExactly("cn=4", "cn=2", "cn=1", "cn=3");
+  }
+
+  @Test
+  public void sortByMultipleAttributes()
+  {
+    List<List<Object>> rows = rows(
+            row("cn=1", "Meier", "Hans", null),
+            row("cn=2", "Baumann", "Anna", null),
+            row("cn=3", "Meier", "Anna", null),
+            row("cn=4", "Baumann", "Urs", null));
+
+    sort(rows, "sn, givenName desc", false);
+
+    assertThat(names(rows)).containsExactly("cn=4", "cn=2", "cn=1", "cn=3");
+  }
+
+  @Test
+  public void missingValuesAreGreatestByDefault()
+  {
+    List<List<Object>> rows = rows(
+            row("cn=1", "b", null, null),
+            row("cn=2", "", null, null),
+            row("cn=3", "a", null, null));
+
+    sort(rows, "sn", false);
+    assertThat(names(rows)).containsExactly("cn=3", "cn=1", "cn=2");
+
+    sort(rows, "sn", true);
+    assertThat(names(rows)).containsExactly("cn=2", "cn=1", "cn=3");
+  }
+
+  @Test
+  public void explicitNullOrder()
+  {
+    List<List<Object>> rows = rows(
+            row("cn=1", "b", null, null),
+            row("cn=2", null, null, null),
+            row("cn=3", "a", null, null));
+
+    sort(rows, "sn nullsFirst", false);
+
+    assertThat(names(rows)).containsExactly("cn=2", "cn=3", "cn=1");
+  }
+
+  @Test
+  public void multiValuedAttributes()
+  {
+    List<List<Object>> rows = rows(
+            row("cn=1", null, null, Arrays.asList("m@x.ch", "b@x.ch")),
+            row("cn=2", null, null, "c@x.ch"),
+            row("cn=3", null, null, Arrays.asList("a@x.ch", "z@x.ch")));
+
+    sort(rows, "mail", false);
+    assertThat(names(rows)).containsExactly("cn=3", "cn=1", "cn=2");
+
+    sort(rows, "mail", true);
+    assertThat(names(rows)).containsExactly("cn=3", "cn=1", "cn=2");
+  }
+
+  @Test
+  public void stable()
+  {
+    List<List<Object>> rows = rows(
+            row("cn=1", "same", null, null),
+            row("cn=2", "Same", null, null),
+            row("cn=3", "SAME", null, null));
+
+    sort(rows, "sn", true);
+
+    assertThat(names(rows)).containsExactly("cn=1", "cn=2", "cn=3");
+  }
+
+  @Test
+  public void parse()
+  {
+    assertThat(ResultSorter.parse("  ", false)).isEmpty();
+    assertThat(ResultSorter.parse("sn, givenName desc nullsLast", false).toString())
+            .isEqualTo("[sn asc nullsLast, givenName desc nullsLast]");
+    assertThatThrownBy(() -> ResultSorter.parse("sn upwards", false))
+            .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static void sort(List<List<Object>> rows, String sortSpec, boolean descending)
+  {
+    new ResultSorter(ResultSorter.parse(sortSpec, descending), COLUMNS, Locale.GERMAN).sort(rows);
+  }
+
+  @SafeVarargs
+  private static List<List<Object>> rows(List<Object>... rows)
+  {
+    List<List<Object>> list = new ArrayList<>(rows.length);
+    for (List<Object> row : rows)
+    {
+      list.add(row);
+    }
+    return list;
+  }
+
+  private static List<Object> row(Object... values)
+  {
+    return Arrays.asList(values);
+  }
+
+  private static List<Object> names(List<List<Object>> rows)
+  {
+    List<Object> names = new ArrayList<>();
+    for (List<Object> row : rows)
+    {
+      names.add(row.get(0));
+    }
+    return names;
+  }
+}
@@ -0,0 +1,212 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+
+import org.junit.Test;
+
+public class TestSearchResultCache
+{
+  private final SearchResultCache cache = new SearchResultCache(2, 5);
+
+  @Test
+  public void cacheCompletelyReadResults() throws NamingException
+  {
+    SearchResultCache.Key key = key("ou=people,dc=ivyteam,dc=ch", "(cn=*)");
+    assertThat(cache.lookup(key)).isNull();
+
+    assertThat(names(cache.record(key, results("cn=a", "cn=b"), 60))).containsExactly("cn=a", "cn=b");
+
+    assertThat(names(cache.lookup(key))).containsExactly("cn=a", "cn=b");
+    assertThat(cache.lookup(key("ou=people,dc=ivyteam,dc=ch", "(cn=a)"))).isNull();
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void doNotCacheIncompleteResults() throws NamingException
+  {
+    SearchResultCache.Key key = key("ou=people,dc=ivyteam,dc=ch", "(cn=*)");
+    SearchResultEnumeration recording = cache.record(key, results("cn=a", "cn=b"), 60);
+    recording.next();
+    recording.close();
+    assertThat(cache.lookup(key)).isNull();
+
+    names(cache.record(key, results("cn=1", "cn=2", "cn=3", "cn=4", "cn=5", "cn=6"), 60));
+    assertThat(cache.lookup(key)).isNull();
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() throws NamingException
+  {
+    SearchResultCache.Key key1 = key("dc=ch", "(cn=1)");
+    SearchResultCache.Key key2 = key("dc=ch", "(cn=2)");
+    SearchResultCache.Key key3 = key("dc=ch", "(cn=3)");
+    names(cache.record(key1, results("cn=a"), 60));
+    names(cache.record(key2, results("cn=b"), 60));
+    cache.lookup(key1);
+    names(cache.record(key3, results("cn=c", "cn=d", "cn=e", "cn=f", "cn=g"), 60));
+
+    assertThat(cache.lookup(key2)).isNull();
+    assertThat(cache.lookup(key1)).isNull();
+    assertThat(cache.lookup(key3)).isNotNull();
+    assertThat(cache.getEvictionCount()).isEqualTo(2);
+    assertThat(cache.getWeight()).isEqualTo(5);
+  }
+
+  @Test
+  public void cacheFirstResultLookup() throws NamingException
+  {
+    SearchResultCache.Key key = key("ou=people,dc=ivyteam,dc=ch", "(uid=a)", 1);
+    SearchResultEnumeration recording = cache.record(key, results("cn=a", "cn=b"), 60);
+    assertThat(recording.hasMoreElements()).isTrue();
+    assertThat(recording.nextElement().getName()).isEqualTo("cn=a");
+    recording.close();
+
+    assertThat(names(cache.lookup(key))).containsExactly("cn=a");
+    assertThat(cache.getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void cacheExistsLookup() throws NamingException
+  {
+    SearchResultCache.Key key = key("ou=people,dc=ivyteam,dc=ch", "(uid=a)", 1);
+    SearchResultEnumeration recording = cache.record(key, results("cn=a", "cn=b"), 60);
+    assertThat(ResultMode.EXISTS.evaluate(recording)).isEqualTo(Boolean.TRUE);
+    recording.close();
+
+    assertThat(ResultMode.EXISTS.evaluate(cache.lookup(key))).isEqualTo(Boolean.TRUE);
+  }
+
+  @Test
+  public void expire() throws NamingException
+  {
+    SearchResultCache.Key key = key("dc=ch", "(cn=*)");
+    names(cache.record(key, results("cn=a"), 0));
+    assertThat(cache.lookup(key)).isNull();
+  }
+
+  @Test
+  public void invalidateParentsAndChildren() throws NamingException
+  {
+    SearchResultCache.Key people = key("ou=people,dc=ivyteam,dc=ch", "(cn=*)");
+    SearchResultCache.Key groups = key("ou=groups,dc=ivyteam,dc=ch", "(cn=*)");
+    names(cache.record(people, results("cn=a"), 60));
+    names(cache.record(groups, results("cn=b"), 60));
+
+    cache.invalidate("cn=a,OU=People,dc=ivyteam,dc=ch");
+    assertThat(cache.lookup(people)).isNull();
+    assertThat(cache.lookup(groups)).isNotNull();
+
+    cache.invalidate("dc=ivyteam,dc=ch");
+    assertThat(cache.lookup(groups)).isNull();
+  }
+
+  @Test
+  public void doNotCacheResultsReadDuringChange() throws NamingException
+  {
+    SearchResultCache.Key key = key("ou=people,dc=ivyteam,dc=ch", "(cn=*)");
+    SearchResultEnumeration recording = cache.record(key, results("cn=a", "cn=b"), 60);
+    recording.next();
+    cache.invalidate("cn=a,ou=people,dc=ivyteam,dc=ch");
+    names(recording);
+    assertThat(cache.lookup(key)).isNull();
+
+    recording = cache.record(key, results("cn=a"), 60);
+    cache.clear();
+    names(recording);
+    assertThat(cache.lookup(key)).isNull();
+
+    names(cache.record(key, results("cn=a"), 60));
+    assertThat(cache.lookup(key)).isNotNull();
+  }
+
+  private static SearchResultCache.Key key(String base, String filter)
+  {
+    return key(base, filter, 0);
+  }
+
+  private static SearchResultCache.Key key(String base, String filter, long countLimit)
+  {
+    JndiConfig config = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://localhost",
+            JndiConfig.AUTH_KIND_SIMPLE, "cn=admin", "secret", false, false, "");
+    SearchControls searchControls = new SearchControls();
+    searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+    searchControls.setCountLimit(countLimit);
+    return new SearchResultCache.Key(config, base, filter, searchControls, null);
+  }
+
+  private static SearchResultEnumeration results(String... names)
+  {
+    List<SearchResult> results = new ArrayList<>();
+    for (String name : names)
+    {
+      results.add(new SearchResult(name, null, new BasicAttributes()));
+    }
+    return new ListEnumeration(results);
+  }
+
+  private static List<String> names(SearchResultEnumeration results) throws NamingException
+  {
+    List<String> names = new ArrayList<>();
+    while (results.hasMore())
+    {
+      names.add(results.next().getName());
+    }
+    return names;
+  }
+
+  private static class ListEnumeration implements SearchResultEnumeration
+  {
+    private final Iterator<SearchResult> results;
+
+    ListEnumeration(List<SearchResult> results)
+    {
+      this.results = results.iterator();
+    }
+
+    @Override
+    public Control[] getResponseControls()
+    {
+      return null;
+    }
+
+    @Override
+    public boolean hasMore()
+    {
+      return results.hasNext();
+    }
+
+    @Override
+    public SearchResult next()
+    {
+      return results.next();
+    }
+
+    @Override
+    public boolean hasMoreElements()
+    {
+      return hasMore();
+    }
+
+    @Override
+    public SearchResult nextElement()
+    {
+      return next();
+    }
+
+    @Override
+    public void close()
+    {
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+import javax.naming.spi.InitialContextFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestServerSelector
+{
+  @After
+  public void closePools()
+  {
+    LdapConnectionManager.getInstance().closeAll();
+  }
+
+  @Test
+  public void ordered()
+  {
+    JndiConfig config = config("ldap://ordered-dc1:389  ldap://ordered-dc2:389", JndiConfig.ServerSelection.ORDERED);
+
+    assertThat(config.getUrls()).containsExactly("ldap://ordered-dc1:389", "ldap://ordered-dc2:389");
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://ordered-dc1:389", "ldap://ordered-dc2:389");
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://ordered-dc1:389", "ldap://ordered-dc2:389");
+  }
+
+  @Test
+  public void roundRobin()
+  {
+    JndiConfig config = config("ldap://rr-dc1 ldap://rr-dc2 ldap://rr-dc3", JndiConfig.ServerSelection.ROUND_ROBIN);
+
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://rr-dc1", "ldap://rr-dc2", "ldap://rr-dc3");
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://rr-dc2", "ldap://rr-dc3", "ldap://rr-dc1");
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://rr-dc3", "ldap://rr-dc1", "ldap://rr-dc2");
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://rr-dc1", "ldap://rr-dc2", "ldap://rr-dc3");
+  }
+
+  @Test
+  public void leastLatency()
+  {
+    JndiConfig config = config("ldap://ll-dc1 ldap://ll-dc2 ldap://ll-dc3", JndiConfig.ServerSelection.LEAST_LATENCY);
+    ServerHealth.get("ldap://ll-dc1").recordSuccess(TimeUnit.MILLISECONDS.toNanos(40));
+    ServerHealth.get("ldap://ll-dc2").recordSuccess(TimeUnit.MILLISECONDS.toNanos(5));
+
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://ll-dc3", "ldap://ll-dc2", "ldap://ll-dc1");
+  }
+
+  @Test
+  public void leastConnectLatency() throws Exception
+  {
+    JndiConfig config = new JndiConfig(new JndiProvider("Latency", SlowConnectContextFactory.class.getName()),
+            "ldap://slow-dc1 ldap://fast-dc2", JndiConfig.AUTH_KIND_NONE, "", "", false, false, "");
+    config.setServerSelection(JndiConfig.ServerSelection.LEAST_LATENCY);
+    LdapConnectionManager manager = LdapConnectionManager.getInstance();
+
+    try (LdapConnection slow = manager.borrow(config))
+    {
+      assertThat(slow.getServerUrl()).isEqualTo("ldap://slow-dc1");
+      try (LdapConnection fast = manager.borrow(config))
+      {
+        assertThat(fast.getServerUrl()).isEqualTo("ldap://fast-dc2");
+        // a long use of a connection does not make its server slow
+        Thread.sleep(2 * SlowConnectContextFactory.CONNECT_MILLIS);
+      }
+    }
+
+    assertThat(ServerHealth.get("ldap://slow-dc1").getLatencyMillis())
+            .isGreaterThanOrEqualTo(SlowConnectContextFactory.CONNECT_MILLIS);
+    assertThat(ServerHealth.get("ldap://fast-dc2").getLatencyMillis())
+            .isLessThan(SlowConnectContextFactory.CONNECT_MILLIS);
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://fast-dc2", "ldap://slow-dc1");
+  }
+
+  @Test
+  public void skipOpenCircuit()
+  {
+    JndiConfig config = config("ldap://cb-dc1 ldap://cb-dc2", JndiConfig.ServerSelection.ORDERED);
+    ServerHealth health = ServerHealth.get("ldap://cb-dc1");
+    for (int failure = 1; failure < ServerHealth.FAILURE_THRESHOLD; failure++)
+    {
+      health.recordFailure(config);
+    }
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://cb-dc1", "ldap://cb-dc2");
+
+    health.recordFailure(config);
+
+    assertThat(health.getState()).isEqualTo(ServerHealth.State.OPEN);
+    assertThat(health.getErrorRate()).isGreaterThan(0.4);
+    assertThat(ServerSelector.select(config)).containsExactly("ldap://cb-dc2");
+  }
+
+  @Test
+  public void probeRootDse()
+  {
+    JndiConfig config = new JndiConfig(new JndiProvider("Latency", SlowConnectContextFactory.class.getName()),
+            "ldap://probe-dc1:389/dc=ivyteam,dc=ch", JndiConfig.AUTH_KIND_NONE, "", "", false, false, "");
+    ServerHealth health = ServerHealth.get("ldap://probe-dc1:389/dc=ivyteam,dc=ch");
+    for (int failure = 0; failure < ServerHealth.FAILURE_THRESHOLD; failure++)
+    {
+      health.recordFailure(config);
+    }
+
+    health.probe();
+
+    assertThat(health.getState()).isEqualTo(ServerHealth.State.CLOSED);
+    assertThat(SlowConnectContextFactory.lastUrl).isEqualTo("ldap://probe-dc1:389");
+    assertThat(JndiUtil.getServerRootUrl("ldaps://dc1")).isEqualTo("ldaps://dc1");
+  }
+
+  private static JndiConfig config(String url, JndiConfig.ServerSelection selection)
+  {
+    JndiConfig config = new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, url,
+            JndiConfig.AUTH_KIND_NONE, "", "", false, false, "");
+    config.setServerSelection(selection);
+    return config;
+  }
+
+  public static class SlowConnectContextFactory implements InitialContextFactory
+  {
+    static final long CONNECT_MILLIS = 100;
+    static volatile String lastUrl;
+
+    @Override
+    public Context getInitialContext(Hashtable<?, ?> environment) throws NamingException
+    {
+      lastUrl = environment.get(Context.PROVIDER_URL).toString();
+      if (environment.get(Context.PROVIDER_URL).toString().contains("slow"))
+      {
+        try
+        {
+          Thread.sleep(CONNECT_MILLIS);
+        }
+        catch (InterruptedException ex)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return (LdapContext) Proxy.newProxyInstance(SlowConnectContextFactory.class.getClassLoader(),
+              new Class<?>[] {LdapContext.class}, (proxy, method, args) -> {
+                switch (method.getName())
+                {
+                  case "getEnvironment":
+                    return environment;
+                  case "hashCode":
+                    return System.identityHashCode(proxy);
+                  case "equals":
+                    return proxy == args[0];
+                  default:
+                    return null;
+                }
+              });
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.directory.SearchControls;
+
+import org.junit.Test;
+
+public class TestSlowOperationLog
+{
+  private final List<String> lines = new ArrayList<>();
+
+  @Test
+  public void threshold()
+  {
+    SlowOperationLog log = new SlowOperationLog(100, 10, 100, lines::add);
+
+    log.write(TimeUnit.MILLISECONDS.toNanos(99), "bind", "ldap://dc1", "cn=Meier");
+    log.write(TimeUnit.MILLISECONDS.toNanos(150), "rename", "ldap://dc1", "cn=Muster");
+
+    assertThat(lines).containsExactly(
+            "Slow LDAP rename took 150 ms: bean=-, server=ldap://dc1, entry=cn=Muster");
+  }
+
+  @Test
+  public void disabled()
+  {
+    SlowOperationLog log = new SlowOperationLog(0, 10, 100, lines::add);
+
+    log.write(TimeUnit.MINUTES.toNanos(1), "bind", "ldap://dc1", "cn=Meier");
+
+    assertThat(log.isSlow(TimeUnit.MINUTES.toNanos(1))).isFalse();
+    assertThat(lines).isEmpty();
+  }
+
+  @Test
+  public void rateLimit()
+  {
+    SlowOperationLog log = new SlowOperationLog(1, 2, 100, lines::add);
+
+    for (int count = 0; count < 5; count++)
+    {
+      log.write(TimeUnit.MILLISECONDS.toNanos(5), "unbind", null, "cn=" + count);
+    }
+
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(1)).contains("entry=cn=1");
+  }
+
+  @Test
+  public void search() throws Exception
+  {
+    SlowOperationLog log = new SlowOperationLog(1, 10, 100, lines::add);
+    SearchControls controls = new SearchControls();
+    controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+    controls.setReturningAttributes(new String[] {"cn", "mail"});
+
+    OperationMetrics metrics = new OperationMetrics(10);
+    metrics.record(TestSlowOperationLog.class, () -> {
+      log.search(TimeUnit.SECONDS.toNanos(3), "ldap://dc1", "ou=users", "(cn=M*)", controls, 42);
+      return null;
+    });
+
+    assertThat(lines).containsExactly("Slow LDAP search took 3000 ms: bean=TestSlowOperationLog, "
+            + "server=ldap://dc1, base=ou=users, filter=(cn=M*), scope=oneLevel, attributes=2, results=42");
+  }
+}
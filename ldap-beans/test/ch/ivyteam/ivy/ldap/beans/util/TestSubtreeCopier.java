@@ -0,0 +1,60 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+import org.junit.Test;
+
+public class TestSubtreeCopier
+{
+  private static final String BASE = "ou=template,ou=projects,dc=ivyteam,dc=ch";
+
+  @Test
+  public void targetName() throws InvalidNameException
+  {
+    LdapName target = new LdapName("ou=Project X,ou=projects");
+
+    assertThat(SubtreeCopier.getTargetName(new LdapName(BASE), new LdapName(BASE), target))
+            .isEqualTo(new LdapName("ou=Project X,ou=projects"));
+    assertThat(SubtreeCopier.getTargetName(new LdapName(BASE),
+            new LdapName("cn=Members\\, all,ou=groups," + BASE), target))
+                    .isEqualTo(new LdapName("cn=Members\\, all,ou=groups,ou=Project X,ou=projects"));
+  }
+
+  @Test
+  public void targetNameOutsideBase()
+  {
+    assertThatThrownBy(() -> SubtreeCopier.getTargetName(new LdapName(BASE),
+            new LdapName("ou=other,dc=ivyteam,dc=ch"), new LdapName("ou=copy")))
+                    .isInstanceOf(InvalidNameException.class);
+  }
+
+  @Test
+  public void targetInsideSource() throws InvalidNameException
+  {
+    SubtreeCopier.checkTargetOutsideSource(new LdapName(BASE), new LdapName("ou=copy,ou=projects,dc=ivyteam,dc=ch"));
+
+    assertThatThrownBy(() -> SubtreeCopier.checkTargetOutsideSource(new LdapName(BASE),
+            new LdapName("ou=copy," + BASE))).isInstanceOf(InvalidNameException.class);
+    assertThatThrownBy(() -> SubtreeCopier.checkTargetOutsideSource(new LdapName(BASE),
+            new LdapName(BASE))).isInstanceOf(InvalidNameException.class);
+  }
+
+  @Test
+  public void sameServer()
+  {
+    assertThat(SubtreeCopier.isSameServer(config("ldap://dc1:389 ldap://dc2:389"), config("ldap://DC2:389")))
+            .isTrue();
+    assertThat(SubtreeCopier.isSameServer(config("ldap://dc1:389"), config("ldap://backup:389")))
+            .isFalse();
+  }
+
+  private static JndiConfig config(String url)
+  {
+    return new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, url,
+            JndiConfig.AUTH_KIND_SIMPLE, "cn=admin", "secret", false, false, "");
+  }
+}
@@ -0,0 +1,38 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+import org.junit.Test;
+
+public class TestSubtreeDeleter
+{
+  @Test
+  public void groupByDepth() throws InvalidNameException
+  {
+    LdapName root = new LdapName("ou=users");
+    LdapName sales = new LdapName("ou=sales,ou=users");
+    LdapName meier = new LdapName("cn=Meier,ou=sales,ou=users");
+    LdapName it = new LdapName("ou=it,ou=users");
+    LdapName mueller = new LdapName("cn=Mueller\\, Hans,ou=it,ou=users");
+
+    List<List<LdapName>> levels = SubtreeDeleter.groupByDepth(
+            Arrays.asList(root, sales, meier, it, mueller));
+
+    assertThat(levels).containsExactly(
+            Arrays.asList(meier, mueller),
+            Arrays.asList(sales, it),
+            Arrays.asList(root));
+  }
+
+  @Test
+  public void groupByDepthEmpty()
+  {
+    assertThat(SubtreeDeleter.groupByDepth(Arrays.asList())).isEmpty();
+  }
+}
@@ -0,0 +1,84 @@
+package ch.ivyteam.ivy.ldap.beans.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.SocketTimeoutException;
+import java.util.Hashtable;
+import java.util.Properties;
+
+import javax.naming.NamingException;
+import javax.naming.TimeLimitExceededException;
+
+import org.junit.Test;
+
+public class TestTimeouts
+{
+  @Test
+  public void environment()
+  {
+    JndiConfig config = config();
+    Hashtable<String, Object> env = config.createEnvironment("ldap://dc1:389");
+
+    assertThat(env.get("com.sun.jndi.ldap.connect.timeout")).isEqualTo("5000");
+    assertThat(env.get("com.sun.jndi.ldap.read.timeout")).isEqualTo("60000");
+    assertThat(env).doesNotContainKey(JndiConfig.SEARCH_TIME_LIMIT);
+
+    config.setConnectTimeout(0);
+    config.setSearchTimeLimit(2000);
+    env = config.createEnvironment("ldap://dc1:389");
+
+    assertThat(env).doesNotContainKey("com.sun.jndi.ldap.connect.timeout");
+    assertThat(env.get(JndiConfig.SEARCH_TIME_LIMIT)).isEqualTo("2000");
+  }
+
+  @Test
+  public void properties()
+  {
+    JndiConfig config = config();
+    config.setReadTimeout(15000);
+    config.setSearchTimeLimit(3000);
+    Properties props = new Properties();
+    JndiConfigProperties.store(config, props);
+
+    JndiConfig loaded = config();
+    JndiConfigProperties.load(loaded, props);
+
+    assertThat(loaded.getConnectTimeout()).isEqualTo(JndiConfig.DEFAULT_CONNECT_TIMEOUT);
+    assertThat(loaded.getReadTimeout()).isEqualTo(15000);
+    assertThat(loaded.getSearchTimeLimit()).isEqualTo(3000);
+    assertThat(JndiConfigProperties.parseTimeout("0", 5000)).isEqualTo(0);
+    assertThat(JndiConfigProperties.parseTimeout("-1", 5000)).isEqualTo(5000);
+    assertThat(JndiConfigProperties.parseTimeout("", 5000)).isEqualTo(5000);
+  }
+
+  @Test
+  public void defaultTimeoutsForServerStoredWithoutThem()
+  {
+    Properties props = new Properties();
+    props.setProperty("server_url", "ldap://dc1:389");
+    JndiConfig loaded = config();
+    loaded.setConnectTimeout(0);
+    loaded.setReadTimeout(0);
+    JndiConfigProperties.load(loaded, props);
+
+    assertThat(loaded.getConnectTimeout()).isEqualTo(JndiConfig.DEFAULT_CONNECT_TIMEOUT);
+    assertThat(loaded.getReadTimeout()).isEqualTo(JndiConfig.DEFAULT_READ_TIMEOUT);
+  }
+
+  @Test
+  public void readTimeoutIsConnectionError()
+  {
+    assertThat(LdapConnection.isConnectionError(new NamingException("LDAP response read timed out, timeout used: 60000 ms."))).isTrue();
+    NamingException wrapped = new NamingException("LDAP response read failed");
+    wrapped.setRootCause(new IllegalStateException(new SocketTimeoutException("Read timed out")));
+    assertThat(LdapConnection.isConnectionError(wrapped)).isTrue();
+    assertThat(LdapConnection.isConnectionError(new TimeLimitExceededException())).isFalse();
+    assertThat(LdapConnection.isConnectionError(new NamingException("[LDAP: error code 32 - No Such Object]"))).isFalse();
+  }
+
+  private static JndiConfig config()
+  {
+    return new JndiConfig(JndiProvider.NOVELL_E_DIRECTORY, "ldap://dc1:389",
+            JndiConfig.AUTH_KIND_NONE, "", "", false, false, "");
+  }
+}